@@ -0,0 +1,394 @@
+package sjdb;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class computes the statistics in the system catalogue from the data
+ * itself (as ANALYZE does in other databases), and records them through the
+ * Catalogue.
+ *
+ * The data for each named relation is read from the file <relation name>.csv
+ * in the data directory. The first line of the file names the attributes,
+ * and each following line holds one tuple, with its values separated by
+ * commas.
+ *
+ * Each file is read once, a line at a time, so memory use does not grow with
+ * the size of the relation: the distinct values of an attribute are counted
+ * exactly until there are more than EXACT_LIMIT of them, and are estimated
+ * with a HyperLogLog sketch from then on.
+ *
+ * Any groups of correlated attributes already declared for a relation (see
+ * AttributeGroup) are kept, and their combined value counts recomputed, as
+ * are any indexes declared on its attributes (see BTreeIndex).
+ * Likewise, attributes that already have a histogram or a most-common-values
+ * list are given new ones with the same number of buckets or values. As in
+ * PostgreSQL, these are computed from a uniform sample of SAMPLE_ROWS
+ * tuples, drawn while the file is read.
+ *
+ * Run from the command line as:
+ *
+ * java sjdb.Analyzer <catalogue file> <data directory> [<relation name> ...]
+ *
+ * which analyzes the named relations (or every relation in the catalogue)
+ * and writes the new statistics back to the catalogue file.
+ */
+public class Analyzer {
+	private static final int EXACT_LIMIT = 10000;
+	private static final int SAMPLE_ROWS = 30000;
+	private static final long SEED = 1;
+
+	private Catalogue catalogue;
+	private File dataDir;
+
+	/**
+	 * Create an analyzer that reads data files from the given directory
+	 * @param catalogue Catalogue to record the statistics in
+	 * @param dataDir Directory holding the data files
+	 */
+	public Analyzer(Catalogue catalogue, String dataDir) {
+		this.catalogue = catalogue;
+		this.dataDir = new File(dataDir);
+	}
+
+	/**
+	 * Analyze every relation in the catalogue that has a data file.
+	 * @throws IOException
+	 */
+	public void analyze() throws IOException {
+		List<String> relNames = new ArrayList<>();
+		for (NamedRelation reln : catalogue.getRelations()) {
+			relNames.add(reln.toString());
+		}
+		for (String relName : relNames) {
+			if (dataFile(relName).exists()) {
+				analyze(relName);
+			}
+		}
+	}
+
+	/**
+	 * Analyze the named relation, replacing its entry in the catalogue.
+	 * @param relName Name of the relation
+	 * @return The analyzed relation
+	 * @throws IOException
+	 */
+	public NamedRelation analyze(String relName) throws IOException {
+		BufferedReader read = new BufferedReader(new FileReader(dataFile(relName)));
+		try {
+			String header = read.readLine();
+			if (header == null) {
+				throw new IOException("Missing header in " + dataFile(relName));
+			}
+			String[] attNames = header.split(",", -1);
+			DistinctCounter[] counters = new DistinctCounter[attNames.length];
+			for (int i = 0; i < attNames.length; i++) {
+				attNames[i] = attNames[i].trim();
+				counters[i] = new DistinctCounter();
+			}
+			// the attributes whose histograms and lists are to be recomputed
+			int[] buckets = new int[attNames.length];
+			int[] commonValues = new int[attNames.length];
+			boolean sampling = false;
+			for (int i = 0; i < attNames.length; i++) {
+				Attribute declared = declaredAttribute(relName, attNames[i]);
+				if (declared != null && declared.getHistogram() != null) {
+					buckets[i] = declared.getHistogram().getBucketCount();
+				}
+				if (declared != null && declared.getMostCommonValues() != null) {
+					commonValues[i] = declared.getMostCommonValues().size();
+				}
+				sampling |= buckets[i] > 0 || commonValues[i] > 0;
+			}
+			List<String[]> groupNames = declaredGroups(relName, attNames);
+			List<String> indexNames = declaredIndexes(relName, attNames);
+			int[][] groupColumns = new int[groupNames.size()][];
+			DistinctCounter[] groupCounters = new DistinctCounter[groupNames.size()];
+			for (int g = 0; g < groupColumns.length; g++) {
+				groupColumns[g] = new int[groupNames.get(g).length];
+				for (int k = 0; k < groupColumns[g].length; k++) {
+					groupColumns[g][k] = Arrays.asList(attNames).indexOf(groupNames.get(g)[k]);
+				}
+				groupCounters[g] = new DistinctCounter();
+			}
+
+			// reservoir sample of the tuples
+			List<String[]> sample = new ArrayList<>();
+			Random random = new Random(SEED);
+			long tuples = 0;
+			String line;
+			while ((line = read.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] values = line.split(",", -1);
+				for (int i = 0; i < counters.length && i < values.length; i++) {
+					values[i] = values[i].trim();
+					counters[i].add(values[i]);
+				}
+				for (int g = 0; g < groupColumns.length; g++) {
+					StringBuilder combination = new StringBuilder();
+					for (int column : groupColumns[g]) {
+						// separate the values with a character that text values do not use
+						combination.append(column < values.length ? values[column] : "").append('\u0001');
+					}
+					groupCounters[g].add(combination.toString());
+				}
+				if (sampling && sample.size() < SAMPLE_ROWS) {
+					sample.add(values);
+				} else if (sampling) {
+					long slot = (long) (random.nextDouble() * (tuples + 1));
+					if (slot < SAMPLE_ROWS) {
+						sample.set((int) slot, values);
+					}
+				}
+				tuples++;
+			}
+
+			NamedRelation reln = catalogue.createRelation(relName, tuples);
+			boolean sampled = tuples > sample.size();
+			for (int i = 0; i < attNames.length; i++) {
+				Histogram histogram = null;
+				MostCommonValues mostCommonValues = null;
+				if (buckets[i] > 0 || commonValues[i] > 0) {
+					List<String> column = new ArrayList<>();
+					for (String[] values : sample) {
+						column.add(i < values.length ? values[i] : "");
+					}
+					if (buckets[i] > 0) {
+						histogram = histogram(column, buckets[i], counters[i].count(), sampled);
+					}
+					if (commonValues[i] > 0) {
+						mostCommonValues = mostCommonValues(column, commonValues[i], sampled);
+					}
+				}
+				catalogue.createAttribute(relName, attNames[i], counters[i].count(), histogram, mostCommonValues);
+			}
+			for (int g = 0; g < groupColumns.length; g++) {
+				catalogue.createAttributeGroup(relName, groupNames.get(g), groupCounters[g].count());
+			}
+			for (String indexName : indexNames) {
+				catalogue.createIndex(relName, indexName);
+			}
+			return reln;
+		} finally {
+			read.close();
+		}
+	}
+
+	/**
+	 * Return the attribute of the given name already declared for the
+	 * relation, or null if there is none.
+	 */
+	private Attribute declaredAttribute(String relName, String attName) {
+		try {
+			NamedRelation reln = catalogue.getRelation(relName);
+			int i = reln.getAttributes().indexOf(new Attribute(attName));
+			return i < 0 ? null : reln.getAttributes().get(i);
+		} catch (DatabaseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Return an equi-depth histogram with the given number of buckets over a
+	 * sample of the values of an attribute, or null if the sample is empty.
+	 * The distinct values found in each bucket of a sample are scaled up in
+	 * proportion to those of the whole attribute.
+	 */
+	private static Histogram histogram(List<String> column, int buckets, long distinct, boolean sampled) {
+		if (column.isEmpty()) {
+			return null;
+		}
+		List<String> sorted = new ArrayList<>(column);
+		Collections.sort(sorted, new Comparator<String>() {
+			@Override
+			public int compare(String valueA, String valueB) {
+				return Histogram.compare(valueA, valueB);
+			}
+		});
+		int n = sorted.size();
+		buckets = Math.min(buckets, n);
+		int sampleDistinct = 1;
+		for (int k = 1; k < n; k++) {
+			if (Histogram.compare(sorted.get(k), sorted.get(k - 1)) != 0) {
+				sampleDistinct++;
+			}
+		}
+
+		String[] bounds = new String[buckets];
+		int[] bucketDistinct = new int[buckets];
+		String lower = sorted.get(0);
+		int start = 0;
+		for (int i = 0; i < buckets; i++) {
+			int end = (int) ((long) (i + 1) * n / buckets);
+			String upper = sorted.get(end - 1);
+			int d = 0;
+			String previous = null;
+			for (int k = start; k < end; k++) {
+				String value = sorted.get(k);
+				// bucket i only holds the values above the bound of bucket i-1
+				if (i > 0 && Histogram.compare(value, lower) == 0) {
+					continue;
+				}
+				if (previous == null || Histogram.compare(value, previous) != 0) {
+					d++;
+				}
+				previous = value;
+			}
+			if (Histogram.compare(lower, upper) == 0) {
+				d = 1;
+			} else if (sampled) {
+				d = (int) Math.min(Integer.MAX_VALUE, Math.round((double) d * distinct / sampleDistinct));
+			}
+			bounds[i] = upper;
+			bucketDistinct[i] = Math.max(d, 1);
+			lower = upper;
+			start = end;
+		}
+		return new Histogram(sorted.get(0), bounds, bucketDistinct);
+	}
+
+	/**
+	 * Return a list of up to the given number of the most common values in a
+	 * sample of the values of an attribute, or null if there are none. A
+	 * value seen only once in a sample is not taken to be common.
+	 */
+	private static MostCommonValues mostCommonValues(List<String> column, int size, boolean sampled) {
+		final Map<String, Integer> counts = new HashMap<>();
+		for (String value : column) {
+			Integer count = counts.get(value);
+			counts.put(value, count == null ? 1 : count + 1);
+		}
+		List<String> values = new ArrayList<>(counts.keySet());
+		Collections.sort(values, new Comparator<String>() {
+			@Override
+			public int compare(String valueA, String valueB) {
+				int res = Integer.compare(counts.get(valueB), counts.get(valueA));
+				return res != 0 ? res : valueA.compareTo(valueB);
+			}
+		});
+		int n = 0;
+		while (n < Math.min(size, values.size()) && (!sampled || counts.get(values.get(n)) > 1)) {
+			n++;
+		}
+		if (n == 0) {
+			return null;
+		}
+		String[] common = new String[n];
+		double[] frequencies = new double[n];
+		for (int k = 0; k < n; k++) {
+			common[k] = values.get(k);
+			frequencies[k] = (double) counts.get(common[k]) / column.size();
+		}
+		return new MostCommonValues(common, frequencies);
+	}
+
+	/**
+	 * Return the attribute names of the groups declared for the relation
+	 * whose attributes are all present in the data file.
+	 */
+	private List<String[]> declaredGroups(String relName, String[] attNames) {
+		List<String[]> res = new ArrayList<>();
+		NamedRelation reln;
+		try {
+			reln = catalogue.getRelation(relName);
+		} catch (DatabaseException e) {
+			return res;
+		}
+		for (AttributeGroup group : reln.getAttributeGroups()) {
+			String[] names = new String[group.getAttributes().size()];
+			for (int k = 0; k < names.length; k++) {
+				names[k] = group.getAttributes().get(k).getName();
+			}
+			if (Arrays.asList(attNames).containsAll(Arrays.asList(names))) {
+				res.add(names);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Return the names of the indexed attributes of the relation that are
+	 * present in the data file.
+	 */
+	private List<String> declaredIndexes(String relName, String[] attNames) {
+		List<String> res = new ArrayList<>();
+		try {
+			for (Attribute attr : catalogue.getRelation(relName).getIndexes()) {
+				if (Arrays.asList(attNames).contains(attr.getName())) {
+					res.add(attr.getName());
+				}
+			}
+		} catch (DatabaseException e) {
+			// a new relation has no indexes
+		}
+		return res;
+	}
+
+	private File dataFile(String relName) {
+		return new File(dataDir, relName + ".csv");
+	}
+
+	/**
+	 * Counts distinct values exactly while there are few of them, and
+	 * switches to a HyperLogLog sketch once there are too many to keep.
+	 */
+	private static class DistinctCounter {
+		private HashSet<String> values = new HashSet<String>();
+		private HyperLogLog sketch;
+
+		private void add(String value) {
+			if (sketch != null) {
+				sketch.add(value);
+				return;
+			}
+			values.add(value);
+			if (values.size() > EXACT_LIMIT) {
+				sketch = new HyperLogLog();
+				for (String seen : values) {
+					sketch.add(seen);
+				}
+				values = null;
+			}
+		}
+
+		private long count() {
+			if (sketch != null) {
+				return sketch.estimate();
+			}
+			return values.size();
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		String catFile = args[0];
+		Catalogue cat = new Catalogue();
+		if (new File(catFile).exists()) {
+			CatalogueParser catParser = new CatalogueParser(catFile, cat);
+			catParser.parse();
+		}
+
+		Analyzer analyzer = new Analyzer(cat, args[1]);
+		if (args.length > 2) {
+			for (int i = 2; i < args.length; i++) {
+				analyzer.analyze(args[i]);
+			}
+		} else {
+			analyzer.analyze();
+		}
+
+		CatalogueWriter catWriter = new CatalogueWriter(catFile, cat);
+		catWriter.write();
+	}
+}
@@ -0,0 +1,97 @@
+package sjdb;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Test driver for ANALYZE: checks the tuple and distinct-value counts
+ * computed from a data file, both exact and estimated by HyperLogLog; that
+ * the histograms and most-common-values lists already declared for a
+ * relation are recomputed from the data, as are the combined value counts
+ * of its groups of correlated attributes; and that the catalogue written
+ * back reads in as the same statistics, even when its values contain the
+ * separators of the catalogue file.
+ */
+public class AnalyzerTest {
+	private static final int TUPLES = 50000;
+
+	public static void main(String[] args) throws Exception {
+		File dir = File.createTempFile("sjdb", "");
+		dir.delete();
+		dir.mkdir();
+		File data = new File(dir, "R.csv");
+		File catFile = new File(dir, "cat.txt");
+		try {
+			// ra is unique, rb is 0 in 70% of tuples and 1 to 9 in the rest,
+			// and rc is determined by rb
+			PrintWriter write = new PrintWriter(data);
+			write.println("ra,rb,rc");
+			for (int i = 0; i < TUPLES; i++) {
+				int rb = i % 10 < 7 ? 0 : i % 9 + 1;
+				write.println(i + "," + rb + "," + rb * 2);
+			}
+			write.close();
+
+			Catalogue catalogue = new Catalogue();
+			catalogue.createRelation("R", 1);
+			catalogue.createAttribute("R", "ra", 1);
+			String[] bounds = { "0", "0", "0", "0", "0", "0", "0", "0", "0", "9" };
+			int[] distinct = { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 };
+			catalogue.createAttribute("R", "rb", 1, new Histogram("0", bounds, distinct),
+					new MostCommonValues(new String[] { "5" }, new double[] { 1 }));
+			catalogue.createAttribute("R", "rc", 1);
+			catalogue.createAttributeGroup("R", new String[] { "rb", "rc" }, 1);
+			new Analyzer(catalogue, dir.getPath()).analyze();
+
+			NamedRelation reln = catalogue.getRelation("R");
+			Attribute ra = catalogue.getAttribute("ra");
+			Attribute rb = catalogue.getAttribute("rb");
+			TestData.check("tuple count " + reln.getTupleCount(), reln.getTupleCount() == TUPLES);
+			TestData.check("estimated value count " + ra.getValueCount() + " is within 5% of " + TUPLES,
+					Math.abs(ra.getValueCount() - TUPLES) <= TUPLES / 20);
+			TestData.check("exact value count " + rb.getValueCount(), rb.getValueCount() == 10);
+			TestData.check("histogram keeps its bucket count",
+					rb.getHistogram() != null && rb.getHistogram().getBucketCount() == 10);
+			TestData.check("histogram is recomputed from the data, got " + rb.getHistogram(),
+					Math.abs(rb.getHistogram().getSelectivity("0") - 0.7) < 0.01);
+			MostCommonValues mcv = rb.getMostCommonValues();
+			TestData.check("common values are recomputed from the data, got " + mcv,
+					mcv != null && mcv.size() == 1 && mcv.getValue(0).equals("0")
+							&& Math.abs(mcv.getFrequency(0) - 0.7) < 0.01);
+
+			List<AttributeGroup> groups = reln.getAttributeGroups();
+			TestData.check("group of correlated attributes is recounted",
+					groups.size() == 1 && groups.get(0).getValueCount() == 10);
+
+			new CatalogueWriter(catFile.getPath(), catalogue).write();
+			Catalogue read = new Catalogue();
+			new CatalogueParser(catFile.getPath(), read).parse();
+			TestData.check("written catalogue reads back the same",
+					read.getRelation("R").render().equals(reln.render()));
+
+			// values holding the separators of the catalogue file
+			String[] values = { "a:b", "c,d", "e|f", "g/h", "i\\j" };
+			catalogue.createRelation("V", 5);
+			catalogue.createAttribute("V", "va", 5,
+					new Histogram(values[0], new String[] { values[2], values[4] }, new int[] { 2, 2 }),
+					new MostCommonValues(values, new double[] { 0.2, 0.2, 0.2, 0.2, 0.2 }));
+			new CatalogueWriter(catFile.getPath(), catalogue).write();
+			read = new Catalogue();
+			new CatalogueParser(catFile.getPath(), read).parse();
+			Attribute va = read.getAttribute("va");
+			boolean same = va.getMostCommonValues() != null && va.getMostCommonValues().size() == values.length;
+			for (int i = 0; same && i < values.length; i++) {
+				same = va.getMostCommonValues().getValue(i).equals(values[i]);
+			}
+			TestData.check("values with separators read back the same",
+					same && read.getRelation("V").render().equals(catalogue.getRelation("V").render())
+							&& read.getRelation("R").render().equals(reln.render()));
+		} finally {
+			data.delete();
+			catFile.delete();
+			dir.delete();
+		}
+		TestData.finish();
+	}
+}
@@ -10,7 +10,9 @@ package sjdb;
 public class Attribute {
 
 	private String name;
-	private int values;
+	private long values;
+	private Histogram histogram;
+	private MostCommonValues mostCommonValues;
 
 	public Attribute(String name) {
 		this.name = name;
@@ -20,14 +22,40 @@ public class Attribute {
 	 * @param name
 	 * @param values
 	 */
-	public Attribute(String name, int values) {
+	public Attribute(String name, long values) {
 		this.name = name;
 		this.values = values;
 	}
+
+	/**
+	 * @param name
+	 * @param values
+	 * @param histogram
+	 */
+	public Attribute(String name, long values, Histogram histogram) {
+		this.name = name;
+		this.values = values;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * @param name
+	 * @param values
+	 * @param histogram
+	 * @param mostCommonValues
+	 */
+	public Attribute(String name, long values, Histogram histogram, MostCommonValues mostCommonValues) {
+		this.name = name;
+		this.values = values;
+		this.histogram = histogram;
+		this.mostCommonValues = mostCommonValues;
+	}
 	
 	public Attribute(Attribute attr) {
 		this.name = attr.name;
 		this.values = attr.values;
+		this.histogram = attr.histogram;
+		this.mostCommonValues = attr.mostCommonValues;
 	}
 	
 	/**
@@ -40,9 +68,25 @@ public class Attribute {
 	/**
 	 * @return the number of distinct values taken by this attribute
 	 */
-	public int getValueCount() {
+	public long getValueCount() {
 		return values;
 	}
+
+	/**
+	 * @return the histogram of the values taken by this attribute, or null
+	 * if there is none
+	 */
+	public Histogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * @return the most common values taken by this attribute, or null if
+	 * there are none
+	 */
+	public MostCommonValues getMostCommonValues() {
+		return mostCommonValues;
+	}
 	
 	
 	@Override
@@ -68,7 +112,14 @@ public class Attribute {
 	}
 	
 	public String render() {
-		return name + "," + values;
+		String ret = name + "," + values;
+		if (histogram != null) {
+			ret += ",h=" + histogram.render();
+		}
+		if (mostCommonValues != null) {
+			ret += ",mcv=" + mostCommonValues.render();
+		}
+		return ret;
 	}
 	
 	
@@ -0,0 +1,63 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class represents a group of attributes of a named relation whose
+ * values are correlated, together with the number of distinct combinations
+ * of values that the group takes.
+ *
+ * The estimator normally treats each attr=value predicate on a relation as
+ * independent of the others; when the attributes they select on form a
+ * group, it uses the group's combined value count instead.
+ */
+public class AttributeGroup {
+	private List<Attribute> attributes;
+	private long values;
+
+	/**
+	 * Create a new attribute group
+	 * @param attributes Attributes in the group, with their own value counts
+	 * @param values Number of distinct combinations of values
+	 */
+	public AttributeGroup(List<Attribute> attributes, long values) {
+		this.attributes = attributes;
+		this.values = values;
+	}
+
+	/**
+	 * Return the attributes in the group
+	 * @return List of attributes
+	 */
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Return the number of distinct combinations of values of the attributes
+	 * @return Combined value count
+	 */
+	public long getValueCount() {
+		return values;
+	}
+
+	/**
+	 * Render the group in the form used by the serialised catalogue:
+	 * <attr name>+<attr name>,<value count>
+	 * @return Serialised group
+	 */
+	public String render() {
+		String ret = "";
+		for (int i = 0; i < attributes.size(); i++) {
+			if (i > 0) {
+				ret += "+";
+			}
+			ret += attributes.get(i).getName();
+		}
+		return ret + "," + values;
+	}
+
+	public String toString() {
+		return render();
+	}
+}
@@ -0,0 +1,285 @@
+package sjdb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class is a B+tree index held in a file, which maps the value codes
+ * of one attribute of a relation to the numbers of the rows of its column
+ * file that hold them (see IndexWriter). The file is mapped into memory when
+ * the index is opened, so a lookup reads one page for each level of the tree
+ * straight from the page cache.
+ *
+ * The file is a sequence of little-endian pages of PAGE_SIZE bytes. The
+ * first page holds the header:
+ *
+ * <magic> <version> <row count> <root page> <height>
+ *
+ * with the row count, which is also the number of entries, as a long and
+ * the rest as ints. Each leaf
+ * page holds its type, its entry count and the number of the next leaf,
+ * followed by up to LEAF_ENTRIES entries (key, row) sorted by key and then
+ * by row; the leaves are chained in key order, and the last has no next
+ * leaf (page 0). Each inner page holds its type and its child count,
+ * followed by up to INNER_ENTRIES entries (key, child), where the key is
+ * the first key in the child's subtree.
+ *
+ * The tree is built bottom-up from the sorted entries, with every page but
+ * the last on each level full, so it is never updated; it is rebuilt when
+ * its relation changes.
+ */
+public class BTreeIndex {
+	/**
+	 * Magic number at the start of an index file
+	 */
+	static final int MAGIC = 0x534A4249;
+
+	/**
+	 * Version of the index file format
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Size of each page of the file, in bytes
+	 */
+	static final int PAGE_SIZE = 4096;
+
+	/**
+	 * Largest number of entries in a leaf page
+	 */
+	static final int LEAF_ENTRIES = (PAGE_SIZE - 12) / 8;
+
+	/**
+	 * Largest number of children of an inner page
+	 */
+	static final int INNER_ENTRIES = (PAGE_SIZE - 8) / 8;
+
+	private static final int LEAF = 1;
+	private static final int INNER = 2;
+
+	private File file;
+	private MappedByteBuffer pages;
+	private long rowCount;
+	private int root;
+	private int height;
+
+	/**
+	 * Create an index over the given file, which must be opened before use
+	 * @param file Index file
+	 */
+	public BTreeIndex(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Map the index file and read its header
+	 * @throws IOException
+	 */
+	public void open() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() > Integer.MAX_VALUE) {
+				throw new IOException("Index file too large to map: " + file);
+			}
+			pages = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			pages.order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			// the mapping stays valid once the file is closed
+			raf.close();
+		}
+		if (pages.getInt(0) != MAGIC || pages.getInt(4) != VERSION) {
+			throw new IOException("Not an index file: " + file);
+		}
+		rowCount = pages.getLong(8);
+		root = pages.getInt(16);
+		height = pages.getInt(20);
+	}
+
+	/**
+	 * Release the mapping of the file
+	 */
+	public void close() {
+		pages = null;
+	}
+
+	/**
+	 * Return the number of rows the relation had when the index was built
+	 * @return Row count
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Return the number of levels in the tree
+	 * @return Height, at least one
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Return the numbers of the rows with the given key, in increasing order
+	 * @param key Value code
+	 * @return Row numbers
+	 */
+	public int[] lookup(int key) {
+		int page = root;
+		for (int level = height; level > 1; level--) {
+			page = child(page, key);
+		}
+
+		int[] res = new int[8];
+		int n = 0;
+		int i = firstEntry(page, key);
+		while (page != 0) {
+			int base = page * PAGE_SIZE;
+			int count = pages.getInt(base + 4);
+			for (; i < count; i++) {
+				int offset = base + 12 + i * 8;
+				if (pages.getInt(offset) != key) {
+					return Arrays.copyOf(res, n);
+				}
+				if (n == res.length) {
+					res = Arrays.copyOf(res, n * 2);
+				}
+				res[n++] = pages.getInt(offset + 4);
+			}
+			// the run of the key may carry on into the next leaf
+			page = pages.getInt(base + 8);
+			i = 0;
+		}
+		return Arrays.copyOf(res, n);
+	}
+
+	/**
+	 * Return the child of an inner page whose subtree holds the first entry
+	 * with the key, if there is one: the last child whose first key is less
+	 * than the key, or the first child
+	 */
+	private int child(int page, int key) {
+		int base = page * PAGE_SIZE;
+		int lo = 0;
+		int hi = pages.getInt(base + 4) - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (pages.getInt(base + 8 + mid * 8) < key) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return pages.getInt(base + 8 + lo * 8 + 4);
+	}
+
+	/**
+	 * Return the position of the first entry of a leaf with a key no less
+	 * than the given key
+	 */
+	private int firstEntry(int page, int key) {
+		int base = page * PAGE_SIZE;
+		int lo = 0;
+		int hi = pages.getInt(base + 4);
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (pages.getInt(base + 12 + mid * 8) < key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Write an index file for the given keys, where the key of row i of the
+	 * relation is keys[i]; the file replaces any old one once it is complete
+	 * @param file Index file
+	 * @param keys Value code of each row
+	 * @param rows Number of rows
+	 * @throws IOException
+	 */
+	public static void write(File file, int[] keys, int rows) throws IOException {
+		// sort the entries by key and then by row, packed into longs; codes are never negative
+		long[] entries = new long[rows];
+		for (int row = 0; row < rows; row++) {
+			entries[row] = (long) keys[row] << 32 | row;
+		}
+		Arrays.sort(entries);
+
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			FileChannel channel = out.getChannel();
+			ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			// the header is written last, once the root is known
+			channel.position(PAGE_SIZE);
+			int next = 1;
+
+			// the leaves, each followed by the next
+			int leafCount = Math.max((rows + LEAF_ENTRIES - 1) / LEAF_ENTRIES, 1);
+			int[] levelKeys = new int[leafCount];
+			int[] levelPages = new int[leafCount];
+			for (int leaf = 0; leaf < leafCount; leaf++) {
+				int start = leaf * LEAF_ENTRIES;
+				int count = Math.min(LEAF_ENTRIES, rows - start);
+				page.clear();
+				page.putInt(LEAF).putInt(count).putInt(leaf + 1 < leafCount ? next + 1 : 0);
+				for (int i = start; i < start + count; i++) {
+					page.putInt((int) (entries[i] >>> 32)).putInt((int) entries[i]);
+				}
+				levelKeys[leaf] = count > 0 ? (int) (entries[start] >>> 32) : 0;
+				levelPages[leaf] = next++;
+				writePage(channel, page);
+			}
+
+			// the inner levels, until one page is left
+			int height = 1;
+			int size = leafCount;
+			while (size > 1) {
+				int parents = (size + INNER_ENTRIES - 1) / INNER_ENTRIES;
+				for (int parent = 0; parent < parents; parent++) {
+					int start = parent * INNER_ENTRIES;
+					int count = Math.min(INNER_ENTRIES, size - start);
+					page.clear();
+					page.putInt(INNER).putInt(count);
+					for (int i = start; i < start + count; i++) {
+						page.putInt(levelKeys[i]).putInt(levelPages[i]);
+					}
+					levelKeys[parent] = levelKeys[start];
+					levelPages[parent] = next++;
+					writePage(channel, page);
+				}
+				size = parents;
+				height++;
+			}
+
+			page.clear();
+			page.putInt(MAGIC).putInt(VERSION).putLong(rows).putInt(levelPages[0]).putInt(height);
+			channel.position(0);
+			writePage(channel, page);
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+			throw new IOException("Failed to replace " + file);
+		}
+	}
+
+	private static void writePage(FileChannel channel, ByteBuffer page) throws IOException {
+		// pad the page to its full size
+		page.position(PAGE_SIZE);
+		page.flip();
+		while (page.hasRemaining()) {
+			channel.write(page);
+		}
+		Arrays.fill(page.array(), (byte) 0);
+	}
+}
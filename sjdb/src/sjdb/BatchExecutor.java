@@ -0,0 +1,223 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * This class executes query plans in vectorised mode against the data files
+ * in a directory (see DataDirectory): the operators exchange batches of
+ * columns (see ColumnBatch) rather than single tuples, so the cost of each
+ * call between operators is spread over many rows, and each operator works
+ * through its columns in tight loops.
+ *
+ * Like Executor, it visits a plan depth-first and keeps the iterators built
+ * for the inputs of each operator on a stack.
+ *
+ * Joins are run by the method chosen for them (see JoinMethod). Hash joins
+ * build their hash table on the input that the Estimator expects to be
+ * smaller, and a hash join whose build input exceeds the memory budget
+ * spills both inputs to temporary files, as do sorts that exceed it. Each
+ * hash join passes a filter of its build keys to the scan on its probe side
+ * that reads the probe key (see JoinFilter). If asked to, the executor
+ * first reduces the inputs of acyclic blocks of joins by semi-joins.
+ */
+public class BatchExecutor implements PlanVisitor {
+	private DataDirectory data;
+	private Stack<BatchIterator> iterators;
+	private long memoryBudget;
+	private List<JoinFilter> filters;
+	private boolean semiJoinReduction;
+	private List<SemiJoinReduction> reductions;
+
+	/**
+	 * Create a new batch executor
+	 * @param dataDir Directory holding the data files
+	 */
+	public BatchExecutor(String dataDir) {
+		this(new DataDirectory(dataDir));
+	}
+
+	/**
+	 * Create a new batch executor
+	 * @param data Directory holding the data files
+	 */
+	public BatchExecutor(DataDirectory data) {
+		this.data = data;
+		this.iterators = new Stack<BatchIterator>();
+		this.memoryBudget = BatchHashJoin.DEFAULT_MEMORY_BUDGET;
+	}
+
+	/**
+	 * Set the number of bytes the build input of each join may take up in
+	 * memory before the join spills to disk
+	 * @param memoryBudget Memory budget in bytes
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Set whether the inputs of acyclic blocks of joins are reduced by
+	 * semi-joins before they are joined (see SemiJoinReduction); they are
+	 * not by default. A block is only reduced if its inputs are expected to
+	 * fit in the memory budget together, since they are all held in memory.
+	 * @param semiJoinReduction True to reduce the inputs of joins
+	 */
+	public void setSemiJoinReduction(boolean semiJoinReduction) {
+		this.semiJoinReduction = semiJoinReduction;
+	}
+
+	/**
+	 * Return the dictionary used to encode the values in the batches
+	 * @return Value dictionary
+	 */
+	public ValueDictionary getDictionary() {
+		return data.getDictionary();
+	}
+
+	/**
+	 * Return an iterator over the result of a plan; it must be opened
+	 * before use, and closed afterwards.
+	 * @param plan Root of the plan
+	 * @return Iterator for the root of the plan
+	 */
+	public BatchIterator build(Operator plan) {
+		iterators.clear();
+		// the estimates are used to choose the build side of hash joins
+		Estimator est = new Estimator();
+		est.estimate(plan);
+		filters = JoinFilter.forPlan(plan);
+		if (semiJoinReduction) {
+			reductions = SemiJoinReduction.forPlan(plan, memoryBudget);
+		} else {
+			reductions = new ArrayList<SemiJoinReduction>();
+		}
+		plan.accept(this);
+		return iterators.pop();
+	}
+
+	/**
+	 * Run a plan and return its result, with the values decoded
+	 * @param plan Root of the plan
+	 * @return List of tuples
+	 */
+	public List<String[]> execute(Operator plan) {
+		List<String[]> res = new ArrayList<String[]>();
+		ValueDictionary dictionary = data.getDictionary();
+		BatchIterator iter = build(plan);
+		iter.open();
+		try {
+			ColumnBatch batch;
+			while ((batch = iter.next()) != null) {
+				for (int k = 0; k < batch.getLiveCount(); k++) {
+					int row = batch.getRow(k);
+					String[] tuple = new String[batch.getColumnCount()];
+					for (int c = 0; c < tuple.length; c++) {
+						tuple[c] = dictionary.decode(batch.getColumn(c)[row]);
+					}
+					res.add(tuple);
+				}
+			}
+		} finally {
+			iter.close();
+		}
+		return res;
+	}
+
+	/**
+	 * Run a plan and return the number of tuples in its result, without
+	 * decoding them
+	 * @param plan Root of the plan
+	 * @return Tuple count
+	 */
+	public long count(Operator plan) {
+		long res = 0;
+		BatchIterator iter = build(plan);
+		iter.open();
+		try {
+			ColumnBatch batch;
+			while ((batch = iter.next()) != null) {
+				res += batch.getLiveCount();
+			}
+		} finally {
+			iter.close();
+		}
+		return res;
+	}
+
+	public void visit(Scan op) {
+		BatchIterator iter = new BatchScan(data.getSource((NamedRelation) op.getRelation(), op.getAttributes()));
+		for (JoinFilter filter : filters) {
+			if (filter.getScan() == op) {
+				iter = new BatchJoinFilter(iter, filter);
+			}
+		}
+		push(op, iter);
+	}
+
+	public void visit(IndexScan op) {
+		BatchIterator iter = new BatchScan(data.getIndexSource((NamedRelation) op.getRelation(), op.getAttributes(), op.getPredicate()));
+		for (JoinFilter filter : filters) {
+			if (filter.getScan() == op) {
+				iter = new BatchJoinFilter(iter, filter);
+			}
+		}
+		push(op, iter);
+	}
+
+	public void visit(Project op) {
+		push(op, new BatchProject(iterators.pop(), op.getAttributes()));
+	}
+
+	public void visit(Select op) {
+		push(op, new BatchSelect(iterators.pop(), op.getPredicate(), data.getDictionary()));
+	}
+
+	public void visit(Product op) {
+		BatchIterator right = iterators.pop();
+		BatchIterator left = iterators.pop();
+		push(op, new BatchProduct(left, right));
+	}
+
+	public void visit(Join op) {
+		BatchIterator right = iterators.pop();
+		BatchIterator left = iterators.pop();
+		Predicate predicate = op.getPredicate();
+		if (op.getMethod() == JoinMethod.SORT_MERGE) {
+			// sort the inputs that are not already sorted on the join attributes
+			int[] columns = JoinIterator.joinColumns(left.getAttributes(), right.getAttributes(), predicate);
+			if (!PhysicalPlanner.isSortedOn(op.getLeft(), left.getAttributes().get(columns[0]))) {
+				left = new BatchSort(left, columns[0], memoryBudget);
+			}
+			if (!PhysicalPlanner.isSortedOn(op.getRight(), right.getAttributes().get(columns[1]))) {
+				right = new BatchSort(right, columns[1], memoryBudget);
+			}
+			iterators.push(new BatchMergeJoin(left, right, predicate));
+		} else if (op.getMethod() == JoinMethod.NESTED_LOOP) {
+			iterators.push(new BatchJoin(left, right, predicate));
+		} else {
+			boolean buildLeft = PhysicalPlanner.buildsLeft(op);
+			BatchHashJoin join = new BatchHashJoin(left, right, predicate, buildLeft, memoryBudget);
+			for (JoinFilter filter : filters) {
+				if (filter.getJoin() == op) {
+					join.setFilter(filter);
+				}
+			}
+			iterators.push(join);
+		}
+	}
+
+	/**
+	 * Push the iterator for an operator, reading it through its reduction if
+	 * it is a leaf of a block of joins that is reduced
+	 */
+	private void push(Operator op, BatchIterator iter) {
+		for (SemiJoinReduction reduction : reductions) {
+			if (reduction.getLeaves().contains(op)) {
+				iter = reduction.reduce(op, iter);
+			}
+		}
+		iterators.push(iter);
+	}
+}
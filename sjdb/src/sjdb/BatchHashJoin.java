@@ -0,0 +1,422 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements the Join operator for the vectorised executor as a
+ * hash join: the live rows of the build input are copied into columns and
+ * indexed by their join attribute in an IntHashTable when the iterator is
+ * opened, and the batches of the other (probe) input are then streamed
+ * past the table.
+ *
+ * Either input may be the build input, but the batches produced always
+ * have the columns of the left input followed by those of the right input.
+ *
+ * If the build input turns out not to fit in the memory budget, the join
+ * falls back to a Grace hash join: both inputs are split by a hash of their
+ * join attribute into FANOUT partitions in temporary files (see SpillFile),
+ * and each pair of partitions is then joined by a nested hash join over the
+ * files. A partition that is still too large is split again with a
+ * different hash function, up to MAX_LEVEL times; after that (or once
+ * splitting stops helping, as when most rows share one key) its build rows
+ * are cut into chunks that fit, and each chunk is joined with the whole of
+ * the probe partition.
+ *
+ * A join given a JoinFilter publishes a Bloom filter of its build keys once
+ * the build input has been read into memory, so that a scan on the probe
+ * side can drop rows that cannot match. A join that spills publishes none.
+ */
+public class BatchHashJoin implements BatchIterator {
+	/**
+	 * Default memory budget for the build input, in bytes
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+	/**
+	 * Number of partitions each input is split into when the build input
+	 * does not fit in memory
+	 */
+	static final int FANOUT = 16;
+
+	/**
+	 * Number of times the partitions may be split again before they are
+	 * joined in chunks
+	 */
+	static final int MAX_LEVEL = 4;
+
+	private Predicate predicate;
+	private long memoryBudget;
+	private int level;
+
+	private BatchIterator build;
+	private BatchIterator probe;
+	private boolean buildLeft;
+	private int buildKey;
+	private int probeKey;
+	private List<Attribute> attributes;
+	private JoinFilter filter;
+
+	private ColumnStore buildRows;
+	private IntHashTable table;
+	private ColumnBatch probeBatch;
+	private int probePos;
+	private int probeRow;
+	private int match;
+	private boolean done;
+	private ColumnBatch out;
+
+	private List<SpillFile> buildParts;
+	private List<SpillFile> probeParts;
+	private long buildRowCount;
+	private int part;
+	private BatchHashJoin partJoin;
+
+	/**
+	 * Create a new batch hash join
+	 * @param left Left input iterator
+	 * @param right Right input iterator
+	 * @param predicate Join predicate, of the form attr=attr
+	 * @param buildLeft True to build the hash table on the left input, false
+	 * to build it on the right input
+	 */
+	public BatchHashJoin(BatchIterator left, BatchIterator right, Predicate predicate, boolean buildLeft) {
+		this(left, right, predicate, buildLeft, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Create a new batch hash join
+	 * @param left Left input iterator
+	 * @param right Right input iterator
+	 * @param predicate Join predicate, of the form attr=attr
+	 * @param buildLeft True to build the hash table on the left input, false
+	 * to build it on the right input
+	 * @param memoryBudget Number of bytes the build input may take up in
+	 * memory before both inputs are spilled to disk
+	 */
+	public BatchHashJoin(BatchIterator left, BatchIterator right, Predicate predicate, boolean buildLeft, long memoryBudget) {
+		this(left, right, predicate, buildLeft, memoryBudget, 0);
+	}
+
+	private BatchHashJoin(BatchIterator left, BatchIterator right, Predicate predicate, boolean buildLeft, long memoryBudget, int level) {
+		this.predicate = predicate;
+		this.memoryBudget = memoryBudget;
+		this.level = level;
+		int[] columns = JoinIterator.joinColumns(left.getAttributes(), right.getAttributes(), predicate);
+		this.buildLeft = buildLeft;
+		this.build = buildLeft ? left : right;
+		this.probe = buildLeft ? right : left;
+		this.buildKey = buildLeft ? columns[0] : columns[1];
+		this.probeKey = buildLeft ? columns[1] : columns[0];
+		this.attributes = new ArrayList<Attribute>(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+
+	/**
+	 * Set the join filter to which a Bloom filter of the build keys is
+	 * published
+	 * @param filter Join filter
+	 */
+	public void setFilter(JoinFilter filter) {
+		this.filter = filter;
+	}
+
+	@Override
+	public void open() {
+		out = new ColumnBatch(attributes.size(), ColumnBatch.DEFAULT_CAPACITY);
+		buildRows = new ColumnStore(build.getAttributes().size());
+		long rowBytes = rowBytes(buildRows.getColumnCount());
+		boolean fits = true;
+		build.open();
+		try {
+			ColumnBatch batch;
+			while (fits && (batch = build.next()) != null) {
+				buildRows.append(batch);
+				fits = buildRows.size() * rowBytes <= memoryBudget;
+			}
+			if (!fits) {
+				partitionBuild();
+			}
+		} finally {
+			build.close();
+		}
+
+		if (!fits) {
+			partitionProbe();
+			part = -1;
+			partJoin = null;
+			return;
+		}
+
+		table = new IntHashTable(buildRows.size());
+		int[] keys = buildRows.getColumn(buildKey);
+		for (int row = 0; row < buildRows.size(); row++) {
+			table.insert(keys[row]);
+		}
+		if (filter != null) {
+			BloomFilter bloom = new BloomFilter(buildRows.size());
+			for (int row = 0; row < buildRows.size(); row++) {
+				bloom.add(keys[row]);
+			}
+			filter.publish(bloom);
+		}
+
+		probe.open();
+		probeBatch = null;
+		match = -1;
+		done = false;
+	}
+
+	@Override
+	public ColumnBatch next() {
+		if (buildParts != null) {
+			return nextPartition();
+		}
+		int capacity = out.getCapacity();
+		int buildWidth = buildRows.getColumnCount();
+		int probeWidth = probe.getAttributes().size();
+		int buildOffset = buildLeft ? 0 : probeWidth;
+		int probeOffset = buildLeft ? buildWidth : 0;
+		int n = 0;
+
+		while (n < capacity && !done) {
+			if (match < 0) {
+				// find the next probe row with a match
+				if (probeBatch == null || probePos == probeBatch.getLiveCount()) {
+					probeBatch = probe.next();
+					probePos = 0;
+					if (probeBatch == null) {
+						done = true;
+						break;
+					}
+				}
+				probeRow = probeBatch.getRow(probePos++);
+				match = table.first(probeBatch.getColumn(probeKey)[probeRow]);
+				continue;
+			}
+			for (int c = 0; c < probeWidth; c++) {
+				out.getColumn(probeOffset + c)[n] = probeBatch.getColumn(c)[probeRow];
+			}
+			for (int c = 0; c < buildWidth; c++) {
+				out.getColumn(buildOffset + c)[n] = buildRows.getColumn(c)[match];
+			}
+			match = table.next(match);
+			n++;
+		}
+
+		if (n == 0) {
+			return null;
+		}
+		out.setSize(n);
+		return out;
+	}
+
+	@Override
+	public void close() {
+		if (buildParts != null) {
+			if (partJoin != null) {
+				partJoin.close();
+				partJoin = null;
+			}
+			deleteAll(buildParts);
+			deleteAll(probeParts);
+			buildParts = null;
+			probeParts = null;
+			out = null;
+			return;
+		}
+		probe.close();
+		buildRows = null;
+		table = null;
+		probeBatch = null;
+		out = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Return the next batch of the join of the spilled partitions, moving
+	 * on to the next pair of partitions when one is exhausted
+	 */
+	private ColumnBatch nextPartition() {
+		while (true) {
+			if (partJoin != null) {
+				ColumnBatch batch = partJoin.next();
+				if (batch != null) {
+					return batch;
+				}
+				partJoin.close();
+				partJoin = null;
+			}
+			if (part >= 0 && part < buildParts.size()) {
+				buildParts.get(part).delete();
+				if (level < MAX_LEVEL) {
+					probeParts.get(part).delete();
+				}
+			}
+			if (part + 1 >= buildParts.size()) {
+				part = buildParts.size();
+				return null;
+			}
+			part++;
+			if (buildParts.get(part).size() > 0 && probeParts.get(part).size() > 0) {
+				partJoin = partitionJoin(part);
+				partJoin.open();
+			}
+		}
+	}
+
+	/**
+	 * Return a join of the given pair of partitions, which reads them from
+	 * their files
+	 */
+	private BatchHashJoin partitionJoin(int i) {
+		SpillFile buildPart = buildParts.get(i);
+		BatchIterator buildInput = buildPart.reader();
+		BatchIterator probeInput = probeParts.get(i).reader();
+		int partLevel = level + 1;
+		long partBudget = memoryBudget;
+		if (level >= MAX_LEVEL) {
+			// the partition is a chunk, which fits by construction
+			partBudget = Long.MAX_VALUE;
+		} else if (buildPart.size() == buildRowCount) {
+			// splitting did not help, so go straight to chunks
+			partLevel = MAX_LEVEL;
+		}
+		if (buildLeft) {
+			return new BatchHashJoin(buildInput, probeInput, predicate, true, partBudget, partLevel);
+		}
+		return new BatchHashJoin(probeInput, buildInput, predicate, false, partBudget, partLevel);
+	}
+
+	/**
+	 * Write the build rows read so far, and the rest of the build input, to
+	 * partition files; below MAX_LEVEL the rows are partitioned by the hash of
+	 * their key, and beyond it they are cut into chunks that fit in memory
+	 */
+	private void partitionBuild() {
+		List<Attribute> buildAttributes = build.getAttributes();
+		long chunkRows = Math.max(memoryBudget / rowBytes(buildAttributes.size()), 1);
+		buildParts = new ArrayList<SpillFile>();
+		if (level < MAX_LEVEL) {
+			for (int i = 0; i < FANOUT; i++) {
+				buildParts.add(new SpillFile(buildAttributes));
+			}
+		} else {
+			buildParts.add(new SpillFile(buildAttributes));
+		}
+		buildRowCount = 0;
+
+		int[] keys = buildRows.getColumn(buildKey);
+		for (int row = 0; row < buildRows.size(); row++) {
+			buildTarget(keys[row], chunkRows).append(buildRows, row);
+		}
+		buildRows = null;
+
+		ColumnBatch batch;
+		while ((batch = build.next()) != null) {
+			keys = batch.getColumn(buildKey);
+			for (int k = 0; k < batch.getLiveCount(); k++) {
+				int row = batch.getRow(k);
+				buildTarget(keys[row], chunkRows).append(batch, row);
+			}
+		}
+		for (SpillFile file : buildParts) {
+			file.finish();
+		}
+	}
+
+	/**
+	 * Return the partition file for the next build row
+	 */
+	private SpillFile buildTarget(int key, long chunkRows) {
+		buildRowCount++;
+		if (level < MAX_LEVEL) {
+			return buildParts.get(partition(key, level));
+		}
+		SpillFile chunk = buildParts.get(buildParts.size() - 1);
+		if (chunk.size() == chunkRows) {
+			chunk.finish();
+			chunk = new SpillFile(build.getAttributes());
+			buildParts.add(chunk);
+		}
+		return chunk;
+	}
+
+	/**
+	 * Write the probe input to partition files matching those of the build
+	 * input, dropping partitions whose build side is empty
+	 */
+	private void partitionProbe() {
+		List<Attribute> probeAttributes = probe.getAttributes();
+		probeParts = new ArrayList<SpillFile>();
+		if (level < MAX_LEVEL) {
+			for (int i = 0; i < FANOUT; i++) {
+				probeParts.add(new SpillFile(probeAttributes));
+			}
+		} else {
+			// every chunk is joined with the whole of the probe input
+			SpillFile file = new SpillFile(probeAttributes);
+			for (int i = 0; i < buildParts.size(); i++) {
+				probeParts.add(file);
+			}
+		}
+
+		probe.open();
+		try {
+			ColumnBatch batch;
+			while ((batch = probe.next()) != null) {
+				int[] keys = batch.getColumn(probeKey);
+				for (int k = 0; k < batch.getLiveCount(); k++) {
+					int row = batch.getRow(k);
+					int i = level < MAX_LEVEL ? partition(keys[row], level) : 0;
+					if (buildParts.get(i).size() > 0) {
+						probeParts.get(i).append(batch, row);
+					}
+				}
+			}
+		} finally {
+			probe.close();
+		}
+		for (SpillFile file : probeParts) {
+			file.finish();
+		}
+	}
+
+	private static void deleteAll(List<SpillFile> files) {
+		if (files != null) {
+			for (SpillFile file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of the partition of a key at the given level of
+	 * partitioning; each level uses a different hash function, so that the
+	 * keys of one partition are spread over the partitions of the next
+	 * @param key Key of a row
+	 * @param level Level of partitioning, from zero
+	 * @return Partition number, less than FANOUT
+	 */
+	static int partition(int key, int level) {
+		int h = key ^ ((level + 1) * 0x9E3779B9);
+		h = (h ^ (h >>> 16)) * 0x85EBCA6B;
+		h = (h ^ (h >>> 13)) * 0xC2B2AE35;
+		h ^= h >>> 16;
+		return (h >>> 1) % FANOUT;
+	}
+
+	/**
+	 * Estimate the number of bytes taken up by a build row held in memory,
+	 * including its share of the hash table
+	 * @param columnCount Number of columns in the row
+	 * @return Byte count
+	 */
+	static long rowBytes(int columnCount) {
+		return 4L * columnCount + 16;
+	}
+}
@@ -0,0 +1,114 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements the probe side of a hash join for the
+ * ParallelExecutor. The build rows and their hash table are shared by all
+ * of the workers, and only read; each worker streams its own batches of the
+ * probe input past them, as BatchHashJoin does.
+ *
+ * The batches produced have the columns of the left input followed by those
+ * of the right input, whichever input the table was built on.
+ */
+public class BatchHashProbe implements BatchIterator {
+	private BatchIterator probe;
+	private ColumnStore buildRows;
+	private ConcurrentIntHashTable table;
+	private boolean buildLeft;
+	private int probeKey;
+	private List<Attribute> attributes;
+
+	private ColumnBatch probeBatch;
+	private int probePos;
+	private int probeRow;
+	private int match;
+	private boolean done;
+	private ColumnBatch out;
+
+	/**
+	 * Create a new batch hash probe
+	 * @param probe Probe input iterator
+	 * @param buildRows Rows of the build input
+	 * @param table Hash table over the join column of the build rows
+	 * @param buildAttributes Attributes of the build input
+	 * @param predicate Join predicate, of the form attr=attr
+	 * @param buildLeft True if the build input is the left input
+	 */
+	public BatchHashProbe(BatchIterator probe, ColumnStore buildRows, ConcurrentIntHashTable table,
+			List<Attribute> buildAttributes, Predicate predicate, boolean buildLeft) {
+		List<Attribute> left = buildLeft ? buildAttributes : probe.getAttributes();
+		List<Attribute> right = buildLeft ? probe.getAttributes() : buildAttributes;
+		int[] columns = JoinIterator.joinColumns(left, right, predicate);
+		this.probe = probe;
+		this.buildRows = buildRows;
+		this.table = table;
+		this.buildLeft = buildLeft;
+		this.probeKey = buildLeft ? columns[1] : columns[0];
+		this.attributes = new ArrayList<Attribute>(left);
+		this.attributes.addAll(right);
+	}
+
+	@Override
+	public void open() {
+		probe.open();
+		out = new ColumnBatch(attributes.size(), ColumnBatch.DEFAULT_CAPACITY);
+		probeBatch = null;
+		match = -1;
+		done = false;
+	}
+
+	@Override
+	public ColumnBatch next() {
+		int capacity = out.getCapacity();
+		int buildWidth = buildRows.getColumnCount();
+		int probeWidth = probe.getAttributes().size();
+		int buildOffset = buildLeft ? 0 : probeWidth;
+		int probeOffset = buildLeft ? buildWidth : 0;
+		int n = 0;
+
+		while (n < capacity && !done) {
+			if (match < 0) {
+				// find the next probe row with a match
+				if (probeBatch == null || probePos == probeBatch.getLiveCount()) {
+					probeBatch = probe.next();
+					probePos = 0;
+					if (probeBatch == null) {
+						done = true;
+						break;
+					}
+				}
+				probeRow = probeBatch.getRow(probePos++);
+				match = table.first(probeBatch.getColumn(probeKey)[probeRow]);
+				continue;
+			}
+			for (int c = 0; c < probeWidth; c++) {
+				out.getColumn(probeOffset + c)[n] = probeBatch.getColumn(c)[probeRow];
+			}
+			for (int c = 0; c < buildWidth; c++) {
+				out.getColumn(buildOffset + c)[n] = buildRows.getColumn(c)[match];
+			}
+			match = table.next(match);
+			n++;
+		}
+
+		if (n == 0) {
+			return null;
+		}
+		out.setSize(n);
+		return out;
+	}
+
+	@Override
+	public void close() {
+		probe.close();
+		probeBatch = null;
+		out = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+}
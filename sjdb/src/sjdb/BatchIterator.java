@@ -0,0 +1,33 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This is an interface for the iterators of the vectorised executor, which
+ * pull batches of tuples in columnar form (see ColumnBatch) from their
+ * inputs rather than single tuples.
+ *
+ * A batch returned by next() is only valid until the following call, as
+ * iterators reuse their batches.
+ */
+public interface BatchIterator {
+	/**
+	 * Prepare to produce batches; this opens the inputs of the iterator.
+	 */
+	public void open();
+	/**
+	 * Return the next batch with at least one live row, or null if there
+	 * are no more.
+	 * @return Next batch
+	 */
+	public ColumnBatch next();
+	/**
+	 * Release the resources held by the iterator and its inputs.
+	 */
+	public void close();
+	/**
+	 * Return the attributes of the tuples produced, in column order.
+	 * @return List of attributes
+	 */
+	public List<Attribute> getAttributes();
+}
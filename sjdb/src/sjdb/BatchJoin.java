@@ -0,0 +1,22 @@
+package sjdb;
+
+/**
+ * This class implements the Join operator for the vectorised executor as a
+ * nested-loop join over the right input held in memory, producing the pairs
+ * of rows with equal join attributes.
+ */
+public class BatchJoin extends BatchProduct {
+
+	/**
+	 * Create a new batch join
+	 * @param left Left input iterator
+	 * @param right Right input iterator
+	 * @param predicate Join predicate, of the form attr=attr
+	 */
+	public BatchJoin(BatchIterator left, BatchIterator right, Predicate predicate) {
+		super(left, right);
+		int[] columns = JoinIterator.joinColumns(left.getAttributes(), right.getAttributes(), predicate);
+		this.leftKey = columns[0];
+		this.rightKey = columns[1];
+	}
+}
@@ -0,0 +1,75 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class applies a JoinFilter to the batches of a scan for the
+ * vectorised executors, narrowing the selection vector of each batch to the
+ * rows whose key may be among the build keys of the join, in the same way
+ * as BatchSelect.
+ */
+public class BatchJoinFilter implements BatchIterator {
+	private BatchIterator input;
+	private JoinFilter filter;
+	private int column;
+
+	/**
+	 * Create a new batch join filter
+	 * @param input Input iterator
+	 * @param filter Join filter to be applied
+	 */
+	public BatchJoinFilter(BatchIterator input, JoinFilter filter) {
+		this.input = input;
+		this.filter = filter;
+		this.column = input.getAttributes().indexOf(filter.getAttribute());
+	}
+
+	@Override
+	public void open() {
+		input.open();
+	}
+
+	@Override
+	public ColumnBatch next() {
+		ColumnBatch batch;
+		while ((batch = input.next()) != null) {
+			BloomFilter bloom = filter.getFilter();
+			if (bloom == null) {
+				return batch;
+			}
+			int[] keys = batch.getColumn(column);
+			int[] out = batch.getSelectionBuffer();
+			int[] in = batch.getSelection();
+			int n = 0;
+			if (in == null) {
+				int size = batch.getSize();
+				for (int i = 0; i < size; i++) {
+					out[n] = i;
+					n += bloom.mightContain(keys[i]) ? 1 : 0;
+				}
+			} else {
+				int live = batch.getLiveCount();
+				for (int k = 0; k < live; k++) {
+					int i = in[k];
+					out[n] = i;
+					n += bloom.mightContain(keys[i]) ? 1 : 0;
+				}
+			}
+			batch.setSelection(out, n);
+			if (n > 0) {
+				return batch;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() {
+		input.close();
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return input.getAttributes();
+	}
+}
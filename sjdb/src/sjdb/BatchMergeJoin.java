@@ -0,0 +1,168 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements the Join operator for the vectorised executor as
+ * the merge phase of a sort-merge join: both inputs must be sorted on their
+ * join columns (see BatchSort), and are read in step a row at a time. The
+ * right rows that share a join value are copied into columns while the
+ * left rows with that value are paired with them.
+ *
+ * The batches produced have the columns of the left input followed by those
+ * of the right input, and are sorted on the join columns.
+ */
+public class BatchMergeJoin implements BatchIterator {
+	private BatchIterator left;
+	private BatchIterator right;
+	private int leftColumn;
+	private int rightColumn;
+	private List<Attribute> attributes;
+
+	private Cursor leftRows;
+	private Cursor rightRows;
+	private ColumnStore group;
+	private int groupKey;
+	private int groupPos;
+	private ColumnBatch out;
+
+	/**
+	 * Create a new batch merge join
+	 * @param left Left input iterator, sorted on its join column
+	 * @param right Right input iterator, sorted on its join column
+	 * @param predicate Join predicate, of the form attr=attr
+	 */
+	public BatchMergeJoin(BatchIterator left, BatchIterator right, Predicate predicate) {
+		int[] columns = JoinIterator.joinColumns(left.getAttributes(), right.getAttributes(), predicate);
+		this.left = left;
+		this.right = right;
+		this.leftColumn = columns[0];
+		this.rightColumn = columns[1];
+		this.attributes = new ArrayList<Attribute>(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+
+	@Override
+	public void open() {
+		left.open();
+		right.open();
+		leftRows = new Cursor(left, leftColumn);
+		rightRows = new Cursor(right, rightColumn);
+		leftRows.advance();
+		rightRows.advance();
+		group = new ColumnStore(right.getAttributes().size());
+		groupPos = 0;
+		out = new ColumnBatch(attributes.size(), ColumnBatch.DEFAULT_CAPACITY);
+	}
+
+	@Override
+	public ColumnBatch next() {
+		int capacity = out.getCapacity();
+		int leftWidth = left.getAttributes().size();
+		int rightWidth = group.getColumnCount();
+		int n = 0;
+
+		while (n < capacity) {
+			if (groupPos < group.size()) {
+				for (int c = 0; c < leftWidth; c++) {
+					out.getColumn(c)[n] = leftRows.batch.getColumn(c)[leftRows.row];
+				}
+				for (int c = 0; c < rightWidth; c++) {
+					out.getColumn(leftWidth + c)[n] = group.getColumn(c)[groupPos];
+				}
+				groupPos++;
+				n++;
+				continue;
+			}
+			if (group.size() > 0) {
+				// the current left row has been paired with the whole group
+				if (leftRows.advance() && leftRows.key == groupKey) {
+					groupPos = 0;
+					continue;
+				}
+				group.clear();
+				groupPos = 0;
+			}
+			if (!leftRows.valid || !rightRows.valid) {
+				break;
+			}
+			if (leftRows.key < rightRows.key) {
+				leftRows.advance();
+			} else if (leftRows.key > rightRows.key) {
+				rightRows.advance();
+			} else {
+				// gather the right rows with this join value
+				groupKey = rightRows.key;
+				while (rightRows.valid && rightRows.key == groupKey) {
+					group.append(rightRows.batch, rightRows.row);
+					rightRows.advance();
+				}
+				groupPos = 0;
+			}
+		}
+
+		if (n == 0) {
+			return null;
+		}
+		out.setSize(n);
+		return out;
+	}
+
+	@Override
+	public void close() {
+		left.close();
+		right.close();
+		leftRows = null;
+		rightRows = null;
+		group = null;
+		out = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * The current row of a sorted input, and the value of its join column
+	 */
+	private static class Cursor {
+		private BatchIterator input;
+		private int column;
+		private ColumnBatch batch;
+		private int pos;
+		private int row;
+		private int key;
+		private boolean valid;
+
+		private Cursor(BatchIterator input, int column) {
+			this.input = input;
+			this.column = column;
+			this.pos = -1;
+		}
+
+		/**
+		 * Move to the next row, returning false at the end of the input
+		 */
+		private boolean advance() {
+			if (batch == null && pos >= 0) {
+				// the input is exhausted
+				return false;
+			}
+			pos++;
+			if (batch == null || pos == batch.getLiveCount()) {
+				batch = input.next();
+				pos = 0;
+				if (batch == null) {
+					valid = false;
+					return false;
+				}
+			}
+			row = batch.getRow(pos);
+			key = batch.getColumn(column)[row];
+			valid = true;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements the Product operator for the vectorised executor as
+ * a nested loop: the live rows of the right input are copied into columns
+ * in memory when the iterator is opened, and each live row of the left
+ * input is then paired with every one of them.
+ *
+ * Subclasses may restrict the pairs produced by setting the key columns,
+ * in which case only the pairs with equal keys are produced.
+ */
+public class BatchProduct implements BatchIterator {
+	private BatchIterator left;
+	private BatchIterator right;
+	private List<Attribute> attributes;
+	/** Column of the left input compared with rightKey, or -1 for a product */
+	protected int leftKey = -1;
+	/** Column of the right input compared with leftKey */
+	protected int rightKey = -1;
+
+	private ColumnStore rightRows;
+	private ColumnBatch leftBatch;
+	private int leftPos;
+	private int rightPos;
+	private boolean done;
+	private ColumnBatch out;
+
+	/**
+	 * Create a new batch product
+	 * @param left Left input iterator
+	 * @param right Right input iterator
+	 */
+	public BatchProduct(BatchIterator left, BatchIterator right) {
+		this.left = left;
+		this.right = right;
+		this.attributes = new ArrayList<Attribute>(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+
+	@Override
+	public void open() {
+		rightRows = ColumnStore.readAll(right);
+		left.open();
+		out = new ColumnBatch(attributes.size(), ColumnBatch.DEFAULT_CAPACITY);
+		leftBatch = null;
+		done = false;
+	}
+
+	@Override
+	public ColumnBatch next() {
+		int capacity = out.getCapacity();
+		int leftWidth = left.getAttributes().size();
+		int rightWidth = rightRows.getColumnCount();
+		int rightCount = rightRows.size();
+		int n = 0;
+
+		while (n < capacity && !done) {
+			if (leftBatch == null || leftPos == leftBatch.getLiveCount()) {
+				leftBatch = left.next();
+				leftPos = 0;
+				rightPos = 0;
+				if (leftBatch == null) {
+					done = true;
+					break;
+				}
+			}
+			int row = leftBatch.getRow(leftPos);
+			int key = leftKey < 0 ? 0 : leftBatch.getColumn(leftKey)[row];
+			int[] keys = leftKey < 0 ? null : rightRows.getColumn(rightKey);
+			while (rightPos < rightCount && n < capacity) {
+				int j = rightPos++;
+				if (keys == null || keys[j] == key) {
+					for (int c = 0; c < leftWidth; c++) {
+						out.getColumn(c)[n] = leftBatch.getColumn(c)[row];
+					}
+					for (int c = 0; c < rightWidth; c++) {
+						out.getColumn(leftWidth + c)[n] = rightRows.getColumn(c)[j];
+					}
+					n++;
+				}
+			}
+			if (rightPos == rightCount) {
+				leftPos++;
+				rightPos = 0;
+			}
+		}
+
+		if (n == 0) {
+			return null;
+		}
+		out.setSize(n);
+		return out;
+	}
+
+	@Override
+	public void close() {
+		left.close();
+		rightRows = null;
+		leftBatch = null;
+		out = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+}
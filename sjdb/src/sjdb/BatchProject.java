@@ -0,0 +1,56 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements the Project operator for the vectorised executor.
+ * The batches it produces share the projected columns and the selection
+ * vector of the input batches, so no values are copied.
+ */
+public class BatchProject implements BatchIterator {
+	private BatchIterator input;
+	private List<Attribute> attributes;
+	private int[] columns;
+
+	/**
+	 * Create a new batch project
+	 * @param input Input iterator
+	 * @param attributes Attributes to be projected
+	 */
+	public BatchProject(BatchIterator input, List<Attribute> attributes) {
+		this.input = input;
+		this.attributes = attributes;
+		this.columns = new int[attributes.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = input.getAttributes().indexOf(attributes.get(i));
+		}
+	}
+
+	@Override
+	public void open() {
+		input.open();
+	}
+
+	@Override
+	public ColumnBatch next() {
+		ColumnBatch batch = input.next();
+		if (batch == null) {
+			return null;
+		}
+		int[][] projected = new int[columns.length][];
+		for (int i = 0; i < columns.length; i++) {
+			projected[i] = batch.getColumn(columns[i]);
+		}
+		return new ColumnBatch(projected, batch.getSize(), batch.getSelection(), batch.getLiveCount());
+	}
+
+	@Override
+	public void close() {
+		input.close();
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+}
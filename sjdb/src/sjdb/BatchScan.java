@@ -0,0 +1,46 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements the Scan operator for the vectorised executor,
+ * reading the tuples of a named relation from a column source straight
+ * into a reused batch.
+ */
+public class BatchScan implements BatchIterator {
+	private ColumnSource source;
+	private ColumnBatch batch;
+
+	/**
+	 * Create a new batch scan
+	 * @param source Source of the tuples of the relation
+	 */
+	public BatchScan(ColumnSource source) {
+		this.source = source;
+	}
+
+	@Override
+	public void open() {
+		source.open();
+		batch = new ColumnBatch(source.getAttributes().size(), ColumnBatch.DEFAULT_CAPACITY);
+	}
+
+	@Override
+	public ColumnBatch next() {
+		if (source.read(batch) == 0) {
+			return null;
+		}
+		return batch;
+	}
+
+	@Override
+	public void close() {
+		source.close();
+		batch = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return source.getAttributes();
+	}
+}
@@ -0,0 +1,117 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements the Select operator for the vectorised executor.
+ * It narrows the selection vector of each input batch to the rows that
+ * satisfy the predicate, without moving any values.
+ *
+ * The loops that evaluate the predicate have no branches in their bodies:
+ * every row position is written to the selection vector, and the output
+ * position only advances past it if the row matches. This keeps the loops
+ * free of mispredicted branches whatever the selectivity, and simple enough
+ * for the JIT compiler to unroll.
+ */
+public class BatchSelect implements BatchIterator {
+	private BatchIterator input;
+	private int leftColumn;
+	private int rightColumn;
+	private int valueCode;
+
+	/**
+	 * Create a new batch select
+	 * @param input Input iterator
+	 * @param predicate Predicate to be satisfied, with any parameter bound
+	 * @param dictionary Dictionary used to encode the value in the predicate
+	 */
+	public BatchSelect(BatchIterator input, Predicate predicate, ValueDictionary dictionary) {
+		if (predicate.isParameter()) {
+			throw new IllegalArgumentException("Unbound parameter in " + predicate);
+		}
+		this.input = input;
+		this.leftColumn = input.getAttributes().indexOf(predicate.getLeftAttribute());
+		if (predicate.equalsValue()) {
+			this.rightColumn = -1;
+			this.valueCode = dictionary.encode(predicate.getRightValue());
+		} else {
+			this.rightColumn = input.getAttributes().indexOf(predicate.getRightAttribute());
+		}
+	}
+
+	@Override
+	public void open() {
+		input.open();
+	}
+
+	@Override
+	public ColumnBatch next() {
+		ColumnBatch batch;
+		while ((batch = input.next()) != null) {
+			int selected;
+			if (rightColumn < 0) {
+				selected = selectValue(batch, batch.getColumn(leftColumn), valueCode);
+			} else {
+				selected = selectColumns(batch, batch.getColumn(leftColumn), batch.getColumn(rightColumn));
+			}
+			if (selected > 0) {
+				return batch;
+			}
+		}
+		return null;
+	}
+
+	private static int selectValue(ColumnBatch batch, int[] column, int value) {
+		int[] out = batch.getSelectionBuffer();
+		int[] in = batch.getSelection();
+		int n = 0;
+		if (in == null) {
+			int size = batch.getSize();
+			for (int i = 0; i < size; i++) {
+				out[n] = i;
+				n += column[i] == value ? 1 : 0;
+			}
+		} else {
+			int live = batch.getLiveCount();
+			for (int k = 0; k < live; k++) {
+				int i = in[k];
+				out[n] = i;
+				n += column[i] == value ? 1 : 0;
+			}
+		}
+		batch.setSelection(out, n);
+		return n;
+	}
+
+	private static int selectColumns(ColumnBatch batch, int[] left, int[] right) {
+		int[] out = batch.getSelectionBuffer();
+		int[] in = batch.getSelection();
+		int n = 0;
+		if (in == null) {
+			int size = batch.getSize();
+			for (int i = 0; i < size; i++) {
+				out[n] = i;
+				n += left[i] == right[i] ? 1 : 0;
+			}
+		} else {
+			int live = batch.getLiveCount();
+			for (int k = 0; k < live; k++) {
+				int i = in[k];
+				out[n] = i;
+				n += left[i] == right[i] ? 1 : 0;
+			}
+		}
+		batch.setSelection(out, n);
+		return n;
+	}
+
+	@Override
+	public void close() {
+		input.close();
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return input.getAttributes();
+	}
+}
@@ -0,0 +1,243 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This class sorts its input on one column for the vectorised executor, as
+ * needed by a sort-merge join. Rows are ordered by the codes of their
+ * values in the dictionary, which is enough for equal values to be brought
+ * together.
+ *
+ * The input is read into columns when the iterator is opened and sorted by
+ * sorting an array of longs, each holding the key of a row above its
+ * position, so no comparator or boxing is involved. If the input does not
+ * fit in the memory budget it is sorted externally, as by SortIterator:
+ * each budget's worth of rows is sorted and written to a temporary file as
+ * a run, and the runs are merged, at most SortIterator.MAX_FAN_IN at a time.
+ */
+public class BatchSort implements BatchIterator {
+	private BatchIterator input;
+	private int column;
+	private long memoryBudget;
+
+	private ColumnStore rows;
+	private long[] sorted;
+	private int pos;
+	private List<SpillFile> runs;
+	private PriorityQueue<Run> merge;
+	private ColumnBatch out;
+
+	/**
+	 * Create a new batch sort
+	 * @param input Input iterator
+	 * @param column Position of the column to sort on
+	 * @param memoryBudget Number of bytes the sort may hold in memory
+	 */
+	public BatchSort(BatchIterator input, int column, long memoryBudget) {
+		this.input = input;
+		this.column = column;
+		this.memoryBudget = memoryBudget;
+	}
+
+	@Override
+	public void open() {
+		int width = input.getAttributes().size();
+		long rowBytes = BatchHashJoin.rowBytes(width);
+		rows = new ColumnStore(width);
+		runs = new ArrayList<SpillFile>();
+		input.open();
+		try {
+			ColumnBatch batch;
+			while ((batch = input.next()) != null) {
+				rows.append(batch);
+				if (rows.size() * rowBytes > memoryBudget) {
+					runs.add(writeRun());
+					rows.clear();
+				}
+			}
+		} finally {
+			input.close();
+		}
+
+		out = new ColumnBatch(width, ColumnBatch.DEFAULT_CAPACITY);
+		pos = 0;
+		if (runs.isEmpty()) {
+			sorted = sort(rows);
+			return;
+		}
+		if (rows.size() > 0) {
+			runs.add(writeRun());
+		}
+		rows = null;
+		while (runs.size() > SortIterator.MAX_FAN_IN) {
+			mergeRuns();
+		}
+		merge = openRuns(runs);
+	}
+
+	@Override
+	public ColumnBatch next() {
+		int capacity = out.getCapacity();
+		int width = out.getColumnCount();
+		int n = 0;
+		if (merge == null) {
+			while (n < capacity && pos < sorted.length) {
+				int row = (int) sorted[pos++];
+				for (int c = 0; c < width; c++) {
+					out.getColumn(c)[n] = rows.getColumn(c)[row];
+				}
+				n++;
+			}
+		} else {
+			Run run;
+			while (n < capacity && (run = merge.poll()) != null) {
+				for (int c = 0; c < width; c++) {
+					out.getColumn(c)[n] = run.batch.getColumn(c)[run.row];
+				}
+				if (run.advance()) {
+					merge.add(run);
+				}
+				n++;
+			}
+		}
+		if (n == 0) {
+			return null;
+		}
+		out.setSize(n);
+		return out;
+	}
+
+	@Override
+	public void close() {
+		if (merge != null) {
+			for (Run run : merge) {
+				run.input.close();
+			}
+			merge = null;
+		}
+		if (runs != null) {
+			for (SpillFile run : runs) {
+				run.delete();
+			}
+			runs = null;
+		}
+		rows = null;
+		sorted = null;
+		out = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return input.getAttributes();
+	}
+
+	/**
+	 * Return the positions of the rows of a store in sorted order, each in
+	 * the low half of a long whose high half holds the row's key
+	 */
+	private long[] sort(ColumnStore store) {
+		int[] keys = store.getColumn(column);
+		long[] res = new long[store.size()];
+		for (int row = 0; row < res.length; row++) {
+			res[row] = ((long) keys[row] << 32) | row;
+		}
+		Arrays.sort(res);
+		return res;
+	}
+
+	/**
+	 * Sort the rows held in memory and write them to a new run
+	 */
+	private SpillFile writeRun() {
+		SpillFile run = new SpillFile(input.getAttributes());
+		for (long entry : sort(rows)) {
+			run.append(rows, (int) entry);
+		}
+		run.finish();
+		return run;
+	}
+
+	/**
+	 * Merge the first MAX_FAN_IN runs into one run at the end of the list
+	 */
+	private void mergeRuns() {
+		List<SpillFile> group = new ArrayList<SpillFile>(runs.subList(0, SortIterator.MAX_FAN_IN));
+		runs.subList(0, SortIterator.MAX_FAN_IN).clear();
+		SpillFile merged = new SpillFile(input.getAttributes());
+		PriorityQueue<Run> queue = openRuns(group);
+		Run run;
+		while ((run = queue.poll()) != null) {
+			merged.append(run.batch, run.row);
+			if (run.advance()) {
+				queue.add(run);
+			}
+		}
+		merged.finish();
+		for (SpillFile file : group) {
+			file.delete();
+		}
+		runs.add(merged);
+	}
+
+	/**
+	 * Open a reader on each run, and return a queue of the readers ordered
+	 * by the keys of their current rows
+	 */
+	private PriorityQueue<Run> openRuns(List<SpillFile> files) {
+		PriorityQueue<Run> res = new PriorityQueue<Run>(Math.max(files.size(), 1), new Comparator<Run>() {
+			@Override
+			public int compare(Run a, Run b) {
+				return Integer.compare(a.key, b.key);
+			}
+		});
+		for (SpillFile file : files) {
+			Run run = new Run(file.reader(), column);
+			if (run.advance()) {
+				res.add(run);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * A reader on a run, together with its current row and that row's key
+	 */
+	private static class Run {
+		private BatchIterator input;
+		private int column;
+		private ColumnBatch batch;
+		private int pos;
+		private int row;
+		private int key;
+
+		private Run(BatchIterator input, int column) {
+			this.input = input;
+			this.column = column;
+			this.pos = -1;
+			input.open();
+		}
+
+		/**
+		 * Move to the next row, closing the reader and returning false at
+		 * the end of the run
+		 */
+		private boolean advance() {
+			pos++;
+			if (batch == null || pos == batch.getLiveCount()) {
+				batch = input.next();
+				pos = 0;
+				if (batch == null) {
+					input.close();
+					return false;
+				}
+			}
+			row = batch.getRow(pos);
+			key = batch.getColumn(column)[row];
+			return true;
+		}
+	}
+}
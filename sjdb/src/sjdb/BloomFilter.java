@@ -0,0 +1,67 @@
+package sjdb;
+
+/**
+ * This class is a Bloom filter over int keys: a set that may answer that
+ * it contains a key that was never added, but never that it lacks one that
+ * was. It takes BITS_PER_KEY bits for each key it is sized for.
+ *
+ * The filter is blocked in the manner of Putze et al.: each key sets three
+ * bits of a single 64-bit word, so a lookup touches one word and so at most
+ * one cache line. With sixteen bits per key this lets through about 1% of
+ * the keys that were not added.
+ */
+public class BloomFilter {
+	/**
+	 * Number of bits for each key the filter is sized for
+	 */
+	public static final int BITS_PER_KEY = 16;
+
+	private long[] words;
+	private int mask;
+
+	/**
+	 * Create an empty filter
+	 * @param keys Number of keys expected to be added
+	 */
+	public BloomFilter(int keys) {
+		int count = Integer.highestOneBit(Math.max(keys / (64 / BITS_PER_KEY), 1) * 2 - 1);
+		this.words = new long[count];
+		this.mask = count - 1;
+	}
+
+	/**
+	 * Add a key to the filter
+	 * @param key
+	 */
+	public void add(int key) {
+		long h = hash(key);
+		words[(int) (h >>> 32) & mask] |= bits(h);
+	}
+
+	/**
+	 * Return true if the key may have been added to the filter, and false if
+	 * it certainly was not
+	 * @param key
+	 * @return True if the key may be in the filter
+	 */
+	public boolean mightContain(int key) {
+		long h = hash(key);
+		long bits = bits(h);
+		return (words[(int) (h >>> 32) & mask] & bits) == bits;
+	}
+
+	private static long bits(long h) {
+		return (1L << h) | (1L << (h >>> 6)) | (1L << (h >>> 12));
+	}
+
+	/*
+	 * The MurmurHash3 finaliser; the high half chooses the word, and the low
+	 * bits the bits within it.
+	 */
+	private static long hash(int key) {
+		long h = key;
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+}
@@ -0,0 +1,70 @@
+package sjdb;
+
+/**
+ * This class provides arithmetic on tuple counts and plan costs that
+ * saturates at Long.MAX_VALUE instead of overflowing, so that the estimates
+ * for very large intermediate results stay ordered correctly (an
+ * overflowed count would wrap around and look cheap).
+ *
+ * All of the arguments are expected to be non-negative.
+ */
+public final class Cardinality {
+
+	private Cardinality() {
+		// no instances
+	}
+
+	/**
+	 * Return a + b, or Long.MAX_VALUE if that would overflow
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static long add(long a, long b) {
+		long res = a + b;
+		if (res < 0) {
+			return Long.MAX_VALUE;
+		}
+		return res;
+	}
+
+	/**
+	 * Return a * b, or Long.MAX_VALUE if that would overflow
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static long multiply(long a, long b) {
+		if (a != 0 && b > Long.MAX_VALUE / a) {
+			return Long.MAX_VALUE;
+		}
+		return a * b;
+	}
+
+	/**
+	 * Return a * b / c, computed exactly if a * b does not overflow and in
+	 * floating point otherwise; c is taken to be at least one
+	 * @param a
+	 * @param b
+	 * @param c
+	 * @return
+	 */
+	public static long multiplyDivide(long a, long b, long c) {
+		long product = multiply(a, b);
+		if (product < Long.MAX_VALUE) {
+			return product / Math.max(c, 1);
+		}
+		return round((double) a * b / Math.max(c, 1));
+	}
+
+	/**
+	 * Return an estimate computed in floating point, rounded to the nearest
+	 * tuple and clamped to the range of a long
+	 * @param estimate
+	 * @return
+	 */
+	public static long round(double estimate) {
+		// Math.round saturates at Long.MAX_VALUE
+		return Math.max(Math.round(estimate), 0);
+	}
+}
@@ -0,0 +1,80 @@
+package sjdb;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class caches estimated join results across optimisations, so that
+ * a sub-join that appears in many queries against the same catalogue is
+ * only estimated once.
+ *
+ * Entries are keyed by a canonical description of the join: the sorted
+ * inputs it combines and the sorted join predicates it applies (see
+ * JoinGraph). Once the cache is full, the least recently used entry is
+ * evicted. The entries are only valid for the catalogue statistics they
+ * were estimated from, so the cache must be cleared when those change.
+ *
+ * The cache is safe for use by several threads at once.
+ */
+public class CardinalityCache {
+	private static final int DEFAULT_CAPACITY = 10000;
+
+	private Map<String, Relation> relations;
+
+	/**
+	 * Create a cardinality cache with the default capacity
+	 */
+	public CardinalityCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a cardinality cache holding at most capacity estimates
+	 * @param capacity Maximum number of entries
+	 */
+	public CardinalityCache(final int capacity) {
+		this.relations = Collections.synchronizedMap(new LinkedHashMap<String, Relation>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Relation> eldest) {
+				return size() > capacity;
+			}
+		});
+	}
+
+	/**
+	 * Return the estimated output for the join with the given key, or null
+	 * if it has not been estimated.
+	 * @param key Canonical join description
+	 * @return Estimated output relation
+	 */
+	public Relation get(String key) {
+		return relations.get(key);
+	}
+
+	/**
+	 * Record the estimated output for the join with the given key
+	 * @param key Canonical join description
+	 * @param output Estimated output relation
+	 */
+	public void put(String key, Relation output) {
+		relations.put(key, output);
+	}
+
+	/**
+	 * Discard every cached estimate
+	 */
+	public void clear() {
+		relations.clear();
+	}
+
+	/**
+	 * Return the number of cached estimates
+	 * @return Entry count
+	 */
+	public int size() {
+		return relations.size();
+	}
+}
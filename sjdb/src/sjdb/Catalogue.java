@@ -1,6 +1,10 @@
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * This class contains the system catalogue for the database; it
@@ -14,20 +18,27 @@ import java.util.HashMap;
  * 
  * Note that any statistical information about named relations or
  * the attributes therein is stored on the relations or attributes,
- * and not in the catalogue.
+ * and not in the catalogue. The catalogue does, however, keep a version
+ * number for each named relation, which changes whenever the relation
+ * or one of its attributes is (re)created, so that cached plans and
+ * estimates can tell when the statistics they used are out of date.
  * 
  * @author nmg
  *
  */
 public class Catalogue {
 	
-	private HashMap<String, NamedRelation> relations;
+	private LinkedHashMap<String, NamedRelation> relations;
 	private HashMap<String, Attribute> attributes;
+	private HashMap<String, Integer> versions;
+	private int version;
 
 
 	public Catalogue() {
-		this.relations = new HashMap<String, NamedRelation>();
+		this.relations = new LinkedHashMap<String, NamedRelation>();
 		this.attributes = new HashMap<String, Attribute>();
+		this.versions = new HashMap<String, Integer>();
+		this.version = 0;
 	}
 	
 	/**
@@ -37,9 +48,10 @@ public class Catalogue {
 	 * @param relName
 	 * @param size
 	 */
-	public NamedRelation createRelation(String relName, int size) {
+	public NamedRelation createRelation(String relName, long size) {
 		NamedRelation reln = new NamedRelation(relName, size);
 		relations.put(relName, reln);
+		touch(relName);
 		return reln;
 	}
 	
@@ -53,12 +65,120 @@ public class Catalogue {
 	 * @param values
 	 * @return
 	 */
-	public Attribute createAttribute(String relName, String attName, int values) {
-		Attribute attr = new Attribute(attName, values);
+	public Attribute createAttribute(String relName, String attName, long values) {
+		return createAttribute(relName, attName, values, null);
+	}
+
+	/**
+	 * Create a new Attribute with the specified name, number of distinct
+	 * values and histogram, add it to the directory and associate it with
+	 * the specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @param histogram
+	 * @return
+	 */
+	public Attribute createAttribute(String relName, String attName, long values, Histogram histogram) {
+		return createAttribute(relName, attName, values, histogram, null);
+	}
+
+	/**
+	 * Create a new Attribute with the specified name, number of distinct
+	 * values, histogram and most common values, add it to the directory and
+	 * associate it with the specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @param histogram
+	 * @param mostCommonValues
+	 * @return
+	 */
+	public Attribute createAttribute(String relName, String attName, long values, Histogram histogram,
+			MostCommonValues mostCommonValues) {
+		Attribute attr = new Attribute(attName, values, histogram, mostCommonValues);
 		attributes.put(attName, attr);
 		relations.get(relName).addAttribute(attr);
+		touch(relName);
+		return attr;
+	}
+
+	/**
+	 * Create a new AttributeGroup over attributes of the specified
+	 * NamedRelation (which must already have been created), with the
+	 * specified number of distinct combinations of values, and associate it
+	 * with the NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attNames
+	 * @param values
+	 * @return
+	 */
+	public AttributeGroup createAttributeGroup(String relName, String[] attNames, long values) {
+		NamedRelation reln = relations.get(relName);
+		List<Attribute> attrs = new ArrayList<Attribute>();
+		for (String attName : attNames) {
+			attrs.add(reln.getAttribute(new Attribute(attName)));
+		}
+		AttributeGroup group = new AttributeGroup(attrs, values);
+		reln.addAttributeGroup(group);
+		touch(relName);
+		return group;
+	}
+
+	/**
+	 * Declare a secondary index on an attribute of the specified
+	 * NamedRelation (which must already have been created); the index
+	 * itself is built by IndexWriter.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @return
+	 */
+	public Attribute createIndex(String relName, String attName) {
+		NamedRelation reln = relations.get(relName);
+		Attribute attr = reln.getAttribute(new Attribute(attName));
+		reln.addIndex(attr);
+		touch(relName);
 		return attr;
 	}
+
+	/**
+	 * Record that the statistics for the named relation have changed.
+	 * 
+	 * @param relName
+	 */
+	private void touch(String relName) {
+		version++;
+		versions.put(relName, version);
+	}
+
+	/**
+	 * Return the version of the statistics for the named relation; this
+	 * changes whenever the relation or any of its attributes is created.
+	 * 
+	 * @param relName
+	 * @return
+	 */
+	public int getVersion(String relName) {
+		Integer res = versions.get(relName);
+		if (res == null) {
+			return 0;
+		}
+		return res;
+	}
+
+	/**
+	 * Return the version of the statistics for the whole catalogue; this
+	 * changes whenever the statistics for any named relation change.
+	 * 
+	 * @return
+	 */
+	public int getVersion() {
+		return version;
+	}
 	
 	/**
 	 * Return the NamedRelation with the specified name.
@@ -76,6 +196,15 @@ public class Catalogue {
 		return reln;
 	}
 	
+	/**
+	 * Return all of the NamedRelations, in the order they were first created.
+	 * 
+	 * @return
+	 */
+	public Collection<NamedRelation> getRelations() {
+		return relations.values();
+	}
+	
 	/**
 	 * Return the Attribute with the specified name.
 	 * 
@@ -1,5 +1,7 @@
 package sjdb;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class parses a serialised system catalogue, and uses the
@@ -10,6 +12,35 @@ import java.io.*;
  * 
  * <relation name>:<tuple count>:<attr name>,<value count>:<attr name>,<value count>
  * 
+ * An attribute may also be given an equi-depth histogram, by following its
+ * value count with a part of the form:
+ * 
+ * h=<lowest value>|<upper bound>/<value count>|<upper bound>/<value count>
+ * 
+ * with one <upper bound>/<value count> pair for each bucket, and a list of
+ * its most common values, by following its value count with a part of the
+ * form:
+ * 
+ * mcv=<value>/<frequency>|<value>/<frequency>
+ * 
+ * where each <frequency> is the fraction of tuples taking that value. A
+ * backslash in a value stands for the character after it, so that values
+ * can contain the separators :,|/ (see CatalogueWriter.escape()).
+ * 
+ * Groups of correlated attributes are given as further parts of the form:
+ * 
+ * <attr name>+<attr name>,<value count>
+ * 
+ * after the attributes they name, where <value count> is the number of
+ * distinct combinations of values of the attributes.
+ * 
+ * Secondary indexes (see BTreeIndex) are declared by further parts of the
+ * form:
+ * 
+ * idx=<attr name>
+ * 
+ * after the attribute they name.
+ * 
  * @author nmg
  */
 public class CatalogueParser {
@@ -35,7 +66,7 @@ public class CatalogueParser {
 
 		try {
 			while ((line = this.read.readLine()) != null) {
-				parseRelation(line.split(":", 0));
+				parseRelation(split(line, ':'));
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -44,19 +75,101 @@ public class CatalogueParser {
 	
 	private void parseRelation(String[] parts) {
 		String reln = parts[0];
-		int size = Integer.decode(parts[1]).intValue();
+		long size = Long.decode(parts[1]).longValue();
 		
 		catalogue.createRelation(reln, size);
 		
 		for (int i = 2; i < parts.length; i++) {
-			parseAttribute(reln, parts[i].split(",", 0));
+			if (parts[i].startsWith("idx=")) {
+				catalogue.createIndex(reln, parts[i].substring(4));
+			} else {
+				parseAttribute(reln, split(parts[i], ','));
+			}
 		}
 	}
 
 	private void parseAttribute(String reln, String[] parts) {
 		String attr = parts[0];
-		int values = Integer.decode(parts[1]).intValue();
+		if (attr.contains("+")) {
+			long values = Long.decode(parts[1]).longValue();
+			catalogue.createAttributeGroup(reln, attr.split("\\+", 0), values);
+			return;
+		}
+		long values = Long.decode(parts[1]).longValue();
+		Histogram histogram = null;
+		MostCommonValues mostCommonValues = null;
+		
+		for (int i = 2; i < parts.length; i++) {
+			if (parts[i].startsWith("h=")) {
+				histogram = parseHistogram(split(parts[i].substring(2), '|'));
+			} else if (parts[i].startsWith("mcv=")) {
+				mostCommonValues = parseMostCommonValues(split(parts[i].substring(4), '|'));
+			}
+		}
+		
+		catalogue.createAttribute(reln, attr, values, histogram, mostCommonValues);
+	}
+
+	private Histogram parseHistogram(String[] parts) {
+		String[] bounds = new String[parts.length - 1];
+		int[] distinct = new int[parts.length - 1];
 		
-		catalogue.createAttribute(reln, attr, values);
+		for (int i = 1; i < parts.length; i++) {
+			String[] bucket = split(parts[i], '/');
+			bounds[i - 1] = unescape(bucket[0]);
+			distinct[i - 1] = Integer.decode(bucket[1]).intValue();
+		}
+		
+		return new Histogram(unescape(parts[0]), bounds, distinct);
+	}
+
+	private MostCommonValues parseMostCommonValues(String[] parts) {
+		String[] values = new String[parts.length];
+		double[] frequencies = new double[parts.length];
+		
+		for (int i = 0; i < parts.length; i++) {
+			String[] entry = split(parts[i], '/');
+			values[i] = unescape(entry[0]);
+			frequencies[i] = Double.parseDouble(entry[1]);
+		}
+		
+		return new MostCommonValues(values, frequencies);
+	}
+
+	/**
+	 * Split a string at each occurrence of a separator that is not escaped,
+	 * leaving the escapes in the parts
+	 */
+	private static String[] split(String text, char separator) {
+		List<String> parts = new ArrayList<String>();
+		int start = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == separator) {
+				parts.add(text.substring(start, i));
+				start = i + 1;
+			}
+		}
+		parts.add(text.substring(start));
+		return parts.toArray(new String[parts.size()]);
+	}
+
+	/**
+	 * Remove the escapes from a value written by CatalogueWriter.escape()
+	 * @param value Escaped value
+	 * @return Value
+	 */
+	public static String unescape(String value) {
+		StringBuilder res = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				c = value.charAt(++i);
+			}
+			res.append(c);
+		}
+		return res.toString();
 	}
 }
@@ -0,0 +1,72 @@
+package sjdb;
+import java.io.*;
+
+/**
+ * This class serialises a system catalogue, writing one line for each
+ * named relation in the form read by CatalogueParser:
+ *
+ * <relation name>:<tuple count>:<attr name>,<value count>:<attr name>,<value count>
+ *
+ * together with any histograms, most-common-values lists, attribute groups
+ * and index declarations. The values in histograms and most-common-values
+ * lists are escaped (see escape()), since they may contain the characters
+ * that separate the parts of a line.
+ */
+public class CatalogueWriter {
+	/**
+	 * The characters that are escaped in values
+	 */
+	static final String SEPARATORS = ":,|/\\";
+
+	private String catFilename;
+	private Catalogue catalogue;
+
+	/**
+	 * Create a writer that writes to the file of the given name
+	 * @param catFilename
+	 * @param catalogue
+	 */
+	public CatalogueWriter(String catFilename, Catalogue catalogue) {
+		this.catFilename = catFilename;
+		this.catalogue = catalogue;
+	}
+
+	public void write() throws IOException {
+		// write to a temporary file first, so that a failure part way
+		// through leaves the old catalogue intact
+		File target = new File(catFilename);
+		File temp = new File(catFilename + ".tmp");
+		PrintWriter write = new PrintWriter(new BufferedWriter(new FileWriter(temp)));
+		try {
+			for (NamedRelation reln : catalogue.getRelations()) {
+				write.println(reln.render());
+			}
+		} finally {
+			write.close();
+		}
+		if (write.checkError()) {
+			throw new IOException("Failed to write " + temp);
+		}
+		if (target.exists() && !target.delete() || !temp.renameTo(target)) {
+			throw new IOException("Failed to replace " + target);
+		}
+	}
+
+	/**
+	 * Escape a value for the serialised catalogue, by putting a backslash
+	 * before each separator (:,|/) and backslash in it
+	 * @param value Value
+	 * @return Escaped value, as read back by CatalogueParser.unescape()
+	 */
+	public static String escape(String value) {
+		StringBuilder res = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (SEPARATORS.indexOf(c) >= 0) {
+				res.append('\\');
+			}
+			res.append(c);
+		}
+		return res.toString();
+	}
+}
@@ -0,0 +1,152 @@
+package sjdb;
+
+/**
+ * This class holds a batch of tuples in columnar form, as exchanged by the
+ * operators of the vectorised executor: one array of value codes (see
+ * ValueDictionary) for each attribute, all filled to the same size.
+ *
+ * A batch may also have a selection vector, listing in ascending order the
+ * positions of the rows that are still live; filtering a batch only
+ * rewrites its selection vector, leaving the columns in place. A batch with
+ * no selection vector has every row live.
+ */
+public class ColumnBatch {
+	/**
+	 * The number of rows in a full batch; small enough for a batch of a few
+	 * columns to stay in the processor's cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 2048;
+
+	private int[][] columns;
+	private int size;
+	private int[] selection;
+	private int selected;
+	private int[] selectionBuffer;
+
+	/**
+	 * Create an empty batch
+	 * @param columnCount Number of columns
+	 * @param capacity Maximum number of rows
+	 */
+	public ColumnBatch(int columnCount, int capacity) {
+		this.columns = new int[columnCount][capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Create a batch over existing columns, such as a projection of the
+	 * columns of another batch
+	 * @param columns Columns of the batch
+	 * @param size Number of rows filled
+	 * @param selection Selection vector, or null if every row is live
+	 * @param selected Number of live rows in the selection vector
+	 */
+	public ColumnBatch(int[][] columns, int size, int[] selection, int selected) {
+		this.columns = columns;
+		this.size = size;
+		this.selection = selection;
+		this.selected = selected;
+	}
+
+	/**
+	 * Return the column with the given position
+	 * @param i Column position
+	 * @return Column values
+	 */
+	public int[] getColumn(int i) {
+		return columns[i];
+	}
+
+	/**
+	 * Return all of the columns
+	 * @return Columns
+	 */
+	public int[][] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Return the number of columns
+	 * @return Column count
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Return the maximum number of rows the batch can hold
+	 * @return Capacity
+	 */
+	public int getCapacity() {
+		return columns.length > 0 ? columns[0].length : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Return the number of rows filled, live or not
+	 * @return Row count
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Set the number of rows filled, making every row live
+	 * @param size Row count
+	 */
+	public void setSize(int size) {
+		this.size = size;
+		this.selection = null;
+	}
+
+	/**
+	 * Return the selection vector, or null if every row is live
+	 * @return Selection vector
+	 */
+	public int[] getSelection() {
+		return selection;
+	}
+
+	/**
+	 * Set the selection vector
+	 * @param selection Positions of the live rows, in ascending order
+	 * @param selected Number of live rows
+	 */
+	public void setSelection(int[] selection, int selected) {
+		this.selection = selection;
+		this.selected = selected;
+	}
+
+	/**
+	 * Return an array large enough to hold a selection vector for this
+	 * batch; filters write their result here (which may be the array that
+	 * holds the current selection, since they never write ahead of what
+	 * they read).
+	 * @return Selection buffer
+	 */
+	public int[] getSelectionBuffer() {
+		if (selection != null) {
+			return selection;
+		}
+		if (selectionBuffer == null || selectionBuffer.length < size) {
+			selectionBuffer = new int[Math.max(size, Math.min(getCapacity(), DEFAULT_CAPACITY))];
+		}
+		return selectionBuffer;
+	}
+
+	/**
+	 * Return the number of live rows
+	 * @return Live row count
+	 */
+	public int getLiveCount() {
+		return selection == null ? size : selected;
+	}
+
+	/**
+	 * Return the position of the k-th live row
+	 * @param k Live row number
+	 * @return Row position
+	 */
+	public int getRow(int k) {
+		return selection == null ? k : selection[k];
+	}
+}
@@ -0,0 +1,174 @@
+package sjdb;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class converts the data file <relation name>.csv of a named relation
+ * into the column file <relation name>.col in the same directory, in the
+ * format read by MappedColumnSource, adding any new values to the
+ * directory's dictionary file.
+ *
+ * The CSV file is read once, with each column written to a temporary file
+ * as it goes; the header and the columns are then copied into the column
+ * file, which replaces any old one once it is complete. The index files of
+ * the relation are deleted first, since they refer to the rows of the old
+ * column file and must be rebuilt (see IndexWriter).
+ *
+ * Run from the command line as:
+ *
+ * java sjdb.ColumnFileWriter <catalogue file> <data directory> [<relation name> ...]
+ *
+ * which converts the named relations (or every relation in the catalogue
+ * that has a CSV file).
+ */
+public class ColumnFileWriter {
+	private DataDirectory data;
+
+	/**
+	 * Create a writer for the column files in a data directory
+	 * @param data Data directory
+	 */
+	public ColumnFileWriter(DataDirectory data) {
+		this.data = data;
+	}
+
+	/**
+	 * Write the column file for every relation in the catalogue that has a
+	 * CSV file.
+	 * @param catalogue Catalogue describing the relations
+	 * @throws IOException
+	 */
+	public void write(Catalogue catalogue) throws IOException {
+		for (NamedRelation reln : catalogue.getRelations()) {
+			if (new File(data.getDirectory(), reln.toString() + ".csv").exists()) {
+				write(reln);
+			}
+		}
+	}
+
+	/**
+	 * Write the column file for a named relation from its CSV file.
+	 * @param relation Named relation
+	 * @throws IOException
+	 */
+	public void write(NamedRelation relation) throws IOException {
+		List<Attribute> attributes = relation.getAttributes();
+		File target = new File(data.getDirectory(), relation.toString() + ".col");
+		File temp = new File(data.getDirectory(), relation.toString() + ".col.tmp");
+		List<File> columnFiles = new ArrayList<File>();
+		List<FileChannel> columns = new ArrayList<FileChannel>();
+		try {
+			for (int i = 0; i < attributes.size(); i++) {
+				File file = File.createTempFile("sjdb", ".column", data.getDirectory());
+				columnFiles.add(file);
+				columns.add(new FileOutputStream(file).getChannel());
+			}
+			long rows = writeColumns(relation, columns);
+			for (FileChannel column : columns) {
+				column.close();
+			}
+			// the values must be in the dictionary file before any column
+			// file refers to them
+			data.saveDictionary();
+
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				DataOutputStream header = new DataOutputStream(new BufferedOutputStream(out));
+				header.writeInt(MappedColumnSource.MAGIC);
+				header.writeInt(MappedColumnSource.VERSION);
+				header.writeLong(rows);
+				header.writeInt(data.getDictionary().size());
+				header.writeInt(attributes.size());
+				for (Attribute attr : attributes) {
+					header.writeUTF(attr.getName());
+				}
+				long length = header.size();
+				for (long pad = MappedColumnSource.align(length) - length; pad > 0; pad--) {
+					header.writeByte(0);
+				}
+				header.flush();
+
+				FileChannel channel = out.getChannel();
+				for (File file : columnFiles) {
+					FileChannel column = new FileInputStream(file).getChannel();
+					try {
+						long size = column.size();
+						for (long done = 0; done < size; ) {
+							done += column.transferTo(done, size - done, channel);
+						}
+					} finally {
+						column.close();
+					}
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			for (FileChannel column : columns) {
+				column.close();
+			}
+			for (File file : columnFiles) {
+				file.delete();
+			}
+		}
+		// the indexes refer to rows of the old column file (see IndexWriter)
+		for (Attribute attr : attributes) {
+			File index = data.getIndexFile(relation, attr);
+			if (index.exists() && !index.delete()) {
+				throw new IOException("Failed to delete " + index);
+			}
+		}
+		if (target.exists() && !target.delete() || !temp.renameTo(target)) {
+			throw new IOException("Failed to replace " + target);
+		}
+	}
+
+	/**
+	 * Read the CSV file of a relation, writing the code of each value to the
+	 * channel for its column
+	 * @return Number of rows written
+	 */
+	private long writeColumns(NamedRelation relation, List<FileChannel> columns) throws IOException {
+		CsvColumnSource source = new CsvColumnSource(relation, data.getDirectory(), data.getDictionary());
+		ColumnBatch batch = new ColumnBatch(columns.size(), ColumnBatch.DEFAULT_CAPACITY);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(ColumnBatch.DEFAULT_CAPACITY * 4).order(ByteOrder.LITTLE_ENDIAN);
+		long rows = 0;
+		source.open();
+		try {
+			int n;
+			while ((n = source.read(batch)) > 0) {
+				for (int i = 0; i < columns.size(); i++) {
+					buffer.clear();
+					buffer.asIntBuffer().put(batch.getColumn(i), 0, n);
+					buffer.limit(n * 4);
+					while (buffer.hasRemaining()) {
+						columns.get(i).write(buffer);
+					}
+				}
+				rows += n;
+			}
+		} finally {
+			source.close();
+		}
+		return rows;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Catalogue cat = new Catalogue();
+		CatalogueParser catParser = new CatalogueParser(args[0], cat);
+		catParser.parse();
+
+		ColumnFileWriter writer = new ColumnFileWriter(new DataDirectory(args[1]));
+		if (args.length > 2) {
+			for (int i = 2; i < args.length; i++) {
+				writer.write(cat.getRelation(args[i]));
+			}
+		} else {
+			writer.write(cat);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This is an interface for the sources of the tuples of a named relation,
+ * which deliver them in batches of columns to the scans of both executors.
+ */
+public interface ColumnSource {
+	/**
+	 * Prepare to read from the start of the relation.
+	 */
+	public void open();
+	/**
+	 * Fill the columns of a batch with up to its capacity of the next rows,
+	 * and set its size to the number of rows read (zero at the end).
+	 * @param batch Batch with one column for each attribute
+	 * @return Number of rows read
+	 */
+	public int read(ColumnBatch batch);
+	/**
+	 * Release the resources held by the source.
+	 */
+	public void close();
+	/**
+	 * Return the attributes of the relation, in column order.
+	 * @return List of attributes
+	 */
+	public List<Attribute> getAttributes();
+}
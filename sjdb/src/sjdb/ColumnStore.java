@@ -0,0 +1,161 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * This class holds rows in memory in columnar form, growing as batches are
+ * appended to it; the vectorised joins and sorts use it to hold the rows
+ * they read ahead of producing their output.
+ */
+public class ColumnStore {
+	private int[][] columns;
+	private int size;
+
+	/**
+	 * Create an empty store
+	 * @param columnCount Number of columns
+	 */
+	public ColumnStore(int columnCount) {
+		this.columns = new int[columnCount][ColumnBatch.DEFAULT_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Append the live rows of a batch
+	 * @param batch Batch with the same columns as the store
+	 */
+	public void append(ColumnBatch batch) {
+		int live = batch.getLiveCount();
+		ensureCapacity(size + live);
+		for (int c = 0; c < columns.length; c++) {
+			int[] from = batch.getColumn(c);
+			int[] to = columns[c];
+			if (batch.getSelection() == null) {
+				System.arraycopy(from, 0, to, size, live);
+			} else {
+				int[] selection = batch.getSelection();
+				for (int k = 0; k < live; k++) {
+					to[size + k] = from[selection[k]];
+				}
+			}
+		}
+		size += live;
+	}
+
+	/**
+	 * Append a single row of a batch
+	 * @param batch Batch with the same columns as the store
+	 * @param row Position of the row in the batch
+	 */
+	public void append(ColumnBatch batch, int row) {
+		ensureCapacity(size + 1);
+		for (int c = 0; c < columns.length; c++) {
+			columns[c][size] = batch.getColumn(c)[row];
+		}
+		size++;
+	}
+
+	/**
+	 * Append a tuple
+	 * @param tuple Tuple with the same columns as the store
+	 */
+	public void append(int[] tuple) {
+		ensureCapacity(size + 1);
+		for (int c = 0; c < columns.length; c++) {
+			columns[c][size] = tuple[c];
+		}
+		size++;
+	}
+
+	/**
+	 * Append every row of another store
+	 * @param store Store with the same columns as this store
+	 */
+	public void append(ColumnStore store) {
+		ensureCapacity(size + store.size());
+		for (int c = 0; c < columns.length; c++) {
+			System.arraycopy(store.getColumn(c), 0, columns[c], size, store.size());
+		}
+		size += store.size();
+	}
+
+	/**
+	 * Keep only the given rows, in the given order
+	 * @param rows Numbers of the rows to be kept, in increasing order
+	 * @param count Number of rows to be kept
+	 */
+	public void retain(int[] rows, int count) {
+		for (int c = 0; c < columns.length; c++) {
+			int[] column = columns[c];
+			for (int k = 0; k < count; k++) {
+				column[k] = column[rows[k]];
+			}
+		}
+		size = count;
+	}
+
+	/**
+	 * Remove every row, keeping the space allocated for them
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Read every batch of an input into a new store, opening and closing
+	 * the input
+	 * @param input Input iterator
+	 * @return Store holding the live rows of the input
+	 */
+	public static ColumnStore readAll(BatchIterator input) {
+		ColumnStore res = new ColumnStore(input.getAttributes().size());
+		input.open();
+		try {
+			ColumnBatch batch;
+			while ((batch = input.next()) != null) {
+				res.append(batch);
+			}
+		} finally {
+			input.close();
+		}
+		return res;
+	}
+
+	/**
+	 * Return the column with the given position
+	 * @param i Column position
+	 * @return Column values, of which the first size() are filled
+	 */
+	public int[] getColumn(int i) {
+		return columns[i];
+	}
+
+	/**
+	 * Return the number of columns
+	 * @return Column count
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Return the number of rows held
+	 * @return Row count
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void ensureCapacity(int rows) {
+		if (rows > capacity()) {
+			int capacity = Math.max(capacity() * 2, rows);
+			for (int c = 0; c < columns.length; c++) {
+				columns[c] = Arrays.copyOf(columns[c], capacity);
+			}
+		}
+	}
+
+	private int capacity() {
+		return columns.length > 0 ? columns[0].length : Integer.MAX_VALUE;
+	}
+}
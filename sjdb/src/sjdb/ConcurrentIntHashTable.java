@@ -0,0 +1,93 @@
+package sjdb;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class is a hash table from int keys to the numbers of the rows that
+ * have them, like IntHashTable, but which several threads can build at
+ * once: the ParallelExecutor inserts the build rows of a hash join from
+ * all of its workers before any of them probe it.
+ *
+ * The number of rows is known in advance, so the table never grows. A key
+ * claims its slot with a compare-and-set, and each row is pushed onto the
+ * chain for its key with a compare-and-set on the head of the chain, so
+ * inserts take no locks. The key Integer.MIN_VALUE marks an empty slot and
+ * cannot be inserted; dictionary codes are never negative.
+ */
+public class ConcurrentIntHashTable {
+	private static final int EMPTY = Integer.MIN_VALUE;
+
+	private AtomicIntegerArray keys;
+	private AtomicIntegerArray heads;
+	private int[] chain;
+	private int mask;
+
+	/**
+	 * Create an empty hash table
+	 * @param rows Number of rows to be inserted
+	 */
+	public ConcurrentIntHashTable(int rows) {
+		int capacity = Integer.highestOneBit(Math.max(rows, 8) * 2 - 1) << 1;
+		int[] empty = new int[capacity];
+		Arrays.fill(empty, EMPTY);
+		this.keys = new AtomicIntegerArray(empty);
+		Arrays.fill(empty, -1);
+		this.heads = new AtomicIntegerArray(empty);
+		this.chain = new int[rows];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Insert a row; each row must be inserted exactly once
+	 * @param key Key of the row
+	 * @param row Number of the row, less than the number of rows
+	 */
+	public void insert(int key, int row) {
+		if (key == EMPTY) {
+			throw new IllegalArgumentException("Key " + key + " cannot be inserted");
+		}
+		int slot = IntHashTable.hash(key) & mask;
+		while (true) {
+			int found = keys.get(slot);
+			if (found == key || found == EMPTY && keys.compareAndSet(slot, EMPTY, key)) {
+				break;
+			}
+			if (found != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+		}
+		int head;
+		do {
+			head = heads.get(slot);
+			chain[row] = head;
+		} while (!heads.compareAndSet(slot, head, row));
+	}
+
+	/**
+	 * Return a row inserted with the given key, or -1 if there is none
+	 * @param key
+	 * @return Row number
+	 */
+	public int first(int key) {
+		int slot = IntHashTable.hash(key) & mask;
+		int found;
+		while ((found = keys.get(slot)) != EMPTY) {
+			if (found == key) {
+				return heads.get(slot);
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Return another row inserted with the same key as the given row, or -1
+	 * if there are no more; the table must no longer be changing
+	 * @param row
+	 * @return Row number
+	 */
+	public int next(int row) {
+		return chain[row];
+	}
+}
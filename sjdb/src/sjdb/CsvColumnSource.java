@@ -0,0 +1,114 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class reads the tuples of a named relation from the file
+ * <relation name>.csv in the data directory. The first line of the file
+ * names the attributes (in any order), and each following line holds one
+ * tuple, with its values separated by commas.
+ */
+public class CsvColumnSource implements ColumnSource {
+	private File file;
+	private List<Attribute> attributes;
+	private ValueDictionary dictionary;
+	private BufferedReader read;
+	private int[] columns;
+
+	/**
+	 * Create a new CSV column source
+	 * @param relation Named relation to be read
+	 * @param dataDir Directory holding the data files
+	 * @param dictionary Dictionary used to encode the values read
+	 */
+	public CsvColumnSource(NamedRelation relation, File dataDir, ValueDictionary dictionary) {
+		this(relation, relation.getAttributes(), dataDir, dictionary);
+	}
+
+	/**
+	 * Create a new CSV column source that reads some of the attributes of a
+	 * relation
+	 * @param relation Named relation to be read
+	 * @param attributes Attributes to be read
+	 * @param dataDir Directory holding the data files
+	 * @param dictionary Dictionary used to encode the values read
+	 */
+	public CsvColumnSource(NamedRelation relation, List<Attribute> attributes, File dataDir,
+			ValueDictionary dictionary) {
+		this.file = new File(dataDir, relation.toString() + ".csv");
+		this.attributes = new ArrayList<Attribute>(attributes);
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	public void open() {
+		try {
+			read = new BufferedReader(new FileReader(file));
+			String header = read.readLine();
+			if (header == null) {
+				throw new IOException("Missing header in " + file);
+			}
+			List<String> names = Arrays.asList(header.split(",", -1));
+			for (int i = 0; i < names.size(); i++) {
+				names.set(i, names.get(i).trim());
+			}
+			// map each attribute of the relation to its column in the file
+			columns = new int[attributes.size()];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = names.indexOf(attributes.get(i).getName());
+				if (columns[i] < 0) {
+					throw new IOException("Attribute " + attributes.get(i).getName() + " not found in " + file);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public int read(ColumnBatch batch) {
+		try {
+			int rows = 0;
+			int capacity = batch.getCapacity();
+			String line;
+			while (rows < capacity && (line = read.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] values = line.split(",", -1);
+				for (int i = 0; i < columns.length; i++) {
+					batch.getColumn(i)[rows] = dictionary.encode(values[columns[i]].trim());
+				}
+				rows++;
+			}
+			batch.setSize(rows);
+			return rows;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			if (read != null) {
+				read.close();
+				read = null;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+}
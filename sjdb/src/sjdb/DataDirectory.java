@@ -0,0 +1,167 @@
+package sjdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * This class represents the directory that holds the data files for the
+ * named relations, together with the dictionary that encodes the values
+ * read from them. The executors use it to find the source of the tuples of
+ * each relation they scan.
+ *
+ * A relation is read from its column file <relation name>.col if there is
+ * one (see MappedColumnSource), and otherwise from <relation name>.csv; an
+ * index on one of its attributes is held in the index file
+ * <relation name>.<attr name>.idx (see BTreeIndex). The
+ * values in the column files are encoded by the dictionary file
+ * values.dict, which lists the values in the order of their codes and is
+ * loaded into the dictionary when the directory is created; values are
+ * only ever appended to it, so the codes in existing column files stay
+ * valid.
+ */
+public class DataDirectory {
+	/**
+	 * Name of the dictionary file
+	 */
+	static final String DICTIONARY_FILE = "values.dict";
+
+	private File dir;
+	private ValueDictionary dictionary;
+	private int savedValues;
+
+	/**
+	 * Create a new data directory
+	 * @param path Path of the directory
+	 */
+	public DataDirectory(String path) {
+		this.dir = new File(path);
+		this.dictionary = new ValueDictionary();
+		loadDictionary();
+	}
+
+	/**
+	 * Return the directory holding the data files
+	 * @return Directory
+	 */
+	public File getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * Return the dictionary used to encode the values read
+	 * @return Value dictionary
+	 */
+	public ValueDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Return a source for the tuples of a named relation
+	 * @param relation Named relation
+	 * @return Column source, not yet opened
+	 */
+	public ColumnSource getSource(NamedRelation relation) {
+		return getSource(relation, relation.getAttributes());
+	}
+
+	/**
+	 * Return a source for some of the attributes of the tuples of a named
+	 * relation
+	 * @param relation Named relation
+	 * @param attributes Attributes to be read
+	 * @return Column source, not yet opened
+	 */
+	public ColumnSource getSource(NamedRelation relation, List<Attribute> attributes) {
+		File columnFile = getColumnFile(relation);
+		if (columnFile.exists()) {
+			return new MappedColumnSource(attributes, columnFile, dictionary);
+		}
+		return new CsvColumnSource(relation, attributes, dir, dictionary);
+	}
+
+	/**
+	 * Return a source for some of the attributes of the tuples of a named
+	 * relation that satisfy a predicate of the form attr=value, read through
+	 * the index on the attribute if there is one
+	 * @param relation Named relation
+	 * @param attributes Attributes to be read, including that of the predicate
+	 * @param predicate Predicate of the form attr=value
+	 * @return Column source, not yet opened
+	 */
+	public ColumnSource getIndexSource(NamedRelation relation, List<Attribute> attributes, Predicate predicate) {
+		return new IndexColumnSource(this, relation, attributes, predicate);
+	}
+
+	/**
+	 * Return the column file of a named relation, which may not exist
+	 * @param relation Named relation
+	 * @return Column file
+	 */
+	public File getColumnFile(NamedRelation relation) {
+		return new File(dir, relation.toString() + ".col");
+	}
+
+	/**
+	 * Return the index file for an attribute of a named relation, which may
+	 * not exist
+	 * @param relation Named relation
+	 * @param attribute Indexed attribute
+	 * @return Index file
+	 */
+	public File getIndexFile(NamedRelation relation, Attribute attribute) {
+		return new File(dir, relation.toString() + "." + attribute.getName() + ".idx");
+	}
+
+	/**
+	 * Append the values given codes since the dictionary file was loaded or
+	 * last saved to the dictionary file
+	 * @throws IOException
+	 */
+	public synchronized void saveDictionary() throws IOException {
+		int size = dictionary.size();
+		if (size == savedValues) {
+			return;
+		}
+		DataOutputStream write = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(new File(dir, DICTIONARY_FILE), true)));
+		try {
+			for (int code = savedValues; code < size; code++) {
+				write.writeUTF(dictionary.decode(code));
+			}
+		} finally {
+			write.close();
+		}
+		savedValues = size;
+	}
+
+	private void loadDictionary() {
+		File file = new File(dir, DICTIONARY_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		try {
+			DataInputStream read = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				while (true) {
+					dictionary.encode(read.readUTF());
+				}
+			} catch (EOFException e) {
+				// end of the dictionary
+			} finally {
+				read.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		savedValues = dictionary.size();
+	}
+}
@@ -11,6 +11,42 @@ public class Estimator implements PlanVisitor {
 		// empty constructor
 	}
 
+	/*
+	 * Create output relations on op and on any operators below it that do
+	 * not yet have one.
+	 *
+	 * Unlike op.accept(this), which re-estimates the whole subtree, the
+	 * outputs already attached to operators are reused, so estimating a new
+	 * node built over estimated children only computes the new node's output.
+	 * Operators are never modified once built, so an attached output remains
+	 * valid for as long as the operator exists.
+	 */
+	public void estimate(Operator op) {
+		if (op.getOutput() != null) {
+			return;
+		}
+		if (op instanceof Scan) {
+			visit((Scan) op);
+			return;
+		}
+		if (op instanceof IndexScan) {
+			visit((IndexScan) op);
+			return;
+		}
+		for (Operator input : op.getInputs()) {
+			estimate(input);
+		}
+		if (op instanceof Project) {
+			visit((Project) op);
+		} else if (op instanceof Select) {
+			visit((Select) op);
+		} else if (op instanceof Product) {
+			visit((Product) op);
+		} else if (op instanceof Join) {
+			visit((Join) op);
+		}
+	}
+
 	/* 
 	 * Create output relation on Scan operator
 	 *
@@ -20,10 +56,12 @@ public class Estimator implements PlanVisitor {
 		Relation input = op.getRelation();
 		Relation output = new Relation(input.getTupleCount());
 		
-		Iterator<Attribute> iter = input.getAttributes().iterator();
+		// only the attributes read by the scan are output
+		Iterator<Attribute> iter = op.getAttributes().iterator();
 		while (iter.hasNext()) {
 			output.addAttribute(new Attribute(iter.next()));
 		}
+		output.addCorrelations(input);
 		
 		op.setOutput(output);
 	}
@@ -39,6 +77,7 @@ public class Estimator implements PlanVisitor {
 		for(Attribute a : toBeProjectedAttributes) {
 			res.addAttribute(new Attribute(a));
 		}
+		res.addCorrelations(originalTable);
 		op.setOutput(res);
 		
 	}
@@ -47,30 +86,24 @@ public class Estimator implements PlanVisitor {
 		Relation originalTable=op.getInput().getOutput();
 		Predicate p = op.getPredicate();
 		Attribute toBeSelectedAttribute = p.getLeftAttribute();
-		int resTupleCnt=0;
-		List<Attribute> resAttributes = new ArrayList<Attribute>();
+		long resTupleCnt=0;
 		Relation res = null;
 		// the predicates form is attr = val
 		if(p.equalsValue()) {
-			
-			resTupleCnt=originalTable.getTupleCount()/(originalTable.getAttribute(toBeSelectedAttribute).getValueCount());
-			res = new Relation(resTupleCnt);
-			List<Attribute> originalTableAttributes=originalTable.getAttributes();
-			for(Attribute a : originalTableAttributes) {
-				if(a.equals(toBeSelectedAttribute)) {
-					res.addAttribute(new Attribute(a.getName(),1));
-				}else {
-					res.addAttribute(new Attribute(a));
-				}
-			}
+			res = selectValue(originalTable, p);
 		}else{
 			// the predicates form is attr = attr
 			Attribute leftAttribute = originalTable.getAttribute(p.getLeftAttribute());
 			Attribute rightAttribute = originalTable.getAttribute(p.getRightAttribute());
-			int leftValueCount = leftAttribute.getValueCount();
-			int rightValueCount = rightAttribute.getValueCount();
+			long leftValueCount = leftAttribute.getValueCount();
+			long rightValueCount = rightAttribute.getValueCount();
+			double selectivity = joinSelectivity(leftAttribute, rightAttribute);
 			
-			resTupleCnt = originalTable.getTupleCount()/Math.max(leftValueCount, rightValueCount);
+			if (selectivity >= 0) {
+				resTupleCnt = Cardinality.round(originalTable.getTupleCount() * selectivity);
+			} else {
+				resTupleCnt = originalTable.getTupleCount()/Math.max(Math.max(leftValueCount, rightValueCount), 1);
+			}
 			res = new Relation(resTupleCnt);
 			
 			List<Attribute> originalTableAttributes=originalTable.getAttributes();
@@ -82,11 +115,71 @@ public class Estimator implements PlanVisitor {
 				}
 			}
 		}
+		res.addCorrelations(originalTable);
 		op.setOutput(res);
 		
 		
 	}
 
+	/*
+	 * Create output relation on IndexScan operator, which is that of a
+	 * Select with its predicate over a Scan of the same attributes
+	 */
+	public void visit(IndexScan op) {
+		Relation input = op.getRelation();
+		Relation scanned = new Relation(input.getTupleCount());
+		for (Attribute attr : op.getAttributes()) {
+			scanned.addAttribute(new Attribute(attr));
+		}
+		scanned.addCorrelations(input);
+		op.setOutput(selectValue(scanned, op.getPredicate()));
+	}
+
+	/*
+	 * Return the output relation of a select of the form attr=value (or
+	 * attr=?) on the given input relation
+	 */
+	private Relation selectValue(Relation originalTable, Predicate p) {
+		Attribute toBeSelectedAttribute = p.getLeftAttribute();
+		long resTupleCnt=0;
+		Attribute selectedAttribute = originalTable.getAttribute(toBeSelectedAttribute);
+		Histogram histogram = selectedAttribute.getHistogram();
+		MostCommonValues mostCommonValues = selectedAttribute.getMostCommonValues();
+		// correlated earlier selects take precedence over the literal
+		double frequency = groupSelectivity(originalTable, toBeSelectedAttribute);
+		if (frequency < 0 && mostCommonValues != null && !p.isParameter()) {
+			frequency = mostCommonValues.getFrequency(p.getRightValue());
+			if (frequency < 0 && histogram == null) {
+				// the values not in the list share the remaining tuples evenly
+				long others = selectedAttribute.getValueCount() - mostCommonValues.size();
+				frequency = (1.0 - mostCommonValues.getTotalFrequency()) / Math.max(others, 1);
+			}
+		}
+		if (frequency < 0 && histogram != null && !p.isParameter()) {
+			frequency = histogram.getSelectivity(p.getRightValue());
+		}
+		if (frequency >= 0) {
+			// an empty estimate would hide the cost of everything above
+			// this select, so keep at least one tuple
+			resTupleCnt = Cardinality.round(originalTable.getTupleCount() * frequency);
+			resTupleCnt = Math.min(originalTable.getTupleCount(), Math.max(resTupleCnt, 1));
+		} else {
+			resTupleCnt=originalTable.getTupleCount()/Math.max(selectedAttribute.getValueCount(), 1);
+		}
+		Relation res = new Relation(resTupleCnt);
+		List<Attribute> originalTableAttributes=originalTable.getAttributes();
+		for(Attribute a : originalTableAttributes) {
+			if(a.equals(toBeSelectedAttribute)) {
+				res.addAttribute(new Attribute(a.getName(),1));
+			}else {
+				res.addAttribute(new Attribute(a));
+			}
+		}
+		res.addCorrelations(originalTable);
+		res.addBoundAttribute(toBeSelectedAttribute);
+		return res;
+	}
+
 	
 	public void visit(Product op) {
 		// get left_table
@@ -94,7 +187,7 @@ public class Estimator implements PlanVisitor {
 		// get right table
 		Relation right_table=op.getRight().getOutput();
 		// the res_tuple_count = left_tuple_cout * right_tuple_cout
-		Relation res = new Relation(left_table.getTupleCount()*right_table.getTupleCount());
+		Relation res = new Relation(Cardinality.multiply(left_table.getTupleCount(), right_table.getTupleCount()));
 		
 		// get the left_table attributes
 		List<Attribute> left_table_attributes = left_table.getAttributes();
@@ -108,6 +201,8 @@ public class Estimator implements PlanVisitor {
 		for(Attribute right_a : right_table_attributes){
 			res.addAttribute(new Attribute(right_a));
 		}
+		res.addCorrelations(left_table);
+		res.addCorrelations(right_table);
 		op.setOutput(res);
 		
 	}
@@ -117,10 +212,17 @@ public class Estimator implements PlanVisitor {
 		Relation rightTable=op.getRight().getOutput();
 		Attribute leftJoinAttribute = op.getPredicate().getLeftAttribute();
 		Attribute rightJoinAttribute = op.getPredicate().getRightAttribute();
-		int vLA=leftTable.getAttribute(leftJoinAttribute).getValueCount();
-		int vRA=rightTable.getAttribute(rightJoinAttribute).getValueCount();
+		long vLA=leftTable.getAttribute(leftJoinAttribute).getValueCount();
+		long vRA=rightTable.getAttribute(rightJoinAttribute).getValueCount();
+		double selectivity = joinSelectivity(leftTable.getAttribute(leftJoinAttribute),
+				rightTable.getAttribute(rightJoinAttribute));
 		
-		int resTupleCnt=leftTable.getTupleCount()*rightTable.getTupleCount()/Math.max(vLA, vRA);
+		long resTupleCnt;
+		if (selectivity >= 0) {
+			resTupleCnt = Cardinality.round((double) leftTable.getTupleCount() * rightTable.getTupleCount() * selectivity);
+		} else {
+			resTupleCnt=Cardinality.multiplyDivide(leftTable.getTupleCount(), rightTable.getTupleCount(), Math.max(vLA, vRA));
+		}
 		Relation res=new Relation(resTupleCnt);
 		List<Attribute> leftTableAttributes=leftTable.getAttributes();
 		for(Attribute lA : leftTableAttributes) {
@@ -139,7 +241,120 @@ public class Estimator implements PlanVisitor {
 				res.addAttribute(new Attribute(rA));
 			}
 		}
+		res.addCorrelations(leftTable);
+		res.addCorrelations(rightTable);
 		op.setOutput(res);
 	}
 
+	/*
+	 * Return the selectivity of attr=value on a relation whose bound
+	 * attributes have already been restricted to single values, using the
+	 * largest attribute group made up of attr and bound attributes, or -1 if
+	 * there is no such group.
+	 *
+	 * If B is the rest of the group, the earlier selects are taken to have
+	 * reduced the relation by a factor of V(B), and the group as a whole by
+	 * V(B+attr), so this select reduces it by V(B+attr)/V(B).
+	 */
+	private double groupSelectivity(Relation input, Attribute attr) {
+		AttributeGroup best = null;
+		for (AttributeGroup group : input.getAttributeGroups()) {
+			List<Attribute> members = group.getAttributes();
+			if (members.size() < 2 || !members.contains(attr)
+					|| (best != null && members.size() <= best.getAttributes().size())) {
+				continue;
+			}
+			boolean bound = true;
+			for (Attribute member : members) {
+				if (!member.equals(attr) && !input.getBoundAttributes().contains(member)) {
+					bound = false;
+				}
+			}
+			if (bound) {
+				best = group;
+			}
+		}
+		if (best == null) {
+			return -1;
+		}
+
+		List<Attribute> rest = new ArrayList<Attribute>(best.getAttributes());
+		rest.remove(attr);
+		double restValues = -1;
+		for (AttributeGroup group : input.getAttributeGroups()) {
+			if (group.getAttributes().size() == rest.size() && group.getAttributes().containsAll(rest)) {
+				restValues = group.getValueCount();
+			}
+		}
+		if (restValues < 0) {
+			// the earlier selects were estimated independently
+			restValues = 1;
+			for (Attribute member : rest) {
+				restValues *= Math.max(member.getValueCount(), 1);
+			}
+		}
+		return Math.min(1.0, restValues / Math.max(best.getValueCount(), 1));
+	}
+
+	/*
+	 * Return the selectivity of a=b from the most common values of a and b,
+	 * or -1 if either attribute has none.
+	 *
+	 * As in PostgreSQL's eqjoinsel, the values in both lists are matched
+	 * exactly; each side's values that are not matched are assumed to join
+	 * evenly with the other side's values that are not in its list, and the
+	 * values in neither list are assumed to join uniformly. The estimate is
+	 * the smaller of those made from each side.
+	 */
+	private double joinSelectivity(Attribute a, Attribute b) {
+		MostCommonValues mcvA = a.getMostCommonValues();
+		MostCommonValues mcvB = b.getMostCommonValues();
+		if (mcvA == null || mcvB == null) {
+			return -1;
+		}
+
+		double matchProduct = 0;
+		double matchA = 0;
+		double matchB = 0;
+		int matches = 0;
+		boolean[] matchedB = new boolean[mcvB.size()];
+		for (int i = 0; i < mcvA.size(); i++) {
+			for (int j = 0; j < mcvB.size(); j++) {
+				if (!matchedB[j] && mcvA.getValue(i).equals(mcvB.getValue(j))) {
+					matchProduct += mcvA.getFrequency(i) * mcvB.getFrequency(j);
+					matchA += mcvA.getFrequency(i);
+					matchB += mcvB.getFrequency(j);
+					matchedB[j] = true;
+					matches++;
+					break;
+				}
+			}
+		}
+
+		double unmatchedA = Math.max(mcvA.getTotalFrequency() - matchA, 0);
+		double unmatchedB = Math.max(mcvB.getTotalFrequency() - matchB, 0);
+		double otherA = 1.0 - mcvA.getTotalFrequency();
+		double otherB = 1.0 - mcvB.getTotalFrequency();
+		long valuesA = a.getValueCount();
+		long valuesB = b.getValueCount();
+
+		double selectivityA = matchProduct;
+		if (valuesB > mcvB.size()) {
+			selectivityA += unmatchedA * otherB / (valuesB - mcvB.size());
+		}
+		if (valuesB > matches) {
+			selectivityA += otherA * (otherB + unmatchedB) / (valuesB - matches);
+		}
+
+		double selectivityB = matchProduct;
+		if (valuesA > mcvA.size()) {
+			selectivityB += unmatchedB * otherA / (valuesA - mcvA.size());
+		}
+		if (valuesA > matches) {
+			selectivityB += otherB * (otherA + unmatchedA) / (valuesA - matches);
+		}
+
+		return Math.min(selectivityA, selectivityB);
+	}
+
 }
@@ -0,0 +1,128 @@
+package sjdb;
+
+/**
+ * Test driver for the estimator: checks that estimating a plan with
+ * estimate() gives every operator the same output as visiting the whole
+ * plan with accept(), and that the outputs already attached to operators
+ * are reused rather than replaced. Also checks that attr=value selects on
+ * an attribute with an equi-depth histogram are estimated from the
+ * buckets the literal falls in, including a value that fills several,
+ * and that selects and joins on attributes with most-common-values lists
+ * use the frequencies of the common values, and that stacked selects on a
+ * group of correlated attributes are estimated from the group's combined
+ * value count. Finally checks that products
+ * and joins of large relations are estimated without overflowing.
+ */
+public class EstimatorTest {
+	public static void main(String[] args) throws Exception {
+		Catalogue catalogue = Test.createCatalogue();
+
+		Operator visited = TestData.query(catalogue, "SELECT a2,b1\nFROM A,B\nWHERE a2=b3,a1=\"1\"");
+		visited.accept(new Estimator());
+		Operator estimated = TestData.query(catalogue, "SELECT a2,b1\nFROM A,B\nWHERE a2=b3,a1=\"1\"");
+		new Estimator().estimate(estimated);
+		TestData.check("estimate() gives the same outputs as accept()", sameOutputs(visited, estimated));
+
+		Operator input = estimated.getInputs().get(0);
+		Relation inputOutput = input.getOutput();
+		Project project = new Project(input, estimated.getOutput().getAttributes());
+		new Estimator().estimate(project);
+		TestData.check("estimate() reuses the output of an estimated input", input.getOutput() == inputOutput);
+		TestData.check("estimate() estimates the new operator",
+				project.getOutput() != null && project.getOutput().getTupleCount() == inputOutput.getTupleCount());
+
+		// one department holds 70% of the tuples
+		catalogue.createRelation("P", 1000);
+		String[] bounds = { "1", "1", "1", "1", "1", "1", "1", "5", "8", "10" };
+		int[] distinct = { 1, 1, 1, 1, 1, 1, 1, 3, 3, 2 };
+		catalogue.createAttribute("P", "dept", 10, new Histogram("1", bounds, distinct));
+		long heavy = selectCount(catalogue, "dept", "1");
+		TestData.check("value filling seven buckets is estimated at 700 tuples, got " + heavy, heavy == 700);
+		long light = selectCount(catalogue, "dept", "9");
+		TestData.check("value in a bucket of two values is estimated at 50 tuples, got " + light, light == 50);
+		long outside = selectCount(catalogue, "dept", "42");
+		TestData.check("value outside the histogram is estimated at one tuple, got " + outside, outside == 1);
+
+		// both sides of the join are dominated by the same value
+		catalogue.createRelation("E", 1000);
+		catalogue.createAttribute("E", "edept", 10, null,
+				new MostCommonValues(new String[] { "1" }, new double[] { 0.7 }));
+		catalogue.createRelation("D", 10);
+		catalogue.createAttribute("D", "ddept", 5, null,
+				new MostCommonValues(new String[] { "1" }, new double[] { 0.6 }));
+		Operator common = new Select(new Scan(catalogue.getRelation("E")), new Predicate(new Attribute("edept"), "1"));
+		new Estimator().estimate(common);
+		TestData.check("common value is estimated from its frequency, got " + common.getOutput().getTupleCount(),
+				common.getOutput().getTupleCount() == 700);
+		Operator rare = new Select(new Scan(catalogue.getRelation("E")), new Predicate(new Attribute("edept"), "2"));
+		new Estimator().estimate(rare);
+		TestData.check("other value shares the remaining tuples, got " + rare.getOutput().getTupleCount(),
+				rare.getOutput().getTupleCount() == 33);
+		Operator join = new Join(new Scan(catalogue.getRelation("E")), new Scan(catalogue.getRelation("D")),
+				new Predicate(new Attribute("edept"), new Attribute("ddept")));
+		new Estimator().estimate(join);
+		long joined = join.getOutput().getTupleCount();
+		// 0.7 * 0.6 for the common value, plus 0.3 * 0.4 spread over the nine
+		// other values of E, of 10000 pairs; the uniform estimate is 1000
+		TestData.check("join on a shared common value is estimated at 4333 tuples, got " + joined,
+				joined >= 4333 && joined <= 4334);
+
+		// dept and age are correlated: they take 60 combinations, not 420
+		catalogue.createRelation("Emp", 10000);
+		catalogue.createAttribute("Emp", "edept2", 10);
+		catalogue.createAttribute("Emp", "eage", 42);
+		catalogue.createAttributeGroup("Emp", new String[] { "edept2", "eage" }, 60);
+		Operator correlated = new Select(new Scan(catalogue.getRelation("Emp")),
+				new Predicate(new Attribute("edept2"), "Sales"));
+		correlated = new Select(correlated, new Predicate(new Attribute("eage"), "35"));
+		new Estimator().estimate(correlated);
+		long both = correlated.getOutput().getTupleCount();
+		TestData.check("selects on a correlated group are estimated as 1/V(group), got " + both,
+				both >= 166 && both <= 167);
+
+		catalogue.createRelation("L", 100000);
+		catalogue.createAttribute("L", "lk", 100000);
+		catalogue.createRelation("M", 100000);
+		catalogue.createAttribute("M", "mk", 1000);
+		Operator product = new Product(new Scan(catalogue.getRelation("L")), new Scan(catalogue.getRelation("M")));
+		new Estimator().estimate(product);
+		TestData.check("product of two 100000-tuple relations is estimated at 10^10 tuples",
+				product.getOutput().getTupleCount() == 10000000000L);
+		catalogue.createRelation("F", 4000000000L);
+		catalogue.createAttribute("F", "fk", 4000000000L);
+		Operator huge = new Product(new Scan(catalogue.getRelation("F")), new Scan(catalogue.getRelation("F")));
+		huge = new Product(huge, new Scan(catalogue.getRelation("F")));
+		new Estimator().estimate(huge);
+		TestData.check("product of three 4*10^9-tuple relations saturates",
+				huge.getOutput().getTupleCount() == Long.MAX_VALUE);
+		Operator fkJoin = new Join(new Scan(catalogue.getRelation("F")), new Scan(catalogue.getRelation("L")),
+				new Predicate(new Attribute("fk"), new Attribute("lk")));
+		new Estimator().estimate(fkJoin);
+		TestData.check("join of a 4*10^9-tuple relation on its key is estimated at 100000 tuples, got "
+				+ fkJoin.getOutput().getTupleCount(), fkJoin.getOutput().getTupleCount() == 100000);
+
+		TestData.finish();
+	}
+
+	private static long selectCount(Catalogue catalogue, String attr, String value) throws Exception {
+		Operator select = new Select(new Scan(catalogue.getRelation("P")), new Predicate(new Attribute(attr), value));
+		new Estimator().estimate(select);
+		return select.getOutput().getTupleCount();
+	}
+
+	private static boolean sameOutputs(Operator a, Operator b) {
+		if (a.getOutput().getTupleCount() != b.getOutput().getTupleCount()
+				|| a.getOutput().getAttributes().size() != b.getOutput().getAttributes().size()) {
+			return false;
+		}
+		if (a.getInputs() == null) {
+			return true;
+		}
+		for (int i = 0; i < a.getInputs().size(); i++) {
+			if (!sameOutputs(a.getInputs().get(i), b.getInputs().get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,206 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * This class executes query plans a tuple at a time against the data files
+ * in a directory (see DataDirectory).
+ *
+ * The executor visits a plan depth-first, so each operator is visited after
+ * its inputs; it keeps the iterators built for the inputs on a stack, and
+ * replaces them with the iterator for the operator that consumes them. Once
+ * the whole plan has been visited, the iterator for its root is left.
+ *
+ * Joins are run by the method chosen for them (see JoinMethod). Hash joins
+ * build their hash table on the input that the Estimator expects to be
+ * smaller, and a hash join whose build input exceeds the memory budget
+ * spills both inputs to temporary files, as do sorts that exceed it. Each
+ * hash join passes a filter of its build keys to the scan on its probe side
+ * that reads the probe key (see JoinFilter). If asked to, the executor
+ * first reduces the inputs of acyclic blocks of joins by semi-joins.
+ */
+public class Executor implements PlanVisitor {
+	private DataDirectory data;
+	private Stack<TupleIterator> iterators;
+	private long memoryBudget;
+	private List<JoinFilter> filters;
+	private boolean semiJoinReduction;
+	private List<SemiJoinReduction> reductions;
+
+	/**
+	 * Create a new executor
+	 * @param dataDir Directory holding the data files
+	 */
+	public Executor(String dataDir) {
+		this(new DataDirectory(dataDir));
+	}
+
+	/**
+	 * Create a new executor
+	 * @param data Directory holding the data files
+	 */
+	public Executor(DataDirectory data) {
+		this.data = data;
+		this.iterators = new Stack<TupleIterator>();
+		this.memoryBudget = BatchHashJoin.DEFAULT_MEMORY_BUDGET;
+	}
+
+	/**
+	 * Set the number of bytes the build input of each join may take up in
+	 * memory before the join spills to disk
+	 * @param memoryBudget Memory budget in bytes
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Set whether the inputs of acyclic blocks of joins are reduced by
+	 * semi-joins before they are joined (see SemiJoinReduction); they are
+	 * not by default. A block is only reduced if its inputs are expected to
+	 * fit in the memory budget together, since they are all held in memory.
+	 * @param semiJoinReduction True to reduce the inputs of joins
+	 */
+	public void setSemiJoinReduction(boolean semiJoinReduction) {
+		this.semiJoinReduction = semiJoinReduction;
+	}
+
+	/**
+	 * Return the dictionary used to encode the values in the tuples
+	 * @return Value dictionary
+	 */
+	public ValueDictionary getDictionary() {
+		return data.getDictionary();
+	}
+
+	/**
+	 * Return an iterator over the result of a plan; it must be opened
+	 * before use, and closed afterwards.
+	 * @param plan Root of the plan
+	 * @return Iterator for the root of the plan
+	 */
+	public TupleIterator build(Operator plan) {
+		iterators.clear();
+		// the estimates are used to choose the build side of hash joins
+		Estimator est = new Estimator();
+		est.estimate(plan);
+		filters = JoinFilter.forPlan(plan);
+		if (semiJoinReduction) {
+			reductions = SemiJoinReduction.forPlan(plan, memoryBudget);
+		} else {
+			reductions = new ArrayList<SemiJoinReduction>();
+		}
+		plan.accept(this);
+		return iterators.pop();
+	}
+
+	/**
+	 * Run a plan and return its result, with the values decoded
+	 * @param plan Root of the plan
+	 * @return List of tuples
+	 */
+	public List<String[]> execute(Operator plan) {
+		List<String[]> res = new ArrayList<String[]>();
+		TupleIterator iter = build(plan);
+		iter.open();
+		try {
+			int[] tuple;
+			while ((tuple = iter.next()) != null) {
+				res.add(decode(tuple));
+			}
+		} finally {
+			iter.close();
+		}
+		return res;
+	}
+
+	/**
+	 * Return the values of an encoded tuple
+	 * @param tuple Encoded tuple
+	 * @return Values
+	 */
+	public String[] decode(int[] tuple) {
+		String[] res = new String[tuple.length];
+		for (int i = 0; i < tuple.length; i++) {
+			res[i] = data.getDictionary().decode(tuple[i]);
+		}
+		return res;
+	}
+
+	public void visit(Scan op) {
+		TupleIterator iter = new ScanIterator(data.getSource((NamedRelation) op.getRelation(), op.getAttributes()));
+		for (JoinFilter filter : filters) {
+			if (filter.getScan() == op) {
+				iter = new JoinFilterIterator(iter, filter);
+			}
+		}
+		push(op, iter);
+	}
+
+	public void visit(IndexScan op) {
+		TupleIterator iter = new ScanIterator(data.getIndexSource((NamedRelation) op.getRelation(), op.getAttributes(), op.getPredicate()));
+		for (JoinFilter filter : filters) {
+			if (filter.getScan() == op) {
+				iter = new JoinFilterIterator(iter, filter);
+			}
+		}
+		push(op, iter);
+	}
+
+	public void visit(Project op) {
+		push(op, new ProjectIterator(iterators.pop(), op.getAttributes()));
+	}
+
+	public void visit(Select op) {
+		push(op, new SelectIterator(iterators.pop(), op.getPredicate(), data.getDictionary()));
+	}
+
+	public void visit(Product op) {
+		TupleIterator right = iterators.pop();
+		TupleIterator left = iterators.pop();
+		push(op, new ProductIterator(left, right));
+	}
+
+	public void visit(Join op) {
+		TupleIterator right = iterators.pop();
+		TupleIterator left = iterators.pop();
+		Predicate predicate = op.getPredicate();
+		if (op.getMethod() == JoinMethod.SORT_MERGE) {
+			// sort the inputs that are not already sorted on the join attributes
+			int[] columns = JoinIterator.joinColumns(left.getAttributes(), right.getAttributes(), predicate);
+			if (!PhysicalPlanner.isSortedOn(op.getLeft(), left.getAttributes().get(columns[0]))) {
+				left = new SortIterator(left, columns[0], memoryBudget);
+			}
+			if (!PhysicalPlanner.isSortedOn(op.getRight(), right.getAttributes().get(columns[1]))) {
+				right = new SortIterator(right, columns[1], memoryBudget);
+			}
+			iterators.push(new MergeJoinIterator(left, right, predicate));
+		} else if (op.getMethod() == JoinMethod.NESTED_LOOP) {
+			iterators.push(new JoinIterator(left, right, predicate));
+		} else {
+			boolean buildLeft = PhysicalPlanner.buildsLeft(op);
+			HashJoinIterator join = new HashJoinIterator(left, right, predicate, buildLeft, memoryBudget);
+			for (JoinFilter filter : filters) {
+				if (filter.getJoin() == op) {
+					join.setFilter(filter);
+				}
+			}
+			iterators.push(join);
+		}
+	}
+
+	/**
+	 * Push the iterator for an operator, reading it through its reduction if
+	 * it is a leaf of a block of joins that is reduced
+	 */
+	private void push(Operator op, TupleIterator iter) {
+		for (SemiJoinReduction reduction : reductions) {
+			if (reduction.getLeaves().contains(op)) {
+				iter = reduction.reduce(op, iter);
+			}
+		}
+		iterators.push(iter);
+	}
+}
@@ -0,0 +1,114 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test driver for the executors: checks that the optimised plan for each
+ * query gives the same result as its canonical plan, in which every
+ * predicate is a select above the product of all of the relations (so
+ * that joins, built on either side, are checked against products), that
+ * the batch executor gives the same results as the iterator executor, and
+ * that the results are not trivially empty. It also checks a select and a
+ * join against results counted directly from the data files, on a relation
+ * that spans several column batches, and that the scans of an optimised
+ * plan read only the attributes the plan needs. Finally, it converts the data files
+ * to column files and checks that scans of them, through a fresh data
+ * directory that has to load the dictionary, give the same results.
+ */
+public class ExecutorTest {
+	public static void main(String[] args) throws Exception {
+		Catalogue catalogue = createCatalogue();
+		DataDirectory data = TestData.create(catalogue);
+		try {
+			String[] queries = {
+				"SELECT ra,rb\nFROM R\nWHERE rb=\"3\"",
+				"SELECT ra,sa\nFROM R,S\nWHERE rb=sb",
+				"SELECT ra,sa\nFROM S,R\nWHERE sb=rb",
+				"SELECT ra,sa,ta\nFROM R,S,T\nWHERE rb=sb,sc=tb,ta=\"4\"",
+				"SELECT sa,ta\nFROM S,T"
+			};
+			List<List<String>> results = new ArrayList<List<String>>();
+			for (String query : queries) {
+				Operator canonical = TestData.query(catalogue, query);
+				Operator optimised = new Optimiser(catalogue).optimise(TestData.query(catalogue, query));
+				List<String> expected = TestData.rows(new Executor(data).execute(canonical));
+				String name = query.replace('\n', ' ');
+				results.add(expected);
+				TestData.check(name + ": " + expected.size() + " tuples", !expected.isEmpty());
+				TestData.check(name + ": optimised plan gives the same result",
+						TestData.rows(new Executor(data).execute(optimised)).equals(expected));
+				TestData.check(name + ": batch executor gives the same result",
+						TestData.rows(new BatchExecutor(data).execute(canonical)).equals(expected)
+								&& TestData.rows(new BatchExecutor(data).execute(optimised)).equals(expected));
+			}
+
+			List<String[]> selected = new BatchExecutor(data)
+					.execute(TestData.query(catalogue, "SELECT ra\nFROM R\nWHERE rb=\"3\""));
+			List<String[]> joined = new BatchExecutor(data)
+					.execute(TestData.query(catalogue, "SELECT ra,sa\nFROM R,S\nWHERE rb=sb"));
+			List<String[]> r = new Executor(data).execute(TestData.query(catalogue, "SELECT ra,rb\nFROM R"));
+			List<String[]> s = new Executor(data).execute(TestData.query(catalogue, "SELECT sa,sb\nFROM S"));
+			int matching = 0;
+			int pairs = 0;
+			for (String[] rt : r) {
+				matching += rt[1].equals("3") ? 1 : 0;
+				for (String[] st : s) {
+					pairs += rt[1].equals(st[1]) ? 1 : 0;
+				}
+			}
+			TestData.check("scans read every tuple", r.size() == 5000 && s.size() == 50);
+			TestData.check("select returns the matching tuples", selected.size() == matching);
+			TestData.check("join returns the matching pairs", joined.size() == pairs);
+			TestData.check("count() agrees with execute()", new BatchExecutor(data)
+					.count(TestData.query(catalogue, "SELECT ra,sa\nFROM R,S\nWHERE rb=sb")) == pairs);
+
+			Operator pruned = new Optimiser(catalogue).optimise(TestData.query(catalogue, "SELECT ra\nFROM R,S\nWHERE rb=sb"));
+			TestData.check("scans read only the attributes the plan needs: " + pruned,
+					scannedAttributes(pruned) == 3);
+
+			new ColumnFileWriter(data).write(catalogue);
+			DataDirectory columns = new DataDirectory(data.getDirectory().getPath());
+			for (int i = 0; i < queries.length; i++) {
+				Operator plan = new Optimiser(catalogue).optimise(TestData.query(catalogue, queries[i]));
+				String name = queries[i].replace('\n', ' ');
+				TestData.check(name + ": column files give the same result",
+						TestData.rows(new Executor(columns).execute(plan)).equals(results.get(i))
+								&& TestData.rows(new BatchExecutor(columns).execute(plan)).equals(results.get(i)));
+			}
+		} finally {
+			TestData.delete(data);
+		}
+		TestData.finish();
+	}
+
+	/**
+	 * Return the number of attributes read by the scans of a plan
+	 */
+	private static int scannedAttributes(Operator op) {
+		if (op instanceof Scan) {
+			return ((Scan) op).getAttributes().size();
+		}
+		int res = 0;
+		for (Operator input : op.getInputs()) {
+			res += scannedAttributes(input);
+		}
+		return res;
+	}
+
+	public static Catalogue createCatalogue() {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("R", 5000);
+		cat.createAttribute("R", "ra", 5000);
+		cat.createAttribute("R", "rb", 200);
+		cat.createRelation("S", 50);
+		cat.createAttribute("S", "sa", 50);
+		cat.createAttribute("S", "sb", 200);
+		cat.createAttribute("S", "sc", 5);
+		cat.createRelation("T", 10);
+		cat.createAttribute("T", "ta", 10);
+		cat.createAttribute("T", "tb", 5);
+
+		return cat;
+	}
+}
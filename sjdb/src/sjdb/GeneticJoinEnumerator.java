@@ -0,0 +1,286 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class chooses a join order for a set of input subplans using a
+ * genetic search in the style of PostgreSQL's GEQO, seeded with the plan
+ * found by greedy operator ordering.
+ *
+ * Each individual in the pool is a permutation of the inputs. A permutation
+ * is turned into a plan by taking the inputs in order and joining each one
+ * to any partial plan it is connected to, merging partial plans as they
+ * become connected (so the resulting trees may be bushy); any partial plans
+ * left at the end are combined with products, smallest first.
+ *
+ * The pool evolves in steady state: each generation breeds one child from
+ * two parents chosen with a bias towards cheaper individuals, and the child
+ * replaces the most expensive individual if it is cheaper. Both the pool
+ * size and the number of generations are bounded, so planning time stays
+ * bounded however wide the query is.
+ *
+ * The search is seeded with a fixed value, so the same query always
+ * produces the same plan.
+ */
+public class GeneticJoinEnumerator {
+	private static final int MIN_POOL_SIZE = 16;
+	private static final int MAX_POOL_SIZE = 128;
+	private static final int GENERATIONS_PER_INDIVIDUAL = 4;
+	private static final double SELECTION_BIAS = 2.0;
+	private static final double MUTATION_RATE = 0.1;
+	private static final long SEED = 0x5eed;
+
+	private JoinGraph graph;
+	private Random random;
+
+	/**
+	 * Create a new genetic join enumerator
+	 * @param inputs Subplans to be joined
+	 * @param predicates Join predicates over the attributes of the inputs
+	 */
+	public GeneticJoinEnumerator(List<Operator> inputs, List<Predicate> predicates) {
+		this(new JoinGraph(inputs, predicates));
+	}
+
+	/**
+	 * Create a new genetic join enumerator
+	 * @param graph Join graph over the subplans to be joined
+	 */
+	public GeneticJoinEnumerator(JoinGraph graph) {
+		this.graph = graph;
+		this.random = new Random(SEED);
+	}
+
+	/**
+	 * Return a plan that joins all of the inputs and applies all of the
+	 * join predicates; it is never more expensive than the greedy plan.
+	 * @return Root of the plan
+	 */
+	public Operator enumerate() {
+		int n = graph.size();
+		int poolSize = Math.max(MIN_POOL_SIZE, Math.min(2 * n, MAX_POOL_SIZE));
+		int generations = GENERATIONS_PER_INDIVIDUAL * poolSize;
+
+		GreedyJoinEnumerator greedy = new GreedyJoinEnumerator(graph);
+		Operator greedyPlan = greedy.enumerate();
+
+		// seed the pool with the inputs in the order the greedy plan uses them
+		List<Individual> pool = new ArrayList<>();
+		pool.add(evaluate(greedyOrder(greedyPlan)));
+		while (pool.size() < poolSize) {
+			pool.add(evaluate(randomOrder(n)));
+		}
+		pool.sort(new Comparator<Individual>() {
+			@Override
+			public int compare(Individual individualA, Individual individualB) {
+				return Long.compare(individualA.cost, individualB.cost);
+			}
+		});
+
+		for (int generation = 0; generation < generations; generation++) {
+			int[] mother = pool.get(selectParent(poolSize)).order;
+			int[] father = pool.get(selectParent(poolSize)).order;
+			int[] childOrder = orderCrossover(mother, father);
+			if (random.nextDouble() < MUTATION_RATE) {
+				swapMutation(childOrder);
+			}
+
+			Individual child = evaluate(childOrder);
+			if (child.cost < pool.get(poolSize - 1).cost) {
+				pool.remove(poolSize - 1);
+				int pos = 0;
+				while (pos < pool.size() && pool.get(pos).cost <= child.cost) {
+					pos++;
+				}
+				pool.add(pos, child);
+			}
+		}
+
+		if (greedy.getCost() <= pool.get(0).cost) {
+			return greedyPlan;
+		}
+		return pool.get(0).plan;
+	}
+
+	/**
+	 * Build and cost the plan for a permutation of the inputs.
+	 * @param order Permutation of the input numbers
+	 * @return Evaluated individual
+	 */
+	private Individual evaluate(int[] order) {
+		List<Clump> clumps = new ArrayList<>();
+
+		for (int i : order) {
+			mergeClump(clumps, new Clump(graph.getInput(i), 1L << i, 0));
+		}
+
+		// combine any disconnected partial plans with products
+		clumps.sort(new Comparator<Clump>() {
+			@Override
+			public int compare(Clump clumpA, Clump clumpB) {
+				return Long.compare(clumpA.plan.getOutput().getTupleCount(),
+						clumpB.plan.getOutput().getTupleCount());
+			}
+		});
+		Clump res = clumps.get(0);
+		for (int i = 1; i < clumps.size(); i++) {
+			res = join(res, clumps.get(i));
+		}
+
+		return new Individual(order, res.plan, res.cost);
+	}
+
+	/**
+	 * Add a partial plan to the list, first joining it with the earliest
+	 * partial plan it is connected to, and repeating with the result.
+	 * @param clumps Partial plans built so far
+	 * @param clump New partial plan
+	 */
+	private void mergeClump(List<Clump> clumps, Clump clump) {
+		for (int i = 0; i < clumps.size(); i++) {
+			Clump old = clumps.get(i);
+			if (graph.isConnected(old.set, clump.set)) {
+				clumps.remove(i);
+				mergeClump(clumps, join(old, clump));
+				return;
+			}
+		}
+		clumps.add(clump);
+	}
+
+	private Clump join(Clump left, Clump right) {
+		Operator newNode = graph.join(left.plan, right.plan, left.set, right.set);
+		long cost = Cardinality.add(Cardinality.add(left.cost, right.cost), newNode.getOutput().getTupleCount());
+		return new Clump(newNode, left.set | right.set, cost);
+	}
+
+	/**
+	 * Return the input numbers in the order in which the inputs appear in a
+	 * plan built from them.
+	 * @param plan Plan over the inputs
+	 * @return Permutation of the input numbers
+	 */
+	private int[] greedyOrder(Operator plan) {
+		IdentityHashMap<Operator, Integer> inputNumbers = new IdentityHashMap<>();
+		for (int i = 0; i < graph.size(); i++) {
+			inputNumbers.put(graph.getInput(i), i);
+		}
+		List<Integer> order = new ArrayList<>();
+		collectInputs(plan, inputNumbers, order);
+
+		int[] res = new int[order.size()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = order.get(i);
+		}
+		return res;
+	}
+
+	private void collectInputs(Operator node, IdentityHashMap<Operator, Integer> inputNumbers, List<Integer> order) {
+		if (inputNumbers.containsKey(node)) {
+			order.add(inputNumbers.get(node));
+			return;
+		}
+		for (Operator child : node.getInputs()) {
+			collectInputs(child, inputNumbers, order);
+		}
+	}
+
+	private int[] randomOrder(int n) {
+		int[] res = new int[n];
+		for (int i = 0; i < n; i++) {
+			res[i] = i;
+		}
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = res[i];
+			res[i] = res[j];
+			res[j] = tmp;
+		}
+		return res;
+	}
+
+	/**
+	 * Choose a position in the pool, which is sorted by cost, with a linear
+	 * bias towards the front (as in GEQO).
+	 * @param poolSize Size of the pool
+	 * @return Position of the chosen parent
+	 */
+	private int selectParent(int poolSize) {
+		double bias = SELECTION_BIAS;
+		double index = poolSize * (bias - Math.sqrt(bias * bias - 4.0 * (bias - 1.0) * random.nextDouble()))
+				/ 2.0 / (bias - 1.0);
+		return Math.min((int) index, poolSize - 1);
+	}
+
+	/**
+	 * Order crossover (OX1): copy a random slice of the mother, and fill the
+	 * remaining positions with the missing inputs in the father's order.
+	 * @param mother Parent permutation
+	 * @param father Parent permutation
+	 * @return Child permutation
+	 */
+	private int[] orderCrossover(int[] mother, int[] father) {
+		int n = mother.length;
+		int start = random.nextInt(n);
+		int end = start + random.nextInt(n - start);
+
+		int[] child = new int[n];
+		boolean[] used = new boolean[n];
+		for (int i = start; i <= end; i++) {
+			child[i] = mother[i];
+			used[mother[i]] = true;
+		}
+
+		int pos = (end + 1) % n;
+		for (int k = 0; k < n; k++) {
+			int gene = father[(end + 1 + k) % n];
+			if (!used[gene]) {
+				child[pos] = gene;
+				pos = (pos + 1) % n;
+			}
+		}
+		return child;
+	}
+
+	private void swapMutation(int[] order) {
+		int i = random.nextInt(order.length);
+		int j = random.nextInt(order.length);
+		int tmp = order[i];
+		order[i] = order[j];
+		order[j] = tmp;
+	}
+
+	/**
+	 * A partial plan over a connected set of inputs, with its cost.
+	 */
+	private static class Clump {
+		private Operator plan;
+		private long set;
+		private long cost;
+
+		private Clump(Operator plan, long set, long cost) {
+			this.plan = plan;
+			this.set = set;
+			this.cost = cost;
+		}
+	}
+
+	/**
+	 * A permutation of the inputs together with its plan and cost.
+	 */
+	private static class Individual {
+		private int[] order;
+		private Operator plan;
+		private long cost;
+
+		private Individual(int[] order, Operator plan, long cost) {
+			this.order = order;
+			this.plan = plan;
+			this.cost = cost;
+		}
+	}
+}
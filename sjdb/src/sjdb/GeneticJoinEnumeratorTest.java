@@ -0,0 +1,153 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test driver for the greedy and genetic join enumerators: checks that the
+ * plans they return for a chain too wide for dynamic programming join every
+ * input without products, that the genetic plan is never more expensive
+ * than the greedy one and does not change from run to run, and that neither
+ * beats the dynamic programming plan for a query narrow enough to have one.
+ */
+public class GeneticJoinEnumeratorTest {
+	private static final int WIDE = 24;
+	private static final int NARROW = 14;
+	private static final int[] SIZES = { 10, 40, 20, 80, 5 };
+
+	public static void main(String[] args) throws Exception {
+		Catalogue catalogue = createCatalogue(WIDE);
+
+		List<Operator> inputs = inputs(catalogue, WIDE);
+		List<Predicate> predicates = predicates(WIDE);
+		GreedyJoinEnumerator greedy = new GreedyJoinEnumerator(inputs, predicates);
+		Operator greedyPlan = greedy.enumerate();
+		Operator geneticPlan = new GeneticJoinEnumerator(inputs, predicates).enumerate();
+		for (Operator plan : new Operator[] { greedyPlan, geneticPlan }) {
+			String name = plan == greedyPlan ? "greedy" : "genetic";
+			TestData.check("wide: " + name + " plan joins every input", scans(plan) == WIDE);
+			TestData.check("wide: " + name + " plan has no products", products(plan) == 0);
+			TestData.check("wide: " + name + " plan applies every join predicate",
+					joinPredicates(plan) == predicates.size());
+		}
+		TestData.check("wide: greedy cost " + greedy.getCost() + " equals the cost of its plan",
+				greedy.getCost() == cost(greedyPlan));
+		TestData.check("wide: genetic cost " + cost(geneticPlan) + " is no more than greedy cost " + greedy.getCost(),
+				cost(geneticPlan) <= greedy.getCost());
+		Operator again = new GeneticJoinEnumerator(inputs, predicates).enumerate();
+		TestData.check("wide: genetic plan is the same on every run", cost(again) == cost(geneticPlan));
+
+		inputs = inputs(catalogue, NARROW);
+		predicates = predicates(NARROW);
+		long best = cost(new JoinEnumerator(inputs, predicates).enumerate());
+		long genetic = cost(new GeneticJoinEnumerator(inputs, predicates).enumerate());
+		TestData.check("narrow: genetic cost " + genetic + " is no less than dynamic programming cost " + best,
+				genetic >= best);
+
+		// a query as narrow as the default limit is planned by dynamic programming
+		StringBuilder query = new StringBuilder("SELECT *\nFROM R0");
+		for (int i = 1; i < NARROW; i++) {
+			query.append(", R").append(i);
+		}
+		query.append("\nWHERE f0=k1");
+		for (int i = 1; i < NARROW - 1; i++) {
+			query.append(", f").append(i).append("=k").append(i + 1);
+		}
+		Operator plan = new Optimiser(catalogue).optimise(TestData.query(catalogue, query.toString()));
+		plan.accept(new Estimator());
+		TestData.check("narrow: optimiser cost " + cost(plan) + " equals dynamic programming cost " + best,
+				cost(plan) == best);
+
+		TestData.finish();
+	}
+
+	/**
+	 * Create a chain of relations R0..Rn-1, where fi in Ri refers to the key
+	 * ki+1 of the next relation
+	 */
+	public static Catalogue createCatalogue(int n) {
+		Catalogue cat = new Catalogue();
+		for (int i = 0; i < n; i++) {
+			int size = SIZES[i % SIZES.length];
+			cat.createRelation("R" + i, size);
+			cat.createAttribute("R" + i, "k" + i, size);
+			cat.createAttribute("R" + i, "f" + i, Math.min(size, SIZES[(i + 1) % SIZES.length]));
+		}
+		return cat;
+	}
+
+	private static List<Operator> inputs(Catalogue catalogue, int n) throws Exception {
+		Estimator est = new Estimator();
+		List<Operator> res = new ArrayList<Operator>();
+		for (int i = 0; i < n; i++) {
+			Operator input = new Scan(catalogue.getRelation("R" + i));
+			input.accept(est);
+			res.add(input);
+		}
+		return res;
+	}
+
+	private static List<Predicate> predicates(int n) {
+		List<Predicate> res = new ArrayList<Predicate>();
+		for (int i = 0; i + 1 < n; i++) {
+			res.add(new Predicate(new Attribute("f" + i), new Attribute("k" + (i + 1))));
+		}
+		return res;
+	}
+
+	/**
+	 * Return the cost of a plan: the sum of the tuple counts of the results
+	 * of its joins and products, each with the selects directly above it
+	 */
+	private static long cost(Operator op) {
+		return cost(op, -1);
+	}
+
+	private static long cost(Operator op, long above) {
+		long count = above < 0 ? op.getOutput().getTupleCount() : above;
+		if (op instanceof Select) {
+			return cost(((Select) op).getInput(), count);
+		}
+		if (op instanceof Project) {
+			return cost(((Project) op).getInput(), -1);
+		}
+		if (op instanceof Scan) {
+			return 0;
+		}
+		long res = count;
+		for (Operator input : op.getInputs()) {
+			res += cost(input, -1);
+		}
+		return res;
+	}
+
+	private static int scans(Operator op) {
+		int res = op instanceof Scan ? 1 : 0;
+		if (op.getInputs() != null) {
+			for (Operator input : op.getInputs()) {
+				res += scans(input);
+			}
+		}
+		return res;
+	}
+
+	private static int products(Operator op) {
+		int res = op instanceof Product ? 1 : 0;
+		if (op.getInputs() != null) {
+			for (Operator input : op.getInputs()) {
+				res += products(input);
+			}
+		}
+		return res;
+	}
+
+	private static int joinPredicates(Operator op) {
+		int res = op instanceof Join || (op instanceof Select && !((Select) op).getPredicate().equalsValue()) ? 1 : 0;
+		if (op.getInputs() != null) {
+			for (Operator input : op.getInputs()) {
+				res += joinPredicates(input);
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,95 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class chooses a join order for a set of input subplans using greedy
+ * operator ordering (GOO): starting with one plan per input, it repeatedly
+ * joins the pair of plans with the smallest estimated result until a single
+ * plan remains. Pairs connected by a join predicate are always preferred to
+ * cross products.
+ *
+ * Planning takes time cubic in the number of inputs, so it remains usable
+ * for queries that are far too wide for the JoinEnumerator.
+ */
+public class GreedyJoinEnumerator {
+	private JoinGraph graph;
+	private long cost;
+
+	/**
+	 * Create a new greedy join enumerator
+	 * @param inputs Subplans to be joined
+	 * @param predicates Join predicates over the attributes of the inputs
+	 */
+	public GreedyJoinEnumerator(List<Operator> inputs, List<Predicate> predicates) {
+		this(new JoinGraph(inputs, predicates));
+	}
+
+	/**
+	 * Create a new greedy join enumerator
+	 * @param graph Join graph over the subplans to be joined
+	 */
+	public GreedyJoinEnumerator(JoinGraph graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * Return a plan that joins all of the inputs and applies all of the
+	 * join predicates.
+	 * @return Root of the plan
+	 */
+	public Operator enumerate() {
+		List<Operator> plans = new ArrayList<>();
+		List<Long> sets = new ArrayList<>();
+		for (int i = 0; i < graph.size(); i++) {
+			plans.add(graph.getInput(i));
+			sets.add(1L << i);
+		}
+		cost = 0;
+
+		while (plans.size() > 1) {
+			long bestSize = Long.MAX_VALUE;
+			int bestLeft = -1;
+			int bestRight = -1;
+			boolean bestConnected = false;
+
+			for (int i = 0; i < plans.size(); i++) {
+				for (int j = i + 1; j < plans.size(); j++) {
+					boolean connected = graph.isConnected(sets.get(i), sets.get(j));
+					if (bestConnected && !connected) {
+						continue;
+					}
+					long size = graph.getTupleCount(plans.get(i), plans.get(j), sets.get(i), sets.get(j));
+					if (bestLeft < 0 || (connected && !bestConnected) || size < bestSize) {
+						bestSize = size;
+						bestLeft = i;
+						bestRight = j;
+						bestConnected = connected;
+					}
+				}
+			}
+
+			Operator bestNode = graph.join(plans.get(bestLeft), plans.get(bestRight),
+					sets.get(bestLeft), sets.get(bestRight));
+			cost = Cardinality.add(cost, bestSize);
+			long set = sets.get(bestLeft) | sets.get(bestRight);
+			// remove the right plan first so that the left index stays valid
+			plans.remove(bestRight);
+			sets.remove(bestRight);
+			plans.set(bestLeft, bestNode);
+			sets.set(bestLeft, set);
+		}
+
+		return plans.get(0);
+	}
+
+	/**
+	 * Return the cost of the plan returned by the last call to enumerate(),
+	 * as the sum of the tuple counts of its intermediate results.
+	 * @return Plan cost
+	 */
+	public long getCost() {
+		return cost;
+	}
+}
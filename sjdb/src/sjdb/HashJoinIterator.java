@@ -0,0 +1,329 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements the Join operator as a hash join: the tuples of the
+ * build input are read into memory and indexed by their join attribute in
+ * an IntHashTable when the iterator is opened, and the tuples of the other
+ * (probe) input are then streamed past the table.
+ *
+ * Either input may be the build input, but the tuples produced always have
+ * the attributes of the left input followed by those of the right input.
+ *
+ * If the build input does not fit in the memory budget, both inputs are
+ * partitioned to temporary files and joined a partition at a time, in the
+ * same way as by BatchHashJoin.
+ *
+ * As in BatchHashJoin, a join given a JoinFilter publishes a Bloom filter of
+ * its build keys unless it spills.
+ */
+public class HashJoinIterator implements TupleIterator {
+	private Predicate predicate;
+	private long memoryBudget;
+	private int level;
+
+	private TupleIterator build;
+	private TupleIterator probe;
+	private boolean buildLeft;
+	private int buildKey;
+	private int probeKey;
+	private List<Attribute> attributes;
+	private JoinFilter filter;
+
+	private List<int[]> buildTuples;
+	private IntHashTable table;
+	private int[] probeTuple;
+	private int match;
+
+	private List<SpillFile> buildParts;
+	private List<SpillFile> probeParts;
+	private long buildRowCount;
+	private int part;
+	private HashJoinIterator partJoin;
+
+	/**
+	 * Create a new hash join iterator
+	 * @param left Left input iterator
+	 * @param right Right input iterator
+	 * @param predicate Join predicate, of the form attr=attr
+	 * @param buildLeft True to build the hash table on the left input, false
+	 * to build it on the right input
+	 */
+	public HashJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate, boolean buildLeft) {
+		this(left, right, predicate, buildLeft, BatchHashJoin.DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Create a new hash join iterator
+	 * @param left Left input iterator
+	 * @param right Right input iterator
+	 * @param predicate Join predicate, of the form attr=attr
+	 * @param buildLeft True to build the hash table on the left input, false
+	 * to build it on the right input
+	 * @param memoryBudget Number of bytes the build input may take up in
+	 * memory before both inputs are spilled to disk
+	 */
+	public HashJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate, boolean buildLeft, long memoryBudget) {
+		this(left, right, predicate, buildLeft, memoryBudget, 0);
+	}
+
+	private HashJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate, boolean buildLeft, long memoryBudget, int level) {
+		this.predicate = predicate;
+		this.memoryBudget = memoryBudget;
+		this.level = level;
+		int[] columns = JoinIterator.joinColumns(left.getAttributes(), right.getAttributes(), predicate);
+		this.buildLeft = buildLeft;
+		this.build = buildLeft ? left : right;
+		this.probe = buildLeft ? right : left;
+		this.buildKey = buildLeft ? columns[0] : columns[1];
+		this.probeKey = buildLeft ? columns[1] : columns[0];
+		this.attributes = new ArrayList<Attribute>(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+
+	/**
+	 * Set the join filter to which a Bloom filter of the build keys is
+	 * published
+	 * @param filter Join filter
+	 */
+	public void setFilter(JoinFilter filter) {
+		this.filter = filter;
+	}
+
+	@Override
+	public void open() {
+		buildTuples = new ArrayList<int[]>();
+		table = new IntHashTable(ColumnBatch.DEFAULT_CAPACITY);
+		long rowBytes = rowBytes(build.getAttributes().size());
+		boolean fits = true;
+		build.open();
+		try {
+			int[] tuple;
+			while (fits && (tuple = build.next()) != null) {
+				// rows are numbered in insertion order, as in buildTuples
+				table.insert(tuple[buildKey]);
+				buildTuples.add(tuple);
+				fits = buildTuples.size() * rowBytes <= memoryBudget;
+			}
+			if (!fits) {
+				table = null;
+				partitionBuild();
+			}
+		} finally {
+			build.close();
+		}
+
+		if (!fits) {
+			partitionProbe();
+			part = -1;
+			partJoin = null;
+			return;
+		}
+		if (filter != null) {
+			BloomFilter bloom = new BloomFilter(buildTuples.size());
+			for (int[] tuple : buildTuples) {
+				bloom.add(tuple[buildKey]);
+			}
+			filter.publish(bloom);
+		}
+		probe.open();
+		match = -1;
+	}
+
+	@Override
+	public int[] next() {
+		if (buildParts != null) {
+			return nextPartition();
+		}
+		while (match < 0) {
+			probeTuple = probe.next();
+			if (probeTuple == null) {
+				return null;
+			}
+			match = table.first(probeTuple[probeKey]);
+		}
+		int[] buildTuple = buildTuples.get(match);
+		match = table.next(match);
+		if (buildLeft) {
+			return ProductIterator.concatenate(buildTuple, probeTuple);
+		}
+		return ProductIterator.concatenate(probeTuple, buildTuple);
+	}
+
+	@Override
+	public void close() {
+		if (buildParts != null) {
+			if (partJoin != null) {
+				partJoin.close();
+				partJoin = null;
+			}
+			deleteAll(buildParts);
+			deleteAll(probeParts);
+			buildParts = null;
+			probeParts = null;
+			return;
+		}
+		probe.close();
+		buildTuples = null;
+		table = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Return the next tuple of the join of the spilled partitions, moving
+	 * on to the next pair of partitions when one is exhausted
+	 */
+	private int[] nextPartition() {
+		while (true) {
+			if (partJoin != null) {
+				int[] tuple = partJoin.next();
+				if (tuple != null) {
+					return tuple;
+				}
+				partJoin.close();
+				partJoin = null;
+			}
+			if (part >= 0 && part < buildParts.size()) {
+				buildParts.get(part).delete();
+				if (level < BatchHashJoin.MAX_LEVEL) {
+					probeParts.get(part).delete();
+				}
+			}
+			if (part + 1 >= buildParts.size()) {
+				part = buildParts.size();
+				return null;
+			}
+			part++;
+			if (buildParts.get(part).size() > 0 && probeParts.get(part).size() > 0) {
+				partJoin = partitionJoin(part);
+				partJoin.open();
+			}
+		}
+	}
+
+	/**
+	 * Return a join of the given pair of partitions, which reads them from
+	 * their files
+	 */
+	private HashJoinIterator partitionJoin(int i) {
+		SpillFile buildPart = buildParts.get(i);
+		TupleIterator buildInput = buildPart.tupleReader();
+		TupleIterator probeInput = probeParts.get(i).tupleReader();
+		int partLevel = level + 1;
+		long partBudget = memoryBudget;
+		if (level >= BatchHashJoin.MAX_LEVEL) {
+			// the partition is a chunk, which fits by construction
+			partBudget = Long.MAX_VALUE;
+		} else if (buildPart.size() == buildRowCount) {
+			// splitting did not help, so go straight to chunks
+			partLevel = BatchHashJoin.MAX_LEVEL;
+		}
+		if (buildLeft) {
+			return new HashJoinIterator(buildInput, probeInput, predicate, true, partBudget, partLevel);
+		}
+		return new HashJoinIterator(probeInput, buildInput, predicate, false, partBudget, partLevel);
+	}
+
+	/**
+	 * Write the build tuples read so far, and the rest of the build input, to
+	 * partition files, as in BatchHashJoin
+	 */
+	private void partitionBuild() {
+		long chunkRows = Math.max(memoryBudget / rowBytes(build.getAttributes().size()), 1);
+		buildParts = new ArrayList<SpillFile>();
+		int fanout = level < BatchHashJoin.MAX_LEVEL ? BatchHashJoin.FANOUT : 1;
+		for (int i = 0; i < fanout; i++) {
+			buildParts.add(new SpillFile(build.getAttributes()));
+		}
+		buildRowCount = 0;
+
+		for (int[] tuple : buildTuples) {
+			buildTarget(tuple[buildKey], chunkRows).append(tuple);
+		}
+		buildTuples = null;
+
+		int[] tuple;
+		while ((tuple = build.next()) != null) {
+			buildTarget(tuple[buildKey], chunkRows).append(tuple);
+		}
+		for (SpillFile file : buildParts) {
+			file.finish();
+		}
+	}
+
+	/**
+	 * Return the partition file for the next build tuple
+	 */
+	private SpillFile buildTarget(int key, long chunkRows) {
+		buildRowCount++;
+		if (level < BatchHashJoin.MAX_LEVEL) {
+			return buildParts.get(BatchHashJoin.partition(key, level));
+		}
+		SpillFile chunk = buildParts.get(buildParts.size() - 1);
+		if (chunk.size() == chunkRows) {
+			chunk.finish();
+			chunk = new SpillFile(build.getAttributes());
+			buildParts.add(chunk);
+		}
+		return chunk;
+	}
+
+	/**
+	 * Write the probe input to partition files matching those of the build
+	 * input, dropping partitions whose build side is empty
+	 */
+	private void partitionProbe() {
+		probeParts = new ArrayList<SpillFile>();
+		if (level < BatchHashJoin.MAX_LEVEL) {
+			for (int i = 0; i < BatchHashJoin.FANOUT; i++) {
+				probeParts.add(new SpillFile(probe.getAttributes()));
+			}
+		} else {
+			// every chunk is joined with the whole of the probe input
+			SpillFile file = new SpillFile(probe.getAttributes());
+			for (int i = 0; i < buildParts.size(); i++) {
+				probeParts.add(file);
+			}
+		}
+
+		probe.open();
+		try {
+			int[] tuple;
+			while ((tuple = probe.next()) != null) {
+				int i = level < BatchHashJoin.MAX_LEVEL ? BatchHashJoin.partition(tuple[probeKey], level) : 0;
+				if (buildParts.get(i).size() > 0) {
+					probeParts.get(i).append(tuple);
+				}
+			}
+		} finally {
+			probe.close();
+		}
+		for (SpillFile file : probeParts) {
+			file.finish();
+		}
+	}
+
+	private static void deleteAll(List<SpillFile> files) {
+		if (files != null) {
+			for (SpillFile file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Estimate the number of bytes taken up by a tuple held in memory,
+	 * including the array header and its share of the hash table
+	 * @param columnCount Number of attributes in the tuple
+	 * @return Byte count
+	 */
+	static long rowBytes(int columnCount) {
+		return 4L * columnCount + 40;
+	}
+}
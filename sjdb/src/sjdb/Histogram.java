@@ -0,0 +1,103 @@
+package sjdb;
+
+/**
+ * This class represents an equi-depth histogram over the values of an
+ * attribute: the values are divided into buckets that each hold the same
+ * number of tuples, and each bucket records its upper bound and the number
+ * of distinct values that fall within it.
+ *
+ * Bucket i holds the values above the upper bound of bucket i-1, up to and
+ * including its own upper bound; the first bucket starts at (and includes)
+ * the lowest value of the attribute. A value that makes up more than one
+ * bucket's worth of tuples appears as the upper bound of several buckets
+ * in a row, and the buckets between two equal bounds hold only that value.
+ *
+ * Values are compared as numbers when both can be read as numbers, and as
+ * strings otherwise.
+ */
+public class Histogram {
+	private String lowest;
+	private String[] bounds;
+	private int[] distinct;
+
+	/**
+	 * Create a new histogram
+	 * @param lowest Lowest value of the attribute
+	 * @param bounds Upper bound of each bucket, in ascending order
+	 * @param distinct Number of distinct values in each bucket
+	 */
+	public Histogram(String lowest, String[] bounds, int[] distinct) {
+		this.lowest = lowest;
+		this.bounds = bounds;
+		this.distinct = distinct;
+	}
+
+	/**
+	 * Return the number of buckets
+	 * @return Bucket count
+	 */
+	public int getBucketCount() {
+		return bounds.length;
+	}
+
+	/**
+	 * Return the estimated fraction of tuples whose value is equal to the
+	 * given value; this is zero for values outside the range of the histogram.
+	 * @param value Value to be compared with
+	 * @return Selectivity of attr=value
+	 */
+	public double getSelectivity(String value) {
+		double res = 0;
+		String lower = lowest;
+		for (int i = 0; i < bounds.length; i++) {
+			String upper = bounds[i];
+			boolean inBucket;
+			if (compare(lower, upper) == 0) {
+				// a bucket with equal bounds holds only that value
+				inBucket = compare(value, upper) == 0;
+			} else if (i == 0) {
+				inBucket = compare(value, lower) >= 0 && compare(value, upper) <= 0;
+			} else {
+				inBucket = compare(value, lower) > 0 && compare(value, upper) <= 0;
+			}
+			if (inBucket) {
+				res += 1.0 / bounds.length / Math.max(distinct[i], 1);
+			}
+			lower = upper;
+		}
+		return res;
+	}
+
+	/**
+	 * Compare two values in the order used by the histogram
+	 * @param valueA Value
+	 * @param valueB Value
+	 * @return Negative, zero or positive as valueA is below, equal to or
+	 * above valueB
+	 */
+	static int compare(String valueA, String valueB) {
+		try {
+			return Double.compare(Double.parseDouble(valueA), Double.parseDouble(valueB));
+		} catch (NumberFormatException e) {
+			return valueA.compareTo(valueB);
+		}
+	}
+
+	/**
+	 * Return the histogram in the form used by the serialised catalogue:
+	 * <lowest value>|<upper bound>/<distinct values>|..., with the values
+	 * escaped (see CatalogueWriter)
+	 * @return Serialised histogram
+	 */
+	public String render() {
+		String ret = CatalogueWriter.escape(lowest);
+		for (int i = 0; i < bounds.length; i++) {
+			ret += "|" + CatalogueWriter.escape(bounds[i]) + "/" + distinct[i];
+		}
+		return ret;
+	}
+
+	public String toString() {
+		return render();
+	}
+}
@@ -0,0 +1,91 @@
+package sjdb;
+
+/**
+ * This class estimates the number of distinct values in a stream using the
+ * HyperLogLog sketch of Flajolet et al., in a fixed amount of memory (one
+ * byte per register) however many values are added.
+ *
+ * Each value is hashed to 64 bits; the top bits choose a register, and the
+ * register keeps the longest run of leading zeros seen in the remaining
+ * bits. With 2^14 registers the standard error is about 0.8%. Small counts
+ * are corrected using linear counting, as in the original paper.
+ */
+public class HyperLogLog {
+	private static final int DEFAULT_PRECISION = 14;
+
+	private int precision;
+	private byte[] registers;
+
+	/**
+	 * Create a sketch with the default precision
+	 */
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Create a sketch with 2^precision registers
+	 * @param precision Number of bits of each hash used to choose a register
+	 */
+	public HyperLogLog(int precision) {
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Add a value to the sketch
+	 * @param value
+	 */
+	public void add(String value) {
+		long hash = hash(value);
+		int register = (int) (hash >>> (64 - precision));
+		// the guard bit bounds the run of zeros when the remaining bits are all zero
+		long rest = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > registers[register]) {
+			registers[register] = rank;
+		}
+	}
+
+	/**
+	 * Return the estimated number of distinct values added
+	 * @return Distinct value count
+	 */
+	public long estimate() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+		double alpha = 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+
+		if (estimate <= 2.5 * m && zeros > 0) {
+			// linear counting is more accurate for small counts
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/*
+	 * 64-bit FNV-1a over the characters of the value, followed by the
+	 * MurmurHash3 finaliser to spread the bits.
+	 */
+	private static long hash(String value) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,125 @@
+package sjdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * This class reads the tuples of a named relation that satisfy a predicate
+ * of the form attr=value, for the IndexScan operator. If the relation has a
+ * column file and an index file for the attribute (see IndexWriter), the
+ * numbers of the matching rows are looked up in the index and only those
+ * rows are read from the column file. Otherwise, or if the index was built
+ * for a different number of rows than the column file now holds, the whole
+ * relation is read and the matching rows are kept, as a Select over a Scan
+ * would. ColumnFileWriter deletes the index files of a relation whenever it
+ * replaces the column file, so an index is never read against rows it was
+ * not built from.
+ */
+public class IndexColumnSource implements ColumnSource {
+	private DataDirectory data;
+	private NamedRelation relation;
+	private List<Attribute> attributes;
+	private int keyColumn;
+	private int valueCode;
+
+	private MappedColumnSource mapped;
+	private int[] rows;
+	private int pos;
+	private ColumnSource scan;
+
+	/**
+	 * Create a new index column source
+	 * @param data Directory holding the data files
+	 * @param relation Named relation to be read
+	 * @param attributes Attributes to be read, including that of the predicate
+	 * @param predicate Predicate of the form attr=value, with any parameter bound
+	 */
+	public IndexColumnSource(DataDirectory data, NamedRelation relation, List<Attribute> attributes, Predicate predicate) {
+		if (predicate.isParameter()) {
+			throw new IllegalArgumentException("Unbound parameter in " + predicate);
+		}
+		this.data = data;
+		this.relation = relation;
+		this.attributes = attributes;
+		this.keyColumn = attributes.indexOf(predicate.getLeftAttribute());
+		this.valueCode = data.getDictionary().encode(predicate.getRightValue());
+	}
+
+	@Override
+	public void open() {
+		File columnFile = data.getColumnFile(relation);
+		File indexFile = data.getIndexFile(relation, attributes.get(keyColumn));
+		if (columnFile.exists() && indexFile.exists()) {
+			mapped = new MappedColumnSource(attributes, columnFile, data.getDictionary());
+			mapped.open();
+			BTreeIndex index = new BTreeIndex(indexFile);
+			try {
+				index.open();
+			} catch (IOException e) {
+				mapped.close();
+				throw new UncheckedIOException(e);
+			}
+			if (index.getRowCount() == mapped.getRowCount()) {
+				rows = index.lookup(valueCode);
+				pos = 0;
+				index.close();
+				return;
+			}
+			// the index is out of date
+			index.close();
+			mapped.close();
+			mapped = null;
+		}
+		scan = data.getSource(relation, attributes);
+		scan.open();
+	}
+
+	@Override
+	public int read(ColumnBatch batch) {
+		if (mapped != null) {
+			int n = mapped.read(rows, pos, batch);
+			pos += n;
+			return n;
+		}
+		int n;
+		while ((n = scan.read(batch)) > 0) {
+			// keep the matching rows at the front of the batch
+			int[] keys = batch.getColumn(keyColumn);
+			int kept = 0;
+			for (int row = 0; row < n; row++) {
+				if (keys[row] == valueCode) {
+					for (int c = 0; c < batch.getColumnCount(); c++) {
+						batch.getColumn(c)[kept] = batch.getColumn(c)[row];
+					}
+					kept++;
+				}
+			}
+			if (kept > 0) {
+				batch.setSize(kept);
+				return kept;
+			}
+		}
+		batch.setSize(0);
+		return 0;
+	}
+
+	@Override
+	public void close() {
+		if (mapped != null) {
+			mapped.close();
+			mapped = null;
+		}
+		if (scan != null) {
+			scan.close();
+			scan = null;
+		}
+		rows = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+}
@@ -0,0 +1,99 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements an IndexScan operator, which feeds into a query plan
+ * the tuples of a NamedRelation that satisfy a predicate of the form
+ * attr=value on an indexed attribute. It has the same output as a Select
+ * with that predicate over a Scan of the relation, but reads only the
+ * matching tuples, by looking up their row numbers in the index on the
+ * attribute (see BTreeIndex).
+ *
+ * Since its output depends on the selectivity of the predicate, it has no
+ * output relation until it has been estimated.
+ */
+public class IndexScan extends Operator {
+	/**
+	 * The named relation to be scanned
+	 */
+	private NamedRelation relation;
+
+	/**
+	 * The attributes of the relation that are read
+	 */
+	private List<Attribute> attributes;
+
+	/**
+	 * The predicate looked up in the index
+	 */
+	private Predicate predicate;
+
+	/**
+	 * Create a new index scan of some of the attributes of a given named
+	 * relation
+	 * @param relation Named relation to be scanned
+	 * @param attributes Attributes of the relation to be read, including that
+	 * of the predicate
+	 * @param predicate Predicate of the form attr=value (or attr=?)
+	 */
+	public IndexScan(NamedRelation relation, List<Attribute> attributes, Predicate predicate) {
+		if (!predicate.equalsValue() || !attributes.contains(predicate.getLeftAttribute())) {
+			throw new IllegalArgumentException("Cannot look up " + predicate + " in " + relation);
+		}
+		this.relation = relation;
+		this.attributes = new ArrayList<Attribute>(attributes);
+		this.predicate = predicate;
+	}
+
+	/**
+	 * Return the named relation to be scanned
+	 * @return Named relation to be scanned
+	 */
+	public Relation getRelation() {
+		return this.relation;
+	}
+
+	/**
+	 * Return the attributes of the relation that are read
+	 * @return Attributes read, in the order they are produced
+	 */
+	public List<Attribute> getAttributes() {
+		return new ArrayList<Attribute>(this.attributes);
+	}
+
+	/**
+	 * Return the predicate looked up in the index
+	 * @return Predicate of the form attr=value
+	 */
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		String res = "INDEX SCAN [" + this.predicate.toString() + "] (" + this.relation.toString();
+		if (this.attributes.equals(this.relation.getAttributes())) {
+			return res + ")";
+		}
+		res += " [";
+		for (int i = 0; i < this.attributes.size(); i++) {
+			if (i > 0) {
+				res += ",";
+			}
+			res += this.attributes.get(i).getName();
+		}
+		return res + "])";
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#accept(sjdb.PlanVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+}
@@ -0,0 +1,232 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Test driver for secondary indexes. It checks B+tree lookups against a
+ * linear scan of the keys; checks that the optimiser reads a selective
+ * attr=value select through an index, and that plans with index scans
+ * give the same results on every executor as the plans for a catalogue
+ * without the index, including when the index file is missing or stale
+ * and when the relation has been rewritten with the same number of tuples;
+ * and checks that analyzing a relation keeps its index declarations.
+ */
+public class IndexTest {
+	private static final long[] BUDGETS = { 1, BatchHashJoin.DEFAULT_MEMORY_BUDGET };
+
+	public static void main(String[] args) throws Exception {
+		checkLookups();
+
+		Catalogue indexed = createCatalogue();
+		indexed.createIndex("R", "rc");
+		indexed.createIndex("S", "sb");
+		Catalogue plain = createCatalogue();
+		DataDirectory data = TestData.create(indexed);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			new ColumnFileWriter(data).write(indexed);
+			new IndexWriter(data).write(indexed);
+
+			String[] queries = {
+				"SELECT ra,rb\nFROM R\nWHERE rc=\"7\"",
+				"SELECT ra,sa\nFROM R,S\nWHERE rb=sb,rc=\"7\"",
+				"SELECT ra,sa\nFROM R,S\nWHERE rb=sb,sb=\"12\""
+			};
+			for (String query : queries) {
+				check(indexed, plain, data, pool, query, "");
+			}
+
+			File index = data.getIndexFile(indexed.getRelation("R"), new Attribute("rc"));
+			BTreeIndex.write(index, new int[0], 0);
+			check(indexed, plain, data, pool, queries[1], ", stale index");
+			index.delete();
+			check(indexed, plain, data, pool, queries[1], ", no index file");
+
+			new IndexWriter(data).write(indexed);
+			rewrite(data, indexed.getRelation("R"));
+			TestData.check("converting a relation again deletes its index", !index.exists());
+			check(indexed, plain, data, pool, queries[1], ", rewritten relation");
+			new IndexWriter(data).write(indexed);
+			check(indexed, plain, data, pool, queries[1], ", rebuilt index");
+
+			checkAnalyze(indexed, data, queries[1]);
+		} finally {
+			pool.shutdown();
+			TestData.delete(data);
+		}
+		TestData.finish();
+	}
+
+	public static Catalogue createCatalogue() {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("R", 5000);
+		cat.createAttribute("R", "ra", 5000);
+		cat.createAttribute("R", "rb", 200);
+		cat.createAttribute("R", "rc", 1000);
+		cat.createRelation("S", 2000);
+		cat.createAttribute("S", "sa", 2000);
+		cat.createAttribute("S", "sb", 200);
+
+		return cat;
+	}
+
+	/**
+	 * Check lookups in indexes with runs of duplicate keys longer than a
+	 * leaf, with more than one level of inner pages, and with no rows
+	 */
+	private static void checkLookups() throws Exception {
+		int[] runs = new int[3000];
+		for (int row = 0; row < runs.length; row++) {
+			runs[row] = row / (BTreeIndex.LEAF_ENTRIES + 200);
+		}
+		checkLookups("runs of duplicates", runs, 2);
+
+		Random random = new Random(1);
+		int[] spread = new int[BTreeIndex.LEAF_ENTRIES * BTreeIndex.INNER_ENTRIES + 1000];
+		for (int row = 0; row < spread.length; row++) {
+			spread[row] = random.nextInt(50000);
+		}
+		checkLookups("three levels", spread, 3);
+
+		checkLookups("no rows", new int[0], 1);
+	}
+
+	private static void checkLookups(String name, int[] keys, int height) throws Exception {
+		File file = File.createTempFile("sjdb", ".idx");
+		BTreeIndex index = new BTreeIndex(file);
+		try {
+			BTreeIndex.write(file, keys, keys.length);
+			index.open();
+			TestData.check(name + ": row count", index.getRowCount() == keys.length);
+			TestData.check(name + ": height " + index.getHeight(), index.getHeight() == height);
+
+			int[] count = new int[50002];
+			for (int key : keys) {
+				count[key + 1]++;
+			}
+			boolean matches = true;
+			for (int key = -1; key <= 50000; key++) {
+				int[] rows = index.lookup(key);
+				boolean ok = rows.length == count[key + 1];
+				for (int i = 0; ok && i < rows.length; i++) {
+					ok = keys[rows[i]] == key && (i == 0 || rows[i - 1] < rows[i]);
+				}
+				matches &= ok;
+			}
+			TestData.check(name + ": lookups match a linear scan", matches);
+		} finally {
+			index.close();
+			file.delete();
+		}
+	}
+
+	private static void check(Catalogue indexed, Catalogue plain, DataDirectory data, ForkJoinPool pool, String query,
+			String suffix) throws Exception {
+		Operator withIndex = new SJDB(indexed).optimise(TestData.query(indexed, query));
+		Operator withoutIndex = new SJDB(plain).optimise(TestData.query(plain, query));
+		String name = query.replace('\n', ' ');
+		TestData.check(name + ": index scan chosen", contains(withIndex, IndexScan.class));
+		TestData.check(name + ": no index scan without index", !contains(withoutIndex, IndexScan.class));
+
+		List<String> expected = TestData.rows(new BatchExecutor(data).execute(withoutIndex));
+		TestData.check(name + ": result not empty", !expected.isEmpty());
+		for (long budget : BUDGETS) {
+			Executor executor = new Executor(data);
+			executor.setMemoryBudget(budget);
+			TestData.check(name + ": executor, budget " + budget + suffix,
+					expected.equals(TestData.rows(executor.execute(withIndex))));
+
+			BatchExecutor batchExecutor = new BatchExecutor(data);
+			batchExecutor.setMemoryBudget(budget);
+			TestData.check(name + ": batch executor, budget " + budget + suffix,
+					expected.equals(TestData.rows(batchExecutor.execute(withIndex))));
+
+			ParallelExecutor parallelExecutor = new ParallelExecutor(data, pool);
+			parallelExecutor.setMemoryBudget(budget);
+			TestData.check(name + ": parallel executor, budget " + budget + suffix,
+					expected.equals(TestData.rows(parallelExecutor.execute(withIndex))));
+		}
+	}
+
+	/**
+	 * Rewrite the data file of a relation with the same number of tuples in
+	 * the reverse order, and convert it to a column file again
+	 */
+	private static void rewrite(DataDirectory data, NamedRelation relation) throws Exception {
+		File file = new File(data.getDirectory(), relation.toString() + ".csv");
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		Collections.reverse(lines.subList(1, lines.size()));
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		try {
+			for (String line : lines) {
+				writer.println(line);
+			}
+		} finally {
+			writer.close();
+		}
+		new ColumnFileWriter(data).write(relation);
+	}
+
+	/**
+	 * Check that an analyzed relation keeps its indexes, both in the
+	 * catalogue and in the catalogue file written from it
+	 */
+	private static void checkAnalyze(Catalogue catalogue, DataDirectory data, String query) throws Exception {
+		new Analyzer(catalogue, data.getDirectory().getPath()).analyze("R");
+		TestData.check("analyzed relation keeps its index",
+				catalogue.getRelation("R").hasIndex(new Attribute("rc")));
+
+		File file = new File(data.getDirectory(), "cat.txt");
+		new CatalogueWriter(file.getPath(), catalogue).write();
+		boolean declared = false;
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				declared |= line.startsWith("R:") && Arrays.asList(line.split(":")).contains("idx=rc");
+			}
+		} finally {
+			reader.close();
+		}
+		TestData.check("catalogue file keeps idx=rc line", declared);
+
+		Catalogue parsed = new Catalogue();
+		new CatalogueParser(file.getPath(), parsed).parse();
+		TestData.check("parsed catalogue keeps index", parsed.getRelation("R").hasIndex(new Attribute("rc")));
+		TestData.check("index scan chosen after analyze",
+				contains(new SJDB(parsed).optimise(TestData.query(parsed, query)), IndexScan.class));
+	}
+
+	private static boolean contains(Operator op, Class<? extends Operator> type) {
+		if (type.isInstance(op)) {
+			return true;
+		}
+		if (op.getInputs() != null) {
+			for (Operator input : op.getInputs()) {
+				if (contains(input, type)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,107 @@
+package sjdb;
+import java.io.*;
+import java.util.Collections;
+
+/**
+ * This class builds the index files of the indexes declared in a catalogue
+ * (see BTreeIndex), from the column files of their relations; a relation
+ * that only has a CSV file has its column file written first (see
+ * ColumnFileWriter), since the index refers to rows by their number in the
+ * column file.
+ *
+ * The key column of the relation is read into memory, and the entries are
+ * sorted and written as a tree in one pass, so the index must be rebuilt
+ * whenever the column file is; ColumnFileWriter deletes the old index files
+ * when it replaces a column file.
+ *
+ * Run from the command line as:
+ *
+ * java sjdb.IndexWriter <catalogue file> <data directory> [<relation name> ...]
+ *
+ * which builds the indexes of the named relations (or of every relation in
+ * the catalogue that has a data file).
+ */
+public class IndexWriter {
+	private DataDirectory data;
+
+	/**
+	 * Create a writer for the index files in a data directory
+	 * @param data Data directory
+	 */
+	public IndexWriter(DataDirectory data) {
+		this.data = data;
+	}
+
+	/**
+	 * Build the indexes of every relation in the catalogue that has a data
+	 * file.
+	 * @param catalogue Catalogue declaring the indexes
+	 * @throws IOException
+	 */
+	public void write(Catalogue catalogue) throws IOException {
+		for (NamedRelation reln : catalogue.getRelations()) {
+			if (data.getColumnFile(reln).exists() || new File(data.getDirectory(), reln.toString() + ".csv").exists()) {
+				write(reln);
+			}
+		}
+	}
+
+	/**
+	 * Build the indexes declared on a named relation.
+	 * @param relation Named relation
+	 * @throws IOException
+	 */
+	public void write(NamedRelation relation) throws IOException {
+		if (relation.getIndexes().isEmpty()) {
+			return;
+		}
+		if (!data.getColumnFile(relation).exists()) {
+			new ColumnFileWriter(data).write(relation);
+		}
+		for (Attribute attr : relation.getIndexes()) {
+			write(relation, attr);
+		}
+	}
+
+	/**
+	 * Build the index on an attribute of a named relation.
+	 * @param relation Named relation, which must have a column file
+	 * @param attribute Attribute to be indexed
+	 * @throws IOException
+	 */
+	public void write(NamedRelation relation, Attribute attribute) throws IOException {
+		MappedColumnSource source = new MappedColumnSource(Collections.singletonList(attribute),
+				data.getColumnFile(relation), data.getDictionary());
+		ColumnStore keys = new ColumnStore(1);
+		ColumnBatch batch = new ColumnBatch(1, ColumnBatch.DEFAULT_CAPACITY);
+		try {
+			source.open();
+			if (source.getRowCount() > Integer.MAX_VALUE) {
+				throw new IOException("Too many rows to index in " + relation);
+			}
+			while (source.read(batch) > 0) {
+				keys.append(batch);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			source.close();
+		}
+		BTreeIndex.write(data.getIndexFile(relation, attribute), keys.getColumn(0), keys.size());
+	}
+
+	public static void main(String[] args) throws Exception {
+		Catalogue cat = new Catalogue();
+		CatalogueParser catParser = new CatalogueParser(args[0], cat);
+		catParser.parse();
+
+		IndexWriter writer = new IndexWriter(new DataDirectory(args[1]));
+		if (args.length > 2) {
+			for (int i = 2; i < args.length; i++) {
+				writer.write(cat.getRelation(args[i]));
+			}
+		} else {
+			writer.write(cat);
+		}
+	}
+}
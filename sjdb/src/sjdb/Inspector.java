@@ -14,6 +14,13 @@ public class Inspector implements PlanVisitor {
 		System.out.println("  out: " + op.getOutput().render());
 	}
 
+	@Override
+	public void visit(IndexScan op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getRelation().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
 	@Override
 	public void visit(Project op) {
 		// TODO Auto-generated method stub
@@ -0,0 +1,120 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * This class is a hash table from int keys to the numbers of the rows that
+ * have them, as built by the hash joins. It uses open addressing with
+ * linear probing over primitive arrays, so inserting and probing never
+ * allocate or box.
+ *
+ * Each slot holds a key and the last row inserted with that key; the rows
+ * with the same key are chained through a separate array indexed by row
+ * number. Rows must be numbered from zero in the order they are inserted.
+ */
+public class IntHashTable {
+	private static final int EMPTY = -1;
+
+	private int[] keys;
+	private int[] heads;
+	private int[] chain;
+	private int mask;
+	private int distinct;
+	private int rows;
+
+	/**
+	 * Create an empty hash table
+	 * @param expectedRows Number of rows expected to be inserted
+	 */
+	public IntHashTable(int expectedRows) {
+		int capacity = Integer.highestOneBit(Math.max(expectedRows, 8) * 2 - 1) << 1;
+		this.keys = new int[capacity];
+		this.heads = new int[capacity];
+		Arrays.fill(this.heads, EMPTY);
+		this.chain = new int[Math.max(expectedRows, 8)];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Insert the next row
+	 * @param key Key of the row
+	 * @return Number of the row
+	 */
+	public int insert(int key) {
+		if (rows == chain.length) {
+			chain = Arrays.copyOf(chain, chain.length * 2);
+		}
+		int slot = slot(key);
+		if (heads[slot] == EMPTY) {
+			keys[slot] = key;
+			distinct++;
+		}
+		int row = rows++;
+		chain[row] = heads[slot];
+		heads[slot] = row;
+		if (distinct * 2 > keys.length) {
+			grow();
+		}
+		return row;
+	}
+
+	/**
+	 * Return the last row inserted with the given key, or -1 if there is none
+	 * @param key
+	 * @return Row number
+	 */
+	public int first(int key) {
+		return heads[slot(key)];
+	}
+
+	/**
+	 * Return the row inserted before the given row with the same key, or -1
+	 * if there is none
+	 * @param row
+	 * @return Row number
+	 */
+	public int next(int row) {
+		return chain[row];
+	}
+
+	/**
+	 * Return the number of rows inserted
+	 * @return Row count
+	 */
+	public int size() {
+		return rows;
+	}
+
+	/**
+	 * Return the slot holding the key, or the empty slot where it belongs
+	 */
+	private int slot(int key) {
+		int slot = hash(key) & mask;
+		while (heads[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	static int hash(int key) {
+		// dictionary codes are dense, so spread them before masking
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldHeads = heads;
+		keys = new int[oldKeys.length * 2];
+		heads = new int[oldKeys.length * 2];
+		Arrays.fill(heads, EMPTY);
+		mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldHeads[i] != EMPTY) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				heads[slot] = oldHeads[i];
+			}
+		}
+	}
+}
@@ -6,20 +6,41 @@ package sjdb;
  */
 public class Join extends BinaryOperator {
 	private Predicate predicate;
+	private JoinMethod method;
 	/**
-	 * Create a new join operator.
+	 * Create a new join operator, to be executed as a hash join.
 	 * @param left Left child operator
 	 * @param right Right child operator
 	 * @param predicate Join predicate
 	 */
 	public Join(Operator left, Operator right, Predicate predicate) {
+		this(left, right, predicate, JoinMethod.HASH);
+	}
+
+	/**
+	 * Create a new join operator.
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate
+	 * @param method Method by which the join is to be executed
+	 */
+	public Join(Operator left, Operator right, Predicate predicate, JoinMethod method) {
 		super(left, right);
 		this.predicate = predicate;
+		this.method = method;
 	}
 
 	public Predicate getPredicate() {
 		return this.predicate;
 	}
+
+	/**
+	 * Return the method by which the join is to be executed.
+	 * @return Join method
+	 */
+	public JoinMethod getMethod() {
+		return this.method;
+	}
 	
 	/* (non-Javadoc)
 	 * @see sjdb.BinaryOperator#accept(sjdb.OperatorVisitor)
@@ -33,7 +54,13 @@ public class Join extends BinaryOperator {
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		return "(" + this.getLeft().toString() + ") JOIN [" + 
+		String join = "JOIN";
+		if (this.method == JoinMethod.SORT_MERGE) {
+			join = "MERGE JOIN";
+		} else if (this.method == JoinMethod.NESTED_LOOP) {
+			join = "LOOP JOIN";
+		}
+		return "(" + this.getLeft().toString() + ") " + join + " [" + 
 				this.getPredicate().toString() +
 				"] (" + this.getRight().toString() + ")";
 	}
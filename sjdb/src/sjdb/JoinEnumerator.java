@@ -0,0 +1,437 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class chooses a join order for a set of input subplans using
+ * bottom-up dynamic programming over the connected subgraphs of the
+ * query's join graph (the DPccp algorithm of Moerkotte and Neumann).
+ *
+ * Only pairs of disjoint connected subgraphs that are joined by at least
+ * one predicate (csg-cmp pairs) are considered, so no cross products are
+ * generated within a connected component of the join graph. If the graph
+ * is disconnected, the plans for its components are combined with
+ * products, smallest first.
+ *
+ * Both bushy and left-deep plans are considered unless the enumerator is
+ * restricted to left-deep plans, in which case the right side of each join
+ * is a single input.
+ *
+ * The cost of a plan is the sum of the tuple counts of the intermediate
+ * results it produces, as estimated by the Estimator. These do not allow
+ * for the join filters that hash joins may later pass to their probe
+ * sides (see JoinFilter).
+ *
+ * When given a fork/join pool, the enumerator instead plans the connected
+ * subgraphs level by level in order of size, planning all of the subgraphs
+ * of one size in parallel; each of these only depends on the plans for
+ * smaller subgraphs, which are complete by the time its level starts. Each
+ * subgraph is split by growing its left side as a connected subgraph, as
+ * the subgraphs of the whole graph are grown, and keeping the splits whose
+ * right side is also connected, so both modes consider the same csg-cmp
+ * pairs.
+ *
+ * The best plan for every subset of the inputs is kept in a table indexed
+ * by the subset, so at most MAX_INPUTS inputs can be enumerated.
+ */
+public class JoinEnumerator {
+	private JoinGraph graph;
+	private boolean leftDeep;
+	private ForkJoinPool pool;
+
+	/**
+	 * The number of subgraphs below which a parallel task stops splitting
+	 */
+	private static final int PARALLEL_GRAIN = 16;
+
+	/**
+	 * The largest number of inputs that can be enumerated; the table of best
+	 * plans has an entry for every subset of the inputs
+	 */
+	public static final int MAX_INPUTS = 20;
+
+	/**
+	 * The cheapest plan found so far for each connected set of inputs. Each
+	 * entry is only written by the task that plans its set, and is read by
+	 * tasks at later levels.
+	 */
+	private AtomicReferenceArray<Plan> best;
+
+	/**
+	 * Create a new join enumerator
+	 * @param inputs Subplans to be joined
+	 * @param predicates Join predicates over the attributes of the inputs
+	 */
+	public JoinEnumerator(List<Operator> inputs, List<Predicate> predicates) {
+		this(inputs, predicates, false);
+	}
+
+	/**
+	 * Create a new join enumerator
+	 * @param inputs Subplans to be joined
+	 * @param predicates Join predicates over the attributes of the inputs
+	 * @param leftDeep True if only left-deep plans should be considered
+	 */
+	public JoinEnumerator(List<Operator> inputs, List<Predicate> predicates, boolean leftDeep) {
+		this(inputs, predicates, leftDeep, null);
+	}
+
+	/**
+	 * Create a new join enumerator
+	 * @param inputs Subplans to be joined
+	 * @param predicates Join predicates over the attributes of the inputs
+	 * @param leftDeep True if only left-deep plans should be considered
+	 * @param pool Pool on which to plan each level in parallel, or null to
+	 * plan on the calling thread
+	 */
+	public JoinEnumerator(List<Operator> inputs, List<Predicate> predicates, boolean leftDeep, ForkJoinPool pool) {
+		this(new JoinGraph(inputs, predicates), leftDeep, pool);
+	}
+
+	/**
+	 * Create a new join enumerator
+	 * @param graph Join graph over the subplans to be joined
+	 * @param leftDeep True if only left-deep plans should be considered
+	 * @param pool Pool on which to plan each level in parallel, or null to
+	 * plan on the calling thread
+	 */
+	public JoinEnumerator(JoinGraph graph, boolean leftDeep, ForkJoinPool pool) {
+		this.graph = graph;
+		this.leftDeep = leftDeep;
+		this.pool = pool;
+	}
+
+	/**
+	 * Return the cheapest plan that joins all of the inputs and
+	 * applies all of the join predicates.
+	 * @return Root of the cheapest plan
+	 * @throws IllegalArgumentException if there are more than MAX_INPUTS
+	 * inputs
+	 */
+	public Operator enumerate() {
+		int n = graph.size();
+		if (n > MAX_INPUTS) {
+			throw new IllegalArgumentException("Cannot enumerate joins of " + n + " inputs");
+		}
+		best = new AtomicReferenceArray<>(1 << n);
+
+		for (int i = 0; i < n; i++) {
+			best.set(1 << i, new Plan(graph.getInput(i), 0));
+		}
+
+		if (pool != null) {
+			enumerateInParallel();
+			return combineComponents();
+		}
+
+		// enumerate the connected subgraphs, starting from each input in turn
+		// and only growing them through inputs with a higher number
+		for (int i = n - 1; i >= 0; i--) {
+			long start = 1L << i;
+			emitCsg(start);
+			enumerateCsgRec(start, (start << 1) - 1);
+		}
+
+		return combineComponents();
+	}
+
+	/**
+	 * Extend the connected subgraph set through its neighbourhood, ignoring
+	 * the inputs in excluded, and emit each connected subgraph found.
+	 * @param set Connected subgraph
+	 * @param excluded Inputs that may not be added
+	 */
+	private void enumerateCsgRec(long set, long excluded) {
+		long neighbours = graph.neighbourhood(set) & ~excluded;
+
+		// the subsets of the neighbourhood are visited in increasing numerical
+		// order, so every subgraph is emitted after the subgraphs it contains
+		for (long sub = neighbours & -neighbours; sub != 0; sub = (sub - neighbours) & neighbours) {
+			emitCsg(set | sub);
+		}
+		for (long sub = neighbours & -neighbours; sub != 0; sub = (sub - neighbours) & neighbours) {
+			enumerateCsgRec(set | sub, excluded | neighbours);
+		}
+	}
+
+	/**
+	 * Emit every connected complement of the connected subgraph set that
+	 * only contains inputs numbered higher than the lowest input in set.
+	 * @param set Connected subgraph
+	 */
+	private void emitCsg(long set) {
+		long lowest = Long.lowestOneBit(set);
+		long excluded = set | (lowest - 1) | lowest;
+		long neighbours = graph.neighbourhood(set) & ~excluded;
+
+		// visit the neighbours from highest to lowest so that each complement
+		// is emitted exactly once
+		for (long rest = neighbours; rest != 0; rest &= ~Long.highestOneBit(rest)) {
+			long complement = Long.highestOneBit(rest);
+			emitCsgCmp(set, complement);
+			enumerateCmpRec(set, complement, excluded | (neighbours & ((complement << 1) - 1)));
+		}
+	}
+
+	/**
+	 * Extend the complement through its neighbourhood, ignoring the inputs
+	 * in excluded, and emit each pair found.
+	 * @param set Connected subgraph
+	 * @param complement Connected complement of set
+	 * @param excluded Inputs that may not be added
+	 */
+	private void enumerateCmpRec(long set, long complement, long excluded) {
+		long neighbours = graph.neighbourhood(complement) & ~excluded;
+
+		for (long sub = neighbours & -neighbours; sub != 0; sub = (sub - neighbours) & neighbours) {
+			emitCsgCmp(set, complement | sub);
+		}
+		for (long sub = neighbours & -neighbours; sub != 0; sub = (sub - neighbours) & neighbours) {
+			enumerateCmpRec(set, complement | sub, excluded | neighbours);
+		}
+	}
+
+	/**
+	 * Consider both ways round of joining a csg-cmp pair. For left-deep
+	 * plans the right side must be a single input.
+	 * @param set Connected subgraph
+	 * @param complement Connected complement of set
+	 */
+	private void emitCsgCmp(long set, long complement) {
+		if (!leftDeep || Long.bitCount(complement) == 1) {
+			considerJoin(set, complement);
+		}
+		if (!leftDeep || Long.bitCount(set) == 1) {
+			considerJoin(complement, set);
+		}
+	}
+
+	/**
+	 * Cost the plan that joins the best plans for two disjoint sets, and
+	 * keep it if it is the cheapest plan seen for their union.
+	 * @param left Set on the left of the join
+	 * @param right Set on the right of the join
+	 */
+	private void considerJoin(long left, long right) {
+		long cost = joinCost(left, right);
+
+		int set = (int) (left | right);
+		if (best.get(set) == null || cost < best.get(set).cost) {
+			best.set(set, joinPlans(left, right, cost));
+		}
+	}
+
+	/**
+	 * Return the cost of joining the best plans for two disjoint sets.
+	 * @param left Set on the left of the join
+	 * @param right Set on the right of the join
+	 * @return Cost of the joined plan
+	 */
+	private long joinCost(long left, long right) {
+		Plan leftPlan = best.get((int) left);
+		Plan rightPlan = best.get((int) right);
+		long count = graph.getTupleCount(leftPlan.op, rightPlan.op, left, right);
+		return Cardinality.add(Cardinality.add(leftPlan.cost, rightPlan.cost), count);
+	}
+
+	/**
+	 * Join the best plans for two disjoint sets.
+	 * @param left Set on the left of the join
+	 * @param right Set on the right of the join
+	 * @param cost Cost of the joined plan
+	 * @return Plan for the union of the sets
+	 */
+	private Plan joinPlans(long left, long right, long cost) {
+		Operator newNode = graph.join(best.get((int) left).op, best.get((int) right).op, left, right);
+		return new Plan(newNode, cost);
+	}
+
+	/**
+	 * Plan every connected subgraph, one level of subgraph size at a time,
+	 * with the subgraphs of each level planned in parallel on the pool.
+	 */
+	private void enumerateInParallel() {
+		int n = graph.size();
+		List<List<Long>> levels = new ArrayList<>();
+		for (int k = 0; k <= n; k++) {
+			levels.add(new ArrayList<Long>());
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			long start = 1L << i;
+			collectCsgRec(start, (start << 1) - 1, levels);
+		}
+
+		// invoke() returns once the whole level is planned, so the next level
+		// sees all of its results
+		for (int k = 2; k <= n; k++) {
+			List<Long> level = levels.get(k);
+			pool.invoke(new LevelTask(level, 0, level.size()));
+		}
+	}
+
+	/**
+	 * Add every connected subgraph found by extending set through its
+	 * neighbourhood, ignoring the inputs in excluded, to the level for its size.
+	 * @param set Connected subgraph
+	 * @param excluded Inputs that may not be added
+	 * @param levels Connected subgraphs found so far, by size
+	 */
+	private void collectCsgRec(long set, long excluded, List<List<Long>> levels) {
+		long neighbours = graph.neighbourhood(set) & ~excluded;
+
+		for (long sub = neighbours & -neighbours; sub != 0; sub = (sub - neighbours) & neighbours) {
+			levels.get(Long.bitCount(set | sub)).add(set | sub);
+		}
+		for (long sub = neighbours & -neighbours; sub != 0; sub = (sub - neighbours) & neighbours) {
+			collectCsgRec(set | sub, excluded | neighbours, levels);
+		}
+	}
+
+	/**
+	 * Find the cheapest plan for a connected subgraph by considering every
+	 * way of splitting it into two connected subgraphs, which are joined by
+	 * a predicate since the subgraph is connected.
+	 * @param set Connected subgraph
+	 */
+	private void planSet(long set) {
+		// keeping the lowest input on the left visits each split only once;
+		// only the costs are compared, and the winning plan is built at the end
+		long lowest = Long.lowestOneBit(set);
+		Split split = new Split();
+		considerSplit(set, lowest, split);
+		enumerateSplitRec(set, lowest, ~set | lowest, split);
+		best.set((int) set, joinPlans(split.left, set & ~split.left, split.cost));
+	}
+
+	/**
+	 * Extend the left side of a split of set through its neighbourhood,
+	 * ignoring the inputs in excluded, and consider each split found, as
+	 * enumerateCsgRec does for the whole graph.
+	 * @param set Connected subgraph being split
+	 * @param left Connected subgraph of set
+	 * @param excluded Inputs that may not be added
+	 * @param split Cheapest split found so far
+	 */
+	private void enumerateSplitRec(long set, long left, long excluded, Split split) {
+		long neighbours = graph.neighbourhood(left) & ~excluded;
+
+		for (long sub = neighbours & -neighbours; sub != 0; sub = (sub - neighbours) & neighbours) {
+			considerSplit(set, left | sub, split);
+		}
+		for (long sub = neighbours & -neighbours; sub != 0; sub = (sub - neighbours) & neighbours) {
+			enumerateSplitRec(set, left | sub, excluded | neighbours, split);
+		}
+	}
+
+	/**
+	 * Cost both ways round of joining a connected subgraph of set with the
+	 * rest of set, if the rest is connected, and keep the cheaper in split.
+	 * For left-deep plans the right side must be a single input.
+	 * @param set Connected subgraph being split
+	 * @param left Connected subgraph of set
+	 * @param split Cheapest split found so far
+	 */
+	private void considerSplit(long set, long left, Split split) {
+		long right = set & ~left;
+		// every connected subgraph smaller than set has been planned, and no
+		// other subgraph has, so this checks that the complement is connected
+		if (right == 0 || best.get((int) right) == null) {
+			return;
+		}
+		if (!leftDeep || Long.bitCount(right) == 1) {
+			long cost = joinCost(left, right);
+			if (split.left == 0 || cost < split.cost) {
+				split.cost = cost;
+				split.left = left;
+			}
+		}
+		if (!leftDeep || Long.bitCount(left) == 1) {
+			long cost = joinCost(right, left);
+			if (split.left == 0 || cost < split.cost) {
+				split.cost = cost;
+				split.left = right;
+			}
+		}
+	}
+
+	/**
+	 * Combine the plans for the connected components of the join graph with
+	 * products, starting with the smallest.
+	 * @return Root of the combined plan
+	 */
+	private Operator combineComponents() {
+		List<Long> components = graph.components();
+		components.sort(new Comparator<Long>() {
+			@Override
+			public int compare(Long setA, Long setB) {
+				return Long.compare(best.get(setA.intValue()).op.getOutput().getTupleCount(),
+						best.get(setB.intValue()).op.getOutput().getTupleCount());
+			}
+		});
+
+		long left = components.get(0);
+		Operator leftChild = best.get((int) left).op;
+		for (int i = 1; i < components.size(); i++) {
+			long right = components.get(i);
+			leftChild = graph.join(leftChild, best.get((int) right).op, left, right);
+			left |= right;
+		}
+		return leftChild;
+	}
+
+	/**
+	 * A subplan together with its cost.
+	 */
+	private static class Plan {
+		private Operator op;
+		private long cost;
+
+		private Plan(Operator op, long cost) {
+			this.op = op;
+			this.cost = cost;
+		}
+	}
+
+	/**
+	 * The cheapest way found so far of splitting a connected subgraph, by
+	 * the set on the left of the join.
+	 */
+	private static class Split {
+		private long left;
+		private long cost = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Plans a range of the connected subgraphs of one level, splitting the
+	 * range in two until it is small enough to plan directly.
+	 */
+	private class LevelTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<Long> level;
+		private int from;
+		private int to;
+
+		private LevelTask(List<Long> level, int from, int to) {
+			this.level = level;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_GRAIN) {
+				for (int i = from; i < to; i++) {
+					planSet(level.get(i));
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new LevelTask(level, from, mid), new LevelTask(level, mid, to));
+			}
+		}
+	}
+}
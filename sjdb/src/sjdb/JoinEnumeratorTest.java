@@ -0,0 +1,341 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Test driver for the join enumerator: checks that the left-deep plan it
+ * returns for a chain, a star and a snowflake query costs the same as the
+ * best left-deep plan without products over every permutation of the
+ * inputs, each joined in the same way as the enumerator joins them, and
+ * that its left-deep and bushy plans cost the same as the best plans found
+ * by dynamic programming over every subset of the inputs, connected or not.
+ * The statistics are chosen so that every estimate divides exactly, so the
+ * estimate for a set of inputs does not depend on the order in which they
+ * are joined and the costs can be compared exactly. Each plan is also
+ * enumerated level by level on the fork/join pool, which must find a plan
+ * of the same cost.
+ */
+public class JoinEnumeratorTest {
+	private static final String[] CHAIN = { "A", "B", "C", "D", "E" };
+	private static final String[] STAR = { "H", "D1", "D2", "D3", "D4" };
+	private static final String[] SNOWFLAKE = { "F", "G1", "S1", "G2", "S2" };
+
+	public static void main(String[] args) throws Exception {
+		Catalogue catalogue = createCatalogue();
+
+		List<Predicate> chainSelects = new ArrayList<Predicate>();
+		chainSelects.add(new Predicate(new Attribute("av"), "1"));
+		check("chain", inputs(catalogue, CHAIN, chainSelects), predicates("af=bk", "bf=ck", "cf=dk", "df=ek"));
+
+		List<Predicate> starSelects = new ArrayList<Predicate>();
+		starSelects.add(new Predicate(new Attribute("d2x"), "1"));
+		check("star", inputs(catalogue, STAR, starSelects), predicates("h1=d1", "h2=d2", "h3=d3", "h4=d4"));
+
+		// each dimension is best joined to its sub-dimension before the fact
+		// table is touched, which needs a bushy plan
+		List<Predicate> snowflakeSelects = new ArrayList<Predicate>();
+		snowflakeSelects.add(new Predicate(new Attribute("sv"), "1"));
+		snowflakeSelects.add(new Predicate(new Attribute("tv"), "1"));
+		List<Operator> snowflake = inputs(catalogue, SNOWFLAKE, snowflakeSelects);
+		List<Predicate> snowflakePredicates = predicates("f1=g1", "gs=s1", "f2=g2", "gt=s2");
+		check("snowflake", snowflake, snowflakePredicates);
+		Operator bushy = new JoinEnumerator(snowflake, snowflakePredicates).enumerate();
+		Operator leftDeep = new JoinEnumerator(snowflake, snowflakePredicates, true).enumerate();
+		TestData.check("snowflake: bushy plan cost " + cost(bushy) + " is below left-deep cost " + cost(leftDeep),
+				cost(bushy) < cost(leftDeep));
+		TestData.check("snowflake: bushy plan is not left-deep", !isLeftDeep(bushy));
+
+		// estimates shared through a cache must give the same plan costs
+		CardinalityCache cache = new CardinalityCache();
+		Operator cached = new JoinEnumerator(new JoinGraph(snowflake, snowflakePredicates, cache), false, null)
+				.enumerate();
+		int cacheSize = cache.size();
+		TestData.check("snowflake: cache holds the estimated joins", cacheSize > 0);
+		Operator reused = new JoinEnumerator(new JoinGraph(snowflake, snowflakePredicates, cache), false, null)
+				.enumerate();
+		TestData.check("snowflake: cached plan cost " + cost(cached) + " equals bushy plan cost " + cost(bushy),
+				cost(cached) == cost(bushy));
+		TestData.check("snowflake: plan from a filled cache costs the same and adds no estimates",
+				cost(reused) == cost(bushy) && cache.size() == cacheSize);
+
+		// two components, which may only be combined by a single product
+		List<Operator> inputs = inputs(catalogue, new String[] { "A", "B", "D1", "H" }, chainSelects);
+		Operator plan = new JoinEnumerator(inputs, predicates("af=bk", "h1=d1")).enumerate();
+		TestData.check("components: plan has one product", products(plan) == 1);
+		TestData.check("components: product is at the root", plan instanceof Product);
+
+		boolean rejected = false;
+		try {
+			new JoinEnumerator(inputs, predicates("af=bk", "h1=nosuch")).enumerate();
+		} catch (IllegalArgumentException e) {
+			rejected = true;
+		}
+		TestData.check("predicate on an unknown attribute is rejected", rejected);
+
+		rejected = false;
+		try {
+			new Optimiser(catalogue).setDynamicProgrammingLimit(JoinEnumerator.MAX_INPUTS + 1);
+		} catch (IllegalArgumentException e) {
+			rejected = true;
+		}
+		TestData.check("dynamic programming limit above MAX_INPUTS is rejected", rejected);
+
+		TestData.finish();
+	}
+
+	public static Catalogue createCatalogue() {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("A", 400);
+		cat.createAttribute("A", "ak", 400);
+		cat.createAttribute("A", "af", 100);
+		cat.createAttribute("A", "av", 4);
+		cat.createRelation("B", 100);
+		cat.createAttribute("B", "bk", 100);
+		cat.createAttribute("B", "bf", 20);
+		cat.createRelation("C", 20);
+		cat.createAttribute("C", "ck", 20);
+		cat.createAttribute("C", "cf", 10);
+		cat.createRelation("D", 10);
+		cat.createAttribute("D", "dk", 10);
+		cat.createAttribute("D", "df", 5);
+		cat.createRelation("E", 5);
+		cat.createAttribute("E", "ek", 5);
+
+		cat.createRelation("H", 1000);
+		cat.createAttribute("H", "hk", 1000);
+		cat.createAttribute("H", "h1", 10);
+		cat.createAttribute("H", "h2", 20);
+		cat.createAttribute("H", "h3", 5);
+		cat.createAttribute("H", "h4", 8);
+		cat.createRelation("D1", 10);
+		cat.createAttribute("D1", "d1", 10);
+		cat.createRelation("D2", 20);
+		cat.createAttribute("D2", "d2", 20);
+		cat.createAttribute("D2", "d2x", 4);
+		cat.createRelation("D3", 5);
+		cat.createAttribute("D3", "d3", 5);
+		cat.createRelation("D4", 8);
+		cat.createAttribute("D4", "d4", 8);
+
+		cat.createRelation("F", 1000);
+		cat.createAttribute("F", "f1", 100);
+		cat.createAttribute("F", "f2", 50);
+		cat.createRelation("G1", 100);
+		cat.createAttribute("G1", "g1", 100);
+		cat.createAttribute("G1", "gs", 10);
+		cat.createRelation("S1", 10);
+		cat.createAttribute("S1", "s1", 10);
+		cat.createAttribute("S1", "sv", 10);
+		cat.createRelation("G2", 50);
+		cat.createAttribute("G2", "g2", 50);
+		cat.createAttribute("G2", "gt", 5);
+		cat.createRelation("S2", 5);
+		cat.createAttribute("S2", "s2", 5);
+		cat.createAttribute("S2", "tv", 5);
+
+		return cat;
+	}
+
+	/**
+	 * Return a scan of each named relation, with any of the given
+	 * attr=value selects on its attributes applied above it
+	 */
+	private static List<Operator> inputs(Catalogue catalogue, String[] names, List<Predicate> selects) throws Exception {
+		Estimator est = new Estimator();
+		List<Operator> res = new ArrayList<Operator>();
+		for (String name : names) {
+			Operator input = new Scan(catalogue.getRelation(name));
+			input.accept(est);
+			for (Predicate predicate : selects) {
+				if (input.getOutput().getAttributes().contains(predicate.getLeftAttribute())) {
+					input = new Select(input, predicate);
+					input.accept(est);
+				}
+			}
+			res.add(input);
+		}
+		return res;
+	}
+
+	private static List<Predicate> predicates(String... predicates) {
+		List<Predicate> res = new ArrayList<Predicate>();
+		for (String predicate : predicates) {
+			String[] attrs = predicate.split("=");
+			res.add(new Predicate(new Attribute(attrs[0]), new Attribute(attrs[1])));
+		}
+		return res;
+	}
+
+	private static void check(String name, List<Operator> inputs, List<Predicate> predicates) {
+		Operator leftDeep = new JoinEnumerator(inputs, predicates, true).enumerate();
+		long best = bestPermutation(inputs, predicates, null, new boolean[inputs.size()], 0);
+		TestData.check(name + ": left-deep plan cost " + cost(leftDeep) + " equals best permutation cost " + best,
+				cost(leftDeep) == best);
+		best = bestSubsets(inputs, predicates, true);
+		TestData.check(name + ": left-deep plan cost " + cost(leftDeep) + " equals best cost over all subsets " + best,
+				cost(leftDeep) == best);
+		TestData.check(name + ": left-deep plan is left-deep", isLeftDeep(leftDeep));
+
+		Operator bushy = new JoinEnumerator(inputs, predicates).enumerate();
+		best = bestSubsets(inputs, predicates, false);
+		TestData.check(name + ": bushy plan cost " + cost(bushy) + " equals best cost over all subsets " + best,
+				cost(bushy) == best);
+
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		Operator parallel = new JoinEnumerator(inputs, predicates, true, pool).enumerate();
+		TestData.check(name + ": parallel left-deep plan cost " + cost(parallel) + " equals left-deep plan cost "
+				+ cost(leftDeep), cost(parallel) == cost(leftDeep));
+		parallel = new JoinEnumerator(inputs, predicates, false, pool).enumerate();
+		TestData.check(name + ": parallel bushy plan cost " + cost(parallel) + " equals bushy plan cost "
+				+ cost(bushy), cost(parallel) == cost(bushy));
+
+		for (Operator plan : new Operator[] { leftDeep, bushy }) {
+			String shape = plan == leftDeep ? "left-deep" : "bushy";
+			TestData.check(name + ": " + shape + " plan has no products", products(plan) == 0);
+			TestData.check(name + ": " + shape + " plan applies every join predicate",
+					joinPredicates(plan) == predicates.size());
+		}
+	}
+
+	/**
+	 * Return the lowest cost of a left-deep plan without products that joins
+	 * the given plan with the inputs not yet used, in any order
+	 */
+	private static long bestPermutation(List<Operator> inputs, List<Predicate> predicates, Operator plan,
+			boolean[] used, long cost) {
+		long best = Long.MAX_VALUE;
+		boolean done = true;
+		for (int i = 0; i < inputs.size(); i++) {
+			if (used[i]) {
+				continue;
+			}
+			done = false;
+			used[i] = true;
+			if (plan == null) {
+				best = Math.min(best, bestPermutation(inputs, predicates, inputs.get(i), used, cost));
+			} else {
+				Operator next = join(plan, inputs.get(i), predicates);
+				if (next != null) {
+					best = Math.min(best, bestPermutation(inputs, predicates, next, used,
+							cost + next.getOutput().getTupleCount()));
+				}
+			}
+			used[i] = false;
+		}
+		return done ? cost : best;
+	}
+
+	/**
+	 * Return the lowest cost of a plan found by dynamic programming over
+	 * every subset of the inputs, joining the plans for every two halves of
+	 * each subset that a predicate connects; for left-deep plans the right
+	 * half must be a single input
+	 */
+	private static long bestSubsets(List<Operator> inputs, List<Predicate> predicates, boolean leftDeep) {
+		int n = inputs.size();
+		Operator[] plans = new Operator[1 << n];
+		long[] costs = new long[1 << n];
+		for (int i = 0; i < n; i++) {
+			plans[1 << i] = inputs.get(i);
+		}
+		for (int set = 1; set < 1 << n; set++) {
+			for (int right = (set - 1) & set; right != 0; right = (right - 1) & set) {
+				int left = set & ~right;
+				if ((leftDeep && Integer.bitCount(right) != 1) || plans[left] == null || plans[right] == null) {
+					continue;
+				}
+				Operator next = join(plans[left], plans[right], predicates);
+				if (next == null) {
+					continue;
+				}
+				long cost = costs[left] + costs[right] + next.getOutput().getTupleCount();
+				if (plans[set] == null || cost < costs[set]) {
+					plans[set] = next;
+					costs[set] = cost;
+				}
+			}
+		}
+		return costs[(1 << n) - 1];
+	}
+
+	/**
+	 * Join two plans as the enumerator does: on the first predicate that
+	 * connects them, with any further connecting predicates as selects
+	 * above the join, or return null if none connects them
+	 */
+	private static Operator join(Operator left, Operator right, List<Predicate> predicates) {
+		Estimator est = new Estimator();
+		List<Attribute> leftAttrs = left.getOutput().getAttributes();
+		List<Attribute> rightAttrs = right.getOutput().getAttributes();
+		Operator res = null;
+		for (Predicate predicate : predicates) {
+			Attribute a = predicate.getLeftAttribute();
+			Attribute b = predicate.getRightAttribute();
+			if (res != null && (leftAttrs.contains(a) && rightAttrs.contains(b) || leftAttrs.contains(b) && rightAttrs.contains(a))) {
+				Select select = new Select(res, predicate);
+				est.visit(select);
+				res = select;
+			} else if (leftAttrs.contains(a) && rightAttrs.contains(b) || leftAttrs.contains(b) && rightAttrs.contains(a)) {
+				Join join = new Join(left, right, leftAttrs.contains(a) ? predicate : new Predicate(b, a));
+				est.visit(join);
+				res = join;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Return the cost of a plan: the sum of the tuple counts of the results
+	 * of its joins and products, each with the selects directly above it
+	 */
+	private static long cost(Operator op) {
+		Operator below = op;
+		while (below instanceof Select) {
+			below = ((Select) below).getInput();
+		}
+		if (below instanceof Scan) {
+			return 0;
+		}
+		long res = op.getOutput().getTupleCount();
+		for (Operator input : below.getInputs()) {
+			res += cost(input);
+		}
+		return res;
+	}
+
+	private static boolean isLeftDeep(Operator op) {
+		while (op instanceof Select || op instanceof Project) {
+			op = op.getInputs().get(0);
+		}
+		if (op instanceof Scan) {
+			return true;
+		}
+		Operator right = op.getInputs().get(1);
+		while (right instanceof Select) {
+			right = ((Select) right).getInput();
+		}
+		return right instanceof Scan && isLeftDeep(op.getInputs().get(0));
+	}
+
+	private static int joinPredicates(Operator op) {
+		int res = op instanceof Join || (op instanceof Select && !((Select) op).getPredicate().equalsValue()) ? 1 : 0;
+		if (op.getInputs() != null) {
+			for (Operator input : op.getInputs()) {
+				res += joinPredicates(input);
+			}
+		}
+		return res;
+	}
+
+	private static int products(Operator op) {
+		int res = op instanceof Product ? 1 : 0;
+		if (op.getInputs() != null) {
+			for (Operator input : op.getInputs()) {
+				res += products(input);
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,128 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class passes a Bloom filter sideways from a hash join to a scan on
+ * its probe side. Once the join has read its build input, it publishes a
+ * filter of the build keys (see BloomFilter); the scan of the relation that
+ * provides the probe key then drops the tuples whose keys cannot match,
+ * before they pass through the rest of the probe side of the plan.
+ *
+ * The probe side is only read once the build input has been read, so the
+ * filter is always published before the scan needs it; until then, and if
+ * the join does not publish one (as when its build input does not fit in
+ * memory), every tuple is let through.
+ *
+ * Only the physical planner takes the filters into account, when it costs
+ * the probe side of a hash join against a sort-merge join. The join order
+ * is chosen before any join method is, and the enumerators cost each set
+ * of inputs by its estimated size alone, not knowing which joins above it
+ * will filter it, so join ordering ignores the filters.
+ */
+public class JoinFilter {
+	private Join join;
+	private Operator scan;
+	private Attribute attribute;
+	private volatile BloomFilter filter;
+
+	/**
+	 * Create a new join filter
+	 * @param join Hash join that publishes the filter
+	 * @param scan Scan or IndexScan to which the filter is applied
+	 * @param attribute Probe key of the join, read by the scan
+	 */
+	public JoinFilter(Join join, Operator scan, Attribute attribute) {
+		this.join = join;
+		this.scan = scan;
+		this.attribute = attribute;
+	}
+
+	/**
+	 * Return the filters for the hash joins of a plan, whose outputs must
+	 * have been estimated
+	 * @param plan Root of the plan
+	 * @return List of join filters
+	 */
+	public static List<JoinFilter> forPlan(Operator plan) {
+		List<JoinFilter> res = new ArrayList<JoinFilter>();
+		addFilters(plan, res);
+		return res;
+	}
+
+	private static void addFilters(Operator op, List<JoinFilter> res) {
+		if (op instanceof Scan) {
+			return;
+		}
+		if (op instanceof Join && ((Join) op).getMethod() == JoinMethod.HASH) {
+			Join join = (Join) op;
+			// the filter is applied on the side the executors probe
+			boolean buildLeft = PhysicalPlanner.buildsLeft(join);
+			Operator probe = buildLeft ? join.getRight() : join.getLeft();
+			int[] columns = JoinIterator.joinColumns(join.getLeft().getOutput().getAttributes(),
+					join.getRight().getOutput().getAttributes(), join.getPredicate());
+			Attribute key = probe.getOutput().getAttributes().get(buildLeft ? columns[1] : columns[0]);
+			res.add(new JoinFilter(join, findScan(probe, key), key));
+		}
+		for (Operator input : op.getInputs()) {
+			addFilters(input, res);
+		}
+	}
+
+	/**
+	 * Return the scan (or index scan) below an operator that provides an
+	 * attribute
+	 */
+	private static Operator findScan(Operator op, Attribute attr) {
+		if (op instanceof Scan || op instanceof IndexScan) {
+			return op;
+		}
+		for (Operator input : op.getInputs()) {
+			if (input.getOutput().getAttributes().contains(attr)) {
+				return findScan(input, attr);
+			}
+		}
+		throw new IllegalArgumentException("No scan provides " + attr);
+	}
+
+	/**
+	 * Return the hash join that publishes the filter
+	 * @return Hash join
+	 */
+	public Join getJoin() {
+		return join;
+	}
+
+	/**
+	 * Return the scan to which the filter is applied
+	 * @return Scan or IndexScan
+	 */
+	public Operator getScan() {
+		return scan;
+	}
+
+	/**
+	 * Return the attribute whose values are filtered
+	 * @return Probe key of the join
+	 */
+	public Attribute getAttribute() {
+		return attribute;
+	}
+
+	/**
+	 * Publish a filter of the build keys of the join
+	 * @param filter Bloom filter
+	 */
+	public void publish(BloomFilter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Return the filter published by the join, or null if there is none yet
+	 * @return Bloom filter
+	 */
+	public BloomFilter getFilter() {
+		return filter;
+	}
+}
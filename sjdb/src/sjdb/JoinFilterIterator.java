@@ -0,0 +1,51 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class applies a JoinFilter to the tuples of a scan, passing on those
+ * whose key may be among the build keys of the join.
+ */
+public class JoinFilterIterator implements TupleIterator {
+	private TupleIterator input;
+	private JoinFilter filter;
+	private int column;
+
+	/**
+	 * Create a new join filter iterator
+	 * @param input Input iterator
+	 * @param filter Join filter to be applied
+	 */
+	public JoinFilterIterator(TupleIterator input, JoinFilter filter) {
+		this.input = input;
+		this.filter = filter;
+		this.column = input.getAttributes().indexOf(filter.getAttribute());
+	}
+
+	@Override
+	public void open() {
+		input.open();
+	}
+
+	@Override
+	public int[] next() {
+		int[] tuple;
+		while ((tuple = input.next()) != null) {
+			BloomFilter bloom = filter.getFilter();
+			if (bloom == null || bloom.mightContain(tuple[column])) {
+				return tuple;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() {
+		input.close();
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return input.getAttributes();
+	}
+}
@@ -0,0 +1,187 @@
+package sjdb;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Test driver for the Bloom filters that hash joins pass to the scans on
+ * their probe sides. It checks that a filter never drops a key that was
+ * added to it; that a hash join publishes its filter before it opens its
+ * probe input, and publishes none when it spills; that the filter of a
+ * join between inputs of the same estimated size goes to the side the
+ * executors probe; and that plans of hash
+ * joins, which use filters, give the same results on every executor as
+ * plans of sort-merge joins, which do not.
+ */
+public class JoinFilterTest {
+	private static final long[] BUDGETS = { 1, 4096, BatchHashJoin.DEFAULT_MEMORY_BUDGET };
+
+	public static void main(String[] args) throws Exception {
+		Catalogue catalogue = createCatalogue();
+		DataDirectory data = TestData.create(catalogue);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			checkBloomFilter();
+			checkTie(catalogue);
+			for (long budget : new long[] { 1, BatchHashJoin.DEFAULT_MEMORY_BUDGET }) {
+				checkPublish(catalogue, data, budget);
+			}
+			check(catalogue, data, pool, "SELECT ra,ka\nFROM R,K\nWHERE rb=ka");
+			check(catalogue, data, pool, "SELECT ra,sa\nFROM R,S\nWHERE rb=sb,sa=\"7\"");
+			check(catalogue, data, pool, "SELECT ra,sa,ka\nFROM R,S,K\nWHERE rb=sb,sa=ka");
+		} finally {
+			pool.shutdown();
+			TestData.delete(data);
+		}
+		TestData.finish();
+	}
+
+	public static Catalogue createCatalogue() {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("R", 5000);
+		cat.createAttribute("R", "ra", 5000);
+		cat.createAttribute("R", "rb", 200);
+		cat.createRelation("S", 1000);
+		cat.createAttribute("S", "sa", 1000);
+		cat.createAttribute("S", "sb", 200);
+		cat.createRelation("K", 20);
+		cat.createAttribute("K", "ka", 20);
+		cat.createRelation("L", 20);
+		cat.createAttribute("L", "la", 20);
+
+		return cat;
+	}
+
+	/**
+	 * Check that the filter of a hash join whose inputs are expected to be
+	 * the same size is applied to its left input, since the executors build
+	 * on the right (see PhysicalPlanner.buildsLeft())
+	 */
+	private static void checkTie(Catalogue catalogue) throws Exception {
+		Scan k = new Scan(catalogue.getRelation("K"));
+		Scan l = new Scan(catalogue.getRelation("L"));
+		Join join = new Join(k, l, new Predicate(new Attribute("ka"), new Attribute("la")), JoinMethod.HASH);
+		new Estimator().estimate(join);
+		List<JoinFilter> filters = JoinFilter.forPlan(join);
+		TestData.check("filter of a join of equal inputs goes to the probed side",
+				!PhysicalPlanner.buildsLeft(join) && filters.size() == 1 && filters.get(0).getScan() == k);
+	}
+
+	/**
+	 * Check that a filter holds every key added to it, and lets through few
+	 * of the others
+	 */
+	private static void checkBloomFilter() {
+		BloomFilter bloom = new BloomFilter(10000);
+		for (int key = 0; key < 20000; key += 2) {
+			bloom.add(key);
+		}
+		boolean all = true;
+		int falsePositives = 0;
+		for (int key = 0; key < 20000; key += 2) {
+			all &= bloom.mightContain(key);
+			falsePositives += bloom.mightContain(key + 1) ? 1 : 0;
+		}
+		TestData.check("bloom filter holds every key added", all);
+		TestData.check("bloom filter lets through few other keys (" + falsePositives + " of 10000)",
+				falsePositives < 300);
+	}
+
+	/**
+	 * Join K to R by hash, building on K, and check when the filter of the
+	 * build keys is published and how many probe rows it lets through
+	 */
+	private static void checkPublish(Catalogue catalogue, DataDirectory data, long budget) throws Exception {
+		NamedRelation k = catalogue.getRelation("K");
+		NamedRelation r = catalogue.getRelation("R");
+		Scan scan = new Scan(r);
+		Join join = new Join(new Scan(k), scan, new Predicate(new Attribute("ka"), new Attribute("rb")), JoinMethod.HASH);
+		boolean spills = budget < k.getTupleCount() * BatchHashJoin.rowBytes(1);
+		String name = "budget " + budget + (spills ? ", spilled" : "");
+		String publishes = spills ? " publishes no filter" : " publishes filter";
+
+		final JoinFilter batchFilter = new JoinFilter(join, scan, new Attribute("rb"));
+		final boolean[] published = new boolean[1];
+		final long[] probed = new long[1];
+		BatchIterator probe = new BatchJoinFilter(new BatchScan(data.getSource(r)), batchFilter) {
+			@Override
+			public void open() {
+				published[0] = batchFilter.getFilter() != null;
+				super.open();
+			}
+
+			@Override
+			public ColumnBatch next() {
+				ColumnBatch batch = super.next();
+				probed[0] += batch == null ? 0 : batch.getLiveCount();
+				return batch;
+			}
+		};
+		BatchHashJoin batchJoin = new BatchHashJoin(new BatchScan(data.getSource(k)), probe, join.getPredicate(), true, budget);
+		batchJoin.setFilter(batchFilter);
+		TestData.check("batch hash join: no filter before open, " + name, batchFilter.getFilter() == null);
+		long rows = 0;
+		ColumnBatch batch;
+		batchJoin.open();
+		try {
+			while ((batch = batchJoin.next()) != null) {
+				rows += batch.getLiveCount();
+			}
+		} finally {
+			batchJoin.close();
+		}
+		TestData.check("batch hash join" + publishes + " before opening probe, " + name, published[0] != spills);
+		TestData.check("batch hash join" + publishes + " by end of join, " + name, (batchFilter.getFilter() != null) != spills);
+		TestData.check("batch hash join: filter narrows probe (" + probed[0] + " rows for " + rows + "), " + name,
+				rows > 0 && probed[0] >= rows && (spills || probed[0] < r.getTupleCount() / 5));
+
+		final JoinFilter tupleFilter = new JoinFilter(join, scan, new Attribute("rb"));
+		final boolean[] tuplePublished = new boolean[1];
+		TupleIterator tupleProbe = new JoinFilterIterator(new ScanIterator(data.getSource(r)), tupleFilter) {
+			@Override
+			public void open() {
+				tuplePublished[0] = tupleFilter.getFilter() != null;
+				super.open();
+			}
+		};
+		HashJoinIterator tupleJoin = new HashJoinIterator(new ScanIterator(data.getSource(k)), tupleProbe,
+				join.getPredicate(), true, budget);
+		tupleJoin.setFilter(tupleFilter);
+		long tupleRows = 0;
+		tupleJoin.open();
+		try {
+			while (tupleJoin.next() != null) {
+				tupleRows++;
+			}
+		} finally {
+			tupleJoin.close();
+		}
+		TestData.check("hash join iterator" + publishes + " before opening probe, " + name, tuplePublished[0] != spills);
+		TestData.check("hash join iterator: same rows as batch hash join, " + name, tupleRows == rows);
+	}
+
+	private static void check(Catalogue catalogue, DataDirectory data, ForkJoinPool pool, String query) throws Exception {
+		Operator optimised = new SJDB(catalogue).optimise(TestData.query(catalogue, query));
+		Operator hash = TestData.force(optimised, JoinMethod.HASH);
+		String name = query.replace('\n', ' ');
+		List<String> expected = TestData.rows(new BatchExecutor(data).execute(TestData.force(optimised, JoinMethod.SORT_MERGE)));
+		TestData.check(name + ": result not empty", !expected.isEmpty());
+
+		for (long budget : BUDGETS) {
+			Executor executor = new Executor(data);
+			executor.setMemoryBudget(budget);
+			TestData.check(name + ": executor, budget " + budget,
+					expected.equals(TestData.rows(executor.execute(hash))));
+
+			BatchExecutor batchExecutor = new BatchExecutor(data);
+			batchExecutor.setMemoryBudget(budget);
+			TestData.check(name + ": batch executor, budget " + budget,
+					expected.equals(TestData.rows(batchExecutor.execute(hash))));
+
+			ParallelExecutor parallelExecutor = new ParallelExecutor(data, pool);
+			parallelExecutor.setMemoryBudget(budget);
+			TestData.check(name + ": parallel executor, budget " + budget,
+					expected.equals(TestData.rows(parallelExecutor.execute(hash))));
+		}
+	}
+}
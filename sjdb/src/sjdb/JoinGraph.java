@@ -0,0 +1,285 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents the join graph of a query: the nodes are the
+ * inputs to be joined, and there is an edge between two inputs whenever
+ * a join predicate compares an attribute of one with an attribute of
+ * the other.
+ *
+ * Sets of inputs are represented as bitmasks, where bit i stands for the
+ * i-th input, so a graph can contain at most 63 inputs; the greedy and
+ * genetic enumerators can order joins over that many, but the dynamic
+ * programming enumerator only over JoinEnumerator.MAX_INPUTS.
+ *
+ * Every plan for a set of inputs applies the same predicates, so the graph
+ * remembers the estimated output for each set the first time a plan for it
+ * is built; the cost of every other plan for the set is then a lookup. The
+ * estimates can also be shared between queries through a CardinalityCache.
+ */
+public class JoinGraph {
+	private List<Operator> inputs;
+	private List<Predicate> predicates;
+	/**
+	 * The inputs adjacent to each input
+	 */
+	private long[] neighbours;
+	/**
+	 * The inputs that produce the left and right attributes of each predicate
+	 */
+	private long[] leftInputs;
+	private long[] rightInputs;
+	private Estimator est;
+	/**
+	 * The estimated output for each set of inputs planned so far
+	 */
+	private ConcurrentHashMap<Long, Relation> estimates;
+	private CardinalityCache cache;
+
+	/**
+	 * Create the join graph for the given inputs and join predicates
+	 * @param inputs Subplans to be joined
+	 * @param predicates Join predicates over the attributes of the inputs
+	 */
+	public JoinGraph(List<Operator> inputs, List<Predicate> predicates) {
+		this(inputs, predicates, null);
+	}
+
+	/**
+	 * Create the join graph for the given inputs and join predicates
+	 * @param inputs Subplans to be joined
+	 * @param predicates Join predicates over the attributes of the inputs
+	 * @param cache Estimates shared with other queries, or null
+	 */
+	public JoinGraph(List<Operator> inputs, List<Predicate> predicates, CardinalityCache cache) {
+		if (inputs.size() >= Long.SIZE) {
+			throw new IllegalArgumentException("Too many join inputs: " + inputs.size());
+		}
+		this.inputs = inputs;
+		this.predicates = predicates;
+		this.neighbours = new long[inputs.size()];
+		this.leftInputs = new long[predicates.size()];
+		this.rightInputs = new long[predicates.size()];
+		this.est = new Estimator();
+		this.estimates = new ConcurrentHashMap<>();
+		this.cache = cache;
+
+		for (int p = 0; p < predicates.size(); p++) {
+			long left = inputOf(predicates.get(p).getLeftAttribute());
+			long right = inputOf(predicates.get(p).getRightAttribute());
+			leftInputs[p] = left;
+			rightInputs[p] = right;
+			if (left != right) {
+				neighbours[Long.numberOfTrailingZeros(left)] |= right;
+				neighbours[Long.numberOfTrailingZeros(right)] |= left;
+			}
+		}
+	}
+
+	/**
+	 * Return the number of inputs in the graph
+	 * @return Input count
+	 */
+	public int size() {
+		return inputs.size();
+	}
+
+	/**
+	 * Return the i-th input
+	 * @param i Input number
+	 * @return Input subplan
+	 */
+	public Operator getInput(int i) {
+		return inputs.get(i);
+	}
+
+	/**
+	 * Return the set of inputs adjacent to some input in the given set,
+	 * excluding the set itself.
+	 * @param set Set of inputs
+	 * @return Neighbourhood of the set
+	 */
+	public long neighbourhood(long set) {
+		long res = 0;
+		for (long rest = set; rest != 0; rest &= rest - 1) {
+			res |= neighbours[Long.numberOfTrailingZeros(rest)];
+		}
+		return res & ~set;
+	}
+
+	/**
+	 * Return true if some predicate connects the two sets of inputs
+	 * @param left Set of inputs
+	 * @param right Set of inputs
+	 * @return True if the sets are adjacent
+	 */
+	public boolean isConnected(long left, long right) {
+		return (neighbourhood(left) & right) != 0;
+	}
+
+	/**
+	 * Return the connected components of the graph, as sets of inputs
+	 * @return Connected components
+	 */
+	public List<Long> components() {
+		List<Long> res = new ArrayList<>();
+		long unvisited = (1L << inputs.size()) - 1;
+
+		while (unvisited != 0) {
+			long component = Long.lowestOneBit(unvisited);
+			long frontier = component;
+			while (frontier != 0) {
+				frontier = neighbourhood(component);
+				component |= frontier;
+			}
+			res.add(component);
+			unvisited &= ~component;
+		}
+		return res;
+	}
+
+	/**
+	 * Return the predicates that have one attribute in each of the two sets
+	 * @param left Set of inputs
+	 * @param right Set of inputs
+	 * @return Connecting predicates
+	 */
+	public List<Predicate> connectingPredicates(long left, long right) {
+		List<Predicate> res = new ArrayList<>();
+		for (int p = 0; p < predicates.size(); p++) {
+			if (((left & leftInputs[p]) != 0 && (right & rightInputs[p]) != 0)
+					|| ((left & rightInputs[p]) != 0 && (right & leftInputs[p]) != 0)) {
+				res.add(predicates.get(p));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Return the set containing the input that produces the given attribute
+	 * @param attr Attribute
+	 * @return Singleton set containing the input
+	 * @throws IllegalArgumentException if no input produces the attribute
+	 */
+	public long inputOf(Attribute attr) {
+		for (int i = 0; i < inputs.size(); i++) {
+			if (inputs.get(i).getOutput().getAttributes().contains(attr)) {
+				return 1L << i;
+			}
+		}
+		throw new IllegalArgumentException("No input provides " + attr);
+	}
+
+	/**
+	 * Join the plans for two disjoint sets of inputs, using the first
+	 * predicate that connects them as the join predicate and applying any
+	 * further connecting predicates as selects above the join. Plans with no
+	 * connecting predicate are combined with a product.
+	 * @param leftChild Plan for the left set
+	 * @param rightChild Plan for the right set
+	 * @param left Left set
+	 * @param right Right set
+	 * @return Estimated root of the new plan
+	 */
+	public Operator join(Operator leftChild, Operator rightChild, long left, long right) {
+		Operator newNode = null;
+
+		// the children have already been estimated, so only the new nodes
+		// need to be visited
+		for (Predicate predicate : connectingPredicates(left, right)) {
+			if (newNode == null) {
+				Join join = new Join(leftChild, rightChild, orientPredicate(predicate, left));
+				est.visit(join);
+				newNode = join;
+			} else {
+				Select select = new Select(newNode, predicate);
+				est.visit(select);
+				newNode = select;
+			}
+		}
+
+		if (newNode == null) {
+			Product product = new Product(leftChild, rightChild);
+			est.visit(product);
+			newNode = product;
+		}
+
+		long set = left | right;
+		if (estimates.putIfAbsent(set, newNode.getOutput()) == null && cache != null) {
+			cache.put(canonicalKey(set), newNode.getOutput());
+		}
+		return newNode;
+	}
+
+	/**
+	 * Return the estimated tuple count of joining two disjoint sets of inputs.
+	 * The plans for the sets are only used if the union has not been
+	 * estimated before.
+	 * @param leftChild Plan for the left set
+	 * @param rightChild Plan for the right set
+	 * @param left Left set
+	 * @param right Right set
+	 * @return Estimated tuple count of the union
+	 */
+	public long getTupleCount(Operator leftChild, Operator rightChild, long left, long right) {
+		long set = left | right;
+		Relation output = estimates.get(set);
+		if (output == null && cache != null) {
+			output = cache.get(canonicalKey(set));
+			if (output != null) {
+				estimates.putIfAbsent(set, output);
+			}
+		}
+		if (output == null) {
+			output = join(leftChild, rightChild, left, right).getOutput();
+		}
+		return output.getTupleCount();
+	}
+
+	/**
+	 * Return a description of a set of inputs that does not depend on the
+	 * order of the inputs or of the predicates in this query: the sorted
+	 * inputs, followed by the sorted predicates applied within the set.
+	 * @param set Set of inputs
+	 * @return Canonical key for the set
+	 */
+	private String canonicalKey(long set) {
+		List<String> inputNames = new ArrayList<>();
+		for (long rest = set; rest != 0; rest &= rest - 1) {
+			inputNames.add(inputs.get(Long.numberOfTrailingZeros(rest)).toString());
+		}
+		List<String> predicateNames = new ArrayList<>();
+		for (int p = 0; p < predicates.size(); p++) {
+			if ((set & leftInputs[p]) != 0 && (set & rightInputs[p]) != 0) {
+				String leftName = predicates.get(p).getLeftAttribute().getName();
+				String rightName = predicates.get(p).getRightAttribute().getName();
+				if (leftName.compareTo(rightName) < 0) {
+					predicateNames.add(leftName + "=" + rightName);
+				} else {
+					predicateNames.add(rightName + "=" + leftName);
+				}
+			}
+		}
+		Collections.sort(inputNames);
+		Collections.sort(predicateNames);
+		return inputNames + ":" + predicateNames;
+	}
+
+	/**
+	 * Return the predicate with its left attribute drawn from the left set,
+	 * as expected by the Estimator for Join operators.
+	 * @param predicate Join predicate
+	 * @param left Left set
+	 * @return Predicate oriented to match the join
+	 */
+	private Predicate orientPredicate(Predicate predicate, long left) {
+		if ((inputOf(predicate.getLeftAttribute()) & left) != 0) {
+			return predicate;
+		}
+		return new Predicate(predicate.getRightAttribute(), predicate.getLeftAttribute());
+	}
+}
@@ -0,0 +1,49 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements the Join operator as a nested-loop join: each tuple
+ * of the left input is compared with every tuple of the right input, which
+ * is held in memory, and the pairs with equal join attributes are produced.
+ */
+public class JoinIterator extends ProductIterator {
+	private int leftColumn;
+	private int rightColumn;
+
+	/**
+	 * Create a new join iterator
+	 * @param left Left input iterator
+	 * @param right Right input iterator
+	 * @param predicate Join predicate, of the form attr=attr
+	 */
+	public JoinIterator(TupleIterator left, TupleIterator right, Predicate predicate) {
+		super(left, right);
+		int[] columns = joinColumns(left.getAttributes(), right.getAttributes(), predicate);
+		this.leftColumn = columns[0];
+		this.rightColumn = columns[1];
+	}
+
+	@Override
+	protected boolean matches(int[] leftTuple, int[] rightTuple) {
+		return leftTuple[leftColumn] == rightTuple[rightColumn];
+	}
+
+	/**
+	 * Return the positions of the join attributes in the tuples of the left
+	 * and right inputs, whichever way round the predicate names them.
+	 * @param left Attributes of the left input
+	 * @param right Attributes of the right input
+	 * @param predicate Join predicate
+	 * @return Left column and right column
+	 */
+	public static int[] joinColumns(List<Attribute> left, List<Attribute> right, Predicate predicate) {
+		Attribute leftAttr = predicate.getLeftAttribute();
+		Attribute rightAttr = predicate.getRightAttribute();
+		if (!left.contains(leftAttr)) {
+			leftAttr = predicate.getRightAttribute();
+			rightAttr = predicate.getLeftAttribute();
+		}
+		return new int[] { left.indexOf(leftAttr), right.indexOf(rightAttr) };
+	}
+}
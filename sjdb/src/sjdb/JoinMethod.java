@@ -0,0 +1,24 @@
+package sjdb;
+
+/**
+ * The physical methods by which a Join operator can be executed.
+ */
+public enum JoinMethod {
+	/**
+	 * Build a hash table on the smaller input and probe it with the other,
+	 * spilling both inputs to disk if the table does not fit in memory
+	 */
+	HASH,
+	/**
+	 * Sort both inputs on their join attributes, unless they are already
+	 * sorted on them, and merge them; the output is sorted on the join
+	 * attributes
+	 */
+	SORT_MERGE,
+	/**
+	 * Compare every tuple of the left input with every tuple of the right
+	 * input, which is held in memory without regard to the memory budget;
+	 * the PhysicalPlanner never chooses it
+	 */
+	NESTED_LOOP
+}
@@ -0,0 +1,173 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test driver for the join methods: runs each plan with every join forced
+ * to each method, and with the methods chosen by the physical planner, on
+ * both executors under tiny and default memory budgets, and checks that
+ * the results agree. It also checks that the planner never chooses nested
+ * loop joins, and that the output of a sort-merge join is sorted on its
+ * join attributes, as the planner assumes when it tracks interesting
+ * orders. Finally, it checks that the planner costs a hash join between
+ * inputs of the same estimated size but different widths with the build
+ * side that the executors use.
+ */
+public class JoinMethodTest {
+	private static final long[] BUDGETS = { 1, 4096, BatchHashJoin.DEFAULT_MEMORY_BUDGET };
+
+	public static void main(String[] args) throws Exception {
+		Catalogue catalogue = createCatalogue();
+		DataDirectory data = TestData.create(catalogue);
+		try {
+			check(catalogue, data, "SELECT ra,sa\nFROM R,S\nWHERE rb=sb");
+			check(catalogue, data, "SELECT ra,sa,ta\nFROM R,S,T\nWHERE rb=sb,sb=tb");
+			check(catalogue, data, "SELECT ra,ta\nFROM R,S,T\nWHERE ra=sa,sb=tb,ta=\"7\"");
+			checkOrder(catalogue, data);
+			checkTie(catalogue, data);
+		} finally {
+			TestData.delete(data);
+		}
+		TestData.finish();
+	}
+
+	public static Catalogue createCatalogue() {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("R", 2000);
+		cat.createAttribute("R", "ra", 2000);
+		cat.createAttribute("R", "rb", 100);
+		cat.createRelation("S", 1000);
+		cat.createAttribute("S", "sa", 1000);
+		cat.createAttribute("S", "sb", 100);
+		cat.createRelation("T", 300);
+		cat.createAttribute("T", "ta", 300);
+		cat.createAttribute("T", "tb", 100);
+		cat.createRelation("U", 16);
+		cat.createAttribute("U", "ua", 16);
+		cat.createRelation("V", 16);
+		cat.createAttribute("V", "va", 16);
+		cat.createAttribute("V", "vb", 16);
+		cat.createAttribute("V", "vc", 16);
+		cat.createAttribute("V", "vd", 16);
+		cat.createAttribute("V", "ve", 16);
+
+		return cat;
+	}
+
+	private static void check(Catalogue catalogue, DataDirectory data, String query) throws Exception {
+		Operator optimised = new SJDB(catalogue).optimise(TestData.query(catalogue, query));
+		String name = query.replace('\n', ' ');
+		List<String> expected = TestData.rows(new Executor(data).execute(TestData.force(optimised, JoinMethod.NESTED_LOOP)));
+		TestData.check(name + ": result not empty", !expected.isEmpty());
+
+		for (long budget : BUDGETS) {
+			Operator planned = new PhysicalPlanner(budget).plan(optimised);
+			TestData.check(name + ": no nested loop joins planned, budget " + budget,
+					!methods(planned).contains(JoinMethod.NESTED_LOOP));
+			check(name + ": planned, budget " + budget, data, planned, budget, expected);
+			check(name + ": hash, budget " + budget, data,
+					TestData.force(optimised, JoinMethod.HASH), budget, expected);
+			check(name + ": sort-merge, budget " + budget, data,
+					TestData.force(optimised, JoinMethod.SORT_MERGE), budget, expected);
+		}
+	}
+
+	private static void check(String name, DataDirectory data, Operator plan, long budget, List<String> expected) {
+		Executor executor = new Executor(data);
+		executor.setMemoryBudget(budget);
+		TestData.check(name + ": executor", expected.equals(TestData.rows(executor.execute(plan))));
+
+		BatchExecutor batchExecutor = new BatchExecutor(data);
+		batchExecutor.setMemoryBudget(budget);
+		TestData.check(name + ": batch executor", expected.equals(TestData.rows(batchExecutor.execute(plan))));
+	}
+
+	/**
+	 * Check that a sort-merge join produces its output in the order of its
+	 * join attributes, which is lost by a project that drops them
+	 */
+	private static void checkOrder(Catalogue catalogue, DataDirectory data) throws Exception {
+		Attribute rb = new Attribute("rb");
+		Attribute sb = new Attribute("sb");
+		Join merge = new Join(new Scan(catalogue.getRelation("R")), new Scan(catalogue.getRelation("S")),
+				new Predicate(rb, sb), JoinMethod.SORT_MERGE);
+		Join hash = new Join(new Scan(catalogue.getRelation("R")), new Scan(catalogue.getRelation("S")),
+				new Predicate(rb, sb), JoinMethod.HASH);
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		attributes.add(new Attribute("ra"));
+		attributes.add(new Attribute("sa"));
+
+		TestData.check("sort-merge join sorted on rb", PhysicalPlanner.isSortedOn(merge, rb));
+		TestData.check("sort-merge join sorted on sb", PhysicalPlanner.isSortedOn(merge, sb));
+		TestData.check("hash join not sorted", !PhysicalPlanner.isSortedOn(hash, rb));
+		TestData.check("project dropping rb not sorted", !PhysicalPlanner.isSortedOn(new Project(merge, attributes), rb));
+
+		for (long budget : BUDGETS) {
+			Executor executor = new Executor(data);
+			executor.setMemoryBudget(budget);
+			TupleIterator iter = executor.build(merge);
+			int key = iter.getAttributes().indexOf(rb);
+			boolean sorted = true;
+			int previous = Integer.MIN_VALUE;
+			long count = 0;
+			int[] tuple;
+			iter.open();
+			try {
+				while ((tuple = iter.next()) != null) {
+					sorted &= previous <= tuple[key];
+					previous = tuple[key];
+					count++;
+				}
+			} finally {
+				iter.close();
+			}
+			TestData.check("sort-merge join output in order, budget " + budget, sorted && count > 0);
+		}
+	}
+
+	/**
+	 * Check the choice of method for joins of U with V, which have the same
+	 * tuple count, under a budget that only the narrower U fits in. The
+	 * executors build on the right input of such a join, so a hash join
+	 * with V on the right spills, and one with U on the right does not.
+	 */
+	private static void checkTie(Catalogue catalogue, DataDirectory data) throws Exception {
+		long budget = 400;
+		Predicate predicate = new Predicate(new Attribute("ua"), new Attribute("va"));
+		Join narrowLeft = new Join(new Scan(catalogue.getRelation("U")), new Scan(catalogue.getRelation("V")),
+				predicate, JoinMethod.HASH);
+		Join wideLeft = new Join(new Scan(catalogue.getRelation("V")), new Scan(catalogue.getRelation("U")),
+				new Predicate(new Attribute("va"), new Attribute("ua")), JoinMethod.HASH);
+		new Estimator().estimate(narrowLeft);
+		new Estimator().estimate(wideLeft);
+		TestData.check("equal inputs build on the right", !PhysicalPlanner.buildsLeft(narrowLeft)
+				&& !PhysicalPlanner.buildsLeft(wideLeft));
+
+		Operator planned = new PhysicalPlanner(budget).plan(narrowLeft);
+		TestData.check("building on the wider right input is costed as spilling, got " + methods(planned),
+				methods(planned).equals(Collections.singletonList(JoinMethod.SORT_MERGE)));
+		planned = new PhysicalPlanner(budget).plan(wideLeft);
+		TestData.check("building on the narrower right input is costed in memory, got " + methods(planned),
+				methods(planned).equals(Collections.singletonList(JoinMethod.HASH)));
+
+		List<String> expected = TestData.rows(new Executor(data).execute(TestData.force(narrowLeft,
+				JoinMethod.NESTED_LOOP)));
+		TestData.check("U,V join result not empty", !expected.isEmpty());
+		check("U,V hash join, budget " + budget, data, narrowLeft, budget, expected);
+	}
+
+	private static List<JoinMethod> methods(Operator op) {
+		List<JoinMethod> res = new ArrayList<JoinMethod>();
+		if (op instanceof Join) {
+			res.add(((Join) op).getMethod());
+		}
+		if (op.getInputs() != null) {
+			for (Operator input : op.getInputs()) {
+				res.addAll(methods(input));
+			}
+		}
+		return res;
+	}
+}
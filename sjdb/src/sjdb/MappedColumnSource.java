@@ -0,0 +1,240 @@
+package sjdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads the tuples of a named relation from a column file
+ * <relation name>.col in the data directory, as written by
+ * ColumnFileWriter. The file is mapped into memory rather than read, so the
+ * values come straight from the page cache, and each batch is filled by
+ * bulk copies from the mapped columns with no parsing or decoding.
+ *
+ * The file starts with a header:
+ *
+ * <magic> <version> <row count> <dictionary size> <column count> <attr name> ...
+ *
+ * written as by DataOutputStream, and padded to a multiple of ALIGNMENT
+ * bytes. The columns follow in the order of the header, each holding the
+ * value codes of one attribute for every row as little-endian ints. The
+ * codes are those of the data directory's dictionary file, which must hold
+ * at least the number of values given in the header.
+ *
+ * A single mapping is limited to 2GB, so each column is mapped in segments
+ * of SEGMENT_ROWS rows as the scan reaches them. Rows can also be read by
+ * their numbers, as found in an index (see IndexColumnSource).
+ */
+public class MappedColumnSource implements ColumnSource {
+	/**
+	 * Magic number at the start of a column file
+	 */
+	static final int MAGIC = 0x534A4443;
+
+	/**
+	 * Version of the column file format
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Alignment of the start of the columns in the file, in bytes
+	 */
+	static final int ALIGNMENT = 64;
+
+	/**
+	 * Number of rows in each mapped segment of a column
+	 */
+	private static final long SEGMENT_ROWS = 1L << 28;
+
+	private File file;
+	private List<Attribute> attributes;
+	private ValueDictionary dictionary;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private long rows;
+	private long dataOffset;
+	private int[] columns;
+	private IntBuffer[] segments;
+	private long segment;
+	private long pos;
+	private long end;
+
+	/**
+	 * Create a new mapped column source
+	 * @param relation Named relation to be read
+	 * @param file Column file holding the relation
+	 * @param dictionary Dictionary that the codes in the file belong to
+	 */
+	public MappedColumnSource(NamedRelation relation, File file, ValueDictionary dictionary) {
+		this(relation.getAttributes(), file, dictionary);
+	}
+
+	/**
+	 * Create a new mapped column source that reads some of the attributes of
+	 * a relation; the columns of the other attributes are never mapped
+	 * @param attributes Attributes to be read
+	 * @param file Column file holding the relation
+	 * @param dictionary Dictionary that the codes in the file belong to
+	 */
+	public MappedColumnSource(List<Attribute> attributes, File file, ValueDictionary dictionary) {
+		this.file = file;
+		this.attributes = new ArrayList<Attribute>(attributes);
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	public void open() {
+		try {
+			raf = new RandomAccessFile(file, "r");
+			if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+				throw new IOException("Not a column file: " + file);
+			}
+			rows = raf.readLong();
+			int dictionarySize = raf.readInt();
+			if (dictionarySize > dictionary.size()) {
+				throw new IOException("Dictionary does not hold the values of " + file);
+			}
+			List<String> names = new ArrayList<String>();
+			int columnCount = raf.readInt();
+			for (int i = 0; i < columnCount; i++) {
+				names.add(raf.readUTF());
+			}
+			dataOffset = align(raf.getFilePointer());
+
+			// map each attribute of the relation to its column in the file
+			columns = new int[attributes.size()];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = names.indexOf(attributes.get(i).getName());
+				if (columns[i] < 0) {
+					throw new IOException("Attribute " + attributes.get(i).getName() + " not found in " + file);
+				}
+			}
+			channel = raf.getChannel();
+			segments = new IntBuffer[columns.length];
+			segment = -1;
+			pos = 0;
+			end = rows;
+		} catch (IOException e) {
+			close();
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public int read(ColumnBatch batch) {
+		if (pos >= end) {
+			batch.setSize(0);
+			return 0;
+		}
+		if (pos / SEGMENT_ROWS != segment) {
+			mapSegment(pos / SEGMENT_ROWS);
+		}
+		// stop at the end of the segment, so each copy comes from one mapping
+		long segmentEnd = Math.min((segment + 1) * SEGMENT_ROWS, end);
+		int n = (int) Math.min(batch.getCapacity(), segmentEnd - pos);
+		int offset = (int) (pos - segment * SEGMENT_ROWS);
+		for (int i = 0; i < columns.length; i++) {
+			segments[i].position(offset);
+			segments[i].get(batch.getColumn(i), 0, n);
+		}
+		pos += n;
+		batch.setSize(n);
+		return n;
+	}
+
+	/**
+	 * Read the rows with the given numbers into a batch, up to its capacity;
+	 * the source must be open
+	 * @param numbers Row numbers, best in increasing order
+	 * @param from Position in numbers of the first row to be read
+	 * @param batch Batch to be filled
+	 * @return Number of rows read
+	 */
+	public int read(int[] numbers, int from, ColumnBatch batch) {
+		int n = Math.min(batch.getCapacity(), numbers.length - from);
+		for (int k = 0; k < n; k++) {
+			long row = numbers[from + k];
+			if (row / SEGMENT_ROWS != segment) {
+				mapSegment(row / SEGMENT_ROWS);
+			}
+			int offset = (int) (row - segment * SEGMENT_ROWS);
+			for (int i = 0; i < columns.length; i++) {
+				batch.getColumn(i)[k] = segments[i].get(offset);
+			}
+		}
+		batch.setSize(n);
+		return n;
+	}
+
+	/**
+	 * Return the number of rows in the file; the source must be open
+	 * @return Row count
+	 */
+	public long getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * Restrict the rows read from now on to a range, so that the parts of a
+	 * relation can be read by separate sources
+	 * @param start Number of the first row to be read
+	 * @param end Number of the row after the last row to be read
+	 */
+	public void setRange(long start, long end) {
+		this.pos = start;
+		this.end = Math.min(end, rows);
+	}
+
+	@Override
+	public void close() {
+		try {
+			// the mappings stay valid until they are garbage collected
+			segments = null;
+			channel = null;
+			if (raf != null) {
+				raf.close();
+				raf = null;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Map the given segment of each column read
+	 */
+	private void mapSegment(long number) {
+		try {
+			long start = number * SEGMENT_ROWS;
+			long length = Math.min(SEGMENT_ROWS, rows - start);
+			for (int i = 0; i < columns.length; i++) {
+				long columnStart = dataOffset + columns[i] * rows * 4;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, columnStart + start * 4, length * 4)
+						.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			}
+			segment = number;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Round a file position up to the alignment of the columns
+	 * @param position File position
+	 * @return Aligned position
+	 */
+	static long align(long position) {
+		return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+}
@@ -0,0 +1,102 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements the Join operator as the merge phase of a
+ * sort-merge join: both inputs must be sorted on their join attributes (see
+ * SortIterator), and are read in step. The right tuples that share a join
+ * value are held in memory while the left tuples with that value are
+ * paired with them.
+ *
+ * The tuples produced have the attributes of the left input followed by
+ * those of the right input, and are sorted on the join attributes.
+ */
+public class MergeJoinIterator implements TupleIterator {
+	private TupleIterator left;
+	private TupleIterator right;
+	private int leftColumn;
+	private int rightColumn;
+	private List<Attribute> attributes;
+
+	private int[] leftTuple;
+	private int[] rightTuple;
+	private List<int[]> group;
+	private int groupKey;
+	private int groupPos;
+
+	/**
+	 * Create a new merge join iterator
+	 * @param left Left input iterator, sorted on its join attribute
+	 * @param right Right input iterator, sorted on its join attribute
+	 * @param predicate Join predicate, of the form attr=attr
+	 */
+	public MergeJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate) {
+		int[] columns = JoinIterator.joinColumns(left.getAttributes(), right.getAttributes(), predicate);
+		this.left = left;
+		this.right = right;
+		this.leftColumn = columns[0];
+		this.rightColumn = columns[1];
+		this.attributes = new ArrayList<Attribute>(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+
+	@Override
+	public void open() {
+		left.open();
+		right.open();
+		leftTuple = left.next();
+		rightTuple = right.next();
+		group = new ArrayList<int[]>();
+		groupPos = 0;
+	}
+
+	@Override
+	public int[] next() {
+		while (true) {
+			if (groupPos < group.size()) {
+				return ProductIterator.concatenate(leftTuple, group.get(groupPos++));
+			}
+			if (!group.isEmpty()) {
+				// the current left tuple has been paired with the whole group
+				leftTuple = left.next();
+				if (leftTuple != null && leftTuple[leftColumn] == groupKey) {
+					groupPos = 0;
+					continue;
+				}
+				group.clear();
+			}
+			if (leftTuple == null || rightTuple == null) {
+				return null;
+			}
+			int leftKey = leftTuple[leftColumn];
+			int rightKey = rightTuple[rightColumn];
+			if (leftKey < rightKey) {
+				leftTuple = left.next();
+			} else if (leftKey > rightKey) {
+				rightTuple = right.next();
+			} else {
+				// gather the right tuples with this join value
+				groupKey = rightKey;
+				while (rightTuple != null && rightTuple[rightColumn] == groupKey) {
+					group.add(rightTuple);
+					rightTuple = right.next();
+				}
+				groupPos = 0;
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		left.close();
+		right.close();
+		group = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+}
@@ -0,0 +1,119 @@
+package sjdb;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements the Scan operator for the ParallelExecutor. The
+ * rows of the relation are divided into morsels of MORSEL_ROWS rows, which
+ * are handed out to the workers one at a time as they ask for more, so
+ * workers that are held up take fewer morsels and all finish together.
+ *
+ * Each worker reads through its own iterator (see worker()). A relation
+ * held in a column file is read by a separate mapped source for each
+ * worker, which claims the next morsel by incrementing a shared counter; a
+ * relation held in a CSV file can only be read in order, so its workers
+ * take turns to read a batch from one shared source.
+ */
+public class MorselScan {
+	/**
+	 * Number of rows in each morsel
+	 */
+	public static final int MORSEL_ROWS = 8 * ColumnBatch.DEFAULT_CAPACITY;
+
+	private DataDirectory data;
+	private NamedRelation relation;
+	private List<Attribute> attributes;
+	private AtomicLong nextMorsel;
+	private long rows;
+	private ColumnSource shared;
+
+	/**
+	 * Create a new morsel scan
+	 * @param data Directory holding the data files
+	 * @param scan Scan operator to be executed
+	 */
+	public MorselScan(DataDirectory data, Scan scan) {
+		this.data = data;
+		this.relation = (NamedRelation) scan.getRelation();
+		this.attributes = scan.getAttributes();
+	}
+
+	/**
+	 * Prepare to hand out the morsels of the relation
+	 */
+	public void open() {
+		nextMorsel = new AtomicLong();
+		ColumnSource source = data.getSource(relation, attributes);
+		source.open();
+		if (source instanceof MappedColumnSource) {
+			rows = ((MappedColumnSource) source).getRowCount();
+			source.close();
+		} else {
+			shared = source;
+		}
+	}
+
+	/**
+	 * Release the resources held by the scan, once every worker is done
+	 */
+	public void close() {
+		if (shared != null) {
+			shared.close();
+			shared = null;
+		}
+	}
+
+	/**
+	 * Return an iterator through which one worker reads morsels of the
+	 * relation, until there are none left
+	 * @return Batch iterator for one worker
+	 */
+	public BatchIterator worker() {
+		return new BatchIterator() {
+			private MappedColumnSource source;
+			private ColumnBatch batch;
+
+			@Override
+			public void open() {
+				batch = new ColumnBatch(attributes.size(), ColumnBatch.DEFAULT_CAPACITY);
+				if (shared == null) {
+					source = (MappedColumnSource) data.getSource(relation, attributes);
+					source.open();
+					source.setRange(0, 0);
+				}
+			}
+
+			@Override
+			public ColumnBatch next() {
+				if (source == null) {
+					synchronized (shared) {
+						return shared.read(batch) > 0 ? batch : null;
+					}
+				}
+				while (source.read(batch) == 0) {
+					long start = nextMorsel.getAndIncrement() * MORSEL_ROWS;
+					if (start >= rows) {
+						return null;
+					}
+					source.setRange(start, start + MORSEL_ROWS);
+				}
+				return batch;
+			}
+
+			@Override
+			public void close() {
+				if (source != null) {
+					source.close();
+					source = null;
+				}
+				batch = null;
+			}
+
+			@Override
+			public List<Attribute> getAttributes() {
+				return attributes;
+			}
+		};
+	}
+}
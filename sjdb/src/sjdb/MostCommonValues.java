@@ -0,0 +1,96 @@
+package sjdb;
+
+/**
+ * This class represents the most common values of an attribute, each with
+ * the fraction of the relation's tuples that take that value.
+ *
+ * The values not in the list are assumed to share the remaining tuples
+ * evenly, so the list lets the estimator tell heavy hitters apart from the
+ * rest of a skewed attribute.
+ */
+public class MostCommonValues {
+	private String[] values;
+	private double[] frequencies;
+
+	/**
+	 * Create a new most-common-values list
+	 * @param values Most common values, most common first
+	 * @param frequencies Fraction of tuples taking each value
+	 */
+	public MostCommonValues(String[] values, double[] frequencies) {
+		this.values = values;
+		this.frequencies = frequencies;
+	}
+
+	/**
+	 * Return the number of values in the list
+	 * @return Value count
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Return the value at the given position in the list
+	 * @param i Position
+	 * @return Value
+	 */
+	public String getValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Return the frequency of the value at the given position in the list
+	 * @param i Position
+	 * @return Fraction of tuples taking the value
+	 */
+	public double getFrequency(int i) {
+		return frequencies[i];
+	}
+
+	/**
+	 * Return the frequency of the given value, or -1 if it is not in the list
+	 * @param value Value to look up
+	 * @return Fraction of tuples taking the value
+	 */
+	public double getFrequency(String value) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i].equals(value)) {
+				return frequencies[i];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the fraction of tuples that take one of the values in the list
+	 * @return Total frequency
+	 */
+	public double getTotalFrequency() {
+		double res = 0;
+		for (double frequency : frequencies) {
+			res += frequency;
+		}
+		return Math.min(res, 1.0);
+	}
+
+	/**
+	 * Return the list in the form used by the serialised catalogue:
+	 * <value>/<frequency>|<value>/<frequency>|...
+	 * @return Serialised list
+	 */
+	public String render() {
+		String ret = "";
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				ret += "|";
+			}
+			ret += CatalogueWriter.escape(values[i]) + "/" + frequencies[i];
+		}
+		return ret;
+	}
+
+	public String toString() {
+		return render();
+	}
+}
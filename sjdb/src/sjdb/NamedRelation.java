@@ -3,6 +3,9 @@
  */
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This class represents a named relation which is fed into a query plan
  * @author nmg
@@ -12,15 +15,48 @@ public class NamedRelation extends Relation {
 	 * The name of the named relation
 	 */
 	private String name;
+
+	/**
+	 * The attributes of the named relation that have secondary indexes
+	 */
+	private List<Attribute> indexes;
 	
 	/**
 	 * Create a new named relation with a given name and tuple count
 	 * @param name The name of the relation
 	 * @param size The tuple count
 	 */
-	public NamedRelation(String name, int size) {
+	public NamedRelation(String name, long size) {
 		super(size);
 		this.name = name;
+		this.indexes = new ArrayList<Attribute>();
+	}
+
+	/**
+	 * Declare an index on an attribute of the relation
+	 * @param attribute Attribute of the relation to be indexed
+	 */
+	public void addIndex(Attribute attribute) {
+		if (!this.indexes.contains(attribute)) {
+			this.indexes.add(attribute);
+		}
+	}
+
+	/**
+	 * Return the attributes of the relation that have indexes
+	 * @return Indexed attributes, in the order they were declared
+	 */
+	public List<Attribute> getIndexes() {
+		return this.indexes;
+	}
+
+	/**
+	 * Return true if an index is declared on an attribute of the relation
+	 * @param attribute Attribute of the relation
+	 * @return True if the attribute is indexed
+	 */
+	public boolean hasIndex(Attribute attribute) {
+		return this.indexes.contains(attribute);
 	}
 
 	/* (non-Javadoc)
@@ -35,6 +71,13 @@ public class NamedRelation extends Relation {
 	 * @see sjdb.Relation#render()
 	 */
 	public String render() {
-		return name + ":" + super.render();
+		String ret = name + ":" + super.render();
+		for (AttributeGroup group : getAttributeGroups()) {
+			ret += ":" + group.render();
+		}
+		for (Attribute attr : this.indexes) {
+			ret += ":idx=" + attr.getName();
+		}
+		return ret;
 	}
 }
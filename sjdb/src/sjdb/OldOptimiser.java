@@ -130,13 +130,13 @@ public class OldOptimiser {
     }
 
     private Operator reorder(Operator plan) {
-        Map<Scan, Integer> relationSizes = orderScans(plan);
+        Map<Scan, Long> relationSizes = orderScans(plan);
 
         List<Scan> orderedScans = new ArrayList<>();
 
         while (!relationSizes.isEmpty()) {
-            Map.Entry<Scan, Integer> minValue = null;
-            for (Map.Entry<Scan, Integer> entry : relationSizes.entrySet()) {
+            Map.Entry<Scan, Long> minValue = null;
+            for (Map.Entry<Scan, Long> entry : relationSizes.entrySet()) {
                     if(minValue == null || entry.getValue() < minValue.getValue()) {
                         minValue = entry;
                     }
@@ -148,8 +148,8 @@ public class OldOptimiser {
         return pushSelects(plan, orderedScans);
     }
 
-    private Map<Scan, Integer> orderScans(Operator plan) {
-        Map<Scan, Integer> relationSizes = new HashMap<>();
+    private Map<Scan, Long> orderScans(Operator plan) {
+        Map<Scan, Long> relationSizes = new HashMap<>();
 
         if (plan instanceof Scan) {
             relationSizes.put((Scan) plan, plan.getOutput().getTupleCount());
@@ -1,33 +1,86 @@
 package sjdb;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class Optimiser {
 	private List<Select> selectsToAdd = new ArrayList<>();
 	private List<Project> projectsToAdd = new ArrayList<>();
 	private List<Scan> scanToBeRebuiled = new ArrayList<>();
-	private List<Scan> selectedScanToBeReOrdered = new ArrayList<>();
-	private List<Scan> scanToBeReOrdered = new ArrayList<>();
-	private HashMap<Scan, Scan> selectedScanToOriginalScan = new HashMap<>();
 	private Catalogue cat;
 	private Estimator est;
+	private boolean leftDeep = false;
+	private int dynamicProgrammingLimit = 16;
+	private int parallelJoinThreshold = 10;
+	private CardinalityCache cardinalityCache = null;
+
+	/**
+	 * Cost of reading one matching tuple through an index, relative to that
+	 * of reading one tuple in a scan; the rows an index returns are read out
+	 * of order, one page at a time, rather than in a sequential pass
+	 */
+	static final double INDEX_ROW_COST = 4;
 
 	public Optimiser(Catalogue catalogue) {
 		this.cat = catalogue;
 		this.est = new Estimator();
 	}
 
+	/**
+	 * Restrict join ordering to left-deep plans; by default bushy plans are
+	 * also considered and the shape of the join tree is chosen by cost.
+	 * @param leftDeep True if only left-deep plans should be considered
+	 */
+	public void setLeftDeep(boolean leftDeep) {
+		this.leftDeep = leftDeep;
+	}
+
+	/**
+	 * Set the largest number of relations for which joins are ordered by
+	 * exhaustive dynamic programming; wider queries are ordered by a greedy
+	 * and genetic search whose planning time stays bounded. The left-deep
+	 * restriction only applies to the dynamic programming search.
+	 * @param limit Largest relation count for dynamic programming, at most
+	 * JoinEnumerator.MAX_INPUTS
+	 */
+	public void setDynamicProgrammingLimit(int limit) {
+		if (limit > JoinEnumerator.MAX_INPUTS) {
+			throw new IllegalArgumentException("Dynamic programming limit " + limit + " exceeds "
+					+ JoinEnumerator.MAX_INPUTS);
+		}
+		this.dynamicProgrammingLimit = limit;
+	}
+
+	/**
+	 * Set the smallest number of relations for which the dynamic programming
+	 * join search plans each level in parallel on the common fork/join pool.
+	 * @param threshold Smallest relation count for parallel planning
+	 */
+	public void setParallelJoinThreshold(int threshold) {
+		this.parallelJoinThreshold = threshold;
+	}
+
+	/**
+	 * Share join estimates with other optimisations against the same
+	 * catalogue statistics. Without a cache, estimates are only shared
+	 * between the alternative plans considered within one optimisation.
+	 * @param cache Shared cardinality cache, or null
+	 */
+	public void setCardinalityCache(CardinalityCache cache) {
+		this.cardinalityCache = cache;
+	}
+
 	public Operator optimise(Operator originalRoot) {
 		Operator movedSelectsDownRoot = moveSelectsDown(originalRoot);
 		Operator reorderedJoinsRoot = reorderJoins(movedSelectsDownRoot);
 		Operator createdJoinsRoot = createJoins(reorderedJoinsRoot);
 		Operator movedProjectsDownRoot = moveProjectsDown(createdJoinsRoot);
+		Operator chosenIndexScansRoot = chooseIndexScans(movedProjectsDownRoot);
+		Operator chosenJoinMethodsRoot = new PhysicalPlanner().plan(chosenIndexScansRoot);
 
-		return movedProjectsDownRoot;
+		return chosenJoinMethodsRoot;
 	}
 
 	// add all select to list selectsToAdd
@@ -43,6 +96,11 @@ public class Optimiser {
 		return;
 	}
 
+	private void initiateSelectsToAdd(Operator node) {
+		selectsToAdd = new ArrayList<>();
+		generateSelectsToAdd(node);
+	}
+
 	private void initiateProjectsToAdd(Operator node) {
 		projectsToAdd = new ArrayList<>();
 		generateProjectsToAdd(node);
@@ -73,68 +131,45 @@ public class Optimiser {
 	}
 
 	private Operator reorderJoins(Operator root) {
-		generateSelectedScanToOriginalScan(root);
-		generateSelectedScanToBeReOrdered();
-		Operator reorderedJoinRes = moveSelectsDownByScanOrderList(root, scanToBeReOrdered);
-		return reorderedJoinRes;
-	}
-
-	private void generateSelectedScanToOriginalScan(Operator root) {
-		if (root instanceof Select && ((Select) root).getPredicate().equalsValue()) {
-			// the select is attr = val
-
-			Scan originalScan = (Scan) findSelectOriginalScan(root);
-			// Relation selectedRelation = new Relation(root.getOutput().getTupleCount());
-
-			NamedRelation selectedRelation = new NamedRelation(originalScan.toString(),
-					root.getOutput().getTupleCount());
-			List<Attribute> originalScanAttributes = originalScan.getRelation().getAttributes();
+		initiateSelectsToAdd(root);
+		initiateProjectsToAdd(root);
 
-			for (Attribute attr : originalScanAttributes) {
-				selectedRelation.addAttribute(attr);
-			}
+		// each scan with its local selects is an input to the join enumerator
+		List<Operator> joinInputs = new ArrayList<>();
+		for (Scan scan : findScans(root)) {
+			joinInputs.add(addSelect(scan));
+		}
 
-			Scan selectedScan = new Scan(selectedRelation);
-			selectedScanToOriginalScan.put(selectedScan, originalScan);
-			selectedScanToBeReOrdered.add(selectedScan);
+		// the selects that could not be applied to a single scan are joins
+		List<Predicate> joinPredicates = new ArrayList<>();
+		for (Select select : selectsToAdd) {
+			joinPredicates.add(select.getPredicate());
+		}
+		selectsToAdd.clear();
 
-		} else if (root instanceof Scan) {
-			selectedScanToOriginalScan.put((Scan) root, (Scan) root);
-			selectedScanToBeReOrdered.add((Scan) root);
+		JoinGraph graph = new JoinGraph(joinInputs, joinPredicates, cardinalityCache);
+		Operator leftChild;
+		if (joinInputs.size() > dynamicProgrammingLimit) {
+			GeneticJoinEnumerator enumerator = new GeneticJoinEnumerator(graph);
+			leftChild = enumerator.enumerate();
 		} else {
-			for (Operator child : root.getInputs()) {
-				generateSelectedScanToOriginalScan(child);
+			ForkJoinPool pool = null;
+			if (joinInputs.size() >= parallelJoinThreshold) {
+				pool = ForkJoinPool.commonPool();
 			}
+			JoinEnumerator enumerator = new JoinEnumerator(graph, leftDeep, pool);
+			leftChild = enumerator.enumerate();
 		}
-		return;
-	}
 
-	private void generateSelectedScanToBeReOrdered() {
-		selectedScanToBeReOrdered.sort(new Comparator<Scan>() {
-			@Override
-			public int compare(Scan nodeA, Scan nodeB) {
-				int diff = nodeA.getOutput().getTupleCount() - nodeB.getOutput().getTupleCount();
-				return diff;
-			}
-		});
-		for (Scan selectedScan : selectedScanToBeReOrdered) {
-			scanToBeReOrdered.add(selectedScanToOriginalScan.get(selectedScan));
+		for (Project project : projectsToAdd) {
+			Operator newLeftChild = new Project(leftChild, project.getAttributes());
+			est.estimate(newLeftChild);
+			leftChild = newLeftChild;
 		}
-	}
 
-	private Operator findSelectOriginalScan(Operator node) {
-		if (node instanceof Scan) {
-			return node;
-		}
-		for (Operator child : node.getInputs()) {
-			Operator res = findSelectOriginalScan(child);
-			if (res != null) {
-				return res;
-			}
-		}
-		return null;
+		return leftChild;
 	}
-	
+
 	private List<Scan> findScans(Operator node) {
         List<Scan> scansRelatedToNode = new ArrayList<>();
 
@@ -169,7 +204,7 @@ public class Optimiser {
 			Operator newRightChild = addSelect(rightChild);
 
 			Operator newNode = new Product(newLeftChild, newRightChild);
-			newNode.accept(est);
+			est.estimate(newNode);
 			// newNode as leftChild
 			leftChild = newNode;
 		}
@@ -177,7 +212,7 @@ public class Optimiser {
 
 		for (Project project : projectsToAdd) {
 			Operator newLeftChild = new Project(leftChild, project.getAttributes());
-			newLeftChild.accept(est);
+			est.estimate(newLeftChild);
 			leftChild = newLeftChild;
 		}
 
@@ -202,11 +237,104 @@ public class Optimiser {
 	}
 
 	private Operator moveProjectsDown(Operator root) {
-		HashSet<Attribute> toBeProjectedAttrs = new HashSet<Attribute>();
+		// the attributes output by the root are needed even if there is no
+		// project at the root, as for SELECT *
+		HashSet<Attribute> toBeProjectedAttrs = new HashSet<Attribute>(root.getOutput().getAttributes());
 		Operator res = createNewNodeInMoveProjectsDown(root, toBeProjectedAttrs);
 		return res;
 	}
 
+	/**
+	 * Replace each scan whose selects include attr=value on an indexed
+	 * attribute with an index scan, where reading the matching tuples through
+	 * the index is estimated to be cheaper than reading the whole relation
+	 */
+	private Operator chooseIndexScans(Operator node) {
+		if (node instanceof Scan) {
+			return node;
+		} else if (node instanceof Select) {
+			// the selects applied directly to a scan, from the bottom up
+			List<Select> selects = new ArrayList<>();
+			Operator child = node;
+			while (child instanceof Select) {
+				selects.add(0, (Select) child);
+				child = ((Select) child).getInput();
+			}
+			if (child instanceof Scan) {
+				return chooseIndexScan((Scan) child, selects, node);
+			}
+			Operator newChild = chooseIndexScans(child);
+			if (newChild == child) {
+				return node;
+			}
+			for (Select select : selects) {
+				newChild = new Select(newChild, select.getPredicate());
+				est.estimate(newChild);
+			}
+			return newChild;
+		}
+
+		List<Operator> inputs = node.getInputs();
+		List<Operator> newInputs = new ArrayList<>();
+		boolean changed = false;
+		for (Operator input : inputs) {
+			Operator newInput = chooseIndexScans(input);
+			changed |= newInput != input;
+			newInputs.add(newInput);
+		}
+		if (!changed) {
+			return node;
+		}
+		Operator newNode;
+		if (node instanceof Project) {
+			newNode = new Project(newInputs.get(0), ((Project) node).getAttributes());
+		} else if (node instanceof Product) {
+			newNode = new Product(newInputs.get(0), newInputs.get(1));
+		} else {
+			newNode = new Join(newInputs.get(0), newInputs.get(1), ((Join) node).getPredicate(), ((Join) node).getMethod());
+		}
+		est.estimate(newNode);
+		return newNode;
+	}
+
+	/**
+	 * Return the cheaper of the given selects over a scan and an index scan
+	 * for the most selective of them on an indexed attribute, with the other
+	 * selects applied above it
+	 */
+	private Operator chooseIndexScan(Scan scan, List<Select> selects, Operator node) {
+		NamedRelation relation = (NamedRelation) scan.getRelation();
+		double scanCost = relation.getTupleCount();
+		IndexScan best = null;
+		double bestCost = scanCost;
+		for (Select select : selects) {
+			Predicate predicate = select.getPredicate();
+			if (!predicate.equalsValue() || !relation.hasIndex(predicate.getLeftAttribute())) {
+				continue;
+			}
+			IndexScan candidate = new IndexScan(relation, scan.getAttributes(), predicate);
+			est.estimate(candidate);
+			// one page is read on each level of the tree
+			double height = Math.ceil(Math.log(Math.max(relation.getTupleCount(), 2)) / Math.log(BTreeIndex.LEAF_ENTRIES)) + 1;
+			double cost = height + candidate.getOutput().getTupleCount() * INDEX_ROW_COST;
+			if (cost < bestCost) {
+				best = candidate;
+				bestCost = cost;
+			}
+		}
+		if (best == null) {
+			return node;
+		}
+		Operator res = best;
+		for (Select select : selects) {
+			if (select.getPredicate() != best.getPredicate()) {
+				res = new Select(res, select.getPredicate());
+				est.estimate(res);
+			}
+		}
+		return res;
+	}
+
 	private Operator createNewNodeInMoveProjectsDown(Operator node, HashSet<Attribute> toBeProjectedAttrs) {
 		Estimator est = new Estimator();
 
@@ -214,15 +342,20 @@ public class Optimiser {
 			Operator child = ((Project) node).getInput();
 			toBeProjectedAttrs.addAll(((Project) node).getAttributes());
 			Operator newChild = createNewNodeInMoveProjectsDown(child, toBeProjectedAttrs);
+			if (newChild.getOutput().getAttributes().equals(((Project) node).getAttributes())) {
+				// the child already produces exactly these attributes, as a
+				// pruned scan may
+				return newChild;
+			}
 			Operator newNode = new Project(newChild, ((Project) node).getAttributes());
-			newNode.accept(est);
+			est.estimate(newNode);
 			return newNode;
 		} else if (node instanceof Join) {
 			Operator leftChild = ((Join) node).getLeft();
 			Operator rightChild = ((Join) node).getRight();
 			Predicate predicate = ((Join) node).getPredicate();
-			List<Attribute> leftChildAttributes = leftChild.getOutput().getAttributes();
-			List<Attribute> rightChildAttributes = rightChild.getOutput().getAttributes();
+			List<Attribute> leftChildAttributes = new ArrayList<>(leftChild.getOutput().getAttributes());
+			List<Attribute> rightChildAttributes = new ArrayList<>(rightChild.getOutput().getAttributes());
 			toBeProjectedAttrs.add(predicate.getLeftAttribute());
 			toBeProjectedAttrs.add(predicate.getRightAttribute());
 			if (leftChildAttributes.retainAll(toBeProjectedAttrs)) {
@@ -234,16 +367,34 @@ public class Optimiser {
 			Operator newLeftChild = createNewNodeInMoveProjectsDown(leftChild, toBeProjectedAttrs);
 			Operator newRightChild = createNewNodeInMoveProjectsDown(rightChild, toBeProjectedAttrs);
 
-			Operator newNode = new Join(newLeftChild, newRightChild, predicate);
-			newNode.accept(est);
+			Operator newNode = new Join(newLeftChild, newRightChild, predicate, ((Join) node).getMethod());
+			est.estimate(newNode);
 			return newNode;
 		} else if (node instanceof Select) {
 			Operator child = ((Select) node).getInput();
 			Predicate predicate = ((Select) node).getPredicate();
+			// the attributes tested by the select must survive any project below it
+			toBeProjectedAttrs.add(predicate.getLeftAttribute());
+			if (!predicate.equalsValue()) {
+				toBeProjectedAttrs.add(predicate.getRightAttribute());
+			}
 			Operator newChild = createNewNodeInMoveProjectsDown(child, toBeProjectedAttrs);
 			Operator newNode = new Select(newChild, predicate);
-			newNode.accept(est);
+			est.estimate(newNode);
+			return newNode;
+		} else if (node instanceof Product) {
+			Operator newLeftChild = createNewNodeInMoveProjectsDown(((Product) node).getLeft(), toBeProjectedAttrs);
+			Operator newRightChild = createNewNodeInMoveProjectsDown(((Product) node).getRight(), toBeProjectedAttrs);
+			Operator newNode = new Product(newLeftChild, newRightChild);
+			est.estimate(newNode);
 			return newNode;
+		} else if (node instanceof Scan) {
+			// only read the columns that are needed above the scan
+			NamedRelation relation = (NamedRelation) ((Scan) node).getRelation();
+			List<Attribute> scanAttrs = new ArrayList<>(((Scan) node).getAttributes());
+			if (scanAttrs.retainAll(toBeProjectedAttrs)) {
+				return new Scan(relation, scanAttrs);
+			}
 		}
 		return node;
 	}
@@ -258,7 +409,7 @@ public class Optimiser {
 			Operator newLeftOperator = createNewNodeInCreateJoins(leftOperator);
 			Operator newRightOperator = createNewNodeInCreateJoins(rightOperator);
 			Join newNode = new Join(newLeftOperator, newRightOperator, ((Select) node).getPredicate());
-			newNode.accept(est);
+			est.estimate(newNode);
 			return newNode;
 		} else {
 			if (node instanceof Scan) {
@@ -267,7 +418,7 @@ public class Optimiser {
 				Operator child = ((Project) node).getInput();
 				Operator newChild = createNewNodeInCreateJoins(child);
 				Project newNode = new Project(newChild, node.getOutput().getAttributes());
-				newNode.accept(est);
+				est.estimate(newNode);
 				return newNode;
 			} else if (node instanceof Product) {
 				Operator leftChild = ((Product) node).getLeft();
@@ -275,7 +426,7 @@ public class Optimiser {
 				Operator newLeftChild = createNewNodeInCreateJoins(leftChild);
 				Operator newRightChild = createNewNodeInCreateJoins(rightChild);
 				Product newNode = new Product(newLeftChild, newRightChild);
-				newNode.accept(est);
+				est.estimate(newNode);
 				return newNode;
 			} else if (node instanceof Join) {
 				Operator leftChild = ((Join) node).getLeft();
@@ -283,15 +434,15 @@ public class Optimiser {
 				Predicate predicate = ((Join) node).getPredicate();
 				Operator newLeftChild = createNewNodeInCreateJoins(leftChild);
 				Operator newRightChild = createNewNodeInCreateJoins(rightChild);
-				Join newNode = new Join(newLeftChild, newRightChild, predicate);
-				newNode.accept(est);
+				Join newNode = new Join(newLeftChild, newRightChild, predicate, ((Join) node).getMethod());
+				est.estimate(newNode);
 				return newNode;
 			} else if (node instanceof Select) {
 				Operator child = ((Select) node).getInput();
 				Operator newChild = createNewNodeInCreateJoins(child);
 				Predicate predicate = ((Select) node).getPredicate();
 				Select newNode = new Select(newChild, predicate);
-				newNode.accept(est);
+				est.estimate(newNode);
 				return newNode;
 			}
 		}
@@ -309,7 +460,7 @@ public class Optimiser {
 				Select tempChild = new Select(child, select.getPredicate());
 				Predicate newPredicate = generateNewPredicate(tempChild);
 				Select newChild = new Select(child,newPredicate);
-				newChild.accept(est);
+				est.estimate(newChild);
 				child = newChild;
 				selectsToRemove.add(select);
 			}
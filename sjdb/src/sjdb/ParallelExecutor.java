@@ -0,0 +1,839 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class executes query plans in vectorised mode on several threads,
+ * in the morsel-driven style of Leis et al.
+ *
+ * A plan is cut into pipelines at the operators that must see all of an
+ * input before producing anything, such as the build side of a hash join.
+ * Each pipeline is run by a set of workers on a fork/join pool; every
+ * worker has its own chain of the usual batch operators (see
+ * BatchSelect, BatchProject and BatchHashProbe), fed by morsels of the
+ * scanned relation that are handed out as the workers ask for them (see
+ * MorselScan). The pipelines that build hash tables run first: their
+ * workers collect the build rows, which are then inserted into a shared
+ * ConcurrentIntHashTable by all of the workers at once, and the pipelines
+ * that probe the table only start once it is complete, as does the scan on
+ * the probe side to which each hash join passes a filter of its build keys
+ * (see JoinFilter).
+ *
+ * Hash joins build on the input that the Estimator expects to be smaller.
+ * If the build input turns out not to fit in the memory budget, the join
+ * is instead run on one thread as a Grace hash join (see BatchHashJoin),
+ * and the workers of the pipeline above take turns to read batches of its
+ * output. Products and nested loop joins materialise their right input,
+ * and each worker pairs its part of the left input with all of it.
+ * Sort-merge joins divide both inputs into FANOUT partitions by a hash of
+ * their join attributes, held in memory or, if they do not fit in the
+ * memory budget, in temporary files; the workers then take pairs of
+ * partitions in turn, and sort and merge each pair.
+ *
+ * If asked to, the executor reduces the inputs of acyclic blocks of joins
+ * by semi-joins before it joins them, if they are expected to fit in the
+ * memory budget; the inputs are materialised by all of the workers, and
+ * reduced on one thread.
+ *
+ * Scans only run in parallel when their relation is held in a column file;
+ * the workers of a scan of a CSV file take turns to read from it, as do
+ * those of an index scan.
+ */
+public class ParallelExecutor {
+	private DataDirectory data;
+	private ForkJoinPool pool;
+	private int parallelism;
+	private List<MorselScan> scans;
+	private List<BatchIterator> serial;
+	private List<PartitionedRows> partitioned;
+	private long memoryBudget;
+	private List<JoinFilter> filters;
+	private boolean semiJoinReduction;
+	private Map<Operator, SemiJoinReduction> reductions;
+	private Map<Operator, Pipeline> reducedLeaves;
+
+	/**
+	 * Create a new parallel executor on the common fork/join pool
+	 * @param dataDir Directory holding the data files
+	 */
+	public ParallelExecutor(String dataDir) {
+		this(new DataDirectory(dataDir));
+	}
+
+	/**
+	 * Create a new parallel executor on the common fork/join pool
+	 * @param data Directory holding the data files
+	 */
+	public ParallelExecutor(DataDirectory data) {
+		this(data, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a new parallel executor, with one worker for each thread of
+	 * the given pool
+	 * @param data Directory holding the data files
+	 * @param pool Pool on which to run the workers
+	 */
+	public ParallelExecutor(DataDirectory data, ForkJoinPool pool) {
+		this.data = data;
+		this.pool = pool;
+		this.parallelism = pool.getParallelism();
+		this.memoryBudget = BatchHashJoin.DEFAULT_MEMORY_BUDGET;
+	}
+
+	/**
+	 * Set the number of bytes the build input of each hash join, or the
+	 * inputs of each sort-merge join, may take up in memory before they are
+	 * spilled to disk
+	 * @param memoryBudget Memory budget in bytes
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Set the number of workers that run each pipeline
+	 * @param parallelism Worker count
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(parallelism, 1);
+	}
+
+	/**
+	 * Set whether the inputs of acyclic blocks of joins are reduced by
+	 * semi-joins before they are joined (see SemiJoinReduction); they are
+	 * not by default. A block is only reduced if its inputs are expected to
+	 * fit in the memory budget together, since they are all held in memory.
+	 * @param semiJoinReduction True to reduce the inputs of joins
+	 */
+	public void setSemiJoinReduction(boolean semiJoinReduction) {
+		this.semiJoinReduction = semiJoinReduction;
+	}
+
+	/**
+	 * Return the dictionary used to encode the values in the batches
+	 * @return Value dictionary
+	 */
+	public ValueDictionary getDictionary() {
+		return data.getDictionary();
+	}
+
+	/**
+	 * Run a plan and return its result, with the values decoded
+	 * @param plan Root of the plan
+	 * @return List of tuples
+	 */
+	public List<String[]> execute(Operator plan) {
+		ColumnStore rows;
+		scans = new ArrayList<MorselScan>();
+		serial = new ArrayList<BatchIterator>();
+		partitioned = new ArrayList<PartitionedRows>();
+		try {
+			rows = materialise(compile(plan));
+		} finally {
+			closeAll();
+		}
+		ValueDictionary dictionary = data.getDictionary();
+		List<String[]> res = new ArrayList<String[]>();
+		for (int row = 0; row < rows.size(); row++) {
+			String[] tuple = new String[rows.getColumnCount()];
+			for (int c = 0; c < tuple.length; c++) {
+				tuple[c] = dictionary.decode(rows.getColumn(c)[row]);
+			}
+			res.add(tuple);
+		}
+		return res;
+	}
+
+	/**
+	 * Run a plan and return the number of tuples in its result, without
+	 * decoding them
+	 * @param plan Root of the plan
+	 * @return Tuple count
+	 */
+	public long count(Operator plan) {
+		final long[] counts = new long[parallelism];
+		scans = new ArrayList<MorselScan>();
+		serial = new ArrayList<BatchIterator>();
+		partitioned = new ArrayList<PartitionedRows>();
+		try {
+			final Pipeline pipeline = compile(plan);
+			runWorkers(new Worker() {
+				@Override
+				public void run(int worker) {
+					BatchIterator iter = pipeline.create();
+					iter.open();
+					try {
+						ColumnBatch batch;
+						while ((batch = iter.next()) != null) {
+							counts[worker] += batch.getLiveCount();
+						}
+					} finally {
+						iter.close();
+					}
+				}
+			});
+		} finally {
+			closeAll();
+		}
+		long res = 0;
+		for (long count : counts) {
+			res += count;
+		}
+		return res;
+	}
+
+	/**
+	 * Return the pipeline that produces the output of a plan, first running
+	 * any pipelines that it depends on
+	 */
+	private Pipeline compile(Operator plan) {
+		// the estimates are used to choose the build side of hash joins
+		Estimator est = new Estimator();
+		est.estimate(plan);
+		filters = JoinFilter.forPlan(plan);
+		reductions = new IdentityHashMap<Operator, SemiJoinReduction>();
+		reducedLeaves = new IdentityHashMap<Operator, Pipeline>();
+		if (semiJoinReduction) {
+			for (SemiJoinReduction reduction : SemiJoinReduction.forPlan(plan, memoryBudget)) {
+				reductions.put(reduction.getRoot(), reduction);
+			}
+		}
+		return compileNode(plan);
+	}
+
+	private Pipeline compileNode(final Operator op) {
+		if (reducedLeaves.containsKey(op)) {
+			return reducedLeaves.get(op);
+		} else if (reductions.containsKey(op)) {
+			reduce(reductions.remove(op));
+		}
+		if (op instanceof Scan) {
+			final MorselScan scan = new MorselScan(data, (Scan) op);
+			scan.open();
+			scans.add(scan);
+			return new Pipeline(((Scan) op).getAttributes()) {
+				@Override
+				public BatchIterator create() {
+					BatchIterator iter = scan.worker();
+					for (JoinFilter filter : filters) {
+						if (filter.getScan() == op) {
+							iter = new BatchJoinFilter(iter, filter);
+						}
+					}
+					return iter;
+				}
+			};
+		} else if (op instanceof IndexScan) {
+			// the matching rows are few, so they are read on one thread
+			IndexScan indexScan = (IndexScan) op;
+			final BatchIterator scan = new BatchScan(data.getIndexSource((NamedRelation) indexScan.getRelation(),
+					indexScan.getAttributes(), indexScan.getPredicate()));
+			scan.open();
+			serial.add(scan);
+			return new Pipeline(indexScan.getAttributes()) {
+				@Override
+				public BatchIterator create() {
+					BatchIterator iter = new SharedIterator(scan);
+					for (JoinFilter filter : filters) {
+						if (filter.getScan() == op) {
+							iter = new BatchJoinFilter(iter, filter);
+						}
+					}
+					return iter;
+				}
+			};
+		} else if (op instanceof Select) {
+			final Pipeline input = compileNode(((Select) op).getInput());
+			return new Pipeline(input.attributes) {
+				@Override
+				public BatchIterator create() {
+					return new BatchSelect(input.create(), ((Select) op).getPredicate(), data.getDictionary());
+				}
+			};
+		} else if (op instanceof Project) {
+			final Pipeline input = compileNode(((Project) op).getInput());
+			return new Pipeline(((Project) op).getAttributes()) {
+				@Override
+				public BatchIterator create() {
+					return new BatchProject(input.create(), ((Project) op).getAttributes());
+				}
+			};
+		} else if (op instanceof Join && ((Join) op).getMethod() == JoinMethod.HASH) {
+			return compileHashJoin((Join) op);
+		} else if (op instanceof Join && ((Join) op).getMethod() == JoinMethod.SORT_MERGE) {
+			return compileMergeJoin((Join) op);
+		}
+		return compileProduct(op);
+	}
+
+	/**
+	 * Run the pipeline for the build input of a hash join and build its hash
+	 * table, and return the pipeline that probes the table
+	 */
+	private Pipeline compileHashJoin(final Join op) {
+		final boolean buildLeft = PhysicalPlanner.buildsLeft(op);
+		Pipeline build = compileNode(buildLeft ? op.getLeft() : op.getRight());
+		final List<Attribute> buildAttributes = build.attributes;
+		PartitionedRows buildParts = new PartitionedRows(buildAttributes, 1, memoryBudget);
+		partitioned.add(buildParts);
+		partition(build, 0, buildParts);
+		if (buildParts.isSpilled()) {
+			return compileSpilledHashJoin(op, buildLeft, buildParts);
+		}
+		final ColumnStore buildRows = buildParts.getStore(0);
+
+		// insert the build rows in parallel, a morsel at a time
+		int[] columns = JoinIterator.joinColumns(op.getLeft().getOutput().getAttributes(),
+				op.getRight().getOutput().getAttributes(), op.getPredicate());
+		final int[] keys = buildRows.getColumn(buildLeft ? columns[0] : columns[1]);
+		final ConcurrentIntHashTable table = new ConcurrentIntHashTable(buildRows.size());
+		final AtomicInteger nextMorsel = new AtomicInteger();
+		runWorkers(new Worker() {
+			@Override
+			public void run(int worker) {
+				int start;
+				while ((start = nextMorsel.getAndIncrement() * MorselScan.MORSEL_ROWS) < buildRows.size()) {
+					int end = Math.min(start + MorselScan.MORSEL_ROWS, buildRows.size());
+					for (int row = start; row < end; row++) {
+						table.insert(keys[row], row);
+					}
+				}
+			}
+		});
+		for (JoinFilter filter : filters) {
+			if (filter.getJoin() == op) {
+				BloomFilter bloom = new BloomFilter(buildRows.size());
+				for (int row = 0; row < buildRows.size(); row++) {
+					bloom.add(keys[row]);
+				}
+				filter.publish(bloom);
+			}
+		}
+
+		final Pipeline probe = compileNode(buildLeft ? op.getRight() : op.getLeft());
+		List<Attribute> attributes = new ArrayList<Attribute>(op.getLeft().getOutput().getAttributes());
+		attributes.addAll(op.getRight().getOutput().getAttributes());
+		return new Pipeline(attributes) {
+			@Override
+			public BatchIterator create() {
+				return new BatchHashProbe(probe.create(), buildRows, table, buildAttributes, op.getPredicate(),
+						buildLeft);
+			}
+		};
+	}
+
+	/**
+	 * Run a hash join whose build input did not fit in memory on one thread,
+	 * spilling as BatchHashJoin does, and return a pipeline whose workers
+	 * take turns to read its output
+	 */
+	private Pipeline compileSpilledHashJoin(Join op, boolean buildLeft, PartitionedRows buildRows) {
+		Pipeline probe = compileNode(buildLeft ? op.getRight() : op.getLeft());
+		BatchIterator buildInput = buildRows.reader(0);
+		BatchIterator probeInput = probe.create();
+		final BatchIterator join = new BatchHashJoin(buildLeft ? buildInput : probeInput,
+				buildLeft ? probeInput : buildInput, op.getPredicate(), buildLeft, memoryBudget);
+		join.open();
+		serial.add(join);
+		return new Pipeline(join.getAttributes()) {
+			@Override
+			public BatchIterator create() {
+				return new SharedIterator(join);
+			}
+		};
+	}
+
+	/**
+	 * Materialise the right input of a product or nested loop join, and
+	 * return a pipeline in which each worker pairs its part of the left
+	 * input with all of it
+	 */
+	private Pipeline compileProduct(final Operator op) {
+		final Pipeline left = compileNode(op.getInputs().get(0));
+		Pipeline right = compileNode(op.getInputs().get(1));
+		final ColumnStore rightRows = materialise(right);
+		final List<Attribute> rightAttributes = right.attributes;
+		List<Attribute> attributes = new ArrayList<Attribute>(left.attributes);
+		attributes.addAll(rightAttributes);
+		return new Pipeline(attributes) {
+			@Override
+			public BatchIterator create() {
+				BatchIterator rightInput = new StoreIterator(rightRows, rightAttributes);
+				if (op instanceof Join) {
+					return new BatchJoin(left.create(), rightInput, ((Join) op).getPredicate());
+				}
+				return new BatchProduct(left.create(), rightInput);
+			}
+		};
+	}
+
+	/**
+	 * Divide the inputs of a sort-merge join into partitions by a hash of
+	 * their join attributes, and return a pipeline whose workers each take
+	 * pairs of partitions in turn, and sort and merge them. The output is
+	 * only sorted within each pair of partitions, but the inputs of merge
+	 * joins are always sorted here, since the workers lose their order.
+	 */
+	private Pipeline compileMergeJoin(final Join op) {
+		Pipeline leftPipeline = compileNode(op.getLeft());
+		Pipeline rightPipeline = compileNode(op.getRight());
+		final int[] columns = JoinIterator.joinColumns(leftPipeline.attributes, rightPipeline.attributes,
+				op.getPredicate());
+		final PartitionedRows left = new PartitionedRows(leftPipeline.attributes, BatchHashJoin.FANOUT,
+				memoryBudget / 2);
+		final PartitionedRows right = new PartitionedRows(rightPipeline.attributes, BatchHashJoin.FANOUT,
+				memoryBudget / 2);
+		partitioned.add(left);
+		partitioned.add(right);
+		partition(leftPipeline, columns[0], left);
+		partition(rightPipeline, columns[1], right);
+
+		// the workers sort their partitions at the same time
+		final long sortBudget = memoryBudget / parallelism;
+		final AtomicInteger nextPartition = new AtomicInteger();
+		final List<Attribute> attributes = new ArrayList<Attribute>(leftPipeline.attributes);
+		attributes.addAll(rightPipeline.attributes);
+		return new Pipeline(attributes) {
+			@Override
+			public BatchIterator create() {
+				return new BatchIterator() {
+					private BatchIterator join;
+
+					@Override
+					public void open() {
+						join = null;
+					}
+
+					@Override
+					public ColumnBatch next() {
+						while (true) {
+							if (join != null) {
+								ColumnBatch batch = join.next();
+								if (batch != null) {
+									return batch;
+								}
+								join.close();
+								join = null;
+							}
+							int part = nextPartition.getAndIncrement();
+							if (part >= BatchHashJoin.FANOUT) {
+								return null;
+							}
+							if (left.size(part) > 0 && right.size(part) > 0) {
+								join = new BatchMergeJoin(new BatchSort(left.reader(part), columns[0], sortBudget),
+										new BatchSort(right.reader(part), columns[1], sortBudget), op.getPredicate());
+								join.open();
+							}
+						}
+					}
+
+					@Override
+					public void close() {
+						if (join != null) {
+							join.close();
+							join = null;
+						}
+					}
+
+					@Override
+					public List<Attribute> getAttributes() {
+						return attributes;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Run the pipelines for the leaves of a block of joins and reduce their
+	 * output by semi-joins, so that the block reads the reduced rows
+	 */
+	private void reduce(SemiJoinReduction reduction) {
+		List<Operator> leaves = reduction.getLeaves();
+		ColumnStore[] rows = new ColumnStore[leaves.size()];
+		List<Pipeline> pipelines = new ArrayList<Pipeline>();
+		for (int i = 0; i < rows.length; i++) {
+			pipelines.add(compileNode(leaves.get(i)));
+			rows[i] = materialise(pipelines.get(i));
+		}
+		reduction.reduce(rows);
+		for (int i = 0; i < rows.length; i++) {
+			final ColumnStore leafRows = rows[i];
+			final List<Attribute> attributes = pipelines.get(i).attributes;
+			final AtomicInteger nextMorsel = new AtomicInteger();
+			reducedLeaves.put(leaves.get(i), new Pipeline(attributes) {
+				@Override
+				public BatchIterator create() {
+					return new StoreIterator(leafRows, attributes, nextMorsel);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Run a pipeline on every worker, and collect its output
+	 */
+	private ColumnStore materialise(final Pipeline pipeline) {
+		final ColumnStore[] stores = new ColumnStore[parallelism];
+		runWorkers(new Worker() {
+			@Override
+			public void run(int worker) {
+				BatchIterator iter = pipeline.create();
+				stores[worker] = ColumnStore.readAll(iter);
+			}
+		});
+		ColumnStore res = new ColumnStore(pipeline.attributes.size());
+		for (ColumnStore store : stores) {
+			res.append(store);
+		}
+		return res;
+	}
+
+	/**
+	 * Run a pipeline on every worker, dividing its output between the
+	 * partitions of the given rows by a hash of a key column
+	 */
+	private void partition(final Pipeline pipeline, final int key, final PartitionedRows res) {
+		final int partitions = res.getPartitionCount();
+		runWorkers(new Worker() {
+			@Override
+			public void run(int worker) {
+				// rows are added to the shared partitions a batch at a time
+				ColumnStore[] buffers = new ColumnStore[partitions];
+				for (int p = 0; p < partitions; p++) {
+					buffers[p] = new ColumnStore(pipeline.attributes.size());
+				}
+				BatchIterator iter = pipeline.create();
+				iter.open();
+				try {
+					ColumnBatch batch;
+					while ((batch = iter.next()) != null) {
+						int[] keys = batch.getColumn(key);
+						for (int k = 0; k < batch.getLiveCount(); k++) {
+							int row = batch.getRow(k);
+							int p = BatchHashJoin.partition(keys[row], 0) % partitions;
+							buffers[p].append(batch, row);
+							if (buffers[p].size() == ColumnBatch.DEFAULT_CAPACITY) {
+								res.add(p, buffers[p]);
+								buffers[p].clear();
+							}
+						}
+					}
+				} finally {
+					iter.close();
+				}
+				for (int p = 0; p < partitions; p++) {
+					if (buffers[p].size() > 0) {
+						res.add(p, buffers[p]);
+					}
+				}
+			}
+		});
+		res.finish();
+	}
+
+	/**
+	 * Run a task on each worker, returning once they have all finished
+	 */
+	private void runWorkers(Worker worker) {
+		final List<WorkerTask> tasks = new ArrayList<WorkerTask>();
+		for (int i = 0; i < parallelism; i++) {
+			tasks.add(new WorkerTask(worker, i));
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	private void closeAll() {
+		for (MorselScan scan : scans) {
+			scan.close();
+		}
+		for (BatchIterator iter : serial) {
+			iter.close();
+		}
+		for (PartitionedRows rows : partitioned) {
+			rows.delete();
+		}
+		scans = null;
+		serial = null;
+		partitioned = null;
+	}
+
+	/**
+	 * A factory for the chain of operators through which each worker runs
+	 * a pipeline
+	 */
+	private abstract static class Pipeline {
+		private List<Attribute> attributes;
+
+		private Pipeline(List<Attribute> attributes) {
+			this.attributes = attributes;
+		}
+
+		/**
+		 * Return a new chain of operators for one worker
+		 */
+		public abstract BatchIterator create();
+	}
+
+	/**
+	 * The work done by each worker on a pipeline
+	 */
+	private interface Worker {
+		public void run(int worker);
+	}
+
+	private static class WorkerTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private Worker worker;
+		private int number;
+
+		private WorkerTask(Worker worker, int number) {
+			this.worker = worker;
+			this.number = number;
+		}
+
+		@Override
+		protected void compute() {
+			worker.run(number);
+		}
+	}
+
+	/**
+	 * The rows of a pipeline, divided into partitions by the workers that
+	 * run it. The partitions are held in memory until their rows would take
+	 * up more than the memory budget, and from then on are all written to
+	 * temporary files (see SpillFile).
+	 */
+	private static class PartitionedRows {
+		private List<Attribute> attributes;
+		private long maxRows;
+		private Object[] locks;
+		private ColumnStore[] stores;
+		private SpillFile[] files;
+		private AtomicLong rows;
+		private volatile boolean spilled;
+
+		private PartitionedRows(List<Attribute> attributes, int partitions, long memoryBudget) {
+			this.attributes = attributes;
+			this.maxRows = memoryBudget / BatchHashJoin.rowBytes(attributes.size());
+			this.locks = new Object[partitions];
+			this.stores = new ColumnStore[partitions];
+			this.files = new SpillFile[partitions];
+			this.rows = new AtomicLong();
+			for (int p = 0; p < partitions; p++) {
+				locks[p] = new Object();
+				stores[p] = new ColumnStore(attributes.size());
+			}
+		}
+
+		private int getPartitionCount() {
+			return stores.length;
+		}
+
+		/**
+		 * Add rows to a partition
+		 */
+		private void add(int partition, ColumnStore buffer) {
+			if (!spilled && rows.addAndGet(buffer.size()) > maxRows) {
+				spilled = true;
+			}
+			synchronized (locks[partition]) {
+				if (spilled) {
+					SpillFile file = spill(partition);
+					for (int row = 0; row < buffer.size(); row++) {
+						file.append(buffer, row);
+					}
+				} else {
+					stores[partition].append(buffer);
+				}
+			}
+		}
+
+		/**
+		 * Return the file of a partition, moving the rows held in memory to
+		 * it; the caller must hold the lock of the partition
+		 */
+		private SpillFile spill(int partition) {
+			if (files[partition] == null) {
+				files[partition] = new SpillFile(attributes);
+				ColumnStore store = stores[partition];
+				for (int row = 0; row < store.size(); row++) {
+					files[partition].append(store, row);
+				}
+				stores[partition] = null;
+			}
+			return files[partition];
+		}
+
+		/**
+		 * Finish adding rows, so that the partitions can be read
+		 */
+		private void finish() {
+			for (int p = 0; p < stores.length; p++) {
+				synchronized (locks[p]) {
+					if (spilled) {
+						spill(p).finish();
+					}
+				}
+			}
+		}
+
+		private boolean isSpilled() {
+			return spilled;
+		}
+
+		/**
+		 * Return the rows of a partition held in memory, which is null once
+		 * it has been spilled
+		 */
+		private ColumnStore getStore(int partition) {
+			return stores[partition];
+		}
+
+		private long size(int partition) {
+			return files[partition] != null ? files[partition].size() : stores[partition].size();
+		}
+
+		private BatchIterator reader(int partition) {
+			if (files[partition] != null) {
+				return files[partition].reader();
+			}
+			return new StoreIterator(stores[partition], attributes);
+		}
+
+		private void delete() {
+			for (SpillFile file : files) {
+				if (file != null) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * An iterator over rows held in a store, either all of them or, when
+	 * several workers share a morsel counter, the morsels that this one
+	 * claims
+	 */
+	private static class StoreIterator implements BatchIterator {
+		private ColumnStore rows;
+		private List<Attribute> attributes;
+		private AtomicInteger nextMorsel;
+		private int pos;
+		private int end;
+		private ColumnBatch batch;
+
+		private StoreIterator(ColumnStore rows, List<Attribute> attributes) {
+			this(rows, attributes, null);
+		}
+
+		private StoreIterator(ColumnStore rows, List<Attribute> attributes, AtomicInteger nextMorsel) {
+			this.rows = rows;
+			this.attributes = attributes;
+			this.nextMorsel = nextMorsel;
+		}
+
+		@Override
+		public void open() {
+			batch = new ColumnBatch(rows.getColumnCount(), ColumnBatch.DEFAULT_CAPACITY);
+			pos = 0;
+			end = nextMorsel == null ? rows.size() : 0;
+		}
+
+		@Override
+		public ColumnBatch next() {
+			if (pos == end) {
+				if (nextMorsel == null) {
+					return null;
+				}
+				int start = nextMorsel.getAndIncrement() * MorselScan.MORSEL_ROWS;
+				if (start >= rows.size()) {
+					return null;
+				}
+				pos = start;
+				end = Math.min(start + MorselScan.MORSEL_ROWS, rows.size());
+			}
+			int n = Math.min(batch.getCapacity(), end - pos);
+			for (int c = 0; c < rows.getColumnCount(); c++) {
+				System.arraycopy(rows.getColumn(c), pos, batch.getColumn(c), 0, n);
+			}
+			pos += n;
+			batch.setSize(n);
+			return batch;
+		}
+
+		@Override
+		public void close() {
+			batch = null;
+		}
+
+		@Override
+		public List<Attribute> getAttributes() {
+			return attributes;
+		}
+	}
+
+	/**
+	 * An iterator through which one worker reads batches from an iterator
+	 * shared with other workers, copying the live rows of each batch while
+	 * it holds the shared iterator
+	 */
+	private static class SharedIterator implements BatchIterator {
+		private BatchIterator shared;
+		private ColumnBatch batch;
+
+		private SharedIterator(BatchIterator shared) {
+			this.shared = shared;
+		}
+
+		@Override
+		public void open() {
+			batch = new ColumnBatch(shared.getAttributes().size(), ColumnBatch.DEFAULT_CAPACITY);
+		}
+
+		@Override
+		public ColumnBatch next() {
+			synchronized (shared) {
+				ColumnBatch next = shared.next();
+				if (next == null) {
+					return null;
+				}
+				int n = next.getLiveCount();
+				for (int c = 0; c < batch.getColumnCount(); c++) {
+					int[] from = next.getColumn(c);
+					int[] to = batch.getColumn(c);
+					for (int k = 0; k < n; k++) {
+						to[k] = from[next.getRow(k)];
+					}
+				}
+				batch.setSize(n);
+				return batch;
+			}
+		}
+
+		@Override
+		public void close() {
+			batch = null;
+		}
+
+		@Override
+		public List<Attribute> getAttributes() {
+			return shared.getAttributes();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package sjdb;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Test driver for the parallel executor: runs plans with hash joins, with
+ * sort-merge joins, and with the methods chosen by the physical planner on
+ * one and on several workers, under tiny and default memory budgets, and
+ * checks their results against those of the batch executor.
+ */
+public class ParallelTest {
+	private static final long[] BUDGETS = { 256, 4096, BatchHashJoin.DEFAULT_MEMORY_BUDGET };
+	private static final int[] WORKERS = { 1, 4 };
+
+	public static void main(String[] args) throws Exception {
+		Catalogue catalogue = createCatalogue();
+		DataDirectory data = TestData.create(catalogue);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		int spillFiles = TestData.spillFiles();
+		try {
+			check(catalogue, data, pool, "SELECT ra,rb\nFROM R");
+			check(catalogue, data, pool, "SELECT ra,sa\nFROM R,S\nWHERE rb=sb");
+			check(catalogue, data, pool, "SELECT ra,sa,ta\nFROM R,S,T\nWHERE rb=sb,sa=tb");
+			check(catalogue, data, pool, "SELECT ra,ta\nFROM R,S,T\nWHERE rb=sb,sa=tb,ta=\"7\"");
+		} finally {
+			pool.shutdown();
+			TestData.delete(data);
+		}
+		TestData.check("no spill files left", TestData.spillFiles() == spillFiles);
+		TestData.finish();
+	}
+
+	public static Catalogue createCatalogue() {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("R", 5000);
+		cat.createAttribute("R", "ra", 5000);
+		cat.createAttribute("R", "rb", 200);
+		cat.createRelation("S", 2000);
+		cat.createAttribute("S", "sa", 2000);
+		cat.createAttribute("S", "sb", 200);
+		cat.createRelation("T", 1000);
+		cat.createAttribute("T", "ta", 1000);
+		cat.createAttribute("T", "tb", 500);
+
+		return cat;
+	}
+
+	private static void check(Catalogue catalogue, DataDirectory data, ForkJoinPool pool, String query) throws Exception {
+		Operator optimised = new SJDB(catalogue).optimise(TestData.query(catalogue, query));
+		String name = query.replace('\n', ' ');
+		List<String> expected = TestData.rows(new BatchExecutor(data).execute(optimised));
+		TestData.check(name + ": result not empty", !expected.isEmpty());
+
+		for (long budget : BUDGETS) {
+			check(name + ": planned, budget " + budget, data, pool, new PhysicalPlanner(budget).plan(optimised),
+					budget, expected);
+			check(name + ": hash, budget " + budget, data, pool, TestData.force(optimised, JoinMethod.HASH),
+					budget, expected);
+			check(name + ": sort-merge, budget " + budget, data, pool, TestData.force(optimised, JoinMethod.SORT_MERGE),
+					budget, expected);
+		}
+	}
+
+	private static void check(String name, DataDirectory data, ForkJoinPool pool, Operator plan, long budget,
+			List<String> expected) {
+		for (int workers : WORKERS) {
+			ParallelExecutor executor = new ParallelExecutor(data, pool);
+			executor.setParallelism(workers);
+			executor.setMemoryBudget(budget);
+			TestData.check(name + ", " + workers + " workers",
+					expected.equals(TestData.rows(executor.execute(plan))));
+			TestData.check(name + ", " + workers + " workers: count", executor.count(plan) == expected.size());
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class chooses the method by which each Join of an optimised plan is
+ * executed, hash or sort-merge (see JoinMethod), keeping the join order and
+ * the shape of the plan as they are. Nested loop joins are never chosen,
+ * since they hold their right input in memory whatever its size, and both
+ * of the other methods can spill to disk within the memory budget.
+ *
+ * The choice is made bottom-up by cost, tracking interesting orders in the
+ * manner of System R: a sort-merge join produces its output sorted on the
+ * join attributes, and that order survives the selects and projects above
+ * it, so a join higher in the plan on the same attributes can merge that
+ * input without sorting it again. For each operator the planner therefore
+ * keeps the cheapest plan overall, and the cheapest plan for each order in
+ * which its output can be produced; an ordered plan that costs more than
+ * the cheapest plan may still lead to a cheaper plan further up.
+ *
+ * Costs are in units of probing a hash table with one tuple. Building the
+ * table costs HASH_BUILD per tuple, sorting n tuples costs COMPARE for each
+ * of n log n comparisons, and merging costs MERGE per input tuple. An
+ * input that does not fit in the memory budget costs SPILL per tuple each
+ * time it is written to disk and read back.
+ *
+ * A hash join whose build input fits in memory passes a Bloom filter of its
+ * build keys to the scan on its probe side (see JoinFilter), so only the
+ * probe tuples whose keys are among the build keys, and about
+ * FILTER_FALSE_POSITIVES of the rest, reach the hash table; checking each
+ * probe tuple against the filter costs FILTER.
+ */
+public class PhysicalPlanner {
+	private static final double HASH_BUILD = 2.0;
+	private static final double HASH_PROBE = 1.0;
+	private static final double COMPARE = 0.25;
+	private static final double MERGE = 1.0;
+	private static final double SPILL = 2.0;
+	private static final double FILTER = 0.25;
+	private static final double FILTER_FALSE_POSITIVES = 0.01;
+
+	private long memoryBudget;
+	private Estimator est;
+
+	/**
+	 * Create a physical planner for executors with the default memory budget
+	 */
+	public PhysicalPlanner() {
+		this(BatchHashJoin.DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Create a physical planner
+	 * @param memoryBudget Number of bytes each join may hold in memory
+	 */
+	public PhysicalPlanner(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+		this.est = new Estimator();
+	}
+
+	/**
+	 * Return a copy of a plan with a method chosen for each of its joins.
+	 * Subplans whose joins keep their methods are shared with the original.
+	 * @param root Root of the plan
+	 * @return Root of the plan with the chosen join methods
+	 */
+	public Operator plan(Operator root) {
+		est.estimate(root);
+		Candidate best = null;
+		for (Candidate candidate : candidates(root)) {
+			if (best == null || candidate.cost < best.cost) {
+				best = candidate;
+			}
+		}
+		Operator res = build(best);
+		est.estimate(res);
+		return res;
+	}
+
+	/**
+	 * Return true if the output of an operator is sorted on the given
+	 * attribute when the plan is executed
+	 * @param op Operator
+	 * @param attr Attribute
+	 * @return True if the output is sorted on attr
+	 */
+	public static boolean isSortedOn(Operator op, Attribute attr) {
+		if (op instanceof Select) {
+			return isSortedOn(((Select) op).getInput(), attr);
+		} else if (op instanceof Project) {
+			return ((Project) op).getAttributes().contains(attr) && isSortedOn(((Project) op).getInput(), attr);
+		} else if (op instanceof Join && ((Join) op).getMethod() == JoinMethod.SORT_MERGE) {
+			Predicate predicate = ((Join) op).getPredicate();
+			return predicate.getLeftAttribute().equals(attr) || predicate.getRightAttribute().equals(attr);
+		}
+		return false;
+	}
+
+	/**
+	 * Return true if a hash join builds its hash table on its left input.
+	 * The executors build on the input that the Estimator expects to be
+	 * smaller, and on the right input if the two are expected to be the same
+	 * size; the planner costs hash joins by the same rule.
+	 * @param join Join, whose inputs must have been estimated
+	 * @return True if the table is built on the left input
+	 */
+	public static boolean buildsLeft(Join join) {
+		return join.getLeft().getOutput().getTupleCount() < join.getRight().getOutput().getTupleCount();
+	}
+
+	/**
+	 * Return the cheapest plans for an operator: the cheapest overall, and
+	 * the cheapest for each order in which its output can be produced
+	 */
+	private List<Candidate> candidates(Operator op) {
+		List<Candidate> res = new ArrayList<Candidate>();
+		if (op instanceof Scan || op instanceof IndexScan) {
+			res.add(new Candidate(op, null, 0, null));
+		} else if (op instanceof Select || op instanceof Project) {
+			Operator input = op.getInputs().get(0);
+			for (Candidate candidate : candidates(input)) {
+				Predicate order = candidate.order;
+				if (op instanceof Project && order != null
+						&& !((Project) op).getAttributes().contains(order.getLeftAttribute())
+						&& !((Project) op).getAttributes().contains(order.getRightAttribute())) {
+					order = null;
+				}
+				keep(res, new Candidate(op, null, candidate.cost, order, candidate));
+			}
+		} else if (op instanceof Product) {
+			Candidate left = cheapest(candidates(((Product) op).getLeft()));
+			Candidate right = cheapest(candidates(((Product) op).getRight()));
+			double cost = left.cost + right.cost + count(op);
+			res.add(new Candidate(op, null, cost, null, left, right));
+		} else if (op instanceof Join) {
+			Join join = (Join) op;
+			Predicate predicate = join.getPredicate();
+			List<Candidate> lefts = candidates(join.getLeft());
+			List<Candidate> rights = candidates(join.getRight());
+			int[] columns = JoinIterator.joinColumns(join.getLeft().getOutput().getAttributes(),
+					join.getRight().getOutput().getAttributes(), predicate);
+			Attribute leftKey = join.getLeft().getOutput().getAttributes().get(columns[0]);
+			Attribute rightKey = join.getRight().getOutput().getAttributes().get(columns[1]);
+			for (Candidate left : lefts) {
+				for (Candidate right : rights) {
+					double inputs = left.cost + right.cost + count(op);
+					keep(res, new Candidate(op, JoinMethod.HASH, inputs + hashCost(join), null, left, right));
+					double merge = inputs + MERGE * (count(join.getLeft()) + count(join.getRight()));
+					if (!left.isSortedOn(leftKey)) {
+						merge += sortCost(join.getLeft());
+					}
+					if (!right.isSortedOn(rightKey)) {
+						merge += sortCost(join.getRight());
+					}
+					keep(res, new Candidate(op, JoinMethod.SORT_MERGE, merge, predicate, left, right));
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Add a candidate to a list of cheapest plans, unless the list already
+	 * holds a plan with the same order that costs no more
+	 */
+	private static void keep(List<Candidate> list, Candidate candidate) {
+		for (int i = 0; i < list.size(); i++) {
+			Candidate other = list.get(i);
+			if (sameOrder(other.order, candidate.order)) {
+				if (candidate.cost < other.cost) {
+					list.set(i, candidate);
+				}
+				return;
+			}
+		}
+		list.add(candidate);
+	}
+
+	private static boolean sameOrder(Predicate a, Predicate b) {
+		if (a == null || b == null) {
+			return a == b;
+		}
+		return a.getLeftAttribute().equals(b.getLeftAttribute())
+				&& a.getRightAttribute().equals(b.getRightAttribute());
+	}
+
+	private static Candidate cheapest(List<Candidate> list) {
+		Candidate res = null;
+		for (Candidate candidate : list) {
+			if (res == null || candidate.cost < res.cost) {
+				res = candidate;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Return the cost of a hash join, building the table on the input the
+	 * executors build on (see buildsLeft())
+	 */
+	private double hashCost(Join join) {
+		boolean buildLeft = buildsLeft(join);
+		Operator build = buildLeft ? join.getLeft() : join.getRight();
+		Operator probe = buildLeft ? join.getRight() : join.getLeft();
+		Attribute buildKey = join.getPredicate().getLeftAttribute();
+		Attribute probeKey = join.getPredicate().getRightAttribute();
+		if (!build.getOutput().getAttributes().contains(buildKey)) {
+			Attribute key = buildKey;
+			buildKey = probeKey;
+			probeKey = key;
+		}
+		if (!fits(build, BatchHashJoin.rowBytes(build.getOutput().getAttributes().size()))) {
+			return HASH_BUILD * count(build) + HASH_PROBE * count(probe) + SPILL * (count(build) + count(probe));
+		}
+		// only the probe tuples that pass the filter of the build keys are probed
+		double buildValues = build.getOutput().getAttribute(buildKey).getValueCount();
+		double probeValues = Math.max(probe.getOutput().getAttribute(probeKey).getValueCount(), 1);
+		double passed = Math.min(buildValues / probeValues + FILTER_FALSE_POSITIVES, 1.0);
+		return HASH_BUILD * count(build) + FILTER * count(probe) + HASH_PROBE * count(probe) * passed;
+	}
+
+	/**
+	 * Return the cost of sorting the output of an operator, with one merge
+	 * pass if it does not fit in memory
+	 */
+	private double sortCost(Operator op) {
+		double n = count(op);
+		double cost = COMPARE * n * Math.log(Math.max(n, 2)) / Math.log(2);
+		if (!fits(op, BatchHashJoin.rowBytes(op.getOutput().getAttributes().size()))) {
+			cost += SPILL * n;
+		}
+		return cost;
+	}
+
+	private boolean fits(Operator op, long rowBytes) {
+		return count(op) * rowBytes <= memoryBudget;
+	}
+
+	private static double count(Operator op) {
+		return op.getOutput().getTupleCount();
+	}
+
+	/**
+	 * Build the plan described by a candidate, reusing the original
+	 * operators where nothing below them has changed
+	 */
+	private Operator build(Candidate candidate) {
+		Operator op = candidate.op;
+		List<Operator> inputs = new ArrayList<Operator>();
+		boolean changed = op instanceof Join && ((Join) op).getMethod() != candidate.method;
+		for (int i = 0; i < candidate.inputs.length; i++) {
+			Operator input = build(candidate.inputs[i]);
+			changed |= input != op.getInputs().get(i);
+			inputs.add(input);
+		}
+		if (!changed) {
+			return op;
+		}
+		if (op instanceof Select) {
+			return new Select(inputs.get(0), ((Select) op).getPredicate());
+		} else if (op instanceof Project) {
+			return new Project(inputs.get(0), ((Project) op).getAttributes());
+		} else if (op instanceof Product) {
+			return new Product(inputs.get(0), inputs.get(1));
+		}
+		return new Join(inputs.get(0), inputs.get(1), ((Join) op).getPredicate(), candidate.method);
+	}
+
+	/**
+	 * A way of executing a subplan, with its cost and the order of its
+	 * output, given by the predicate of the sort-merge join that sorted it
+	 */
+	private static class Candidate {
+		private Operator op;
+		private JoinMethod method;
+		private double cost;
+		private Predicate order;
+		private Candidate[] inputs;
+
+		private Candidate(Operator op, JoinMethod method, double cost, Predicate order, Candidate... inputs) {
+			this.op = op;
+			this.method = method;
+			this.cost = cost;
+			this.order = order;
+			this.inputs = inputs;
+		}
+
+		private boolean isSortedOn(Attribute attr) {
+			return order != null
+					&& (order.getLeftAttribute().equals(attr) || order.getRightAttribute().equals(attr));
+		}
+	}
+}
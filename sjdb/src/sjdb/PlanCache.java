@@ -0,0 +1,208 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class caches optimised plans for canonical queries, so that a query
+ * shape that has been seen before does not have to be optimised again.
+ *
+ * Queries are keyed by a normalised form of their canonical plan: the
+ * sorted names of the relations scanned, the sorted predicates (with the
+ * attributes of attr=attr predicates in a fixed order), and the projected
+ * attributes in order. Two queries that differ only in the order of their
+ * FROM or WHERE lists therefore share a plan, except that a query with no
+ * projected attributes (SELECT *) keeps its relations in FROM order, since
+ * that order determines the order of the columns of its result. SJDB replaces the literals
+ * in attr=value predicates with parameters before looking a query up (see
+ * PreparedQuery), so queries that differ only in their literals share one.
+ *
+ * Each entry remembers the catalogue version of every relation it reads,
+ * and is discarded if any of them has changed by the time it is looked up.
+ * Once the cache is full, the least recently used plan is evicted.
+ */
+public class PlanCache {
+	private static final int DEFAULT_CAPACITY = 1000;
+
+	private Catalogue catalogue;
+	private LinkedHashMap<String, CachedPlan> plans;
+
+	/**
+	 * Create a plan cache with the default capacity
+	 * @param catalogue Catalogue the cached plans are optimised against
+	 */
+	public PlanCache(Catalogue catalogue) {
+		this(catalogue, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a plan cache holding at most capacity plans
+	 * @param catalogue Catalogue the cached plans are optimised against
+	 * @param capacity Maximum number of entries
+	 */
+	public PlanCache(Catalogue catalogue, final int capacity) {
+		this.catalogue = catalogue;
+		this.plans = new LinkedHashMap<String, CachedPlan>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedPlan> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Return the optimised plan cached for a canonical query, or null if
+	 * there is none or the statistics it was optimised with have changed.
+	 * @param query Canonical query plan
+	 * @return Optimised plan
+	 */
+	public synchronized Operator get(Operator query) {
+		String key = normalise(query);
+		CachedPlan entry = plans.get(key);
+		if (entry == null) {
+			return null;
+		}
+		for (Map.Entry<String, Integer> version : entry.versions.entrySet()) {
+			if (catalogue.getVersion(version.getKey()) != version.getValue()) {
+				plans.remove(key);
+				return null;
+			}
+		}
+		return entry.plan;
+	}
+
+	/**
+	 * Cache the optimised plan for a canonical query
+	 * @param query Canonical query plan
+	 * @param plan Optimised plan
+	 */
+	public synchronized void put(Operator query, Operator plan) {
+		CachedPlan entry = new CachedPlan(plan);
+		for (String name : relationNames(query)) {
+			entry.versions.put(name, catalogue.getVersion(name));
+		}
+		plans.put(normalise(query), entry);
+	}
+
+	/**
+	 * Discard every cached plan that reads the named relation
+	 * @param relName Name of the relation
+	 */
+	public synchronized void invalidate(String relName) {
+		Iterator<CachedPlan> iter = plans.values().iterator();
+		while (iter.hasNext()) {
+			if (iter.next().versions.containsKey(relName)) {
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of cached plans
+	 * @return Entry count
+	 */
+	public synchronized int size() {
+		return plans.size();
+	}
+
+	/**
+	 * Return the normalised form of a canonical query, used as its key.
+	 * @param query Canonical query plan
+	 * @return Normalised query
+	 */
+	public static String normalise(Operator query) {
+		List<String> relations = relationNames(query);
+		List<String> predicates = new ArrayList<>();
+		List<String> projections = new ArrayList<>();
+		collectPredicates(query, predicates);
+		collectProjections(query, projections);
+
+		// the columns of SELECT * follow the order of the FROM list
+		if (!projections.isEmpty()) {
+			Collections.sort(relations);
+		}
+		Collections.sort(predicates);
+		return "FROM " + relations + " WHERE " + predicates + " SELECT " + projections;
+	}
+
+	private static List<String> relationNames(Operator node) {
+		List<String> res = new ArrayList<>();
+		if (node instanceof Scan) {
+			res.add(((Scan) node).getRelation().toString());
+			return res;
+		}
+		for (Operator child : node.getInputs()) {
+			res.addAll(relationNames(child));
+		}
+		return res;
+	}
+
+	private static void collectPredicates(Operator node, List<String> predicates) {
+		if (node instanceof Scan) {
+			return;
+		}
+		Predicate predicate = null;
+		if (node instanceof Select) {
+			predicate = ((Select) node).getPredicate();
+		} else if (node instanceof Join) {
+			predicate = ((Join) node).getPredicate();
+		}
+		if (predicate != null) {
+			predicates.add(normalise(predicate));
+		}
+		for (Operator child : node.getInputs()) {
+			collectPredicates(child, predicates);
+		}
+	}
+
+	private static String normalise(Predicate predicate) {
+		if (predicate.equalsValue()) {
+			return predicate.toString();
+		}
+		String leftName = predicate.getLeftAttribute().getName();
+		String rightName = predicate.getRightAttribute().getName();
+		if (leftName.compareTo(rightName) < 0) {
+			return leftName + "=" + rightName;
+		}
+		return rightName + "=" + leftName;
+	}
+
+	/**
+	 * Add the attributes of the outermost project to the list; a query with
+	 * no project (SELECT *) leaves the list empty.
+	 */
+	private static void collectProjections(Operator node, List<String> projections) {
+		if (node instanceof Scan) {
+			return;
+		}
+		if (node instanceof Project) {
+			for (Attribute attr : ((Project) node).getAttributes()) {
+				projections.add(attr.getName());
+			}
+			return;
+		}
+		for (Operator child : node.getInputs()) {
+			collectProjections(child, projections);
+		}
+	}
+
+	/**
+	 * A cached plan with the catalogue versions of the relations it reads.
+	 */
+	private static class CachedPlan {
+		private Operator plan;
+		private HashMap<String, Integer> versions;
+
+		private CachedPlan(Operator plan) {
+			this.plan = plan;
+			this.versions = new HashMap<String, Integer>();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package sjdb;
+
+import java.io.StringReader;
+
+/**
+ * Test driver for the plan cache: checks that SJDB returns the cached plan
+ * for a repeated query and for the same query with its relations listed
+ * in another order (unless it is SELECT *, whose columns follow that
+ * order), and that a plan is replanned once the statistics of a
+ * relation it reads change, but not when an unrelated relation changes.
+ * Queries that differ only in their attr=value literals must share one
+ * plan, with their own literals bound into it.
+ */
+public class PlanCacheTest {
+	public static void main(String[] args) throws Exception {
+		Catalogue catalogue = Test.createCatalogue();
+		catalogue.createRelation("C", 10);
+		catalogue.createAttribute("C", "c1", 10);
+		SJDB db = new SJDB(catalogue);
+
+		Operator first = db.query(new StringReader("SELECT a2,b1\nFROM A,B\nWHERE a2=b3"));
+		Operator repeated = db.query(new StringReader("SELECT a2,b1\nFROM A,B\nWHERE a2=b3"));
+		TestData.check("repeated query returns the cached plan", repeated == first);
+
+		Operator reordered = db.query(new StringReader("SELECT a2,b1\nFROM B,A\nWHERE b3=a2"));
+		TestData.check("query with reordered relations returns the cached plan", reordered == first);
+
+		Operator all = db.query(new StringReader("SELECT *\nFROM A,B\nWHERE a2=b3"));
+		Operator allReordered = db.query(new StringReader("SELECT *\nFROM B,A\nWHERE a2=b3"));
+		TestData.check("SELECT * with reordered relations is planned separately", allReordered != all);
+		TestData.check("SELECT * keeps the columns in FROM order",
+				all.getOutput().getAttributes().get(0).getName().equals("a1")
+						&& allReordered.getOutput().getAttributes().get(0).getName().equals("b1"));
+
+		Operator other = db.query(new StringReader("SELECT a1,b1\nFROM A,B\nWHERE a2=b3"));
+		TestData.check("query with other attributes is planned separately", other != first);
+
+		catalogue.createAttribute("C", "c2", 5);
+		Operator unrelated = db.query(new StringReader("SELECT a2,b1\nFROM A,B\nWHERE a2=b3"));
+		TestData.check("change to an unread relation keeps the cached plan", unrelated == first);
+
+		catalogue.createAttribute("B", "b4", 10);
+		Operator replanned = db.query(new StringReader("SELECT a2,b1\nFROM A,B\nWHERE a2=b3"));
+		TestData.check("change to a read relation replans the query", replanned != first);
+
+		Operator smith = db.query(new StringReader("SELECT a2,b1\nFROM A,B\nWHERE a2=b3,a1=\"Smith\""));
+		Operator jones = db.query(new StringReader("SELECT a2,b1\nFROM A,B\nWHERE a1=\"Jones\",a2=b3"));
+		TestData.check("queries differing only in a literal share a plan",
+				smith.toString().replace("Smith", "Jones").equals(jones.toString()));
+
+		PreparedQuery prepared = db.prepare(new StringReader("SELECT a2,b1\nFROM A,B\nWHERE a2=b3,a1=?"));
+		TestData.check("prepared query has one parameter", prepared.getParameterCount() == 1);
+		TestData.check("binding a prepared query gives the plan of the literal query",
+				prepared.bind("Smith").toString().equals(smith.toString()));
+
+		boolean rejected = false;
+		try {
+			prepared.bind();
+		} catch (IllegalArgumentException e) {
+			rejected = true;
+		}
+		TestData.check("binding too few values is rejected", rejected);
+
+		TestData.finish();
+	}
+}
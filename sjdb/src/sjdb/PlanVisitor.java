@@ -11,6 +11,11 @@ public interface PlanVisitor {
 	 * @param op Scan operator to be visited
 	 */
 	public void visit(Scan op);
+	/**
+	 * Visit an IndexScan operator.
+	 * @param op IndexScan operator to be visited
+	 */
+	public void visit(IndexScan op);
 	/**
 	 * Visit a Project operator.
 	 * @param op Project operator to be visited
@@ -7,12 +7,17 @@ package sjdb;
  * only used by the toString() method; a future version of
  * Attribute which uses more expressive synopses may change this.
  * 
+ * A predicate of the form attr=value may also have a numbered parameter
+ * in place of its value, to be bound later (see PreparedQuery); it is
+ * written attr=?n, where n counts from 1.
+ * 
  * @author nmg
  */
 public class Predicate {
 	private Attribute leftAttribute;
 	private Attribute rightAttribute;
 	private String rightValue;
+	private int parameter = -1;
 
 	/**
 	 * Create a predicate of the form attr=attr
@@ -34,12 +39,50 @@ public class Predicate {
 		this.rightValue = value;
 	}
 
+	/**
+	 * Create a predicate of the form attr=?, whose value is the parameter
+	 * with the given (zero-based) number
+	 * @param left
+	 * @param parameter
+	 */
+	public Predicate(Attribute left, int parameter) {
+		this.leftAttribute = left;
+		this.parameter = parameter;
+	}
+
 	/**
 	 * Return true if this predicate is of the form attr=value
 	 * @return
 	 */
 	public boolean equalsValue() {
-		return this.rightValue != null;
+		return this.rightValue != null || this.parameter >= 0;
+	}
+
+	/**
+	 * Return true if this predicate is of the form attr=? with its value
+	 * still to be bound
+	 * @return
+	 */
+	public boolean isParameter() {
+		return this.parameter >= 0;
+	}
+
+	/**
+	 * Return the zero-based parameter number for predicates of the form attr=?
+	 * @return parameter number
+	 */
+	public int getParameter() {
+		return this.parameter;
+	}
+
+	/**
+	 * Return the predicate attr=VALUE for a predicate of the form attr=?,
+	 * taking VALUE from the given parameter values
+	 * @param values parameter values, by parameter number
+	 * @return bound predicate
+	 */
+	public Predicate bind(String[] values) {
+		return new Predicate(this.leftAttribute, values[this.parameter]);
 	}
 	
 	/**
@@ -70,7 +113,9 @@ public class Predicate {
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		if (this.rightValue == null) {
+		if (this.parameter >= 0) {
+			return this.leftAttribute.toString() + "=?" + (this.parameter + 1);
+		} else if (this.rightValue == null) {
 			return this.leftAttribute.toString() + "=" + this.rightAttribute.toString(); 
 		} else {
 			return this.leftAttribute.toString() + "=\"" + this.rightValue + "\"";
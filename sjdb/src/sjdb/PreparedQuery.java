@@ -0,0 +1,196 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class represents a query that has been optimised once with some of
+ * its attr=value predicates left as parameters (attr=?n), so that the same
+ * optimised plan can be reused for any values of those parameters.
+ *
+ * Unless the attribute has a histogram or most-common-values list, the
+ * estimator does not look at the value in an attr=value predicate, so the
+ * join order chosen for a query parameterised on such attributes is the one
+ * that would be chosen for every binding of it; binding only substitutes
+ * the values into the plan and re-estimates the nodes above them.
+ */
+public class PreparedQuery {
+	private Operator plan;
+	private int parameterCount;
+
+	/**
+	 * Create a prepared query from an optimised plan
+	 * @param plan Optimised plan, which may contain parameter predicates
+	 */
+	public PreparedQuery(Operator plan) {
+		this.plan = plan;
+		this.parameterCount = countParameters(plan);
+	}
+
+	/**
+	 * Return the optimised plan, with its parameters unbound
+	 * @return Root of the plan
+	 */
+	public Operator getPlan() {
+		return this.plan;
+	}
+
+	/**
+	 * Return the number of parameters that must be bound
+	 * @return Parameter count
+	 */
+	public int getParameterCount() {
+		return this.parameterCount;
+	}
+
+	/**
+	 * Return the optimised plan with the given values bound to its
+	 * parameters, in parameter order
+	 * @param values Parameter values
+	 * @return Root of the bound plan
+	 */
+	public Operator bind(String... values) {
+		if (values.length != parameterCount) {
+			throw new IllegalArgumentException("Expected " + parameterCount + " parameter values, got " + values.length);
+		}
+		if (parameterCount == 0) {
+			return plan;
+		}
+		Operator res = bind(plan, values);
+		Estimator est = new Estimator();
+		est.estimate(res);
+		return res;
+	}
+
+	/**
+	 * Copy the plan, replacing parameter predicates with bound predicates.
+	 * Subplans without parameters are shared with the prepared plan.
+	 */
+	private static Operator bind(Operator node, String[] values) {
+		if (countParameters(node) == 0) {
+			return node;
+		}
+		if (node instanceof Select) {
+			Predicate predicate = ((Select) node).getPredicate();
+			if (predicate.isParameter()) {
+				predicate = predicate.bind(values);
+			}
+			return new Select(bind(((Select) node).getInput(), values), predicate);
+		} else if (node instanceof IndexScan) {
+			IndexScan scan = (IndexScan) node;
+			return new IndexScan((NamedRelation) scan.getRelation(), scan.getAttributes(), scan.getPredicate().bind(values));
+		} else if (node instanceof Project) {
+			return new Project(bind(((Project) node).getInput(), values), ((Project) node).getAttributes());
+		} else if (node instanceof Join) {
+			Join join = (Join) node;
+			return new Join(bind(join.getLeft(), values), bind(join.getRight(), values), join.getPredicate(),
+					join.getMethod());
+		} else if (node instanceof Product) {
+			Product product = (Product) node;
+			return new Product(bind(product.getLeft(), values), bind(product.getRight(), values));
+		}
+		return node;
+	}
+
+	/**
+	 * Return the number of distinct parameters in a plan, taken to be one
+	 * more than the highest parameter number that appears in it.
+	 */
+	private static int countParameters(Operator node) {
+		int res = 0;
+		if (node instanceof Select && ((Select) node).getPredicate().isParameter()) {
+			res = ((Select) node).getPredicate().getParameter() + 1;
+		}
+		if (node instanceof IndexScan && ((IndexScan) node).getPredicate().isParameter()) {
+			res = ((IndexScan) node).getPredicate().getParameter() + 1;
+		}
+		if (node instanceof Scan) {
+			return res;
+		}
+		for (Operator child : node.getInputs()) {
+			res = Math.max(res, countParameters(child));
+		}
+		return res;
+	}
+
+	/**
+	 * Return a copy of a canonical query with each attr=value predicate
+	 * replaced by a parameter, adding the values that were replaced to the
+	 * list in parameter order. Predicates on attributes with a histogram
+	 * or most-common-values list keep their values, since their estimates (and so the best plan) depend
+	 * on them. Parameters are numbered by attribute name (and
+	 * then by their order in the query), so that queries which differ only in
+	 * their literals or in the order of their WHERE lists are parameterised
+	 * identically. A query that already contains parameters is returned
+	 * unchanged.
+	 * @param query Canonical query plan
+	 * @param catalogue Catalogue the query is to be optimised against
+	 * @param values List to which the replaced values are added
+	 * @return Parameterised query plan
+	 */
+	public static Operator parameterise(Operator query, Catalogue catalogue, List<String> values) {
+		if (countParameters(query) > 0) {
+			return query;
+		}
+		List<Select> selects = new ArrayList<>();
+		collectValueSelects(query, catalogue, selects);
+		// the canonical plan applies the WHERE list from the bottom up
+		Collections.reverse(selects);
+		Collections.sort(selects, new Comparator<Select>() {
+			@Override
+			public int compare(Select selectA, Select selectB) {
+				return selectA.getPredicate().getLeftAttribute().getName()
+						.compareTo(selectB.getPredicate().getLeftAttribute().getName());
+			}
+		});
+		for (Select select : selects) {
+			values.add(select.getPredicate().getRightValue());
+		}
+		return replaceValues(query, selects);
+	}
+
+	private static void collectValueSelects(Operator node, Catalogue catalogue, List<Select> selects) {
+		if (node instanceof Select && ((Select) node).getPredicate().equalsValue()
+				&& !hasValueStatistics(catalogue, ((Select) node).getPredicate().getLeftAttribute())) {
+			selects.add((Select) node);
+		}
+		if (node instanceof Scan) {
+			return;
+		}
+		for (Operator child : node.getInputs()) {
+			collectValueSelects(child, catalogue, selects);
+		}
+	}
+
+	private static boolean hasValueStatistics(Catalogue catalogue, Attribute attr) {
+		try {
+			Attribute stats = catalogue.getAttribute(attr.getName());
+			return stats.getHistogram() != null || stats.getMostCommonValues() != null;
+		} catch (DatabaseException e) {
+			return false;
+		}
+	}
+
+	private static Operator replaceValues(Operator node, List<Select> selects) {
+		if (node instanceof Select) {
+			Predicate predicate = ((Select) node).getPredicate();
+			int parameter = selects.indexOf(node);
+			if (parameter >= 0) {
+				predicate = new Predicate(predicate.getLeftAttribute(), parameter);
+			}
+			return new Select(replaceValues(((Select) node).getInput(), selects), predicate);
+		} else if (node instanceof Project) {
+			return new Project(replaceValues(((Project) node).getInput(), selects), ((Project) node).getAttributes());
+		} else if (node instanceof Join) {
+			Join join = (Join) node;
+			return new Join(replaceValues(join.getLeft(), selects), replaceValues(join.getRight(), selects),
+					join.getPredicate(), join.getMethod());
+		} else if (node instanceof Product) {
+			Product product = (Product) node;
+			return new Product(replaceValues(product.getLeft(), selects), replaceValues(product.getRight(), selects));
+		}
+		return node;
+	}
+}
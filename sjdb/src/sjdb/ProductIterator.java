@@ -0,0 +1,99 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements the Product operator as a nested loop: the right
+ * input is read into memory when the iterator is opened, and each tuple of
+ * the left input is then paired with every tuple of the right input.
+ *
+ * Subclasses may restrict the pairs produced by overriding matches().
+ */
+public class ProductIterator implements TupleIterator {
+	private TupleIterator left;
+	private TupleIterator right;
+	private List<Attribute> attributes;
+	private List<int[]> rightTuples;
+	private int[] leftTuple;
+	private int rightPos;
+
+	/**
+	 * Create a new product iterator
+	 * @param left Left input iterator
+	 * @param right Right input iterator
+	 */
+	public ProductIterator(TupleIterator left, TupleIterator right) {
+		this.left = left;
+		this.right = right;
+		this.attributes = new ArrayList<Attribute>(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+
+	@Override
+	public void open() {
+		rightTuples = new ArrayList<int[]>();
+		right.open();
+		int[] tuple;
+		while ((tuple = right.next()) != null) {
+			rightTuples.add(tuple);
+		}
+		right.close();
+
+		left.open();
+		leftTuple = null;
+	}
+
+	@Override
+	public int[] next() {
+		while (true) {
+			if (leftTuple == null || rightPos == rightTuples.size()) {
+				leftTuple = left.next();
+				rightPos = 0;
+				if (leftTuple == null) {
+					return null;
+				}
+			}
+			while (rightPos < rightTuples.size()) {
+				int[] rightTuple = rightTuples.get(rightPos++);
+				if (matches(leftTuple, rightTuple)) {
+					return concatenate(leftTuple, rightTuple);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return true if a pair of tuples should be produced
+	 * @param leftTuple Tuple from the left input
+	 * @param rightTuple Tuple from the right input
+	 * @return
+	 */
+	protected boolean matches(int[] leftTuple, int[] rightTuple) {
+		return true;
+	}
+
+	/**
+	 * Return the tuple made of a left tuple followed by a right tuple
+	 * @param leftTuple
+	 * @param rightTuple
+	 * @return
+	 */
+	public static int[] concatenate(int[] leftTuple, int[] rightTuple) {
+		int[] res = new int[leftTuple.length + rightTuple.length];
+		System.arraycopy(leftTuple, 0, res, 0, leftTuple.length);
+		System.arraycopy(rightTuple, 0, res, leftTuple.length, rightTuple.length);
+		return res;
+	}
+
+	@Override
+	public void close() {
+		left.close();
+		rightTuples = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+}
@@ -0,0 +1,56 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements the Project operator, keeping the given attributes
+ * of each tuple of its input. As elsewhere in SJDB, duplicates are not
+ * removed.
+ */
+public class ProjectIterator implements TupleIterator {
+	private TupleIterator input;
+	private List<Attribute> attributes;
+	private int[] columns;
+
+	/**
+	 * Create a new project iterator
+	 * @param input Input iterator
+	 * @param attributes Attributes to be projected
+	 */
+	public ProjectIterator(TupleIterator input, List<Attribute> attributes) {
+		this.input = input;
+		this.attributes = attributes;
+		this.columns = new int[attributes.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = input.getAttributes().indexOf(attributes.get(i));
+		}
+	}
+
+	@Override
+	public void open() {
+		input.open();
+	}
+
+	@Override
+	public int[] next() {
+		int[] tuple = input.next();
+		if (tuple == null) {
+			return null;
+		}
+		int[] res = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			res[i] = tuple[columns[i]];
+		}
+		return res;
+	}
+
+	@Override
+	public void close() {
+		input.close();
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+}
@@ -18,10 +18,14 @@ import java.util.regex.Matcher;
  * FROM <relation name>,<relation name>,...,<relation name>
  * WHERE <predicate>,<predicate>,...,<predicate>
  * 
- * where <predicate> is of one of the following two forms:
+ * where <predicate> is of one of the following three forms:
  * 
  * <attribute name>="<value>"
  * <attribute name>=<attribute name>
+ * <attribute name>=?
+ * 
+ * The last form is a parameter whose value is bound after the query has
+ * been prepared; parameters are numbered in the order they appear.
  * 
  * The WHERE line (corresponding to the select operators) is optional and 
  * may be omitted; the other lines are required.
@@ -41,6 +45,7 @@ import java.util.regex.Matcher;
 public class QueryParser {
 	private BufferedReader reader;
 	private Catalogue catalogue;
+	private int parameters;
 
 	/**
 	 * Create a new QueryParser. This class is intended to be used once only;
@@ -53,6 +58,7 @@ public class QueryParser {
 	public QueryParser(Catalogue catalogue, Reader input) throws Exception {
 		this.catalogue = catalogue;
 		this.reader = new BufferedReader(input);
+		this.parameters = 0;
 	}
 	
 	/**
@@ -157,10 +163,14 @@ public class QueryParser {
 	private Operator buildSelect(String pred, Operator op) {
 		Pattern p = Pattern.compile("(\\w+)=\"(\\w+)\"");
 		Matcher m = p.matcher(pred);
+		Pattern q = Pattern.compile("(\\w+)=\\?");
+		Matcher n = q.matcher(pred);
 		Predicate ret;
 		
 		if (m.matches()) {
 			ret = new Predicate(new Attribute(m.group(1)), m.group(2));
+		} else if (n.matches()) {
+			ret = new Predicate(new Attribute(n.group(1)), this.parameters++);
 		} else {
 			String[] atts = pred.split("=");
 			ret = new Predicate(new Attribute(atts[0]), new Attribute(atts[1]));
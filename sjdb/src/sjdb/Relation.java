@@ -8,18 +8,27 @@ import java.util.ArrayList;
  * The Relation class represents an unnamed relation. It consists of a 
  * number of attributes and a size (tuple count).
  * 
+ * A relation may also carry groups of correlated attributes (see
+ * AttributeGroup), and records which of its attributes have already been
+ * restricted to a single value by a select, so that the estimator can tell
+ * when a further select is correlated with earlier ones.
+ * 
  * @author nmg
  */
 public class Relation {
 	private List<Attribute> attributes;
-	private int size;
+	private long size;
+	private List<AttributeGroup> groups;
+	private List<Attribute> boundAttributes;
 
 	/**
 	 * Create a new relation with the given tuple count
 	 */
-	protected Relation(int size) {
+	protected Relation(long size) {
 		this.attributes = new ArrayList<Attribute>();
 		this.size = size;
+		this.groups = new ArrayList<AttributeGroup>();
+		this.boundAttributes = new ArrayList<Attribute>();
 	}
 	
 	/**
@@ -56,18 +65,74 @@ public class Relation {
 			// If the attribute has more distinct values than there are tuples
 			// in this relation, limit the distinct values to the number of
 			// tuples
-			this.attributes.add(new Attribute(attribute.getName(), this.size));
+			this.attributes.add(new Attribute(attribute.getName(), this.size, attribute.getHistogram(),
+					attribute.getMostCommonValues()));
 		} else {
 			this.attributes.add(attribute);	
 		}
 	}
 	
+	/**
+	 * Return the groups of correlated attributes in this relation
+	 * 
+	 * @return the attribute groups
+	 */
+	public List<AttributeGroup> getAttributeGroups() {
+		return groups;
+	}
+	
+	/**
+	 * Add a group of correlated attributes to this relation
+	 * 
+	 * @param group the attribute group to add
+	 */
+	public void addAttributeGroup(AttributeGroup group) {
+		this.groups.add(group);
+	}
+	
+	/**
+	 * Return the attributes that have been restricted to a single value
+	 * 
+	 * @return the bound attributes
+	 */
+	public List<Attribute> getBoundAttributes() {
+		return boundAttributes;
+	}
+	
+	/**
+	 * Record that an attribute has been restricted to a single value
+	 * 
+	 * @param attribute the bound attribute
+	 */
+	public void addBoundAttribute(Attribute attribute) {
+		if (!this.boundAttributes.contains(attribute)) {
+			this.boundAttributes.add(attribute);
+		}
+	}
+	
+	/**
+	 * Copy the attribute groups and bound attributes of another relation
+	 * (such as the input of an operator) to this one
+	 * 
+	 * @param relation the relation to copy from
+	 */
+	public void addCorrelations(Relation relation) {
+		for (AttributeGroup group : relation.getAttributeGroups()) {
+			if (!this.groups.contains(group)) {
+				this.groups.add(group);
+			}
+		}
+		for (Attribute attribute : relation.getBoundAttributes()) {
+			addBoundAttribute(attribute);
+		}
+	}
+	
 	/**
 	 * Return the tuple count for this relation
 	 * 
 	 * @return the tuples
 	 */
-	public int getTupleCount() {
+	public long getTupleCount() {
 		return size;
 	}
 	
@@ -3,12 +3,92 @@
  */
 package sjdb;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author nmg
  *
  */
 public class SJDB {
+	private Catalogue catalogue;
+	private PlanCache planCache;
+	private CardinalityCache cardinalityCache;
+	private int catalogueVersion;
+
+	/**
+	 * Create a database that optimises queries against the given catalogue,
+	 * caching the optimised plans of the queries it has seen.
+	 * @param catalogue
+	 */
+	public SJDB(Catalogue catalogue) {
+		this.catalogue = catalogue;
+		this.planCache = new PlanCache(catalogue);
+		this.cardinalityCache = new CardinalityCache();
+		this.catalogueVersion = catalogue.getVersion();
+	}
+
+	/**
+	 * Parse a canonical query from the input and return its optimised plan.
+	 * @param input
+	 * @return
+	 * @throws Exception
+	 */
+	public Operator query(Reader input) throws Exception {
+		QueryParser queryParser = new QueryParser(this.catalogue, input);
+		return optimise(queryParser.parse());
+	}
+
+	/**
+	 * Parse a canonical query from the input, whose WHERE list may contain
+	 * parameters of the form attr=?, and return it prepared for binding.
+	 * @param input
+	 * @return
+	 * @throws Exception
+	 */
+	public PreparedQuery prepare(Reader input) throws Exception {
+		QueryParser queryParser = new QueryParser(this.catalogue, input);
+		return prepare(queryParser.parse());
+	}
+
+	/**
+	 * Optimise a canonical query plan that may contain parameters, reusing
+	 * the plan cached for the same query if the statistics it used are
+	 * unchanged, and return it prepared for binding.
+	 * @param plan
+	 * @return
+	 */
+	public synchronized PreparedQuery prepare(Operator plan) {
+		// join estimates are only valid for the statistics they came from
+		if (catalogue.getVersion() != catalogueVersion) {
+			cardinalityCache.clear();
+			catalogueVersion = catalogue.getVersion();
+		}
+
+		Operator optPlan = planCache.get(plan);
+		if (optPlan == null) {
+			Optimiser opt = new Optimiser(catalogue);
+			opt.setCardinalityCache(cardinalityCache);
+			optPlan = opt.optimise(plan);
+			planCache.put(plan, optPlan);
+		}
+		return new PreparedQuery(optPlan);
+	}
+
+	/**
+	 * Return the optimised plan for a canonical query plan. The attr=value
+	 * literals in the query are replaced with parameters before the plan
+	 * cache is consulted, so queries that differ only in their literals
+	 * share one optimised plan (except for literals on attributes with a
+	 * histogram or most common values, which can change the plan).
+	 * @param plan
+	 * @return
+	 */
+	public Operator optimise(Operator plan) {
+		List<String> values = new ArrayList<>();
+		Operator query = PreparedQuery.parameterise(plan, catalogue, values);
+		return prepare(query).bind(values.toArray(new String[values.size()]));
+	}
 
 	/**
 	 * @param args
@@ -19,21 +99,36 @@ public class SJDB {
 		Catalogue cat = new Catalogue();
 		CatalogueParser catParser = new CatalogueParser(catFile, cat);
 		catParser.parse();
-		
-		// read stdin, parse, and build canonical query plan
-		QueryParser queryParser = new QueryParser(cat, new InputStreamReader(System.in));
-		Operator plan = queryParser.parse();
-		
-		Operator res=plan;
-				
+
+		// read stdin, parse, and build canonical query plan, then create
+		// optimised plan
+		SJDB db = new SJDB(cat);
+		Operator optPlan = db.query(new InputStreamReader(System.in));
+
+		// if a data directory is given, run the optimised plan against it,
+		// in vectorised or parallel mode if that is asked for
+		if (args.length > 1) {
+			long start = System.nanoTime();
+			List<String[]> result;
+			if (args.length > 2 && args[2].equals("batch")) {
+				result = new BatchExecutor(args[1]).execute(optPlan);
+			} else if (args.length > 2 && args[2].equals("parallel")) {
+				result = new ParallelExecutor(args[1]).execute(optPlan);
+			} else {
+				result = new Executor(args[1]).execute(optPlan);
+			}
+			long elapsed = System.nanoTime() - start;
+
+			for (String[] tuple : result) {
+				System.out.println(String.join(",", tuple));
+			}
+			System.err.println(result.size() + " tuples in " + (elapsed / 1000000) + " ms");
+		}
+
 		// create estimator visitor and apply it to canonical plan
 		//Estimator est = new Estimator();
 		//plan.accept(est);
-		
-		// create optimised plan
-		
-		Optimiser opt = new Optimiser(cat);
-		Operator optPlan = opt.optimise(plan);
+
 		//OldOptimiser oopt = new OldOptimiser(cat);
 		//Operator ooptPlan = oopt.optimise(plan);
 	}
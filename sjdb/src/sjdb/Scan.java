@@ -1,11 +1,13 @@
 package sjdb;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Iterator;
 
 /**
  * This class implements a Scan operator that feeds a NamedRelation into
- * a query plan.
+ * a query plan. A scan may be restricted to some of the attributes of the
+ * relation, in which case only their columns are read from storage.
  * @author nmg
  */
 public class Scan extends Operator {
@@ -13,19 +15,35 @@ public class Scan extends Operator {
 	 * The named relation to be scanned
 	 */
 	private NamedRelation relation;
+
+	/**
+	 * The attributes of the relation that are read
+	 */
+	private List<Attribute> attributes;
 	
 	/**
 	 * Create a new scan of a given named relation
 	 * @param relation Named relation to be scanned
 	 */
 	public Scan(NamedRelation relation) {
+		this(relation, relation.getAttributes());
+	}
+
+	/**
+	 * Create a new scan of some of the attributes of a given named relation
+	 * @param relation Named relation to be scanned
+	 * @param attributes Attributes of the relation to be read
+	 */
+	public Scan(NamedRelation relation, List<Attribute> attributes) {
 		this.relation = relation;
+		this.attributes = new ArrayList<Attribute>(attributes);
 		this.output = new Relation(relation.getTupleCount());
-		Iterator<Attribute> iter = relation.getAttributes().iterator();
+		Iterator<Attribute> iter = this.attributes.iterator();
 		
 		while (iter.hasNext()) {
 			this.output.addAttribute(new Attribute(iter.next()));
 		}
+		this.output.addCorrelations(relation);
 	}
 
 	/* (non-Javadoc)
@@ -44,13 +62,39 @@ public class Scan extends Operator {
 	public Relation getRelation() {
 		return this.relation;
 	}
+
+	/**
+	 * Return the attributes of the relation that are read
+	 * @return Attributes read, in the order they are produced
+	 */
+	public List<Attribute> getAttributes() {
+		return new ArrayList<Attribute>(this.attributes);
+	}
+
+	/**
+	 * Return true if the scan reads every attribute of the relation
+	 * @return True if no attribute is left unread
+	 */
+	public boolean isComplete() {
+		return this.attributes.equals(this.relation.getAttributes());
+	}
 	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	@Override
 	public String toString() {
-		return this.relation.toString();
+		if (isComplete()) {
+			return this.relation.toString();
+		}
+		String res = this.relation.toString() + " [";
+		for (int i = 0; i < this.attributes.size(); i++) {
+			if (i > 0) {
+				res += ",";
+			}
+			res += this.attributes.get(i).getName();
+		}
+		return res + "]";
 	}
 	
 	/* (non-Javadoc)
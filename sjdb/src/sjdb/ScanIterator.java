@@ -0,0 +1,56 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements the Scan operator, reading the tuples of a named
+ * relation from a column source a batch at a time and handing them out one
+ * by one.
+ */
+public class ScanIterator implements TupleIterator {
+	private ColumnSource source;
+	private ColumnBatch batch;
+	private int pos;
+
+	/**
+	 * Create a new scan iterator
+	 * @param source Source of the tuples of the relation
+	 */
+	public ScanIterator(ColumnSource source) {
+		this.source = source;
+	}
+
+	@Override
+	public void open() {
+		source.open();
+		batch = new ColumnBatch(source.getAttributes().size(), ColumnBatch.DEFAULT_CAPACITY);
+		pos = 0;
+	}
+
+	@Override
+	public int[] next() {
+		if (pos == batch.getSize()) {
+			pos = 0;
+			if (source.read(batch) == 0) {
+				return null;
+			}
+		}
+		int[] tuple = new int[batch.getColumnCount()];
+		for (int i = 0; i < tuple.length; i++) {
+			tuple[i] = batch.getColumn(i)[pos];
+		}
+		pos++;
+		return tuple;
+	}
+
+	@Override
+	public void close() {
+		source.close();
+		batch = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return source.getAttributes();
+	}
+}
@@ -0,0 +1,61 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements the Select operator, passing on the tuples of its
+ * input that satisfy a predicate of the form attr=value or attr=attr.
+ */
+public class SelectIterator implements TupleIterator {
+	private TupleIterator input;
+	private int leftColumn;
+	private int rightColumn;
+	private int valueCode;
+
+	/**
+	 * Create a new select iterator
+	 * @param input Input iterator
+	 * @param predicate Predicate to be satisfied, with any parameter bound
+	 * @param dictionary Dictionary used to encode the value in the predicate
+	 */
+	public SelectIterator(TupleIterator input, Predicate predicate, ValueDictionary dictionary) {
+		if (predicate.isParameter()) {
+			throw new IllegalArgumentException("Unbound parameter in " + predicate);
+		}
+		this.input = input;
+		this.leftColumn = input.getAttributes().indexOf(predicate.getLeftAttribute());
+		if (predicate.equalsValue()) {
+			this.rightColumn = -1;
+			this.valueCode = dictionary.encode(predicate.getRightValue());
+		} else {
+			this.rightColumn = input.getAttributes().indexOf(predicate.getRightAttribute());
+		}
+	}
+
+	@Override
+	public void open() {
+		input.open();
+	}
+
+	@Override
+	public int[] next() {
+		int[] tuple;
+		while ((tuple = input.next()) != null) {
+			int right = rightColumn < 0 ? valueCode : tuple[rightColumn];
+			if (tuple[leftColumn] == right) {
+				return tuple;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() {
+		input.close();
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return input.getAttributes();
+	}
+}
@@ -0,0 +1,405 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reduces the inputs of a block of joins by semi-joins before
+ * they are joined, in the manner of Yannakakis.
+ *
+ * A block is a tree of joins, with any selects and projects between them;
+ * its inputs (the leaves) are the subplans below it that contain no joins
+ * of the block, such as scans with their selects. The join predicates of
+ * the block connect the leaves in a graph, and when that graph is a tree
+ * (the query is acyclic) two passes of semi-joins over it remove every
+ * tuple of every leaf that does not contribute to the result of the block:
+ * first each leaf is reduced by its children from the bottom of the tree
+ * up, and then by its parent from the top down. Whatever order the block
+ * then joins the reduced leaves in, as long as it only joins connected
+ * leaves (as the optimiser does), no intermediate result holds more tuples
+ * than the block's result.
+ *
+ * The executors read the leaves of a block through the iterators returned
+ * by reduce(); the first time one of them is opened, every leaf is read
+ * into memory and reduced, and the iterators then read the reduced rows.
+ * Leaves are matched by the first predicate between them, and the rest of
+ * the predicates are checked on each match.
+ *
+ * Since every leaf of a block is held in memory at once, a block is only
+ * reduced if the Estimator expects its leaves to fit in the executor's
+ * memory budget, counting each row as a hash join does (see BatchHashJoin);
+ * larger blocks are joined unreduced, so that their joins can spill. The
+ * check relies on the estimates, so a leaf far larger than estimated can
+ * still take up more memory than the budget.
+ */
+public class SemiJoinReduction {
+	private Operator root;
+	private List<Operator> leaves;
+	private List<List<int[]>> keys;
+	private int[] order;
+	private int[] parent;
+
+	private BatchIterator[] batchInputs;
+	private TupleIterator[] tupleInputs;
+	private ColumnStore[] rows;
+
+	private SemiJoinReduction(Operator root, List<Operator> leaves, int[] order, int[] parent, List<List<int[]>> keys) {
+		this.root = root;
+		this.leaves = leaves;
+		this.order = order;
+		this.parent = parent;
+		this.keys = keys;
+		this.batchInputs = new BatchIterator[leaves.size()];
+		this.tupleInputs = new TupleIterator[leaves.size()];
+	}
+
+	/**
+	 * Return the reductions for the acyclic join blocks of a plan with at
+	 * least three leaves whose leaves are expected to fit in a memory
+	 * budget; the outputs of the plan must have been estimated
+	 * @param plan Root of the plan
+	 * @param memoryBudget Number of bytes the leaves of a block may take up
+	 * @return List of reductions
+	 */
+	public static List<SemiJoinReduction> forPlan(Operator plan, long memoryBudget) {
+		List<SemiJoinReduction> res = new ArrayList<SemiJoinReduction>();
+		addReductions(plan, memoryBudget, res);
+		return res;
+	}
+
+	private static void addReductions(Operator op, long memoryBudget, List<SemiJoinReduction> res) {
+		if (op instanceof Scan) {
+			return;
+		}
+		if (!isBlock(op)) {
+			for (Operator input : op.getInputs()) {
+				addReductions(input, memoryBudget, res);
+			}
+			return;
+		}
+		List<Operator> leaves = new ArrayList<Operator>();
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		collect(op, leaves, predicates);
+		SemiJoinReduction reduction = create(op, leaves, predicates);
+		if (reduction != null && fits(leaves, memoryBudget)) {
+			res.add(reduction);
+		}
+		for (Operator leaf : leaves) {
+			addReductions(leaf, memoryBudget, res);
+		}
+	}
+
+	/**
+	 * Return true if the leaves of a block are expected to fit in a memory
+	 * budget
+	 */
+	private static boolean fits(List<Operator> leaves, long memoryBudget) {
+		double bytes = 0;
+		for (Operator leaf : leaves) {
+			Relation output = leaf.getOutput();
+			bytes += (double) output.getTupleCount() * BatchHashJoin.rowBytes(output.getAttributes().size());
+		}
+		return bytes <= memoryBudget;
+	}
+
+	/**
+	 * Return true if an operator is a join, or a select or project over a
+	 * chain of them that leads to a join
+	 */
+	private static boolean isBlock(Operator op) {
+		if (op instanceof Join) {
+			return true;
+		} else if (op instanceof Select || op instanceof Project) {
+			return isBlock(op.getInputs().get(0));
+		}
+		return false;
+	}
+
+	private static void collect(Operator op, List<Operator> leaves, List<Predicate> predicates) {
+		if (!isBlock(op)) {
+			leaves.add(op);
+			return;
+		}
+		if (op instanceof Join) {
+			predicates.add(((Join) op).getPredicate());
+		} else if (op instanceof Select && !((Select) op).getPredicate().equalsValue()) {
+			predicates.add(((Select) op).getPredicate());
+		}
+		for (Operator input : op.getInputs()) {
+			collect(input, leaves, predicates);
+		}
+	}
+
+	/**
+	 * Return the reduction for a block, or null if it has fewer than three
+	 * leaves or its join graph has a cycle
+	 */
+	private static SemiJoinReduction create(Operator root, List<Operator> leaves, List<Predicate> predicates) {
+		int n = leaves.size();
+		if (n < 3) {
+			return null;
+		}
+		// the key columns joining each pair of leaves, as {i, column of i, j, column of j}
+		List<List<int[]>> keys = new ArrayList<List<int[]>>();
+		for (int i = 0; i < n * n; i++) {
+			keys.add(new ArrayList<int[]>());
+		}
+		int[] component = new int[n];
+		for (int i = 0; i < n; i++) {
+			component[i] = i;
+		}
+		List<List<Integer>> neighbours = new ArrayList<List<Integer>>();
+		for (int i = 0; i < n; i++) {
+			neighbours.add(new ArrayList<Integer>());
+		}
+		for (Predicate predicate : predicates) {
+			int i = leafOf(leaves, predicate.getLeftAttribute());
+			int j = leafOf(leaves, predicate.getRightAttribute());
+			if (i == j) {
+				continue;
+			}
+			if (keys.get(i * n + j).isEmpty()) {
+				// a new edge of the graph must join two separate trees
+				if (find(component, i) == find(component, j)) {
+					return null;
+				}
+				component[find(component, i)] = find(component, j);
+				neighbours.get(i).add(j);
+				neighbours.get(j).add(i);
+			}
+			int ci = leaves.get(i).getOutput().getAttributes().indexOf(predicate.getLeftAttribute());
+			int cj = leaves.get(j).getOutput().getAttributes().indexOf(predicate.getRightAttribute());
+			keys.get(i * n + j).add(new int[] { ci, cj });
+			keys.get(j * n + i).add(new int[] { cj, ci });
+		}
+
+		// order the leaves breadth-first from the first, so each parent comes before its children
+		int[] order = new int[n];
+		int[] parent = new int[n];
+		boolean[] seen = new boolean[n];
+		seen[0] = true;
+		parent[0] = -1;
+		int size = 1;
+		for (int k = 0; k < size; k++) {
+			for (int j : neighbours.get(order[k])) {
+				if (!seen[j]) {
+					seen[j] = true;
+					parent[j] = order[k];
+					order[size++] = j;
+				}
+			}
+		}
+		if (size < n) {
+			return null;
+		}
+		return new SemiJoinReduction(root, leaves, order, parent, keys);
+	}
+
+	private static int leafOf(List<Operator> leaves, Attribute attr) {
+		for (int i = 0; i < leaves.size(); i++) {
+			if (leaves.get(i).getOutput().getAttributes().contains(attr)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("No input of the join provides " + attr);
+	}
+
+	private static int find(int[] component, int i) {
+		while (component[i] != i) {
+			i = component[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Return the root of the block
+	 * @return Root operator
+	 */
+	public Operator getRoot() {
+		return root;
+	}
+
+	/**
+	 * Return the leaves of the block
+	 * @return Leaf subplans
+	 */
+	public List<Operator> getLeaves() {
+		return leaves;
+	}
+
+	/**
+	 * Return an iterator over the reduced rows of a leaf
+	 * @param leaf Leaf of the block
+	 * @param input Iterator for the leaf
+	 * @return Iterator over the rows of the leaf that survive the reduction
+	 */
+	public BatchIterator reduce(Operator leaf, BatchIterator input) {
+		final int i = leaves.indexOf(leaf);
+		batchInputs[i] = input;
+		final List<Attribute> attributes = input.getAttributes();
+		return new BatchIterator() {
+			private int pos;
+			private ColumnBatch batch;
+
+			@Override
+			public void open() {
+				run();
+				batch = new ColumnBatch(attributes.size(), ColumnBatch.DEFAULT_CAPACITY);
+				pos = 0;
+			}
+
+			@Override
+			public ColumnBatch next() {
+				ColumnStore store = rows[i];
+				int n = Math.min(batch.getCapacity(), store.size() - pos);
+				if (n == 0) {
+					return null;
+				}
+				for (int c = 0; c < store.getColumnCount(); c++) {
+					System.arraycopy(store.getColumn(c), pos, batch.getColumn(c), 0, n);
+				}
+				pos += n;
+				batch.setSize(n);
+				return batch;
+			}
+
+			@Override
+			public void close() {
+				batch = null;
+			}
+
+			@Override
+			public List<Attribute> getAttributes() {
+				return attributes;
+			}
+		};
+	}
+
+	/**
+	 * Return an iterator over the reduced tuples of a leaf
+	 * @param leaf Leaf of the block
+	 * @param input Iterator for the leaf
+	 * @return Iterator over the tuples of the leaf that survive the reduction
+	 */
+	public TupleIterator reduce(Operator leaf, TupleIterator input) {
+		final int i = leaves.indexOf(leaf);
+		tupleInputs[i] = input;
+		final List<Attribute> attributes = input.getAttributes();
+		return new TupleIterator() {
+			private int pos;
+
+			@Override
+			public void open() {
+				run();
+				pos = 0;
+			}
+
+			@Override
+			public int[] next() {
+				ColumnStore store = rows[i];
+				if (pos == store.size()) {
+					return null;
+				}
+				int[] tuple = new int[store.getColumnCount()];
+				for (int c = 0; c < tuple.length; c++) {
+					tuple[c] = store.getColumn(c)[pos];
+				}
+				pos++;
+				return tuple;
+			}
+
+			@Override
+			public void close() {
+			}
+
+			@Override
+			public List<Attribute> getAttributes() {
+				return attributes;
+			}
+		};
+	}
+
+	/**
+	 * Read every leaf into memory and reduce it, unless that has been done
+	 */
+	private synchronized void run() {
+		if (rows != null) {
+			return;
+		}
+		ColumnStore[] res = new ColumnStore[leaves.size()];
+		for (int i = 0; i < res.length; i++) {
+			if (batchInputs[i] != null) {
+				res[i] = ColumnStore.readAll(batchInputs[i]);
+			} else {
+				res[i] = readAll(tupleInputs[i]);
+			}
+		}
+		reduce(res);
+		rows = res;
+	}
+
+	private static ColumnStore readAll(TupleIterator input) {
+		ColumnStore res = new ColumnStore(input.getAttributes().size());
+		input.open();
+		try {
+			int[] tuple;
+			while ((tuple = input.next()) != null) {
+				res.append(tuple);
+			}
+		} finally {
+			input.close();
+		}
+		return res;
+	}
+
+	/**
+	 * Reduce the rows of the leaves by semi-joins, from the bottom of the
+	 * tree up and then from the top down
+	 * @param rows Rows of each leaf, in the order of getLeaves()
+	 */
+	public void reduce(ColumnStore[] rows) {
+		for (int k = order.length - 1; k > 0; k--) {
+			semiJoin(rows, parent[order[k]], order[k]);
+		}
+		for (int k = 1; k < order.length; k++) {
+			semiJoin(rows, order[k], parent[order[k]]);
+		}
+	}
+
+	/**
+	 * Keep only the rows of leaf i that join with some row of leaf j
+	 */
+	private void semiJoin(ColumnStore[] rows, int i, int j) {
+		List<int[]> pairs = keys.get(i * leaves.size() + j);
+		ColumnStore left = rows[i];
+		ColumnStore right = rows[j];
+		int[] rightKeys = right.getColumn(pairs.get(0)[1]);
+		IntHashTable table = new IntHashTable(right.size());
+		for (int row = 0; row < right.size(); row++) {
+			table.insert(rightKeys[row]);
+		}
+
+		int[] leftKeys = left.getColumn(pairs.get(0)[0]);
+		int[] kept = new int[left.size()];
+		int count = 0;
+		for (int row = 0; row < left.size(); row++) {
+			for (int match = table.first(leftKeys[row]); match >= 0; match = table.next(match)) {
+				if (matches(left, row, right, match, pairs)) {
+					kept[count++] = row;
+					break;
+				}
+			}
+		}
+		left.retain(kept, count);
+	}
+
+	private static boolean matches(ColumnStore left, int row, ColumnStore right, int match, List<int[]> pairs) {
+		for (int p = 0; p < pairs.size(); p++) {
+			int[] pair = pairs.get(p);
+			if (left.getColumn(pair[0])[row] != right.getColumn(pair[1])[match]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,111 @@
+package sjdb;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Test driver for semi-join reduction: checks that reductions are found
+ * for acyclic blocks of at least three joined inputs that fit in the
+ * memory budget and for no others, and runs plans with and without
+ * reduction on every executor, with each join method, under tiny and
+ * default memory budgets, checking that the results agree.
+ */
+public class SemiJoinTest {
+	private static final long[] BUDGETS = { 256, 4096, BatchHashJoin.DEFAULT_MEMORY_BUDGET };
+
+	public static void main(String[] args) throws Exception {
+		Catalogue catalogue = createCatalogue();
+		DataDirectory data = TestData.create(catalogue);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			checkBlocks(catalogue, "SELECT ra,sa\nFROM R,S\nWHERE rb=sb", 0);
+			checkBlocks(catalogue, "SELECT ra,sa,ta\nFROM R,S,T\nWHERE rb=sb,sa=tb", 3);
+			checkBlocks(catalogue, "SELECT ra,sa,ta,ua\nFROM R,S,T,U\nWHERE rb=sb,sa=tb,ra=ub", 4);
+			checkBlocks(catalogue, "SELECT ra,sa,ta\nFROM R,S,T\nWHERE rb=sb,sa=tb,ta=rc", 0);
+
+			check(catalogue, data, pool, "SELECT ra,sa,ta\nFROM R,S,T\nWHERE rb=sb,sa=tb,ta=\"7\"", false);
+			check(catalogue, data, pool, "SELECT ra,sa,ta,ua\nFROM R,S,T,U\nWHERE rb=sb,sa=tb,ra=ub,ua=\"3\"", false);
+			check(catalogue, data, pool, "SELECT ra,sa,ta\nFROM R,S,T\nWHERE rb=sb,sa=tb,ta=rc", false);
+			check(catalogue, data, pool, "SELECT ra,sa,ta\nFROM R,S,T\nWHERE rb=sb,sa=tb,ta=\"none\"", true);
+		} finally {
+			pool.shutdown();
+			TestData.delete(data);
+		}
+		TestData.finish();
+	}
+
+	public static Catalogue createCatalogue() {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("R", 3000);
+		cat.createAttribute("R", "ra", 3000);
+		cat.createAttribute("R", "rb", 300);
+		cat.createAttribute("R", "rc", 500);
+		cat.createRelation("S", 1000);
+		cat.createAttribute("S", "sa", 1000);
+		cat.createAttribute("S", "sb", 300);
+		cat.createRelation("T", 500);
+		cat.createAttribute("T", "ta", 500);
+		cat.createAttribute("T", "tb", 1000);
+		cat.createRelation("U", 200);
+		cat.createAttribute("U", "ua", 200);
+		cat.createAttribute("U", "ub", 3000);
+
+		return cat;
+	}
+
+	private static void checkBlocks(Catalogue catalogue, String query, int leaves) throws Exception {
+		Operator plan = new SJDB(catalogue).optimise(TestData.query(catalogue, query));
+		new Estimator().estimate(plan);
+		List<SemiJoinReduction> reductions = SemiJoinReduction.forPlan(plan, BatchHashJoin.DEFAULT_MEMORY_BUDGET);
+		String name = query.replace('\n', ' ');
+		if (leaves == 0) {
+			TestData.check(name + ": no reduction", reductions.isEmpty());
+		} else {
+			TestData.check(name + ": one reduction of " + leaves + " leaves",
+					reductions.size() == 1 && reductions.get(0).getLeaves().size() == leaves);
+			TestData.check(name + ": no reduction beyond the memory budget",
+					SemiJoinReduction.forPlan(plan, 4096).isEmpty());
+		}
+	}
+
+	private static void check(Catalogue catalogue, DataDirectory data, ForkJoinPool pool, String query, boolean empty)
+			throws Exception {
+		Operator optimised = new SJDB(catalogue).optimise(TestData.query(catalogue, query));
+		String name = query.replace('\n', ' ');
+		List<String> expected = TestData.rows(new BatchExecutor(data).execute(optimised));
+		TestData.check(name + (empty ? ": result empty" : ": result not empty"), expected.isEmpty() == empty);
+
+		for (long budget : BUDGETS) {
+			check(name + ": planned, budget " + budget, data, pool, new PhysicalPlanner(budget).plan(optimised),
+					budget, expected);
+			check(name + ": hash, budget " + budget, data, pool, TestData.force(optimised, JoinMethod.HASH),
+					budget, expected);
+			check(name + ": sort-merge, budget " + budget, data, pool, TestData.force(optimised, JoinMethod.SORT_MERGE),
+					budget, expected);
+		}
+	}
+
+	private static void check(String name, DataDirectory data, ForkJoinPool pool, Operator plan, long budget,
+			List<String> expected) {
+		for (boolean reduce : new boolean[] { false, true }) {
+			String suffix = reduce ? ", reduced" : "";
+			Executor executor = new Executor(data);
+			executor.setMemoryBudget(budget);
+			executor.setSemiJoinReduction(reduce);
+			TestData.check(name + ": executor" + suffix, expected.equals(TestData.rows(executor.execute(plan))));
+
+			BatchExecutor batchExecutor = new BatchExecutor(data);
+			batchExecutor.setMemoryBudget(budget);
+			batchExecutor.setSemiJoinReduction(reduce);
+			TestData.check(name + ": batch executor" + suffix,
+					expected.equals(TestData.rows(batchExecutor.execute(plan))));
+			TestData.check(name + ": batch executor count" + suffix, batchExecutor.count(plan) == expected.size());
+
+			ParallelExecutor parallelExecutor = new ParallelExecutor(data, pool);
+			parallelExecutor.setMemoryBudget(budget);
+			parallelExecutor.setSemiJoinReduction(reduce);
+			TestData.check(name + ": parallel executor" + suffix,
+					expected.equals(TestData.rows(parallelExecutor.execute(plan))));
+		}
+	}
+}
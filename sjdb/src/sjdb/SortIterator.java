@@ -0,0 +1,204 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This class sorts its input on one attribute, as needed by a sort-merge
+ * join. Tuples are ordered by the codes of their values in the dictionary,
+ * which is enough for equal values to be brought together.
+ *
+ * The input is read when the iterator is opened. If it fits in the memory
+ * budget it is sorted in memory; otherwise it is sorted externally: each
+ * budget's worth of tuples is sorted and written to a temporary file as a
+ * run, and the runs are merged, at most MAX_FAN_IN at a time, until the
+ * remaining runs can be merged as the output is read.
+ */
+public class SortIterator implements TupleIterator {
+	/**
+	 * Largest number of runs merged at once
+	 */
+	static final int MAX_FAN_IN = 64;
+
+	private TupleIterator input;
+	private long memoryBudget;
+	private Comparator<int[]> order;
+
+	private List<int[]> tuples;
+	private int pos;
+	private List<SpillFile> runs;
+	private PriorityQueue<Run> merge;
+
+	/**
+	 * Create a new sort iterator
+	 * @param input Input iterator
+	 * @param column Position of the attribute to sort on
+	 * @param memoryBudget Number of bytes the sort may hold in memory
+	 */
+	public SortIterator(TupleIterator input, final int column, long memoryBudget) {
+		this.input = input;
+		this.memoryBudget = memoryBudget;
+		this.order = new Comparator<int[]>() {
+			@Override
+			public int compare(int[] a, int[] b) {
+				return Integer.compare(a[column], b[column]);
+			}
+		};
+	}
+
+	@Override
+	public void open() {
+		long rowBytes = HashJoinIterator.rowBytes(input.getAttributes().size());
+		tuples = new ArrayList<int[]>();
+		runs = new ArrayList<SpillFile>();
+		input.open();
+		try {
+			int[] tuple;
+			while ((tuple = input.next()) != null) {
+				tuples.add(tuple);
+				if (tuples.size() * rowBytes > memoryBudget) {
+					runs.add(writeRun(tuples));
+					tuples.clear();
+				}
+			}
+		} finally {
+			input.close();
+		}
+
+		Collections.sort(tuples, order);
+		pos = 0;
+		if (runs.isEmpty()) {
+			return;
+		}
+		if (!tuples.isEmpty()) {
+			runs.add(writeRun(tuples));
+		}
+		tuples = null;
+		while (runs.size() > MAX_FAN_IN) {
+			mergeRuns();
+		}
+		merge = openRuns(runs);
+	}
+
+	@Override
+	public int[] next() {
+		if (merge == null) {
+			return pos < tuples.size() ? tuples.get(pos++) : null;
+		}
+		Run run = merge.poll();
+		if (run == null) {
+			return null;
+		}
+		int[] tuple = run.tuple;
+		if (run.advance()) {
+			merge.add(run);
+		}
+		return tuple;
+	}
+
+	@Override
+	public void close() {
+		if (merge != null) {
+			for (Run run : merge) {
+				run.input.close();
+			}
+			merge = null;
+		}
+		if (runs != null) {
+			for (SpillFile run : runs) {
+				run.delete();
+			}
+			runs = null;
+		}
+		tuples = null;
+	}
+
+	@Override
+	public List<Attribute> getAttributes() {
+		return input.getAttributes();
+	}
+
+	/**
+	 * Sort tuples and write them to a new run
+	 */
+	private SpillFile writeRun(List<int[]> sorted) {
+		Collections.sort(sorted, order);
+		SpillFile run = new SpillFile(input.getAttributes());
+		for (int[] tuple : sorted) {
+			run.append(tuple);
+		}
+		run.finish();
+		return run;
+	}
+
+	/**
+	 * Merge the first MAX_FAN_IN runs into one run at the end of the list
+	 */
+	private void mergeRuns() {
+		List<SpillFile> group = new ArrayList<SpillFile>(runs.subList(0, MAX_FAN_IN));
+		runs.subList(0, MAX_FAN_IN).clear();
+		SpillFile merged = new SpillFile(input.getAttributes());
+		PriorityQueue<Run> queue = openRuns(group);
+		Run run;
+		while ((run = queue.poll()) != null) {
+			merged.append(run.tuple);
+			if (run.advance()) {
+				queue.add(run);
+			}
+		}
+		merged.finish();
+		for (SpillFile file : group) {
+			file.delete();
+		}
+		runs.add(merged);
+	}
+
+	/**
+	 * Open a reader on each run, and return a queue of the readers ordered
+	 * by their current tuples
+	 */
+	private PriorityQueue<Run> openRuns(List<SpillFile> files) {
+		PriorityQueue<Run> res = new PriorityQueue<Run>(Math.max(files.size(), 1), new Comparator<Run>() {
+			@Override
+			public int compare(Run a, Run b) {
+				return order.compare(a.tuple, b.tuple);
+			}
+		});
+		for (SpillFile file : files) {
+			Run run = new Run(file.tupleReader());
+			if (run.advance()) {
+				res.add(run);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * A reader on a run, together with its current tuple
+	 */
+	private static class Run {
+		private TupleIterator input;
+		private int[] tuple;
+
+		private Run(TupleIterator input) {
+			this.input = input;
+			input.open();
+		}
+
+		/**
+		 * Move to the next tuple, closing the reader and returning false at
+		 * the end of the run
+		 */
+		private boolean advance() {
+			tuple = input.next();
+			if (tuple == null) {
+				input.close();
+				return false;
+			}
+			return true;
+		}
+	}
+}
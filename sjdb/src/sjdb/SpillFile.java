@@ -0,0 +1,233 @@
+package sjdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * This class holds rows that an operator has spilled to a temporary file
+ * because they would not fit in its memory budget. Rows are appended from
+ * tuples or batches, and once the file is finished it can be read back any
+ * number of times as a TupleIterator or a BatchIterator.
+ *
+ * The file holds the value codes of each row in turn, as big-endian ints.
+ */
+public class SpillFile {
+	private List<Attribute> attributes;
+	private File file;
+	private DataOutputStream write;
+	private long rows;
+
+	/**
+	 * Create a new, empty spill file in the default temporary directory
+	 * @param attributes Attributes of the rows to be spilled
+	 */
+	public SpillFile(List<Attribute> attributes) {
+		this.attributes = attributes;
+		try {
+			this.file = File.createTempFile("sjdb", ".spill");
+			this.file.deleteOnExit();
+			this.write = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Append a tuple
+	 * @param tuple Tuple with the same attributes as the file
+	 */
+	public void append(int[] tuple) {
+		try {
+			for (int c = 0; c < tuple.length; c++) {
+				write.writeInt(tuple[c]);
+			}
+			rows++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Append a row of a batch
+	 * @param batch Batch with the same columns as the file
+	 * @param row Position of the row in the batch
+	 */
+	public void append(ColumnBatch batch, int row) {
+		try {
+			for (int c = 0; c < batch.getColumnCount(); c++) {
+				write.writeInt(batch.getColumn(c)[row]);
+			}
+			rows++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Append a row held in a column store
+	 * @param store Store with the same columns as the file
+	 * @param row Number of the row in the store
+	 */
+	public void append(ColumnStore store, int row) {
+		try {
+			for (int c = 0; c < store.getColumnCount(); c++) {
+				write.writeInt(store.getColumn(c)[row]);
+			}
+			rows++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Finish writing the file, so that it can be read
+	 */
+	public void finish() {
+		try {
+			if (write != null) {
+				write.close();
+				write = null;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Return the number of rows in the file
+	 * @return Row count
+	 */
+	public long size() {
+		return rows;
+	}
+
+	/**
+	 * Delete the file
+	 */
+	public void delete() {
+		finish();
+		file.delete();
+	}
+
+	/**
+	 * Return a tuple iterator over the rows in the file, which must be
+	 * finished
+	 * @return Tuple iterator
+	 */
+	public TupleIterator tupleReader() {
+		return new TupleIterator() {
+			private DataInputStream read;
+
+			@Override
+			public void open() {
+				read = openInput();
+			}
+
+			@Override
+			public int[] next() {
+				int[] tuple = new int[attributes.size()];
+				try {
+					for (int c = 0; c < tuple.length; c++) {
+						tuple[c] = read.readInt();
+					}
+				} catch (EOFException e) {
+					return null;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return tuple;
+			}
+
+			@Override
+			public void close() {
+				closeInput(read);
+				read = null;
+			}
+
+			@Override
+			public List<Attribute> getAttributes() {
+				return attributes;
+			}
+		};
+	}
+
+	/**
+	 * Return a batch iterator over the rows in the file, which must be
+	 * finished
+	 * @return Batch iterator
+	 */
+	public BatchIterator reader() {
+		return new BatchIterator() {
+			private DataInputStream read;
+			private ColumnBatch batch;
+
+			@Override
+			public void open() {
+				read = openInput();
+				batch = new ColumnBatch(attributes.size(), ColumnBatch.DEFAULT_CAPACITY);
+			}
+
+			@Override
+			public ColumnBatch next() {
+				int n = 0;
+				try {
+					while (n < batch.getCapacity()) {
+						int first = read.readInt();
+						batch.getColumn(0)[n] = first;
+						for (int c = 1; c < attributes.size(); c++) {
+							batch.getColumn(c)[n] = read.readInt();
+						}
+						n++;
+					}
+				} catch (EOFException e) {
+					// end of the file
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if (n == 0) {
+					return null;
+				}
+				batch.setSize(n);
+				return batch;
+			}
+
+			@Override
+			public void close() {
+				closeInput(read);
+				read = null;
+			}
+
+			@Override
+			public List<Attribute> getAttributes() {
+				return attributes;
+			}
+		};
+	}
+
+	private DataInputStream openInput() {
+		try {
+			return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void closeInput(DataInputStream read) {
+		try {
+			if (read != null) {
+				read.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * Test driver for the spilling of hash joins: runs hash join plans on both
+ * executors under memory budgets small enough to make them spill, and
+ * checks their results against those of nested loop joins and of hash
+ * joins under the default budget. The join of K and L is on a key with a
+ * single value, which no level of partitioning can split, so that its
+ * build partitions are joined in chunks once MAX_LEVEL is reached.
+ */
+public class SpillTest {
+	private static final long[] BUDGETS = { 1, 4096, 65536 };
+
+	public static void main(String[] args) throws Exception {
+		Catalogue catalogue = createCatalogue();
+		DataDirectory data = TestData.create(catalogue);
+		int spillFiles = TestData.spillFiles();
+		try {
+			checkPartitions();
+			check(catalogue, data, "SELECT ra,rb,sa\nFROM R,S\nWHERE rb=sb");
+			check(catalogue, data, "SELECT kb,lb\nFROM K,L\nWHERE ka=la");
+			check(catalogue, data, "SELECT ra,sa,kb\nFROM R,S,K\nWHERE rb=sb,ra=kb");
+		} finally {
+			TestData.delete(data);
+		}
+		TestData.check("no spill files left", TestData.spillFiles() == spillFiles);
+		TestData.finish();
+	}
+
+	public static Catalogue createCatalogue() {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("R", 3000);
+		cat.createAttribute("R", "ra", 3000);
+		cat.createAttribute("R", "rb", 200);
+		cat.createRelation("S", 2000);
+		cat.createAttribute("S", "sa", 2000);
+		cat.createAttribute("S", "sb", 200);
+		cat.createRelation("K", 400);
+		cat.createAttribute("K", "ka", 1);
+		cat.createAttribute("K", "kb", 400);
+		cat.createRelation("L", 300);
+		cat.createAttribute("L", "la", 1);
+		cat.createAttribute("L", "lb", 300);
+
+		return cat;
+	}
+
+	/**
+	 * Check that the keys of one partition are spread over every partition
+	 * of the next level
+	 */
+	private static void checkPartitions() {
+		for (int level = 0; level < BatchHashJoin.MAX_LEVEL; level++) {
+			boolean[] used = new boolean[BatchHashJoin.FANOUT];
+			int count = 0;
+			for (int key = 0; key < 100000; key++) {
+				if (BatchHashJoin.partition(key, level) == 0 && !used[BatchHashJoin.partition(key, level + 1)]) {
+					used[BatchHashJoin.partition(key, level + 1)] = true;
+					count++;
+				}
+			}
+			TestData.check("partition 0 of level " + level + " spread over level " + (level + 1),
+					count == BatchHashJoin.FANOUT);
+		}
+	}
+
+	private static void check(Catalogue catalogue, DataDirectory data, String query) throws Exception {
+		Operator optimised = new SJDB(catalogue).optimise(TestData.query(catalogue, query));
+		Operator plan = TestData.force(optimised, JoinMethod.HASH);
+		String name = query.replace('\n', ' ');
+		List<String> expected = TestData.rows(new Executor(data).execute(TestData.force(optimised, JoinMethod.NESTED_LOOP)));
+		TestData.check(name + ": executor, default budget",
+				!expected.isEmpty() && expected.equals(TestData.rows(new Executor(data).execute(plan))));
+		TestData.check(name + ": batch executor, default budget",
+				expected.equals(TestData.rows(new BatchExecutor(data).execute(plan))));
+
+		for (long budget : BUDGETS) {
+			Executor executor = new Executor(data);
+			executor.setMemoryBudget(budget);
+			TestData.check(name + ": executor, budget " + budget,
+					expected.equals(TestData.rows(executor.execute(plan))));
+
+			BatchExecutor batchExecutor = new BatchExecutor(data);
+			batchExecutor.setMemoryBudget(budget);
+			TestData.check(name + ": batch executor, budget " + budget,
+					expected.equals(TestData.rows(batchExecutor.execute(plan))));
+			TestData.check(name + ": batch executor count, budget " + budget,
+					batchExecutor.count(plan) == expected.size());
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package sjdb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class holds the helpers shared by the test drivers, each of which
+ * is run with main() and reports one line for each of its checks. Drivers
+ * for the executors check their results against each other on data
+ * generated from a catalogue.
+ *
+ * The data for a relation is written to <relation name>.csv in a temporary
+ * directory. An attribute with at least as many values as the relation
+ * has tuples takes the number of the tuple as its value, so that it is a
+ * key; any other attribute with V values takes values drawn at random from
+ * 0..V-1, so that attributes joined with each other share a domain.
+ */
+public class TestData {
+	private static final long SEED = 1;
+	private static int failures = 0;
+
+	/**
+	 * Write the data for every relation of a catalogue to a new temporary
+	 * directory
+	 * @param catalogue Catalogue
+	 * @return Directory holding the data files
+	 * @throws IOException
+	 */
+	public static DataDirectory create(Catalogue catalogue) throws IOException {
+		File dir = Files.createTempDirectory("sjdb").toFile();
+		Random random = new Random(SEED);
+		for (NamedRelation relation : catalogue.getRelations()) {
+			write(dir, relation, random);
+		}
+		return new DataDirectory(dir.getPath());
+	}
+
+	private static void write(File dir, NamedRelation relation, Random random) throws IOException {
+		List<Attribute> attributes = relation.getAttributes();
+		PrintWriter out = new PrintWriter(new FileWriter(new File(dir, relation.toString() + ".csv")));
+		try {
+			for (int i = 0; i < attributes.size(); i++) {
+				out.print(i == 0 ? "" : ",");
+				out.print(attributes.get(i).getName());
+			}
+			out.println();
+			for (long row = 0; row < relation.getTupleCount(); row++) {
+				for (int i = 0; i < attributes.size(); i++) {
+					long values = attributes.get(i).getValueCount();
+					out.print(i == 0 ? "" : ",");
+					out.print(values >= relation.getTupleCount() ? row : random.nextInt((int) values));
+				}
+				out.println();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Delete a directory created by create(), and everything in it
+	 * @param data Directory holding the data files
+	 */
+	public static void delete(DataDirectory data) {
+		File[] files = data.getDirectory().listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		data.getDirectory().delete();
+	}
+
+	/**
+	 * Parse a query against a catalogue
+	 * @param catalogue Catalogue
+	 * @param query Query, one line for each clause
+	 * @return Canonical plan
+	 * @throws Exception
+	 */
+	public static Operator query(Catalogue catalogue, String query) throws Exception {
+		return new QueryParser(catalogue, new StringReader(query)).parse();
+	}
+
+	/**
+	 * Rebuild a plan so that every join in it uses the given method
+	 * @param op Root of the plan
+	 * @param method Join method
+	 * @return Root of the rebuilt plan
+	 */
+	public static Operator force(Operator op, JoinMethod method) {
+		if (op instanceof Select) {
+			return new Select(force(((Select) op).getInput(), method), ((Select) op).getPredicate());
+		}
+		if (op instanceof Project) {
+			return new Project(force(((Project) op).getInput(), method), ((Project) op).getAttributes());
+		}
+		if (op instanceof Product) {
+			return new Product(force(((Product) op).getLeft(), method), force(((Product) op).getRight(), method));
+		}
+		if (op instanceof Join) {
+			Join join = (Join) op;
+			return new Join(force(join.getLeft(), method), force(join.getRight(), method), join.getPredicate(), method);
+		}
+		return op;
+	}
+
+	/**
+	 * Return the tuples of a result as strings, in sorted order, so that
+	 * results can be compared regardless of the order of their tuples
+	 * @param result List of tuples
+	 * @return Sorted list of tuples
+	 */
+	public static List<String> rows(List<String[]> result) {
+		List<String> rows = new ArrayList<String>();
+		for (String[] tuple : result) {
+			StringBuilder row = new StringBuilder();
+			for (int i = 0; i < tuple.length; i++) {
+				row.append(i == 0 ? "" : ",").append(tuple[i]);
+			}
+			rows.add(row.toString());
+		}
+		Collections.sort(rows);
+		return rows;
+	}
+
+	/**
+	 * Return the number of spill files left in the temporary directory
+	 * @return File count
+	 */
+	public static int spillFiles() {
+		File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+		int count = 0;
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().startsWith("sjdb") && file.getName().endsWith(".spill")) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Report the outcome of a check
+	 * @param name Description of the check
+	 * @param passed True if the check passed
+	 */
+	public static void check(String name, boolean passed) {
+		System.out.println((passed ? "ok     " : "FAILED ") + name);
+		if (!passed) {
+			failures++;
+		}
+	}
+
+	/**
+	 * Exit, with a non-zero status if any check failed
+	 */
+	public static void finish() {
+		System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,32 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This is an interface for the iterators that execute a query plan, one
+ * for each operator, in the style of the Volcano model: each iterator pulls
+ * tuples from its inputs on demand.
+ *
+ * A tuple is an array holding one value code (see ValueDictionary) for each
+ * attribute, in the order given by getAttributes().
+ */
+public interface TupleIterator {
+	/**
+	 * Prepare to produce tuples; this opens the inputs of the iterator.
+	 */
+	public void open();
+	/**
+	 * Return the next tuple, or null if there are no more.
+	 * @return Next tuple
+	 */
+	public int[] next();
+	/**
+	 * Release the resources held by the iterator and its inputs.
+	 */
+	public void close();
+	/**
+	 * Return the attributes of the tuples produced by the iterator.
+	 * @return List of attributes
+	 */
+	public List<Attribute> getAttributes();
+}
@@ -0,0 +1,55 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class maps the values read from the data files to integer codes and
+ * back, so that the executor can compare and hash tuples as arrays of ints.
+ *
+ * One dictionary is shared by every relation read while executing a plan,
+ * so equal values in different relations have equal codes and can be joined
+ * by comparing codes. The dictionary is safe for use by several threads.
+ */
+public class ValueDictionary {
+	private HashMap<String, Integer> codes;
+	private List<String> values;
+
+	public ValueDictionary() {
+		this.codes = new HashMap<String, Integer>();
+		this.values = new ArrayList<String>();
+	}
+
+	/**
+	 * Return the code for a value, assigning a new one if it has none
+	 * @param value
+	 * @return Value code
+	 */
+	public synchronized int encode(String value) {
+		Integer code = codes.get(value);
+		if (code == null) {
+			code = values.size();
+			codes.put(value, code);
+			values.add(value);
+		}
+		return code;
+	}
+
+	/**
+	 * Return the value with the given code
+	 * @param code
+	 * @return Value
+	 */
+	public synchronized String decode(int code) {
+		return values.get(code);
+	}
+
+	/**
+	 * Return the number of values with codes
+	 * @return Value count
+	 */
+	public synchronized int size() {
+		return values.size();
+	}
+}